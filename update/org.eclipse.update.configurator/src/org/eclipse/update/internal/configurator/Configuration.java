@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2008 IBM Corporation and others.
+ * Copyright (c) 2000, 2013 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -11,6 +11,7 @@
  *******************************************************************************/
 package org.eclipse.update.internal.configurator;
 
+import java.io.File;
 import java.io.IOException;
 import java.net.*;
 import java.util.ArrayList;
@@ -19,7 +20,6 @@ import java.util.HashMap;
 
 import org.eclipse.core.runtime.*;
 import org.eclipse.update.configurator.*;
-import org.w3c.dom.*;
 
 public class Configuration implements IConfigurationConstants {
 	
@@ -32,6 +32,7 @@ public class Configuration implements IConfigurationConstants {
 	private boolean isDirty;
 	private Configuration linkedConfig; // shared configuration
 	private URL associatedInstallURL = Utils.getInstallURL();
+	private PluginEntryCache pluginEntryCache;
 	
 	public Configuration() {
 		this(new Date());
@@ -49,6 +50,22 @@ public class Configuration implements IConfigurationConstants {
 	public URL getURL() {
 		return url;
 	}
+
+	/**
+	 * Returns the index of the plug-ins detected on the sites of this
+	 * configuration, or <code>null</code> if the configuration is not
+	 * stored in a local file.
+	 */
+	public synchronized PluginEntryCache getPluginEntryCache() {
+		if (pluginEntryCache == null && url != null && "file".equals(url.getProtocol())) { //$NON-NLS-1$
+			File configDir = new File(url.getFile().replace('/', File.separatorChar)).getParentFile();
+			if (configDir == null)
+				return null;
+			pluginEntryCache = new PluginEntryCache(new File(configDir, PluginEntryCache.CACHE_FILE));
+			pluginEntryCache.load();
+		}
+		return pluginEntryCache;
+	}
 	
 	public void setLinkedConfig(Configuration linkedConfig) {
 		this.linkedConfig = linkedConfig;
@@ -79,6 +96,7 @@ public class Configuration implements IConfigurationConstants {
 		if (sites.get(url) == null && (linkedConfig == null || linkedConfig.sites.get(url) == null)) {
 			site.setConfig(this);
 			sites.put(url, site);
+			ConfigurationActivator.bundleGroupsChanged();
 			if(url.startsWith("platform:")){//$NON-NLS-1$
 				URL pURL;
 				try {
@@ -104,7 +122,8 @@ public class Configuration implements IConfigurationConstants {
 	
 	public void removeSiteEntry(String url) {
 		url =Utils.canonicalizeURL(url);		
-		sites.remove(url);
+		if (sites.remove(url) != null)
+			ConfigurationActivator.bundleGroupsChanged();
 		if(url.startsWith("platform:")){ //$NON-NLS-1$
 			URL pURL;
 			try {
@@ -143,18 +162,18 @@ public class Configuration implements IConfigurationConstants {
 		return (SiteEntry[]) combinedSites.toArray(new SiteEntry[combinedSites.size()]);
 	}
 	
-	public Element toXML(Document doc) throws CoreException {	
+	public void toXML(XMLElementWriter writer) throws CoreException {	
 		try {
-			Element configElement = doc.createElement(CFG);
+			writer.startElement(CFG);
 
-			configElement.setAttribute(CFG_VERSION, VERSION);
-			configElement.setAttribute(CFG_DATE, String.valueOf(date.getTime()));
+			writer.setAttribute(CFG_VERSION, VERSION);
+			writer.setAttribute(CFG_DATE, String.valueOf(date.getTime()));
 			String transitory = isTransient() ? "true" : "false"; //$NON-NLS-1$ //$NON-NLS-2$
-			configElement.setAttribute(CFG_TRANSIENT, transitory);
+			writer.setAttribute(CFG_TRANSIENT, transitory);
 						
 			if (linkedConfig != null) {
 				// make externalized URL install relative 
-				configElement.setAttribute(CFG_SHARED_URL, Utils.makeRelative(getInstallURL(), linkedConfig.getURL()).toExternalForm());
+				writer.setAttribute(CFG_SHARED_URL, Utils.makeRelative(getInstallURL(), linkedConfig.getURL()).toExternalForm());
 			}
 
 			// collect site entries
@@ -162,11 +181,10 @@ public class Configuration implements IConfigurationConstants {
 			for (int i = 0; i < list.length; i++) {
 				if (linkedConfig != null && linkedConfig.getSiteEntry(list[i].getURL().toExternalForm()) != null)
 					continue;
-				Element siteElement = list[i].toXML(doc);
-				configElement.appendChild(siteElement);
+				list[i].toXML(writer);
 			}
 			
-			return configElement;
+			writer.endElement(CFG);
 			
 		} catch (Exception e) {
 			throw Utils.newCoreException("", e); //$NON-NLS-1$
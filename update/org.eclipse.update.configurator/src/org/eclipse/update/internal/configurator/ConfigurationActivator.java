@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2003, 2010 IBM Corporation and others.
+ * Copyright (c) 2003, 2013 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -34,6 +34,10 @@ public class ConfigurationActivator implements BundleActivator, IBundleGroupProv
 	public static final String NAME_SPACE = "org.eclipse.update"; //$NON-NLS-1$
 	public static final String UPDATE_PREFIX = "update@"; //$NON-NLS-1$
 	private static final String INITIAL_PREFIX = "initial@"; //$NON-NLS-1$
+	// number of threads installing the new bundles, 1 to install them in order, at most ParallelLoop.MAX_THREADS
+	private static final String PROP_INSTALL_THREADS = "org.eclipse.update.configurator.installThreads"; //$NON-NLS-1$
+	private static final int PARALLEL_INSTALL_THRESHOLD = 32;
+	private static final String PROP_INCREMENTAL_REFRESH = "org.eclipse.update.configurator.incrementalRefresh"; //$NON-NLS-1$
 
 	// debug options
 	public static String OPTION_DEBUG = PI_CONFIGURATOR + "/debug"; //$NON-NLS-1$
@@ -57,6 +61,19 @@ public class ConfigurationActivator implements BundleActivator, IBundleGroupProv
 	// Singleton
 	private static ConfigurationActivator configurator;
 
+	// incremented when the configured features or the resolved bundles change,
+	// so the bundle groups and their branding are computed again
+	private static int bundleGroupsStamp;
+	// bundle groups last computed, and the stamp they were computed at
+	private IBundleGroup[] bundleGroups;
+	private int bundleGroupsCacheStamp;
+	private SynchronousBundleListener bundleGroupsListener = new SynchronousBundleListener() {
+		public void bundleChanged(BundleEvent event) {
+			if (event.getType() == BundleEvent.RESOLVED || event.getType() == BundleEvent.UNRESOLVED)
+				bundleGroupsChanged();
+		}
+	};
+
 	public ConfigurationActivator() {
 		configurator = this;
 	}
@@ -72,6 +89,7 @@ public class ConfigurationActivator implements BundleActivator, IBundleGroupProv
 			Utils.shutdown();
 			throw e;
 		}
+		context.addBundleListener(bundleGroupsListener);
 
 		//Short cut, if the configuration has not changed
 		if (canRunWithCachedData()) {
@@ -96,6 +114,19 @@ public class ConfigurationActivator implements BundleActivator, IBundleGroupProv
 		
 	}
 
+	/**
+	 * Returns whether a refresh of the sites should keep the features
+	 * detected and skip parsing the feature.xml files whose directory and
+	 * manifest time stamps did not change since they were last checked.
+	 * The features directories are still listed on every refresh; there
+	 * is no file system watcher.
+	 */
+	public static boolean isIncrementalRefresh() {
+		if (context == null)
+			return false;
+		return "true".equalsIgnoreCase(context.getProperty(PROP_INCREMENTAL_REFRESH)); //$NON-NLS-1$
+	}
+
 	private void registerBundleGroupProvider() {
 		final String serviceName = IBundleGroupProvider.class.getName();
 		try {
@@ -166,6 +197,7 @@ public class ConfigurationActivator implements BundleActivator, IBundleGroupProv
 		configurationFactorySR.unregister();
 		if (bundleGroupProviderSR != null)
 			bundleGroupProviderSR.unregister();
+		ctx.removeBundleListener(bundleGroupsListener);
 		Utils.shutdown();
 	}
 
@@ -196,6 +228,7 @@ public class ConfigurationActivator implements BundleActivator, IBundleGroupProv
 			// starts the list of bundles to refresh with all currently unresolved bundles (see bug 50680)
 			List toRefresh = getUnresolvedBundles();
 
+			long phaseStart = System.currentTimeMillis();
 			Bundle[] bundlesToUninstall = getBundlesToUninstall(cachedBundles, plugins);
 			for (int i = 0; i < bundlesToUninstall.length; i++) {
 				try {
@@ -209,16 +242,19 @@ public class ConfigurationActivator implements BundleActivator, IBundleGroupProv
 				}
 			}
 
+			Utils.debug("Uninstalled " + bundlesToUninstall.length + " bundle(s) in " + (System.currentTimeMillis() - phaseStart) + "ms"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+
 			// Get the urls to install
+			phaseStart = System.currentTimeMillis();
 			String[] bundlesToInstall = getBundlesToInstall(cachedBundles, plugins);
+			Bundle[] installedBundles = installBundles(bundlesToInstall);
 			ArrayList lazyActivationBundles = new ArrayList(bundlesToInstall.length);
-			for (int i = 0; i < bundlesToInstall.length; i++) {
+			// the new bundles are processed in order, however they were installed
+			for (int i = 0; i < installedBundles.length; i++) {
+				Bundle target = installedBundles[i];
+				if (target == null)
+					continue;
 				try {
-					if (DEBUG)
-						Utils.debug("Installing " + bundlesToInstall[i]); //$NON-NLS-1$
-					URL bundleURL = new URL("reference:file:" + bundlesToInstall[i]); //$NON-NLS-1$
-					//Bundle target = context.installBundle(bundlesToInstall[i]);
-					Bundle target = context.installBundle(UPDATE_PREFIX + bundlesToInstall[i], bundleURL.openStream());
 					// any new bundle should be refreshed as well
 					toRefresh.add(target);
 					if (start != null)
@@ -232,9 +268,16 @@ public class ConfigurationActivator implements BundleActivator, IBundleGroupProv
 				}
 			}
 			context.ungetService(reference);
+			Utils.debug("Installed " + bundlesToInstall.length + " bundle(s) in " + (System.currentTimeMillis() - phaseStart) + "ms"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+
+			// a single refresh for all the bundles installed and uninstalled
+			phaseStart = System.currentTimeMillis();
 			removeInitialBundles(toRefresh, cachedBundles);
 			refreshPackages((Bundle[]) toRefresh.toArray(new Bundle[toRefresh.size()]));
+			Utils.debug("Refreshed " + toRefresh.size() + " bundle(s) in " + (System.currentTimeMillis() - phaseStart) + "ms"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+
 			// after resolving all the bundles; activate the bundles that have a lazy activation policy
+			phaseStart = System.currentTimeMillis();
 			for (Iterator activateBundles = lazyActivationBundles.iterator(); activateBundles.hasNext();) {
 				Bundle toActivate = (Bundle) activateBundles.next();
 				try {
@@ -246,6 +289,7 @@ public class ConfigurationActivator implements BundleActivator, IBundleGroupProv
 						Utils.log(NLS.bind(Messages.ConfigurationActivator_installBundle, (new String[] {toActivate.getLocation()})) + "   " + e.getMessage()); //$NON-NLS-1$
 				}
 			}
+			Utils.debug("Activated " + lazyActivationBundles.size() + " lazy bundle(s) in " + (System.currentTimeMillis() - phaseStart) + "ms"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
 			// keep track of the last config successfully processed
 			writePlatformConfigurationTimeStamp();
 			return true;
@@ -254,6 +298,59 @@ public class ConfigurationActivator implements BundleActivator, IBundleGroupProv
 		}
 	}
 
+	/**
+	 * Installs bundles, on several threads if the
+	 * <code>org.eclipse.update.configurator.installThreads</code> property
+	 * allows it and there are enough bundles.
+	 *
+	 * @param locations the locations of the bundles, relative to the install
+	 * location
+	 * @return the bundle installed from each location, <code>null</code>
+	 * for the ones that failed to install
+	 */
+	private Bundle[] installBundles(final String[] locations) {
+		final Bundle[] bundles = new Bundle[locations.length];
+		int threads = getInstallThreads();
+		if (threads <= 1 || locations.length < PARALLEL_INSTALL_THRESHOLD) {
+			for (int i = 0; i < locations.length; i++)
+				bundles[i] = installBundle(locations[i]);
+			return bundles;
+		}
+
+		Utils.debug("Installing " + locations.length + " bundle(s) on " + threads + " threads"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		new ParallelLoop("Bundle Installation") { //$NON-NLS-1$
+			protected void run(int i, Object state) {
+				bundles[i] = installBundle(locations[i]);
+			}
+		}.run(locations.length, threads);
+		return bundles;
+	}
+
+	private Bundle installBundle(String location) {
+		try {
+			if (DEBUG)
+				Utils.debug("Installing " + location); //$NON-NLS-1$
+			URL bundleURL = new URL("reference:file:" + location); //$NON-NLS-1$
+			//Bundle target = context.installBundle(location);
+			return context.installBundle(UPDATE_PREFIX + location, bundleURL.openStream());
+		} catch (Exception e) {
+			if (!Utils.isAutomaticallyStartedBundle(location))
+				Utils.log(NLS.bind(Messages.ConfigurationActivator_installBundle, (new String[] {location})) + "   " + e.getMessage()); //$NON-NLS-1$
+			return null;
+		}
+	}
+
+	private static int getInstallThreads() {
+		String threads = context.getProperty(PROP_INSTALL_THREADS);
+		if (threads == null)
+			return 1;
+		try {
+			return Math.min(Math.max(1, Integer.parseInt(threads.trim())), ParallelLoop.MAX_THREADS);
+		} catch (NumberFormatException e) {
+			return 1;
+		}
+	}
+
 	private static boolean hasLazyActivationPolicy(Bundle target) {
 		// check the bundle manifest to see if it defines a lazy activation policy
 		Dictionary headers = target.getHeaders(""); //$NON-NLS-1$
@@ -293,22 +390,19 @@ public class ConfigurationActivator implements BundleActivator, IBundleGroupProv
 	}
 
 	private void removeInitialBundles(List bundles, Bundle[] cachedBundles) {
-		String[] initialSymbolicNames = getInitialSymbolicNames(cachedBundles);
+		Set initialSymbolicNames = getInitialSymbolicNames(cachedBundles);
+		if (initialSymbolicNames.isEmpty())
+			return;
 		Iterator iter = bundles.iterator();
 		while (iter.hasNext()) {
 			Bundle bundle = (Bundle) iter.next();
-			String symbolicName = bundle.getSymbolicName();
-			for (int i = 0; i < initialSymbolicNames.length; i++) {
-				if (initialSymbolicNames[i].equals(symbolicName)) {
-					iter.remove();
-					break;
-				}
-			}
+			if (initialSymbolicNames.contains(bundle.getSymbolicName()))
+				iter.remove();
 		}
 	}
 
-	private String[] getInitialSymbolicNames(Bundle[] cachedBundles) {
-		ArrayList initial = new ArrayList();
+	private Set getInitialSymbolicNames(Bundle[] cachedBundles) {
+		HashSet initial = new HashSet();
 		for (int i = 0; i < cachedBundles.length; i++) {
 			Bundle bundle = cachedBundles[i];
 			if (bundle.getLocation().startsWith(INITIAL_PREFIX)) {
@@ -317,7 +411,7 @@ public class ConfigurationActivator implements BundleActivator, IBundleGroupProv
 					initial.add(symbolicName);
 			}
 		}
-		return (String[]) initial.toArray(new String[initial.size()]);
+		return initial;
 	}
 
 	private List getUnresolvedBundles() {
@@ -514,17 +608,38 @@ public class ConfigurationActivator implements BundleActivator, IBundleGroupProv
 	/* (non-Javadoc)
 	 * @see org.eclipse.core.runtime.IBundleGroupProvider#getBundleGroups()
 	 */
-	public IBundleGroup[] getBundleGroups() {
+	public synchronized IBundleGroup[] getBundleGroups() {
 		if (configuration == null)
 			return new IBundleGroup[0];
 
-		IPlatformConfiguration.IFeatureEntry[] features = configuration.getConfiguredFeatureEntries();
-		ArrayList bundleGroups = new ArrayList(features.length);
-		for (int i = 0; i < features.length; i++) {
-			if (features[i] instanceof FeatureEntry && ((FeatureEntry) features[i]).hasBranding())
-				bundleGroups.add(features[i]);
+		int stamp = getBundleGroupsStamp();
+		if (bundleGroups == null || bundleGroupsCacheStamp != stamp) {
+			IPlatformConfiguration.IFeatureEntry[] features = configuration.getConfiguredFeatureEntries();
+			ArrayList groups = new ArrayList(features.length);
+			for (int i = 0; i < features.length; i++) {
+				if (features[i] instanceof FeatureEntry && ((FeatureEntry) features[i]).hasBranding())
+					groups.add(features[i]);
+			}
+			bundleGroups = (IBundleGroup[]) groups.toArray(new IBundleGroup[groups.size()]);
+			bundleGroupsCacheStamp = stamp;
 		}
-		return (IBundleGroup[]) bundleGroups.toArray(new IBundleGroup[bundleGroups.size()]);
+		return (IBundleGroup[]) bundleGroups.clone();
+	}
+
+	/**
+	 * Notes that the configured features or the resolved bundles changed,
+	 * which invalidates the bundle groups and their branding.
+	 */
+	public static synchronized void bundleGroupsChanged() {
+		bundleGroupsStamp++;
+	}
+
+	/**
+	 * Returns a stamp that changes when the configured features or the
+	 * resolved bundles change.
+	 */
+	public static synchronized int getBundleGroupsStamp() {
+		return bundleGroupsStamp;
 	}
 
 	public static ConfigurationActivator getConfigurator() {
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2010 IBM Corporation and others.
+ * Copyright (c) 2000, 2013 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -39,6 +39,10 @@ public class ConfigurationParser extends DefaultHandler implements IConfiguratio
 	private URL configURL;
 	private InputStream input;
 	private URL installLocation;
+	// whether the snapshot of a configuration file is used
+	private boolean useSnapshot;
+	// records the elements parsed, when the snapshot is stale
+	private ConfigurationSnapshot recorder;
 	
 	/**
 	 * Constructor for ConfigurationParser
@@ -57,28 +61,52 @@ public class ConfigurationParser extends DefaultHandler implements IConfiguratio
 		}
 	}
 	
+	/**
+	 * Sets whether the snapshot of the configuration file is used in place
+	 * of the file when the file did not change, and written again when it
+	 * did. The snapshot is kept next to the file parsed.
+	 *
+	 * @param useSnapshot <code>false</code> to always parse the file
+	 */
+	public void setUseSnapshot(boolean useSnapshot) {
+		this.useSnapshot = useSnapshot;
+	}
+
 	public Configuration parse(URL url, URL installLocation) throws Exception {
 
 		// DEBUG:		
 		Utils.debug("Start parsing Configuration:" + url); //$NON-NLS-1$	
 		long lastModified = 0;
+		File inputFile = null;
 		try {
 			configURL = url;
 			this.installLocation = installLocation;
 			if ("file".equals(url.getProtocol())) { //$NON-NLS-1$
-				File inputFile = URIUtil.toFile(URIUtil.toURI(url));
+				inputFile = URIUtil.toFile(URIUtil.toURI(url));
 				if (!inputFile.exists() || !inputFile.canRead())
 					return null;
 				lastModified = inputFile.lastModified();
+				if (useSnapshot) {
+					ConfigurationSnapshot snapshot = new ConfigurationSnapshot(inputFile);
+					if (snapshot.load(inputFile)) {
+						Utils.debug("Using configuration snapshot"); //$NON-NLS-1$
+						snapshot.replay(this);
+						return config;
+					}
+					recorder = snapshot;
+				}
 				input = new FileInputStream(inputFile);
 			} else 
 				input = url.openStream();
 			parser.parse(new InputSource(input), this);
+			if (recorder != null && config != null)
+				recorder.save(inputFile);
 			return config;
 		} catch (Exception e) {
 			Utils.log(Utils.newStatus("ConfigurationParser.parse() error:", e)); //$NON-NLS-1$
 			throw e;
 		} finally {
+			recorder = null;
 			if (config != null)
 				config.setLastModified(lastModified);
 			try {
@@ -107,6 +135,8 @@ public class ConfigurationParser extends DefaultHandler implements IConfiguratio
 		try {
 
 			String tag = localName.trim();
+			if (recorder != null)
+				recorder.startElement(tag, attributes);
 
 			if (tag.equalsIgnoreCase(CFG)) {
 				processConfig(attributes);
@@ -366,6 +396,8 @@ public class ConfigurationParser extends DefaultHandler implements IConfiguratio
 		try {
 
 			String tag = localName.trim();
+			if (recorder != null)
+				recorder.endElement(tag);
 
 			if (tag.equalsIgnoreCase(CFG)) {
 				 // This is a bit of a hack.
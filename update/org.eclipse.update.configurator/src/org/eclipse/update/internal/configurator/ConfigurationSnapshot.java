@@ -0,0 +1,259 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.update.internal.configurator;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Binary copy of the elements of a platform.xml, kept next to it.
+ * <p>
+ * The snapshot records the elements and attributes of the configuration
+ * file, with each distinct string stored once, and the size, time stamp
+ * and checksum of the file it was taken from. The checksum catches an
+ * edit that keeps the size of the file within the resolution of its time
+ * stamp. When the file did not change, the
+ * snapshot is read in a single read and its elements are replayed to the
+ * {@link ConfigurationParser}, which builds the configuration as if it had
+ * parsed the XML. platform.xml remains the configuration file: a stale,
+ * missing or corrupted snapshot is ignored, and written again from the file.
+ */
+public class ConfigurationSnapshot {
+
+	public static final String SNAPSHOT_SUFFIX = ".snapshot"; //$NON-NLS-1$
+
+	// 2: checksum of the configuration file
+	private static final int VERSION = 2;
+
+	private File file;
+	// Record of each element start and end, in document order
+	private ArrayList elements = new ArrayList();
+
+	private static class Record {
+		String tag;
+		// attribute names and values, or null for the end of an element
+		String[] attributes;
+	}
+
+	/**
+	 * Creates the snapshot of a configuration file.
+	 *
+	 * @param configFile the platform.xml file
+	 */
+	public ConfigurationSnapshot(File configFile) {
+		this.file = new File(configFile.getPath() + SNAPSHOT_SUFFIX);
+	}
+
+	/**
+	 * Records the start of an element.
+	 */
+	public void startElement(String tag, Attributes attributes) {
+		Record record = new Record();
+		record.tag = tag;
+		record.attributes = new String[attributes.getLength() * 2];
+		for (int i = 0; i < attributes.getLength(); i++) {
+			record.attributes[i * 2] = attributes.getQName(i);
+			record.attributes[i * 2 + 1] = attributes.getValue(i);
+		}
+		elements.add(record);
+	}
+
+	/**
+	 * Records the end of an element.
+	 */
+	public void endElement(String tag) {
+		Record record = new Record();
+		record.tag = tag;
+		elements.add(record);
+	}
+
+	/**
+	 * Reads the snapshot, if it was taken from the current content of the
+	 * configuration file.
+	 *
+	 * @param configFile the platform.xml file
+	 * @return <code>true</code> if the snapshot can be replayed,
+	 * <code>false</code> if it is missing, stale or corrupted
+	 */
+	public boolean load(File configFile) {
+		elements.clear();
+		long length = file.length();
+		if (length == 0 || length > Integer.MAX_VALUE)
+			return false;
+		byte[] data = new byte[(int) length];
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new FileInputStream(file));
+			in.readFully(data);
+		} catch (IOException e) {
+			Utils.debug("Unable to read configuration snapshot " + file + ": " + e); //$NON-NLS-1$ //$NON-NLS-2$
+			return false;
+		} finally {
+			if (in != null) {
+				try {
+					in.close();
+				} catch (IOException e) {
+				}
+			}
+		}
+
+		in = new DataInputStream(new ByteArrayInputStream(data));
+		try {
+			if (in.readInt() != VERSION)
+				return false;
+			if (in.readLong() != configFile.lastModified() || in.readLong() != configFile.length())
+				return false;
+			if (in.readLong() != getChecksum(configFile))
+				return false;
+			String[] strings = new String[in.readInt()];
+			for (int i = 0; i < strings.length; i++)
+				strings[i] = in.readUTF();
+			int count = in.readInt();
+			elements.ensureCapacity(count);
+			for (int i = 0; i < count; i++) {
+				Record record = new Record();
+				record.tag = strings[in.readInt()];
+				int attributes = in.readInt();
+				if (attributes >= 0) {
+					record.attributes = new String[attributes * 2];
+					for (int j = 0; j < record.attributes.length; j++)
+						record.attributes[j] = strings[in.readInt()];
+				}
+				elements.add(record);
+			}
+			return true;
+		} catch (IOException e) {
+			Utils.debug("Unable to read configuration snapshot " + file + ": " + e); //$NON-NLS-1$ //$NON-NLS-2$
+		} catch (RuntimeException e) {
+			// bad string index
+			Utils.debug("Unable to read configuration snapshot " + file + ": " + e); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+		elements.clear();
+		return false;
+	}
+
+	/**
+	 * Sends the recorded elements to a handler.
+	 */
+	public void replay(DefaultHandler handler) throws SAXException {
+		for (int i = 0; i < elements.size(); i++) {
+			Record record = (Record) elements.get(i);
+			if (record.attributes == null) {
+				handler.endElement("", record.tag, record.tag); //$NON-NLS-1$
+				continue;
+			}
+			AttributesImpl attributes = new AttributesImpl();
+			for (int j = 0; j < record.attributes.length; j += 2)
+				attributes.addAttribute("", record.attributes[j], record.attributes[j], "CDATA", record.attributes[j + 1]); //$NON-NLS-1$ //$NON-NLS-2$
+			handler.startElement("", record.tag, record.tag, attributes); //$NON-NLS-1$
+		}
+	}
+
+	/**
+	 * Writes the recorded elements as the snapshot of the current content
+	 * of the configuration file.
+	 *
+	 * @param configFile the platform.xml file
+	 */
+	public void save(File configFile) {
+		long lastModified = configFile.lastModified();
+		if (lastModified == 0)
+			return;
+		long checksum;
+		try {
+			checksum = getChecksum(configFile);
+		} catch (IOException e) {
+			Utils.debug("Unable to save configuration snapshot " + file + ": " + e); //$NON-NLS-1$ //$NON-NLS-2$
+			return;
+		}
+
+		// string -> index
+		Map indexes = new HashMap();
+		ArrayList strings = new ArrayList();
+		for (int i = 0; i < elements.size(); i++) {
+			Record record = (Record) elements.get(i);
+			addString(record.tag, indexes, strings);
+			if (record.attributes != null) {
+				for (int j = 0; j < record.attributes.length; j++)
+					addString(record.attributes[j], indexes, strings);
+			}
+		}
+
+		DataOutputStream out = null;
+		try {
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+			out.writeInt(VERSION);
+			out.writeLong(lastModified);
+			out.writeLong(configFile.length());
+			out.writeLong(checksum);
+			out.writeInt(strings.size());
+			for (int i = 0; i < strings.size(); i++)
+				out.writeUTF((String) strings.get(i));
+			out.writeInt(elements.size());
+			for (int i = 0; i < elements.size(); i++) {
+				Record record = (Record) elements.get(i);
+				out.writeInt(((Integer) indexes.get(record.tag)).intValue());
+				if (record.attributes == null) {
+					out.writeInt(-1);
+					continue;
+				}
+				out.writeInt(record.attributes.length / 2);
+				for (int j = 0; j < record.attributes.length; j++)
+					out.writeInt(((Integer) indexes.get(record.attributes[j])).intValue());
+			}
+			out.close();
+			out = null;
+		} catch (IOException e) {
+			// the configuration area may be read-only
+			Utils.debug("Unable to save configuration snapshot " + file + ": " + e); //$NON-NLS-1$ //$NON-NLS-2$
+		} finally {
+			if (out != null) {
+				try {
+					out.close();
+				} catch (IOException e) {
+				}
+				file.delete();
+			}
+		}
+	}
+
+	/*
+	 * Returns the CRC-32 of the content of a file.
+	 */
+	private static long getChecksum(File configFile) throws IOException {
+		CRC32 crc = new CRC32();
+		byte[] buffer = new byte[8192];
+		InputStream in = new FileInputStream(configFile);
+		try {
+			int n;
+			while ((n = in.read(buffer)) != -1)
+				crc.update(buffer, 0, n);
+		} finally {
+			in.close();
+		}
+		return crc.getValue();
+	}
+
+	private static void addString(String value, Map indexes, ArrayList strings) {
+		if (!indexes.containsKey(value)) {
+			indexes.put(value, new Integer(strings.size()));
+			strings.add(value);
+		}
+	}
+}
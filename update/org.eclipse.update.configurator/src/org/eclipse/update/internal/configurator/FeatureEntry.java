@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2009 IBM Corporation and others.
+ * Copyright (c) 2000, 2013 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -10,6 +10,7 @@
  *******************************************************************************/
 package org.eclipse.update.internal.configurator;
 
+import java.io.IOException;
 import java.net.*;
 import java.util.ArrayList;
 import java.util.MissingResourceException;
@@ -19,7 +20,6 @@ import org.eclipse.core.runtime.*;
 import org.eclipse.update.configurator.*;
 import org.eclipse.update.internal.configurator.branding.*;
 import org.osgi.framework.*;
-import org.w3c.dom.*;
 
 
 /**
@@ -45,8 +45,14 @@ public class FeatureEntry
 	private String licenseURL;
 	private ArrayList plugins;
 	private AboutInfo branding;
+	// bundle groups stamp the branding and the bundles were read at
+	private int brandingStamp;
+	private Bundle[] bundles;
+	private int bundlesStamp;
 	private SiteEntry site;
 	private ResourceBundle resourceBundle;
+	private boolean resourceBundleLoaded;
+	private String resolvedLicenseURL;
 	private boolean fullyParsed;
 
 	public FeatureEntry(String id, String version, String pluginIdentifier, String pluginVersion, boolean primary, String application, URL[] root) {
@@ -152,39 +158,39 @@ public class FeatureEntry
 		return primary;
 	}
 
-	public Element toXML(Document doc) {
+	public void toXML(XMLElementWriter writer) throws IOException {
 		URL installURL = getSite().getConfig().getInstallURL();	
 		
-		Element featureElement = doc.createElement(CFG_FEATURE_ENTRY);		
+		writer.startElement(CFG_FEATURE_ENTRY);		
 		// write out feature entry settings
 		if (id != null)
-			featureElement.setAttribute(CFG_FEATURE_ENTRY_ID, id); 
+			writer.setAttribute(CFG_FEATURE_ENTRY_ID, id); 
 		if (primary)
-			featureElement.setAttribute(CFG_FEATURE_ENTRY_PRIMARY, "true"); //$NON-NLS-1$
+			writer.setAttribute(CFG_FEATURE_ENTRY_PRIMARY, "true"); //$NON-NLS-1$
 		if (version != null)
-			featureElement.setAttribute(CFG_FEATURE_ENTRY_VERSION, version); 
+			writer.setAttribute(CFG_FEATURE_ENTRY_VERSION, version); 
 		if (pluginVersion != null && !pluginVersion.equals(version) && pluginVersion.length() > 0)
-			featureElement.setAttribute(CFG_FEATURE_ENTRY_PLUGIN_VERSION, pluginVersion); 
+			writer.setAttribute(CFG_FEATURE_ENTRY_PLUGIN_VERSION, pluginVersion); 
 		if (pluginIdentifier != null && !pluginIdentifier.equals(id) && pluginIdentifier.length() > 0)
-			featureElement.setAttribute(CFG_FEATURE_ENTRY_PLUGIN_IDENTIFIER, pluginIdentifier);
+			writer.setAttribute(CFG_FEATURE_ENTRY_PLUGIN_IDENTIFIER, pluginIdentifier);
 		if (application != null)
-			featureElement.setAttribute(CFG_FEATURE_ENTRY_APPLICATION, application);
+			writer.setAttribute(CFG_FEATURE_ENTRY_APPLICATION, application);
 		if (url != null)
 			// make externalized URL install relative
-			featureElement.setAttribute(CFG_URL, Utils.makeRelative(installURL, url));
+			writer.setAttribute(CFG_URL, Utils.makeRelative(installURL, url));
 		
 		URL[] roots = getFeatureRootURLs();
 		for (int i=0; i<roots.length; i++) {
 			// make externalized URL install relative
 			String root = Utils.makeRelative(installURL, roots[i]).toExternalForm();
 			if (root.trim().length() > 0){
-				Element rootElement = doc.createElement(CFG_FEATURE_ENTRY_ROOT);
-				rootElement.appendChild(doc.createTextNode(root));
-				featureElement.appendChild(rootElement);
+				writer.startElement(CFG_FEATURE_ENTRY_ROOT);
+				writer.printText(root);
+				writer.endElement(CFG_FEATURE_ENTRY_ROOT);
 			}
 		}
 		
-		return featureElement;
+		writer.endElement(CFG_FEATURE_ENTRY);
 	}
 	
 	public void setDescription(String description) {
@@ -194,19 +200,24 @@ public class FeatureEntry
 	/* (non-Javadoc)
 	 * @see org.eclipse.core.runtime.IBundleGroup#getBundles()
 	 */
-	public Bundle[] getBundles() {
+	public synchronized Bundle[] getBundles() {
 		if (plugins == null)
 			fullParse();
 		
-		ArrayList bundles = new ArrayList(plugins.size());
-		for (int i=0; i<plugins.size(); i++) {
-			PluginEntry plugin = (PluginEntry)plugins.get(i);
-			// get the highest version for the plugin
-			Bundle bundle = Utils.getBundle(plugin.getPluginIdentifier());
-			if (bundle != null)
-				bundles.add(bundle);
+		int stamp = ConfigurationActivator.getBundleGroupsStamp();
+		if (bundles == null || bundlesStamp != stamp) {
+			ArrayList resolved = new ArrayList(plugins.size());
+			for (int i=0; i<plugins.size(); i++) {
+				PluginEntry plugin = (PluginEntry)plugins.get(i);
+				// get the highest version for the plugin
+				Bundle bundle = Utils.getBundle(plugin.getPluginIdentifier());
+				if (bundle != null)
+					resolved.add(bundle);
+			}
+			bundles = (Bundle[])resolved.toArray(new Bundle[resolved.size()]);
+			bundlesStamp = stamp;
 		}
-		return (Bundle[])bundles.toArray(new Bundle[bundles.size()]);
+		return (Bundle[])bundles.clone();
 	}
 	/* (non-Javadoc)
 	 * @see org.eclipse.core.runtime.IBundleGroup#getDescription()
@@ -226,9 +237,7 @@ public class FeatureEntry
 	 * @see org.eclipse.core.runtime.IBundleGroup#getName()
 	 */
 	public String getName() {
-		if (branding == null)
-			branding = AboutInfo.readFeatureInfo(id, version, getFeaturePluginIdentifier());
-		return branding.getProductName();
+		return getBranding().getProductName();
 	}
 	/* (non-Javadoc)
 	 * @see org.eclipse.core.runtime.IBundleGroup#getProperty(java.lang.String)
@@ -237,8 +246,7 @@ public class FeatureEntry
 		if (key == null)
 			return null;
 		
-		if (branding == null)
-			branding = AboutInfo.readFeatureInfo(id, version, getFeaturePluginIdentifier());
+		AboutInfo branding = getBranding();
 		
 		// IBundleGroupConstants
 		if (key.equals(FEATURE_IMAGE))
@@ -282,9 +290,7 @@ public class FeatureEntry
 	 * @see org.eclipse.core.runtime.IBundleGroup#getProviderName()
 	 */
 	public String getProviderName() {
-		if (branding == null)
-			branding = AboutInfo.readFeatureInfo(id, version, getFeaturePluginIdentifier());
-		return branding.getProviderName();
+		return getBranding().getProviderName();
 	}
 	/* (non-Javadoc)
 	 * @see org.eclipse.core.runtime.IBundleGroup#getVersion()
@@ -305,32 +311,49 @@ public class FeatureEntry
 		return id;
 	}
 	
-	public ResourceBundle getResourceBundle(){
-		if (resourceBundle != null)
+	/*
+	 * Returns the branding of the feature, read again when the bundle
+	 * groups changed since it was read.
+	 */
+	private synchronized AboutInfo getBranding() {
+		int stamp = ConfigurationActivator.getBundleGroupsStamp();
+		if (branding == null || brandingStamp != stamp) {
+			branding = AboutInfo.readFeatureInfo(id, version, getFeaturePluginIdentifier());
+			brandingStamp = stamp;
+		}
+		return branding;
+	}
+	
+	public synchronized ResourceBundle getResourceBundle(){
+		// a missing bundle is not looked up again
+		if (resourceBundleLoaded)
 			return resourceBundle;
 		
 		// Determine the properties file location
 		if (site == null)
 			return null;
 		
-		ResourceBundle bundle = null;
+		resourceBundleLoaded = true;
 		try {
 			URL propertiesURL = new URL(site.getResolvedURL(), getURL());
 			ClassLoader l = new URLClassLoader(new URL[] { propertiesURL }, null);
-			bundle = ResourceBundle.getBundle(IConfigurationConstants.CFG_FEATURE_ENTRY, Utils.getDefaultLocale(), l);
+			resourceBundle = ResourceBundle.getBundle(IConfigurationConstants.CFG_FEATURE_ENTRY, Utils.getDefaultLocale(), l);
 		} catch (MissingResourceException e) {
 			Utils.log(e.getLocalizedMessage()); 
 		} catch (MalformedURLException e) {
 			Utils.log(e.getLocalizedMessage()); 
 		}
-		return bundle;
+		return resourceBundle;
 	}
 	
-	public void setLicenseURL(String licenseURL) {
+	public synchronized void setLicenseURL(String licenseURL) {
 		this.licenseURL = licenseURL;
+		resolvedLicenseURL = null;
 	}
 	
-	public String getLicenseURL() {
+	public synchronized String getLicenseURL() {
+		if (resolvedLicenseURL != null)
+			return resolvedLicenseURL;
 		if (licenseURL == null)
 			fullParse();
 		if (licenseURL == null)
@@ -338,12 +361,15 @@ public class FeatureEntry
 		
 		String resolvedURL = Utils.getResourceString(getResourceBundle(), licenseURL);
 		if (resolvedURL.startsWith("http://")) //$NON-NLS-1$
-			return resolvedURL;
-		try {
-			return new URL(getSite().getResolvedURL(), getURL() + resolvedURL).toExternalForm();
-		} catch (MalformedURLException e) {
-			return resolvedURL;
+			resolvedLicenseURL = resolvedURL;
+		else {
+			try {
+				resolvedLicenseURL = new URL(getSite().getResolvedURL(), getURL() + resolvedURL).toExternalForm();
+			} catch (MalformedURLException e) {
+				resolvedLicenseURL = resolvedURL;
+			}
 		}
+		return resolvedLicenseURL;
 	}
 	
 	private void fullParse() {
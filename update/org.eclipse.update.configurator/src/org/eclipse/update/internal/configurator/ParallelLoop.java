@@ -0,0 +1,108 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.update.internal.configurator;
+
+/**
+ * Runs an operation for each index of a range, on a bounded number of
+ * threads. Each thread takes the next index not taken yet until none is
+ * left, and {@link #run(int, int)} returns once all the indexes are done.
+ * The threads are daemons, so a hung operation does not keep the
+ * framework from shutting down.
+ */
+public abstract class ParallelLoop {
+
+	/**
+	 * Largest number of threads a loop runs on.
+	 */
+	public static final int MAX_THREADS = 8;
+
+	private String name;
+	// next index to take
+	private int next;
+
+	/**
+	 * Creates a loop.
+	 *
+	 * @param name the name of the threads
+	 */
+	protected ParallelLoop(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Returns the state a thread passes to each of its operations, for
+	 * the operations that use objects that are not thread safe. Returns
+	 * <code>null</code> by default.
+	 */
+	protected Object createState() {
+		return null;
+	}
+
+	/**
+	 * Runs the operation for an index.
+	 *
+	 * @param index the index
+	 * @param state the state of the thread running the operation
+	 */
+	protected abstract void run(int index, Object state);
+
+	/**
+	 * Runs the operation for the indexes from 0 to <code>count</code> - 1.
+	 *
+	 * @param count the number of indexes
+	 * @param threads the number of threads wanted, bounded by
+	 * {@link #MAX_THREADS} and <code>count</code>
+	 */
+	public void run(final int count, int threads) {
+		threads = Math.min(Math.min(threads, MAX_THREADS), count);
+		if (threads <= 1) {
+			Object state = createState();
+			for (int i = 0; i < count; i++)
+				run(i, state);
+			return;
+		}
+
+		next = 0;
+		Thread[] workers = new Thread[threads];
+		for (int t = 0; t < workers.length; t++) {
+			workers[t] = new Thread(name) {
+				public void run() {
+					Object state = createState();
+					while (true) {
+						int i = nextIndex();
+						if (i >= count)
+							return;
+						ParallelLoop.this.run(i, state);
+					}
+				}
+			};
+			workers[t].setDaemon(true);
+			workers[t].start();
+		}
+		boolean interrupted = false;
+		for (int t = 0; t < workers.length; t++) {
+			try {
+				workers[t].join();
+			} catch (InterruptedException e) {
+				// keep waiting, the results are needed
+				interrupted = true;
+				t--;
+			}
+		}
+		if (interrupted)
+			// let the caller see the interrupt
+			Thread.currentThread().interrupt();
+	}
+
+	private synchronized int nextIndex() {
+		return next++;
+	}
+}
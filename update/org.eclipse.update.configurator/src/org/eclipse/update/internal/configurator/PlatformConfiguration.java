@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2010 IBM Corporation and others.
+ * Copyright (c) 2000, 2013 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -32,17 +32,12 @@ import java.util.HashSet;
 import java.util.Properties;
 import java.util.Set;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.FileLocator;
 import org.eclipse.core.runtime.Path;
 import org.eclipse.osgi.service.datalocation.Location;
 import org.eclipse.osgi.util.NLS;
 import org.eclipse.update.configurator.IPlatformConfiguration;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
 
 /**
  * This class is responsible for providing the features and plugins (bundles) to 
@@ -588,7 +583,7 @@ public class PlatformConfiguration implements IPlatformConfiguration, IConfigura
 			uc.setDoOutput(true);
 			os = uc.getOutputStream();
 			try {
-				saveAsXML(os);
+				saveAsXML(os, null);
 				config.setDirty(false);
 			} catch (CoreException e) {
 				Utils.log(e.getMessage());
@@ -639,9 +634,10 @@ public class PlatformConfiguration implements IPlatformConfiguration, IConfigura
 
 			// first save the file as temp
 			os = new FileOutputStream(cfigTmp);
+			ConfigurationSnapshot snapshot = new ConfigurationSnapshot(cfigFileOriginal);
 
 			try {
-				saveAsXML(os);
+				saveAsXML(os, snapshot);
 				// Try flushing any internal buffers, and synchronize with the disk
 				try {
 					os.flush();
@@ -689,6 +685,7 @@ public class PlatformConfiguration implements IPlatformConfiguration, IConfigura
 
 				throw new IOException(NLS.bind(Messages.cfig_unableToSave, (new String[] {cfigTmp.getAbsolutePath()})));
 			}
+			snapshot.save(cfigFileOriginal);
 		}
 	}
 
@@ -1083,6 +1080,9 @@ public class PlatformConfiguration implements IPlatformConfiguration, IConfigura
 			throw (Exception) e.getTargetException();
 		}
 
+		// the snapshot stands for platform.xml only, not for the temp and backup files
+		parser.setUseSnapshot(true);
+
 		config = null;
 		Exception originalException = null;
 		try {
@@ -1092,6 +1092,7 @@ public class PlatformConfiguration implements IPlatformConfiguration, IConfigura
 		} catch (Exception e1) {
 			// check for save failures, so open temp and backup configurations
 			originalException = e1;
+			parser.setUseSnapshot(false);
 			try {
 				URL tempURL = new URL(url.toExternalForm() + CONFIG_FILE_TEMP_SUFFIX);
 				config = parser.parse(tempURL, installLocation);
@@ -1210,26 +1211,20 @@ public class PlatformConfiguration implements IPlatformConfiguration, IConfigura
 		return installURL;
 	}
 
-	private void saveAsXML(OutputStream stream) throws CoreException, IOException {
+	private void saveAsXML(OutputStream stream, ConfigurationSnapshot snapshot) throws CoreException, IOException {
 		BufferedWriter xmlWriter = new BufferedWriter(new OutputStreamWriter(stream, XML_ENCODING));
 		try {
-			DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-			factory.setExpandEntityReferences(false);
-			factory.setValidating(false);
-			factory.setIgnoringComments(true);
-			DocumentBuilder docBuilder = factory.newDocumentBuilder();
-			Document doc = docBuilder.newDocument();
-
 			if (config == null)
 				throw Utils.newCoreException(Messages.PlatformConfiguration_cannotSaveNonExistingConfig, null);
 
 			config.setDate(new Date());
-			Element configElement = config.toXML(doc);
-			doc.appendChild(configElement);
+			// write the elements as they are created, without building a document
+			XMLElementWriter writer = new XMLElementWriter(xmlWriter, snapshot);
+			writer.printHead(XML_ENCODING);
 
 			// This is not DBCS friendly... PAL
 			//XMLPrintHandler.printComment(xmlWriter,"Created on " + config.getDate().toString());
-			XMLPrintHandler.printNode(xmlWriter, doc, XML_ENCODING);
+			config.toXML(writer);
 
 		} catch (Exception e) {
 			throw Utils.newCoreException("", e); //$NON-NLS-1$
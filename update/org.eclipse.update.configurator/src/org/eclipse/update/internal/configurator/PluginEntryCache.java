@@ -0,0 +1,182 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.update.internal.configurator;
+
+import java.io.*;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Index of the plug-in entries read from the plug-in jars and manifests
+ * of a configuration, kept in a binary file next to platform.xml.
+ * <p>
+ * Each file is recorded with its size and time stamp, so a plug-in
+ * that did not change since it was last detected is not opened or
+ * parsed again. A file that is not a plug-in is recorded as well, with
+ * a <code>null</code> entry.
+ */
+public class PluginEntryCache {
+
+	public static final String CACHE_FILE = "plugins.index"; //$NON-NLS-1$
+
+	private static final int VERSION = 1;
+
+	private File file;
+	// absolute path -> Record
+	private Map records = new HashMap();
+	private boolean dirty;
+
+	private static class Record {
+		long size;
+		long lastModified;
+		PluginEntry entry;
+	}
+
+	public PluginEntryCache(File file) {
+		this.file = file;
+	}
+
+	/**
+	 * Reads the index file, if any. A corrupted index is discarded.
+	 */
+	public synchronized void load() {
+		if (!file.exists())
+			return;
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			if (in.readInt() != VERSION)
+				return;
+			int count = in.readInt();
+			for (int i = 0; i < count; i++) {
+				String path = in.readUTF();
+				Record record = new Record();
+				record.size = in.readLong();
+				record.lastModified = in.readLong();
+				if (in.readBoolean()) {
+					record.entry = new PluginEntry();
+					record.entry.setPluginIdentifier(readString(in));
+					record.entry.setPluginVersion(readString(in));
+					record.entry.isFragment(in.readBoolean());
+					record.entry.setURL(readString(in));
+				}
+				records.put(path, record);
+			}
+		} catch (IOException e) {
+			Utils.debug("Unable to read plug-in index " + file + ": " + e); //$NON-NLS-1$ //$NON-NLS-2$
+			records.clear();
+		} finally {
+			if (in != null) {
+				try {
+					in.close();
+				} catch (IOException e) {
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns whether the file is recorded with its current size and time
+	 * stamp.
+	 */
+	public synchronized boolean contains(File pluginFile) {
+		Record record = (Record) records.get(pluginFile.getAbsolutePath());
+		return record != null && record.lastModified == pluginFile.lastModified() && record.size == pluginFile.length();
+	}
+
+	/**
+	 * Returns the entry recorded for the file, or <code>null</code> if
+	 * the file is not a plug-in.
+	 *
+	 * @see #contains(File)
+	 */
+	public synchronized PluginEntry get(File pluginFile) {
+		Record record = (Record) records.get(pluginFile.getAbsolutePath());
+		return record == null ? null : record.entry;
+	}
+
+	/**
+	 * Records the entry read from the file, <code>null</code> if the file
+	 * is not a plug-in. Files that do not exist are not recorded.
+	 */
+	public synchronized void put(File pluginFile, PluginEntry entry) {
+		Record record = new Record();
+		record.lastModified = pluginFile.lastModified();
+		if (record.lastModified == 0)
+			return;
+		record.size = pluginFile.length();
+		record.entry = entry;
+		records.put(pluginFile.getAbsolutePath(), record);
+		dirty = true;
+	}
+
+	/**
+	 * Writes the index file if entries were recorded since it was read.
+	 * Files that no longer exist are dropped from the index.
+	 */
+	public synchronized void save() {
+		if (!dirty)
+			return;
+		for (Iterator it = records.keySet().iterator(); it.hasNext();) {
+			if (!new File((String) it.next()).exists())
+				it.remove();
+		}
+
+		DataOutputStream out = null;
+		try {
+			File parent = file.getParentFile();
+			if (parent != null && !parent.exists())
+				parent.mkdirs();
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+			out.writeInt(VERSION);
+			out.writeInt(records.size());
+			for (Iterator it = records.entrySet().iterator(); it.hasNext();) {
+				Map.Entry mapEntry = (Map.Entry) it.next();
+				Record record = (Record) mapEntry.getValue();
+				out.writeUTF((String) mapEntry.getKey());
+				out.writeLong(record.size);
+				out.writeLong(record.lastModified);
+				out.writeBoolean(record.entry != null);
+				if (record.entry != null) {
+					writeString(out, record.entry.getPluginIdentifier());
+					writeString(out, record.entry.getPluginVersion());
+					out.writeBoolean(record.entry.isFragment());
+					writeString(out, record.entry.getURL());
+				}
+			}
+			out.close();
+			out = null;
+			dirty = false;
+		} catch (IOException e) {
+			// the configuration area may be read-only
+			Utils.debug("Unable to save plug-in index " + file + ": " + e); //$NON-NLS-1$ //$NON-NLS-2$
+		} finally {
+			if (out != null) {
+				try {
+					out.close();
+				} catch (IOException e) {
+				}
+				file.delete();
+			}
+		}
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		return in.readBoolean() ? in.readUTF() : null;
+	}
+
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		out.writeBoolean(value != null);
+		if (value != null)
+			out.writeUTF(value);
+	}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2008 IBM Corporation and others.
+ * Copyright (c) 2000, 2013 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -17,8 +17,10 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.Set;
 import java.util.zip.*;
 
 import org.eclipse.core.runtime.*;
@@ -26,12 +28,14 @@ import org.eclipse.osgi.service.environment.*;
 import org.eclipse.osgi.util.NLS;
 import org.eclipse.update.configurator.*;
 import org.eclipse.update.configurator.IPlatformConfiguration.*;
-import org.w3c.dom.*;
 import org.xml.sax.*;
 
 
 public class SiteEntry implements IPlatformConfiguration.ISiteEntry, IConfigurationConstants{	
 	private static final String MAC_OS_MARKER = ".DS_Store"; //$NON-NLS-1$
+	// plugins not in the plugin index above which they are read in parallel
+	private static final int PARALLEL_DETECTION_THRESHOLD = 32;
+	private static final int DETECTION_THREADS = 4;
 	
 	private URL url; // this is the external URL for the site
 	private URL resolvedURL; // this is the resolved URL used internally
@@ -42,6 +46,10 @@ public class SiteEntry implements IPlatformConfiguration.ISiteEntry, IConfigurat
 	private long changeStamp;
 	private long featuresChangeStamp;
 	private long pluginsChangeStamp;
+	// time the feature entries were last checked against the features directory
+	private long featuresCheckedStamp;
+	// whether the feature entries are kept, but need to be checked again
+	private boolean featuresRefreshed;
 	private String linkFileName;
 	private boolean enabled = true;
 	private Configuration config;
@@ -171,7 +179,7 @@ public class SiteEntry implements IPlatformConfiguration.ISiteEntry, IConfigurat
 		// TODO fix the above
 		if (pluginEntries == null)
 			detectPlugins();
-		if (featureEntries == null)
+		if (featureEntries == null || featuresRefreshed)
 			detectFeatures();
 		
 		// cache all the plugin entries for faster lookup later
@@ -269,6 +277,21 @@ public class SiteEntry implements IPlatformConfiguration.ISiteEntry, IConfigurat
 	 * and validates existing features (they might have been removed)
 	 */
 	private void detectFeatures() {
+		// in an incremental refresh, the directories are still listed but
+		// feature.xml is only parsed for the features whose time stamps
+		// changed since the entries were checked and the ones with no entry
+		Set knownDirs = null;
+		long unchangedStamp = featuresChangeStamp;
+		if (featuresRefreshed && featureEntries != null) {
+			knownDirs = getFeatureDirectories();
+			if (featuresCheckedStamp != 0)
+				unchangedStamp = featuresCheckedStamp;
+			else if (config.getDate() != null)
+				// entries read from the configuration
+				unchangedStamp = config.getDate().getTime();
+		}
+		featuresRefreshed = false;
+		long checkStart = System.currentTimeMillis();
 
 		if (featureEntries != null)
 			validateFeatureEntries();
@@ -298,8 +321,9 @@ public class SiteEntry implements IPlatformConfiguration.ISiteEntry, IConfigurat
 			for (int index = 0; index < dirs.length; index++) {
 				try {
 					File featureXML = new File(dirs[index], FEATURE_XML);
-					if (featureXML.lastModified() <= featuresChangeStamp &&
-						dirs[index].lastModified() <= featuresChangeStamp)
+					if (featureXML.lastModified() <= unchangedStamp &&
+						dirs[index].lastModified() <= unchangedStamp &&
+						(knownDirs == null || knownDirs.contains(dirs[index].getName())))
 						continue;
 					URL featureURL = featureXML.toURL();
 					FeatureEntry featureEntry = featureParser.parse(featureURL);
@@ -311,8 +335,22 @@ public class SiteEntry implements IPlatformConfiguration.ISiteEntry, IConfigurat
 			}
 		}
 		
+		featuresCheckedStamp = checkStart;
 		Utils.debug(resolvedURL.toString() + " located  " + featureEntries.size() + " feature(s)"); //$NON-NLS-1$ //$NON-NLS-2$
 	}
+
+	/*
+	 * Returns the names of the directories of the feature entries.
+	 */
+	private Set getFeatureDirectories() {
+		Set dirs = new HashSet(featureEntries.size());
+		for (Iterator iterator = featureEntries.values().iterator(); iterator.hasNext();) {
+			Object feature = iterator.next();
+			if (feature instanceof FeatureEntry)
+				dirs.add(new File(((FeatureEntry) feature).getURL()).getName());
+		}
+		return dirs;
+	}
 	
 	/**
 	 * Detect new plugins (timestamp > current site timestamp)
@@ -334,57 +372,112 @@ public class SiteEntry implements IPlatformConfiguration.ISiteEntry, IConfigurat
 		
 		if (pluginsDir.exists() && pluginsDir.isDirectory()) {
 			File[] files = pluginsDir.listFiles();
-			for (int i = 0; i < files.length; i++) {
-				if(files[i].isDirectory()){
-					detectUnpackedPlugin(files[i], compareTimeStamps);
-				}else if(files[i].getName().endsWith(".jar")){ //$NON-NLS-1$
-					detectPackedPlugin(files[i], compareTimeStamps);
-				}else{
-					// not bundle file
-				}
+			PluginEntry[] entries = detectPlugins(files, compareTimeStamps);
+			for (int i = 0; i < entries.length; i++) {
+				if (entries[i] != null)
+					addPluginEntry(entries[i]);
 			}
+			PluginEntryCache cache = config.getPluginEntryCache();
+			if (cache != null)
+				cache.save();
 		} 
 		
 		Utils.debug(resolvedURL.toString() + " located  " + pluginEntries.size() + " plugin(s)"); //$NON-NLS-1$ //$NON-NLS-2$
 	}
 
+	/**
+	 * Reads the plugins of the given files, in parallel when many of them
+	 * are not in the plugin index.
+	 * 
+	 * @return the entry of each file, <code>null</code> for the files that
+	 * are not plugins or were not changed
+	 */
+	private PluginEntry[] detectPlugins(final File[] files, final boolean compareTimeStamps) {
+		final PluginEntry[] entries = new PluginEntry[files.length];
+		final boolean[] directories = new boolean[files.length];
+		PluginEntryCache cache = config.getPluginEntryCache();
+		int stale = 0;
+		for (int i = 0; i < files.length; i++) {
+			directories[i] = files[i].isDirectory();
+			if (!directories[i] && !files[i].getName().endsWith(".jar")) //$NON-NLS-1$
+				continue;
+			if (cache == null || !cache.contains(directories[i] ? new File(files[i], META_MANIFEST_MF) : files[i]))
+				stale++;
+		}
+
+		if (stale < PARALLEL_DETECTION_THRESHOLD) {
+			for (int i = 0; i < files.length; i++)
+				entries[i] = detectPlugin(files[i], directories[i], compareTimeStamps, pluginParser);
+			return entries;
+		}
+
+		Utils.debug(resolvedURL.toString() + " reading " + stale + " plugin(s) in parallel"); //$NON-NLS-1$ //$NON-NLS-2$
+		new ParallelLoop("Plugin Detection") { //$NON-NLS-1$
+			protected Object createState() {
+				// the parser is not reentrant
+				return new PluginParser();
+			}
+
+			protected void run(int i, Object parser) {
+				entries[i] = detectPlugin(files[i], directories[i], compareTimeStamps, (PluginParser) parser);
+			}
+		}.run(files.length, DETECTION_THREADS);
+		return entries;
+	}
+
+	private PluginEntry detectPlugin(File file, boolean isDirectory, boolean compareTimeStamps, PluginParser parser) {
+		if (isDirectory)
+			return detectUnpackedPlugin(file, compareTimeStamps, parser);
+		else if (file.getName().endsWith(".jar")) //$NON-NLS-1$
+			return detectPackedPlugin(file, compareTimeStamps, parser);
+		// not bundle file
+		return null;
+	}
+
 	/**
 	 * @param file a plugin jar
 	 * @param compareTimeStamps set to true when looking for plugins changed since last time they were detected
+	 * @return the plugin entry, or <code>null</code> if none
 	 */
-	private void detectPackedPlugin(File file, boolean compareTimeStamps) {
+	private PluginEntry detectPackedPlugin(File file, boolean compareTimeStamps, PluginParser parser) {
 		// plugin to run directly from jar
 		if (compareTimeStamps && file.lastModified() <= pluginsChangeStamp) {
-			return;
+			return null;
 		}
+		PluginEntryCache cache = config.getPluginEntryCache();
+		if (cache != null && cache.contains(file))
+			return cache.get(file);
 		String entryName = META_MANIFEST_MF;
 		ZipFile z = null;
 		InputStream bundleManifestIn = null;
 		InputStream pluginManifestIn = null;
 		String pluginURL = PLUGINS + "/" + file.getName(); //$NON-NLS-1$
 		try {
+			PluginEntry entry = null;
 			// First, check if has valid bundle manifest
 			z = new ZipFile(file);
 			if (z.getEntry(entryName) != null) {
 				bundleManifestIn = z.getInputStream(new ZipEntry(entryName));
 				BundleManifest manifest = new BundleManifest(bundleManifestIn,
 						pluginURL);
-				if (manifest.exists()) {
-					addPluginEntry(manifest.getPluginEntry());
-					return;
-				}
+				if (manifest.exists())
+					entry = manifest.getPluginEntry();
 			}
-			// no bundle manifest, check for plugin.xml or fragment.xml
-			entryName = PLUGIN_XML;
-			if (z.getEntry(entryName) == null) {
-				entryName = FRAGMENT_XML;
-			}
-			if (z.getEntry(entryName) != null) {
-				pluginManifestIn = z.getInputStream(new ZipEntry(entryName));
-				PluginEntry entry1 = pluginParser.parse(pluginManifestIn,
-						pluginURL);
-				addPluginEntry(entry1);
+			if (entry == null) {
+				// no bundle manifest, check for plugin.xml or fragment.xml
+				entryName = PLUGIN_XML;
+				if (z.getEntry(entryName) == null) {
+					entryName = FRAGMENT_XML;
+				}
+				if (z.getEntry(entryName) != null) {
+					pluginManifestIn = z.getInputStream(new ZipEntry(entryName));
+					entry = parser.parse(pluginManifestIn,
+							pluginURL);
+				}
 			}
+			if (cache != null)
+				cache.put(file, entry);
+			return entry;
 		} catch (IOException e5) {
 			String pluginFileString2 = pluginURL + "!" + entryName; //$NON-NLS-1$
 			Utils.log(NLS.bind(Messages.InstalledSiteParser_ErrorAccessing, (new String[] { pluginFileString2 })));
@@ -411,25 +504,35 @@ public class SiteEntry implements IPlatformConfiguration.ISiteEntry, IConfigurat
 				}
 			}
 		}
+		return null;
 	}
 	/**
 	 * @param file a plugin directory
 	 * @param compareTimeStamps set to true when looking for plugins changed since last time they were detected
+	 * @return the plugin entry, or <code>null</code> if none
 	 */
-	private void detectUnpackedPlugin(File file, boolean compareTimeStamps) {
+	private PluginEntry detectUnpackedPlugin(File file, boolean compareTimeStamps, PluginParser parser) {
 		// unpacked plugin
 		long dirTimestamp = file.lastModified();
 		File pluginFile = new File(file, META_MANIFEST_MF);
+		PluginEntryCache cache = config.getPluginEntryCache();
 		try {
 			// First, check if has valid bundle manifest
-			BundleManifest bundleManifest = new BundleManifest(pluginFile);
-			if (bundleManifest.exists()) {
+			PluginEntry entry;
+			if (cache != null && cache.contains(pluginFile)) {
+				entry = cache.get(pluginFile);
+			} else {
+				BundleManifest bundleManifest = new BundleManifest(pluginFile);
+				entry = bundleManifest.exists() ? bundleManifest.getPluginEntry() : null;
+				if (cache != null)
+					cache.put(pluginFile, entry);
+			}
+			if (entry != null) {
 				if (compareTimeStamps
 						&& dirTimestamp <= pluginsChangeStamp
 						&& pluginFile.lastModified() <= pluginsChangeStamp)
-					return;
-				PluginEntry entry = bundleManifest.getPluginEntry();
-				addPluginEntry(entry);
+					return null;
+				return entry;
 			} else {
 				// no bundle manifest, check for plugin.xml or fragment.xml
 				pluginFile = new File(file, PLUGIN_XML);
@@ -447,9 +550,13 @@ public class SiteEntry implements IPlatformConfiguration.ISiteEntry, IConfigurat
 					if (compareTimeStamps 
 							&& dirTimestamp <= pluginsChangeStamp
 							&& pluginFile.lastModified() <= pluginsChangeStamp)
-						return;
-					PluginEntry entry = pluginParser.parse(pluginFile);
-					addPluginEntry(entry);
+						return null;
+					if (cache != null && cache.contains(pluginFile))
+						return cache.get(pluginFile);
+					entry = parser.parse(pluginFile);
+					if (cache != null)
+						cache.put(pluginFile, entry);
+					return entry;
 				}
 			}
 		} catch (IOException e) {
@@ -462,13 +569,14 @@ public class SiteEntry implements IPlatformConfiguration.ISiteEntry, IConfigurat
 			String pluginFileString = pluginFile.getAbsolutePath();
 			Utils.log(NLS.bind(Messages.InstalledSiteParser_ErrorParsingFile, (new String[] { pluginFileString })));
         }
+		return null;
 	}
 
 	/**
 	 * @return list of feature url's (relative to site)
 	 */
 	private synchronized String[] getDetectedFeatures() {
-		if (featureEntries == null)
+		if (featureEntries == null || featuresRefreshed)
 			detectFeatures();
 		String[] features = new String[featureEntries.size()];
 		Iterator iterator = featureEntries.values().iterator();
@@ -561,9 +669,9 @@ public class SiteEntry implements IPlatformConfiguration.ISiteEntry, IConfigurat
 			if (rootFile.exists()) {
 				File f = null;
 				for (int i = 0; i < targets.length; i++) {
+					// a missing target has a time stamp of 0
 					f = new File(rootFile, targets[i]);
-					if (f.exists())
-						result = Math.max(result, f.lastModified());
+					result = Math.max(result, f.lastModified());
 				}
 			}
 		}
@@ -588,8 +696,12 @@ public class SiteEntry implements IPlatformConfiguration.ISiteEntry, IConfigurat
 		featuresChangeStamp = 0;
 		pluginsChangeStamp = 0;
 		changeStamp = 0;
-		featureEntries = null;
+		if (featureEntries != null && ConfigurationActivator.isIncrementalRefresh())
+			featuresRefreshed = true;
+		else
+			featureEntries = null;
 		pluginEntries = null;
+		ConfigurationActivator.bundleGroupsChanged();
 	}
 	
 	public void refreshPlugins() {
@@ -610,6 +722,7 @@ public class SiteEntry implements IPlatformConfiguration.ISiteEntry, IConfigurat
 			if (existingVersion.getVersion().compareTo(newVersion.getVersion()) < 0) {
 				featureEntries.put(feature.getFeatureIdentifier(), feature);
 				pluginsChangeStamp = 0;
+				ConfigurationActivator.bundleGroupsChanged();
 			} else if (existingVersion.equals(newVersion)) {
 				// log error if same feature version/id but a different url
 				if (feature instanceof FeatureEntry && existing instanceof FeatureEntry &&
@@ -619,13 +732,14 @@ public class SiteEntry implements IPlatformConfiguration.ISiteEntry, IConfigurat
 		} else {
 			featureEntries.put(feature.getFeatureIdentifier(), feature);
 			pluginsChangeStamp = 0;
+			ConfigurationActivator.bundleGroupsChanged();
 		}
 		if (feature instanceof FeatureEntry)
 			((FeatureEntry)feature).setSite(this);
 	}
 	
 	public FeatureEntry[] getFeatureEntries() {
-		if (featureEntries == null)
+		if (featureEntries == null || featuresRefreshed)
 			detectFeatures();
 		
 		if (featureEntries == null)
@@ -654,22 +768,22 @@ public class SiteEntry implements IPlatformConfiguration.ISiteEntry, IConfigurat
 	}
 	
 	/**
-	 * Saves state as xml content in a given parent element
-	 * @param doc
+	 * Saves state as xml content
+	 * @param writer
 	 */
-	public Element toXML(Document doc) {
+	public void toXML(XMLElementWriter writer) throws IOException {
 
-		Element siteElement = doc.createElement(CFG_SITE);
+		writer.startElement(CFG_SITE);
 		
 		if (getURL() != null) {
 			URL toPersist = (config == null || config.isTransient()) ? getURL() : Utils.makeRelative(Utils.getInstallURL(), getURL());
-			siteElement.setAttribute(CFG_URL, toPersist.toString());
+			writer.setAttribute(CFG_URL, toPersist.toString());
 		}
 		
-		siteElement.setAttribute(CFG_ENABLED, isEnabled() ? "true" : "false"); //$NON-NLS-1$ //$NON-NLS-2$
-		siteElement.setAttribute(CFG_UPDATEABLE, isUpdateable() ? "true" : "false"); //$NON-NLS-1$ //$NON-NLS-2$
+		writer.setAttribute(CFG_ENABLED, isEnabled() ? "true" : "false"); //$NON-NLS-1$ //$NON-NLS-2$
+		writer.setAttribute(CFG_UPDATEABLE, isUpdateable() ? "true" : "false"); //$NON-NLS-1$ //$NON-NLS-2$
 		if (isExternallyLinkedSite()) 
-			siteElement.setAttribute(CFG_LINK_FILE, getLinkFileName().trim().replace(File.separatorChar, '/')); 
+			writer.setAttribute(CFG_LINK_FILE, getLinkFileName().trim().replace(File.separatorChar, '/')); 
 
 		int type = getSitePolicy().getType();
 		String typeString = CFG_POLICY_TYPE_UNKNOWN;
@@ -678,7 +792,7 @@ public class SiteEntry implements IPlatformConfiguration.ISiteEntry, IConfigurat
 		} catch (IndexOutOfBoundsException e) {
 			// ignore bad attribute ...
 		}
-		siteElement.setAttribute(CFG_POLICY, typeString); 
+		writer.setAttribute(CFG_POLICY, typeString); 
 		String[] list = getSitePolicy().getList();
 		if (list.length > 0) {
 			StringBuffer sb = new StringBuffer(256);
@@ -687,19 +801,17 @@ public class SiteEntry implements IPlatformConfiguration.ISiteEntry, IConfigurat
 				sb.append(',');
 			}
 			sb.append(list[list.length-1]);
-			siteElement.setAttribute(CFG_LIST, sb.toString());
+			writer.setAttribute(CFG_LIST, sb.toString());
 		}
 //		// note: we don't save features inside the site element.
 		
 		// collect feature entries
 //		configElement.setAttribute(CFG_FEATURE_ENTRY_DEFAULT, defaultFeature);
 		FeatureEntry[] feats = getFeatureEntries();
-		for (int i = 0; i < feats.length; i++) {
-			Element featureElement = feats[i].toXML(doc);
-			siteElement.appendChild(featureElement);
-		}
+		for (int i = 0; i < feats.length; i++)
+			feats[i].toXML(writer);
 		
-		return siteElement;
+		writer.endElement(CFG_SITE);
 	}
 	
 	private void validateFeatureEntries() {
@@ -717,6 +829,8 @@ public class SiteEntry implements IPlatformConfiguration.ISiteEntry, IConfigurat
 		for(Iterator it=deletedFeatures.iterator(); it.hasNext();){
 			featureEntries.remove(it.next());
 		}
+		if (!deletedFeatures.isEmpty())
+			ConfigurationActivator.bundleGroupsChanged();
 	}
 	
 	private void validatePluginEntries() {
@@ -754,8 +868,10 @@ public class SiteEntry implements IPlatformConfiguration.ISiteEntry, IConfigurat
 	
 	public boolean unconfigureFeatureEntry(IFeatureEntry feature) {
 		FeatureEntry existingFeature = getFeatureEntry(feature.getFeatureIdentifier());
-		if (existingFeature != null)
+		if (existingFeature != null) {
 			featureEntries.remove(existingFeature.getFeatureIdentifier());
+			ConfigurationActivator.bundleGroupsChanged();
+		}
 		return existingFeature != null;
 	}
 	
@@ -0,0 +1,155 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.update.internal.configurator;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+
+import org.xml.sax.helpers.AttributesImpl;
+
+/**
+ * Writes elements straight to a writer, in the format of
+ * {@link XMLPrintHandler#printNode(Writer, org.w3c.dom.Node, String)}:
+ * each tag on its own line and the attributes of an element sorted by
+ * name, as a DOM keeps them.
+ * <p>
+ * The start tag of an element is written when its first child or its end
+ * is written, so attributes are set after {@link #startElement(String)}
+ * and before anything else.
+ */
+public class XMLElementWriter {
+
+	private Writer writer;
+	private ConfigurationSnapshot snapshot;
+	// tag of the element whose attributes are being set
+	private String pendingTag;
+	// attribute names, sorted, and their values
+	private ArrayList names = new ArrayList();
+	private ArrayList values = new ArrayList();
+
+	/**
+	 * Creates a writer.
+	 *
+	 * @param writer the writer to write to
+	 * @param snapshot the snapshot recording the elements written, or
+	 * <code>null</code>
+	 */
+	public XMLElementWriter(Writer writer, ConfigurationSnapshot snapshot) {
+		this.writer = writer;
+		this.snapshot = snapshot;
+	}
+
+	public void printHead(String encoding) throws IOException {
+		XMLPrintHandler.printHead(writer, encoding);
+	}
+
+	public void startElement(String tag) throws IOException {
+		writeStartTag();
+		pendingTag = tag;
+	}
+
+	/**
+	 * Sets an attribute of the element just started, replacing the value
+	 * previously set, if any.
+	 */
+	public void setAttribute(String name, String value) {
+		if (pendingTag == null)
+			throw new IllegalStateException();
+		int index = 0;
+		while (index < names.size()) {
+			int order = ((String) names.get(index)).compareTo(name);
+			if (order == 0) {
+				values.set(index, value);
+				return;
+			}
+			if (order > 0)
+				break;
+			index++;
+		}
+		names.add(index, name);
+		values.add(index, value);
+	}
+
+	public void printText(String text) throws IOException {
+		writeStartTag();
+		writeEncoded(text);
+	}
+
+	public void endElement(String tag) throws IOException {
+		writeStartTag();
+		writer.write("</"); //$NON-NLS-1$
+		writer.write(tag);
+		writer.write(">\n"); //$NON-NLS-1$
+		if (snapshot != null)
+			snapshot.endElement(tag);
+	}
+
+	private void writeStartTag() throws IOException {
+		if (pendingTag == null)
+			return;
+		writer.write('<');
+		writer.write(pendingTag);
+		for (int i = 0; i < names.size(); i++) {
+			writer.write(' ');
+			writer.write((String) names.get(i));
+			writer.write("=\""); //$NON-NLS-1$
+			writeEncoded((String) values.get(i));
+			writer.write('"');
+		}
+		writer.write(">\n"); //$NON-NLS-1$
+
+		if (snapshot != null) {
+			AttributesImpl attributes = new AttributesImpl();
+			for (int i = 0; i < names.size(); i++)
+				attributes.addAttribute("", (String) names.get(i), (String) names.get(i), "CDATA", (String) values.get(i)); //$NON-NLS-1$ //$NON-NLS-2$
+			snapshot.startElement(pendingTag, attributes);
+		}
+		pendingTag = null;
+		names.clear();
+		values.clear();
+	}
+
+	/*
+	 * Writes a value with the characters of XMLPrintHandler#encode(String)
+	 * escaped, without copying it.
+	 */
+	private void writeEncoded(String value) throws IOException {
+		int start = 0;
+		int length = value.length();
+		for (int i = 0; i < length; i++) {
+			String entity;
+			switch (value.charAt(i)) {
+				case '&' :
+					entity = "&amp;"; //$NON-NLS-1$
+					break;
+				case '<' :
+					entity = "&lt;"; //$NON-NLS-1$
+					break;
+				case '>' :
+					entity = "&gt;"; //$NON-NLS-1$
+					break;
+				case '\'' :
+					entity = "&apos;"; //$NON-NLS-1$
+					break;
+				case '\"' :
+					entity = "&quot;"; //$NON-NLS-1$
+					break;
+				default :
+					continue;
+			}
+			writer.write(value, start, i - start);
+			writer.write(entity);
+			start = i + 1;
+		}
+		writer.write(value, start, length - start);
+	}
+}
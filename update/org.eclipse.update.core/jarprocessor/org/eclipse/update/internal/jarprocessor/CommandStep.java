@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2006, 2007 IBM Corporation and others.
+ * Copyright (c) 2006, 2013 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -23,6 +23,7 @@ public abstract class CommandStep implements IProcessStep {
 	protected String extension = null;
 	private  Properties options = null;
 	protected boolean verbose = false;
+	protected boolean inProcess = false;
 	
 	public CommandStep(Properties options, String command, String extension, boolean verbose) {
 		this.command = command;
@@ -61,7 +62,20 @@ public abstract class CommandStep implements IProcessStep {
 		return -1;
 	}
 	
-	public Properties getOptions() {
+	/**
+	 * Sets whether the pack200 transforms of this step run in this JVM
+	 * instead of launching the pack200 commands, when the JRE provides
+	 * them.
+	 */
+	public void setInProcess(boolean inProcess) {
+		this.inProcess = inProcess;
+	}
+
+	protected boolean runInProcess() {
+		return inProcess && Pack200Transformer.isAvailable();
+	}
+
+	public synchronized Properties getOptions() {
 		if(options == null)
 			options = new Properties();
 		return options;
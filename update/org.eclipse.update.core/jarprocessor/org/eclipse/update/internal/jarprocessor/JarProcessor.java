@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2006, 2007 IBM Corporation and others.
+ * Copyright (c) 2006, 2013 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -75,6 +75,22 @@ public class JarProcessor {
 		steps.clear();
 	}
 
+	/**
+	 * Returns a processor running the same steps with its own working
+	 * directory, so several jars can be processed at the same time.
+	 * The step instances are shared by the copies, not copied: a step
+	 * only reads the options it was created with, and must not keep the
+	 * state of the jar it processes.
+	 */
+	public JarProcessor copy() {
+		JarProcessor processor = new JarProcessor();
+		processor.steps.addAll(steps);
+		processor.workingDirectory = workingDirectory;
+		processor.verbose = verbose;
+		processor.processAll = processAll;
+		return processor;
+	}
+
 	/**
 	 * Recreate a jar file.  The replacements map specifies entry names to be replaced, the replacements are
 	 * expected to be found in directory.
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2007 IBM Corporation and others.
+ * Copyright (c) 2007, 2013 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -12,7 +12,7 @@
 package org.eclipse.update.internal.jarprocessor;
 
 import java.io.*;
-import java.util.Properties;
+import java.util.*;
 import java.util.zip.ZipException;
 import org.eclipse.update.internal.jarprocessor.Main.Options;
 
@@ -80,7 +80,11 @@ public class JarProcessorExecutor {
 			}
 
 			try {
-				process(options.input, options.unpack ? Utils.PACK_GZ_FILTER : Utils.JAR_FILTER, options.verbose, processor, packProcessor);
+				FileFilter filter = options.unpack ? Utils.PACK_GZ_FILTER : Utils.JAR_FILTER;
+				if (options.threads > 1)
+					processConcurrently(options.input, filter, options.verbose, processor, packProcessor, options.threads);
+				else
+					process(options.input, filter, options.verbose, processor, packProcessor);
 			} catch (FileNotFoundException e) {
 				if (options.verbose)
 					e.printStackTrace();
@@ -109,21 +113,97 @@ public class JarProcessorExecutor {
 				if (packProcessor != null)
 					packProcessor.setWorkingDirectory(dir);
 			} else if (filter.accept(files[i])) {
-				try {
-					File result = processor.processJar(files[i]);
-					if (packProcessor != null && result != null && result.exists()) {
-						packProcessor.processJar(result);
+				process(files[i], verbose, processor, packProcessor);
+			}
+		}
+	}
+
+	/**
+	 * Processes the jars with several threads. Each thread takes the
+	 * next jar from a shared queue, largest jars first, and processes it
+	 * with its own copy of the processors.
+	 */
+	protected void processConcurrently(File input, FileFilter filter, final boolean verbose, final JarProcessor processor, final JarProcessor packProcessor, int threads) throws FileNotFoundException {
+		if (!input.exists())
+			throw new FileNotFoundException();
+
+		final LinkedList jobs = new LinkedList();
+		collectJobs(input, filter, processor.getWorkingDirectory(), jobs);
+		Collections.sort(jobs, new Comparator() {
+			public int compare(Object o1, Object o2) {
+				long l1 = ((File) ((Object[]) o1)[0]).length();
+				long l2 = ((File) ((Object[]) o2)[0]).length();
+				return l1 > l2 ? -1 : (l1 < l2 ? 1 : 0);
+			}
+		});
+
+		Thread[] workers = new Thread[Math.min(threads, jobs.size())];
+		for (int i = 0; i < workers.length; i++) {
+			workers[i] = new Thread(new Runnable() {
+				public void run() {
+					JarProcessor jarProcessor = processor.copy();
+					JarProcessor jarPackProcessor = packProcessor != null ? packProcessor.copy() : null;
+					while (true) {
+						Object[] job = null;
+						synchronized (jobs) {
+							if (jobs.isEmpty())
+								return;
+							job = (Object[]) jobs.removeFirst();
+						}
+						jarProcessor.setWorkingDirectory((String) job[1]);
+						if (jarPackProcessor != null)
+							jarPackProcessor.setWorkingDirectory((String) job[1]);
+						process((File) job[0], verbose, jarProcessor, jarPackProcessor);
 					}
-				} catch (IOException e) {
-					if (verbose)
-						e.printStackTrace();
 				}
+			}, "Jar Processor " + i); //$NON-NLS-1$
+			workers[i].start();
+		}
+		for (int i = 0; i < workers.length; i++) {
+			try {
+				workers[i].join();
+			} catch (InterruptedException e) {
+				if (verbose)
+					e.printStackTrace();
+			}
+		}
+	}
+
+	/*
+	 * Adds the jars to process to the jobs, as pairs of the jar and its
+	 * working directory.
+	 */
+	private void collectJobs(File input, FileFilter filter, String workingDirectory, List jobs) {
+		File[] files = null;
+		if (input.isDirectory()) {
+			files = input.listFiles();
+		} else if (filter.accept(input)) {
+			files = new File[] {input};
+		}
+		for (int i = 0; files != null && i < files.length; i++) {
+			if (files[i].isDirectory())
+				collectJobs(files[i], filter, workingDirectory + "/" + files[i].getName(), jobs); //$NON-NLS-1$
+			else if (filter.accept(files[i]))
+				jobs.add(new Object[] {files[i], workingDirectory});
+		}
+	}
+
+	private void process(File file, boolean verbose, JarProcessor processor, JarProcessor packProcessor) {
+		try {
+			File result = processor.processJar(file);
+			if (packProcessor != null && result != null && result.exists()) {
+				packProcessor.processJar(result);
 			}
+		} catch (IOException e) {
+			if (verbose)
+				e.printStackTrace();
 		}
 	}
 
 	public void addPackUnpackStep(JarProcessor processor, Properties properties, Options options) {
-		processor.addProcessStep(new PackUnpackStep(properties, options.verbose));
+		PackUnpackStep step = new PackUnpackStep(properties, options.verbose);
+		step.setInProcess(options.inProcess);
+		processor.addProcessStep(step);
 	}
 
 	public void addSignStep(JarProcessor processor, Properties properties, Options options) {
@@ -131,10 +211,14 @@ public class JarProcessorExecutor {
 	}
 
 	public void addPackStep(JarProcessor processor, Properties properties, Options options) {
-		processor.addProcessStep(new PackStep(properties, options.verbose));
+		PackStep step = new PackStep(properties, options.verbose);
+		step.setInProcess(options.inProcess);
+		processor.addProcessStep(step);
 	}
 
 	public void addUnpackStep(JarProcessor processor, Properties properties, Options options) {
-		processor.addProcessStep(new UnpackStep(properties, options.verbose));
+		UnpackStep step = new UnpackStep(properties, options.verbose);
+		step.setInProcess(options.inProcess);
+		processor.addProcessStep(step);
 	}
 }
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2006-2007 IBM Corporation and others.
+ * Copyright (c) 2006, 2013 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -22,6 +22,8 @@ public class Main {
 		public boolean unpack = false;
 		public boolean verbose = false;
 		public boolean processAll = false;
+		public boolean inProcess = false;
+		public int threads = 1;
 		public File input = null;
 	}
 
@@ -39,6 +41,9 @@ public class Main {
 		System.out.println();
 		System.out.println("-outputDir <dir>  the output directory"); //$NON-NLS-1$
 		System.out.println("-verbose        verbose mode "); //$NON-NLS-1$
+		System.out.println("-inProcess      run pack200 and unpack200 in this JVM when the JRE"); //$NON-NLS-1$
+		System.out.println("                supports it, instead of launching the commands"); //$NON-NLS-1$
+		System.out.println("-threads <n>    number of jars processed at the same time"); //$NON-NLS-1$
 	}
 
 	public static Options processArguments(String[] args) {
@@ -72,7 +77,16 @@ public class Main {
 				options.verbose = true;
 			}  else if (args[i].equals("-processAll")) { //$NON-NLS-1$
 				options.processAll = true;
-			} 
+			} else if (args[i].equals("-inProcess")) { //$NON-NLS-1$
+				options.inProcess = true;
+			} else if (args[i].equals("-threads") && i < args.length - 2) { //$NON-NLS-1$
+				try {
+					options.threads = Integer.parseInt(args[++i]);
+				} catch (NumberFormatException e) {
+					printUsage();
+					return null;
+				}
+			}
 		}
 
 		options.input = new File(args[i]);
@@ -80,7 +94,7 @@ public class Main {
 		String problemMessage = null;
 		String inputName = options.input.getName();
 		if (options.unpack) {
-			if (!JarProcessor.canPerformUnpack()) {
+			if (!JarProcessor.canPerformUnpack() && !(options.inProcess && Pack200Transformer.isAvailable())) {
 				problemMessage = "The unpack200 command cannot be found."; //$NON-NLS-1$
 			} else 	if (options.input.isFile() && !inputName.endsWith(".zip") && !inputName.endsWith(".pack.gz")) { //$NON-NLS-1$ //$NON-NLS-2$
 				problemMessage = "Input file is not a pack.gz file."; //$NON-NLS-1$
@@ -90,7 +104,7 @@ public class Main {
 		} else {
 			if (options.input.isFile() && !inputName.endsWith(".zip") && !inputName.endsWith(".jar")) { //$NON-NLS-1$ //$NON-NLS-2$
 				problemMessage = "Input file is not a jar file."; //$NON-NLS-1$
-			} else	if ((options.pack || options.repack) && !JarProcessor.canPerformPack()) {
+			} else	if ((options.pack || options.repack) && !JarProcessor.canPerformPack() && !(options.inProcess && Pack200Transformer.isAvailable())) {
 				problemMessage = "The pack200 command can not be found."; //$NON-NLS-1$
 			}
 		}
@@ -0,0 +1,179 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM - Initial API and implementation
+ *******************************************************************************/
+package org.eclipse.update.internal.jarprocessor;
+
+import java.io.*;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Runs the pack200 transforms of the JRE in this JVM, so no process is
+ * launched per jar. The JRE classes are looked up reflectively as they
+ * are not available on every JRE the jarprocessor runs on.
+ * <p>
+ * Only the pack200 arguments that map to a packer property are
+ * supported. Callers fall back to the pack200 command when a transform
+ * returns <code>false</code>.
+ */
+public class Pack200Transformer {
+	private static Boolean available = null;
+	private static Method newPacker;
+	private static Method newUnpacker;
+	private static Method packerProperties;
+	private static Method pack;
+	private static Method unpack;
+
+	public static synchronized boolean isAvailable() {
+		if (available != null)
+			return available.booleanValue();
+		available = Boolean.FALSE;
+		try {
+			Class pack200 = Class.forName("java.util.jar.Pack200"); //$NON-NLS-1$
+			Class packer = Class.forName("java.util.jar.Pack200$Packer"); //$NON-NLS-1$
+			Class unpacker = Class.forName("java.util.jar.Pack200$Unpacker"); //$NON-NLS-1$
+			newPacker = pack200.getMethod("newPacker", new Class[0]); //$NON-NLS-1$
+			newUnpacker = pack200.getMethod("newUnpacker", new Class[0]); //$NON-NLS-1$
+			packerProperties = packer.getMethod("properties", new Class[0]); //$NON-NLS-1$
+			pack = packer.getMethod("pack", new Class[] {JarFile.class, OutputStream.class}); //$NON-NLS-1$
+			unpack = unpacker.getMethod("unpack", new Class[] {InputStream.class, JarOutputStream.class}); //$NON-NLS-1$
+			available = Boolean.TRUE;
+		} catch (ClassNotFoundException e) {
+			//not provided by this JRE
+		} catch (NoSuchMethodException e) {
+			//not provided by this JRE
+		}
+		return available.booleanValue();
+	}
+
+	/**
+	 * Packs a jar like the pack200 command.
+	 * @param input the jar to pack
+	 * @param output the pack.gz file, or the repacked jar
+	 * @param args the pack200 arguments, may contain -r to repack
+	 * @return false if the arguments are not supported
+	 * @throws IOException
+	 */
+	public static boolean pack(File input, File output, String[] args) throws IOException {
+		if (!isAvailable())
+			return false;
+		Object packer = invoke(newPacker, null, new Object[0]);
+		Map properties = (Map) invoke(packerProperties, packer, new Object[0]);
+		boolean repack = false;
+		boolean gzip = true;
+		for (int i = 0; i < args.length; i++) {
+			String arg = args[i].trim();
+			if (arg.length() == 0)
+				continue;
+			if (arg.equals("-r") || arg.equals("--repack")) //$NON-NLS-1$ //$NON-NLS-2$
+				repack = true;
+			else if (arg.equals("-g") || arg.equals("--no-gzip")) //$NON-NLS-1$ //$NON-NLS-2$
+				gzip = false;
+			else if (arg.equals("-O") || arg.equals("--no-keep-file-order")) //$NON-NLS-1$ //$NON-NLS-2$
+				properties.put("pack.keep.file.order", "false"); //$NON-NLS-1$ //$NON-NLS-2$
+			else if (!setProperty(properties, arg, "-E", "--effort=", "pack.effort") //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+					&& !setProperty(properties, arg, "-S", "--segment-limit=", "pack.segment.limit") //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+					&& !setProperty(properties, arg, "-H", "--deflate-hint=", "pack.deflate.hint") //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+					&& !setProperty(properties, arg, "-m", "--modification-time=", "pack.modification.time") //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+					&& !setProperty(properties, arg, "-U", "--unknown-attribute=", "pack.unknown.attribute")) //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+				return false;
+		}
+
+		if (repack) {
+			ByteArrayOutputStream packed = new ByteArrayOutputStream();
+			pack(packer, input, packed);
+			unpack(new ByteArrayInputStream(packed.toByteArray()), output);
+		} else {
+			OutputStream out = new BufferedOutputStream(new FileOutputStream(output));
+			try {
+				if (gzip)
+					out = new GZIPOutputStream(out);
+				pack(packer, input, out);
+			} finally {
+				Utils.close(out);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Unpacks a pack.gz file like the unpack200 command.
+	 * @param input the pack.gz file
+	 * @param output the jar
+	 * @return false if the transform is not available
+	 * @throws IOException
+	 */
+	public static boolean unpack(File input, File output) throws IOException {
+		if (!isAvailable())
+			return false;
+		InputStream in = new BufferedInputStream(new FileInputStream(input));
+		try {
+			if (input.getName().endsWith(".gz")) //$NON-NLS-1$
+				in = new GZIPInputStream(in);
+			unpack(in, output);
+		} finally {
+			Utils.close(in);
+		}
+		return true;
+	}
+
+	private static boolean setProperty(Map properties, String arg, String shortName, String longName, String property) {
+		String value = null;
+		if (arg.startsWith(longName))
+			value = arg.substring(longName.length());
+		else if (arg.startsWith(shortName))
+			value = arg.substring(shortName.length());
+		if (value == null || value.length() == 0)
+			return false;
+		properties.put(property, value);
+		return true;
+	}
+
+	private static void pack(Object packer, File input, OutputStream out) throws IOException {
+		JarFile jar = new JarFile(input, false);
+		try {
+			invoke(pack, packer, new Object[] {jar, out});
+		} finally {
+			Utils.close(jar);
+		}
+	}
+
+	private static void unpack(InputStream in, File output) throws IOException {
+		File parent = output.getParentFile();
+		if (parent != null && !parent.exists())
+			parent.mkdirs();
+		JarOutputStream out = new JarOutputStream(new BufferedOutputStream(new FileOutputStream(output)));
+		try {
+			invoke(unpack, invoke(newUnpacker, null, new Object[0]), new Object[] {in, out});
+		} finally {
+			Utils.close(out);
+		}
+	}
+
+	private static Object invoke(Method method, Object target, Object[] args) throws IOException {
+		try {
+			return method.invoke(target, args);
+		} catch (InvocationTargetException e) {
+			Throwable cause = e.getTargetException();
+			if (cause instanceof IOException)
+				throw (IOException) cause;
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			throw new IOException(cause.toString());
+		} catch (IllegalAccessException e) {
+			throw new IOException(e.toString());
+		}
+	}
+}
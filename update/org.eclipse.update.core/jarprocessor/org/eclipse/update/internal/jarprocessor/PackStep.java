@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2006, 2008 IBM Corporation and others.
+ * Copyright (c) 2006, 2013 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -25,7 +25,7 @@ public class PackStep extends CommandStep {
 
 	private Set exclusions = Collections.EMPTY_SET;
 
-	public static boolean canPack() {
+	public static synchronized boolean canPack() {
 		if (canPack != null)
 			return canPack.booleanValue();
 
@@ -63,7 +63,7 @@ public class PackStep extends CommandStep {
 	}
 
 	public String recursionEffect(String entryName) {
-		if (canPack() && entryName.endsWith(".jar") && !exclusions.contains(entryName)) { //$NON-NLS-1$
+		if (isPackAvailable() && entryName.endsWith(".jar") && !exclusions.contains(entryName)) { //$NON-NLS-1$
 			return entryName + Utils.PACKED_SUFFIX;
 		}
 		return null;
@@ -74,12 +74,16 @@ public class PackStep extends CommandStep {
 	}
 
 	public File postProcess(File input, File workingDirectory, List containers) {
-		if (canPack() && packCommand != null) {
+		if (isPackAvailable()) {
 			Properties inf = Utils.getEclipseInf(input, verbose);
 			if (!shouldPack(input, containers, inf))
 				return null;
 			File outputFile = new File(workingDirectory, input.getName() + Utils.PACKED_SUFFIX);
 			try {
+				if (runInProcess() && Pack200Transformer.pack(input, outputFile, getArgumentArray(input, inf, containers)))
+					return outputFile;
+				if (!canPack() || packCommand == null)
+					return null;
 				String[] cmd = getCommand(input, outputFile, inf, containers);
 				int result = execute(cmd, verbose);
 				if (result != 0 && verbose)
@@ -94,7 +98,18 @@ public class PackStep extends CommandStep {
 		return null;
 	}
 
+	/*
+	 * Returns whether jars can be packed, in this JVM or with the command.
+	 */
+	protected boolean isPackAvailable() {
+		return runInProcess() || (canPack() && packCommand != null);
+	}
+
 	protected boolean shouldPack(File input, List containers, Properties inf) {
+		return shouldPack(input, containers, inf, verbose);
+	}
+
+	private boolean shouldPack(File input, List containers, Properties inf, boolean verbose) {
 		//1: exclude by containers
 		// innermost jar is first on the list, it can override outer jars
 		for (Iterator iterator = containers.iterator(); iterator.hasNext();) {
@@ -135,6 +150,13 @@ public class PackStep extends CommandStep {
 		return cmd;
 	}
 
+	protected String[] getArgumentArray(File input, Properties inf, List containers) {
+		String arguments = getArguments(input, inf, containers);
+		if (arguments == null || arguments.length() == 0)
+			return new String[0];
+		return Utils.toStringArray(arguments, ","); //$NON-NLS-1$
+	}
+
 	protected String getArguments(File input, Properties inf, List containers) {	
 		//1: Explicitly marked in our .inf file
 		if (inf != null && inf.containsKey(Utils.PACK_ARGS)) {
@@ -173,13 +195,8 @@ public class PackStep extends CommandStep {
 			return;
 
 		//don't be verbose to check if we should mark the inf
-		boolean v = verbose;
-		verbose = false;
-		if (!shouldPack(input, containers, inf)) {
-			verbose = v;
+		if (!shouldPack(input, containers, inf, false))
 			return;
-		}
-		verbose = v;
 
 		//mark as conditioned if not previously marked.  A signed jar is assumed to be previously conditioned.
 		if (inf.getProperty(Utils.MARK_PROPERTY) == null) {
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2006, 2007 IBM Corporation and others.
+ * Copyright (c) 2006, 2013 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -34,7 +34,7 @@ public class PackUnpackStep extends PackStep {
 	}
 
 	public String recursionEffect(String entryName) {
-		if (canPack() && entryName.endsWith(".jar") && !exclusions.contains(entryName)) { //$NON-NLS-1$
+		if (isPackAvailable() && entryName.endsWith(".jar") && !exclusions.contains(entryName)) { //$NON-NLS-1$
 			return entryName;
 		}
 		return null;
@@ -44,12 +44,22 @@ public class PackUnpackStep extends PackStep {
 	 * @see org.eclipse.update.internal.jarprocessor.PackStep#postProcess(java.io.File, java.io.File, java.util.LinkedList)
 	 */
 	public File postProcess(File input, File workingDirectory, List containers) {
-		if (canPack() && packCommand != null && input != null) {
+		if (isPackAvailable() && input != null) {
 			Properties inf = Utils.getEclipseInf(input, verbose);
 			if (!shouldPack(input, containers, inf))
 				return null;
 			File tempFile = new File(workingDirectory, "temp_" + input.getName()); //$NON-NLS-1$
 			try {
+				if (runInProcess()) {
+					String[] args = getArgumentArray(input, inf, containers);
+					String[] repackArgs = new String[args.length + 1];
+					repackArgs[0] = "-r"; //$NON-NLS-1$
+					System.arraycopy(args, 0, repackArgs, 1, args.length);
+					if (Pack200Transformer.pack(input, tempFile, repackArgs))
+						return replace(input, tempFile, workingDirectory);
+				}
+				if (!canPack() || packCommand == null)
+					return null;
 				String[] tmp = getCommand(input, tempFile, inf, containers);
 				String[] cmd = new String[tmp.length + 1];
 				cmd[0] = tmp[0];
@@ -58,11 +68,7 @@ public class PackUnpackStep extends PackStep {
 
 				int result = execute(cmd, verbose);
 				if (result == 0 && tempFile.exists()) {
-					File finalFile = new File(workingDirectory, input.getName());
-					if (finalFile.exists())
-						finalFile.delete();
-					tempFile.renameTo(finalFile);
-					return finalFile;
+					return replace(input, tempFile, workingDirectory);
 				} else if (verbose) {
 					System.out.println("Error: " + result + " was returned from command: " + Utils.concat(cmd)); //$NON-NLS-1$ //$NON-NLS-2$
 				}
@@ -75,6 +81,14 @@ public class PackUnpackStep extends PackStep {
 		return null;
 	}
 
+	private File replace(File input, File tempFile, File workingDirectory) {
+		File finalFile = new File(workingDirectory, input.getName());
+		if (finalFile.exists())
+			finalFile.delete();
+		tempFile.renameTo(finalFile);
+		return finalFile;
+	}
+
 	/* (non-Javadoc)
 	 * @see org.eclipse.update.internal.jarprocessor.PackStep#preProcess(java.io.File, java.io.File, java.util.LinkedList)
 	 */
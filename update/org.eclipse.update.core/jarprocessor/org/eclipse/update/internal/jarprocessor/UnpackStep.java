@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2006 IBM Corporation and others.
+ * Copyright (c) 2006, 2013 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -24,7 +24,7 @@ public class UnpackStep extends CommandStep {
 	private static Boolean canUnpack = null;
 	private static String unpackCommand = null;
 
-	public static boolean canUnpack() {
+	public static synchronized boolean canUnpack() {
 		if (canUnpack != null)
 			return canUnpack.booleanValue();
 
@@ -63,7 +63,7 @@ public class UnpackStep extends CommandStep {
 	 * @see org.eclipse.update.jarprocessor.IProcessStep#recursionEffect(java.lang.String)
 	 */
 	public String recursionEffect(String entryName) {
-		if (canUnpack() && entryName.endsWith(Utils.PACKED_SUFFIX)) {
+		if ((runInProcess() || canUnpack()) && entryName.endsWith(Utils.PACKED_SUFFIX)) {
 			return entryName.substring(0, entryName.length() - Utils.PACKED_SUFFIX.length());
 		}
 		return null;
@@ -73,7 +73,7 @@ public class UnpackStep extends CommandStep {
 	 * @see org.eclipse.update.jarprocessor.IProcessStep#preProcess(java.io.File, java.io.File)
 	 */
 	public File preProcess(File input, File workingDirectory, List containers) {
-		if (canUnpack() && unpackCommand != null) {
+		if (runInProcess() || (canUnpack() && unpackCommand != null)) {
 			String name = input.getName();
 			if (name.endsWith(Utils.PACKED_SUFFIX)) {
 				name = name.substring(0, name.length() - Utils.PACKED_SUFFIX.length());
@@ -83,6 +83,10 @@ public class UnpackStep extends CommandStep {
 				if (!parent.exists())
 					parent.mkdirs();
 				try {
+					if (runInProcess() && Pack200Transformer.unpack(input, unpacked))
+						return unpacked;
+					if (!canUnpack() || unpackCommand == null)
+						return null;
 					String options = getOptions().getProperty(input.getName() + ".unpack.args"); //$NON-NLS-1$
 					String[] cmd = null;
 					if (options != null) {
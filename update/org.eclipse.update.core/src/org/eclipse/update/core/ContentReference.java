@@ -1,5 +1,5 @@
 /*******************************************************************************
- *  Copyright (c) 2000, 2010 IBM Corporation and others.
+ *  Copyright (c) 2000, 2013 IBM Corporation and others.
  *  All rights reserved. This program and the accompanying materials
  *  are made available under the terms of the Eclipse Public License v1.0
  *  which accompanies this distribution, and is available at
@@ -175,6 +175,23 @@ public class ContentReference {
 			throw new FatalIOException(NLS.bind(Messages.ContentReference_UnableToCreateInputStream, (new String[] { this.toString() })));
 	}
 	
+	/*
+	 * Returns whether the referenced input can be retrieved in byte ranges.
+	 */
+	boolean acceptsRanges() {
+		if (file != null || url == null)
+			return false;
+		if (response == null) {
+			try {
+				URL resolvedURL = URLEncoder.encode(url);
+				response = ConnectionFactory.get(resolvedURL);
+			} catch (IOException e) {
+				return false;
+			}
+		}
+		return (response instanceof HttpResponse) && ((HttpResponse) response).acceptsRanges();
+	}
+
 	/**
 	 * Returns the size of the referenced input, if it can be determined.
 	 * 
@@ -337,4 +354,15 @@ public class ContentReference {
 		}
 		return lastModified;
 	}
+
+	/*
+	 * Closes the connection opened to query the size or the time stamp
+	 * of the reference, when its content is not going to be read.
+	 */
+	void closeResponse() {
+		if (response != null) {
+			response.close();
+			response = null;
+		}
+	}
 }
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2005 IBM Corporation and others.
+ * Copyright (c) 2000, 2013 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -33,12 +33,16 @@ import org.eclipse.update.core.model.PluginEntryModel;
 import org.eclipse.update.core.model.URLEntryModel;
 import org.eclipse.update.internal.core.ErrorRecoveryLog;
 import org.eclipse.update.internal.core.InstallHandlerProxy;
+import org.eclipse.update.internal.core.InstallPipeline;
 import org.eclipse.update.internal.core.InstallRegistry;
 import org.eclipse.update.internal.core.Messages;
+import org.eclipse.update.internal.core.SynchronizedProgressMonitor;
 import org.eclipse.update.internal.core.TargetFeature;
 import org.eclipse.update.internal.core.UpdateCore;
 import org.eclipse.update.internal.core.UpdateManagerUtils;
+import org.eclipse.update.internal.core.UpdateMetrics;
 import org.eclipse.update.internal.core.UpdateSiteIncludedFeatureReference;
+import org.eclipse.update.internal.security.JarVerifier;
 
 /**
  * Convenience implementation of a feature.
@@ -293,6 +297,13 @@ public class Feature extends FeatureModel implements IFeature {
 		else
 			monitor = new InstallMonitor(progress);
 
+		// plug-ins are installed while the next ones are downloaded, unless
+		// an install handler expects all of them to be downloaded first
+		SynchronizedProgressMonitor pipelineMonitor = null;
+		if (InstallPipeline.isEnabled() && getInstallHandlerEntry() == null)
+			monitor = new InstallMonitor(pipelineMonitor = new SynchronizedProgressMonitor(monitor));
+		InstallPipeline pipeline = null;
+
 		// Setup optional install handler
 		InstallHandlerProxy handler =
 			new InstallHandlerProxy(
@@ -372,13 +383,29 @@ public class Feature extends FeatureModel implements IFeature {
 				true);
 			monitorWork(monitor, 1);
 			
-			// Download and verify plugin archives
-			for (int i = 0; i < pluginsToInstall.length; i++) {
-				references = provider.getPluginEntryArchiveReferences(
-						pluginsToInstall[i], monitor);
-				verifyReferences(verifier, references, monitor,
-								verificationListener, false);
-				monitorWork(monitor, 1);
+			if (pipelineMonitor != null) {
+				// Download plugin archives and check their integrity in the
+				// background, they are verified when installed
+				pipeline = new InstallPipeline(provider, verifier, pluginsToInstall, pipelineMonitor);
+				pipeline.start();
+			} else {
+				// Download plugin archives
+				ContentReference[][] pluginReferences = new ContentReference[pluginsToInstall.length][];
+				List allPluginReferences = new ArrayList();
+				for (int i = 0; i < pluginsToInstall.length; i++) {
+					pluginReferences[i] = provider.getPluginEntryArchiveReferences(
+							pluginsToInstall[i], monitor);
+					allPluginReferences.addAll(Arrays.asList(pluginReferences[i]));
+				}
+
+				// Verify plugin archives, checking their integrity in parallel first
+				if (verifier instanceof JarVerifier)
+					((JarVerifier) verifier).verifyIntegrity((ContentReference[]) allPluginReferences.toArray(new ContentReference[allPluginReferences.size()]), monitor);
+				for (int i = 0; i < pluginsToInstall.length; i++) {
+					verifyReferences(verifier, pluginReferences[i], monitor,
+									verificationListener, false);
+					monitorWork(monitor, 1);
+				}
 			}
 			
 			handler.pluginsDownloaded(pluginsToInstall);
@@ -425,11 +452,18 @@ public class Feature extends FeatureModel implements IFeature {
 
 			// Install plugin files
 			for (int i = 0; i < pluginsToInstall.length; i++) {
+				if (pipeline != null) {
+					// wait for the archives of the plugin and verify them
+					verifyReferences(verifier, pipeline.getArchiveReferences(i, monitor), monitor,
+									verificationListener, false);
+					monitorWork(monitor, 1);
+				}
 				// if another feature has already installed this plugin, skip it
 				if (InstallRegistry.getInstance().isPluginJustInstalled(pluginsToInstall[i])) {
 					monitor.worked(1);
 					continue;
 				}
+				long start = System.currentTimeMillis();
 				IContentConsumer pluginConsumer =
 					consumer.open(pluginsToInstall[i]);
 				// TODO consumer.open returns either
@@ -459,16 +493,23 @@ public class Feature extends FeatureModel implements IFeature {
 					(pluginVerId == null) ? "" : pluginVerId.getIdentifier(); //$NON-NLS-1$
 				msg = NLS.bind(Messages.Feature_TaskInstallPluginFiles, (new String[] { pluginID }));
 
-				for (int j = 0; j < references.length; j++) {
-					setMonitorTaskName(
-						subMonitor,
-						msg + references[j].getIdentifier());
-					pluginConsumer.store(references[j], subMonitor);
+				JarContentReference archive = JarEntryExtractor.getArchive(references);
+				if (archive != null) {
+					// read the plugin archive once
+					new JarEntryExtractor(archive, references, pluginConsumer).extract(msg, subMonitor);
+				} else {
+					for (int j = 0; j < references.length; j++) {
+						setMonitorTaskName(
+							subMonitor,
+							msg + references[j].getIdentifier());
+						pluginConsumer.store(references[j], subMonitor);
+					}
 				}
 
 				if (monitor.isCanceled())
 					abort();
 				else {
+					UpdateMetrics.recordTime(UpdateMetrics.PLUGIN_INSTALL, start);
 					justInstalledPlugins.add(pluginsToInstall[i]);
 					InstallRegistry.registerPlugin(pluginsToInstall[i]);
 				}
@@ -517,6 +558,8 @@ public class Feature extends FeatureModel implements IFeature {
 		} catch (CoreException e) {
 			originalException = e;
 		} finally {
+			if (pipeline != null)
+				pipeline.shutdown();
 			Exception newException = null;
 			try {
 				if (consumer != null) {
@@ -966,7 +1009,9 @@ public class Feature extends FeatureModel implements IFeature {
 		IVerificationResult vr = null;
 		if (verifier != null) {
 			for (int j = 0; j < references.length; j++) {
+				long start = System.currentTimeMillis();
 				vr = verifier.verify(this, references[j], isFeature, monitor);
+				UpdateMetrics.recordTime(UpdateMetrics.VERIFICATION, start);
 				if (vr != null) {
 					if (verificationListener == null)
 						return;
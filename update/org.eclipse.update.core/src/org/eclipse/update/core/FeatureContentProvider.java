@@ -1,5 +1,5 @@
 /*******************************************************************************
- *  Copyright (c) 2000, 2010 IBM Corporation and others.
+ *  Copyright (c) 2000, 2013 IBM Corporation and others.
  *  All rights reserved. This program and the accompanying materials
  *  are made available under the terms of the Eclipse Public License v1.0
  *  which accompanies this distribution, and is available at
@@ -34,14 +34,17 @@ import org.eclipse.update.core.model.ContentEntryModel;
 import org.eclipse.update.core.model.InstallAbortedException;
 import org.eclipse.update.core.model.NonPluginEntryModel;
 import org.eclipse.update.core.model.PluginEntryModel;
+import org.eclipse.update.internal.core.ArtifactCache;
 import org.eclipse.update.internal.core.FatalIOException;
 import org.eclipse.update.internal.core.FeatureDownloadException;
 import org.eclipse.update.internal.core.FileFragment;
 import org.eclipse.update.internal.core.InternalSiteManager;
 import org.eclipse.update.internal.core.LockManager;
 import org.eclipse.update.internal.core.Messages;
+import org.eclipse.update.internal.core.SegmentedDownload;
 import org.eclipse.update.internal.core.UpdateCore;
 import org.eclipse.update.internal.core.UpdateManagerUtils;
+import org.eclipse.update.internal.core.UpdateMetrics;
 
 /**
  * Base implementation of a feature content provider. This class provides a set
@@ -209,6 +212,20 @@ public abstract class FeatureContentProvider implements IFeatureContentProvider
 			if (localFile == null) {
 				localFileFragment = UpdateManagerUtils.lookupLocalFileFragment(key);
 			}
+
+			// reuse the archive if it was downloaded for another feature
+			// or in a previous session, or link it if it is local already
+			if (localFileFragment == null) {
+				localFile = lookupCachedFile(ref);
+				if (localFile == null)
+					localFile = linkLocalFile(ref);
+				if (localFile != null) {
+					Utilities.mapLocalFile(key, localFile);
+					LockManager.returnLock(key);
+					UpdateCore.getPlugin().getUpdateSession().markVisited(ref.asURL());
+					return ref.createContentReference(ref.getIdentifier(), localFile);
+				}
+			}
 			// 
 			// download the referenced file into local temporary area
 			InputStream is = null;
@@ -232,7 +249,17 @@ public abstract class FeatureContentProvider implements IFeatureContentProvider
 
 			try {
 				//long startTime = System.nanoTime();
-				if (localFileFragment != null && "http".equals(ref.asURL().getProtocol())) { //$NON-NLS-1$
+				SegmentedDownload segmented = getSegmentedDownload(ref, localFileFragment);
+				if (segmented != null) {
+					// the ranges are fetched on their own connections, the body of the probe is not read
+					ref.closeResponse();
+				} else if (localFileFragment != null && SegmentedDownload.hasState(localFileFragment.getFile())) {
+					// a partial segmented download has holes, appending to it would corrupt the archive
+					SegmentedDownload.discard(localFileFragment.getFile());
+					UpdateManagerUtils.unMapLocalFileFragment(key);
+					localFileFragment = null;
+				}
+				if (segmented == null && localFileFragment != null && "http".equals(ref.asURL().getProtocol())) { //$NON-NLS-1$
 					localFile = localFileFragment.getFile();
 					try {
 						// get partial input stream
@@ -257,7 +284,7 @@ public abstract class FeatureContentProvider implements IFeatureContentProvider
 						throw new FeatureDownloadException(NLS.bind(Messages.FeatureContentProvider_ExceptionDownloading, (new Object[] {getURL().toExternalForm()})), e);
 					}
 				}
-				if (is == null) {
+				if (segmented == null && is == null) {
 					// must download from scratch
 					localFile = Utilities.createLocalFile(getWorkingDirectory(), null);
 					try {
@@ -277,15 +304,25 @@ public abstract class FeatureContentProvider implements IFeatureContentProvider
 				}
 
 				Date start = new Date();
-				if (localFileFragment != null) {
-					bytesCopied = localFileFragment.getSize();
+				long offset;
+				if (segmented != null) {
+					// fetch the missing byte ranges in parallel
+					localFile = segmented.getFile();
 					if (monitor != null) {
-						monitor.setCopyCount(bytesCopied);
+						monitor.setCopyCount(segmented.getDownloadedSize());
+					}
+					offset = segmented.download(monitor);
+				} else {
+					if (localFileFragment != null) {
+						bytesCopied = localFileFragment.getSize();
+						if (monitor != null) {
+							monitor.setCopyCount(bytesCopied);
+						}
 					}
-				}
 
-				// Transfer as many bytes as possible from input to output stream
-				long offset = UpdateManagerUtils.copy(is, os, monitor, inputLength);
+					// Transfer as many bytes as possible from input to output stream
+					offset = UpdateManagerUtils.copy(is, os, monitor, inputLength);
+				}
 				if (offset != -1) {
 					bytesCopied += offset;
 					if (bytesCopied > 0) {
@@ -309,6 +346,7 @@ public abstract class FeatureContentProvider implements IFeatureContentProvider
 					ref.getInputSize(),
 					(timeInseconds),
 					ref.asURL());
+				UpdateMetrics.recordTransfer(ref.asURL(), ref.getInputSize(), stop.getTime() - start.getTime());
 
 				success = true;
 				//long endTime = System.nanoTime();
@@ -349,6 +387,10 @@ public abstract class FeatureContentProvider implements IFeatureContentProvider
 				if (monitor != null)
 					monitor.restoreState();
 			}
+			// share the archive with the next features and sessions
+			ArtifactCache cache = ArtifactCache.getDefault();
+			if (cache != null && isCacheable(ref))
+				cache.store(ref.asURL().toExternalForm(), ref.getInputSize(), ref.getLastModified(), localFile);
 			LockManager.returnLock(key);
 		} // end lock
 		ContentReference reference =
@@ -359,6 +401,86 @@ public abstract class FeatureContentProvider implements IFeatureContentProvider
 		return reference;
 	}
 
+	/*
+	 * Returns a working copy of the archive if the artifact cache has the
+	 * current content of the reference, null otherwise.
+	 */
+	private File lookupCachedFile(ContentReference ref) throws IOException, CoreException {
+		ArtifactCache cache = ArtifactCache.getDefault();
+		if (cache == null || !isCacheable(ref))
+			return null;
+		long size;
+		try {
+			size = ref.getInputSize();
+		} catch (FatalIOException e) {
+			throw e;
+		} catch (IOException e) {
+			throw new FeatureDownloadException(NLS.bind(Messages.FeatureContentProvider_ExceptionDownloading, (new Object[] {getURL().toExternalForm()})), e);
+		}
+		File localFile = Utilities.createLocalFile(getWorkingDirectory(), null);
+		if (!cache.copyTo(ref.asURL().toExternalForm(), size, ref.getLastModified(), localFile))
+			return null;
+		// the content is not downloaded
+		ref.closeResponse();
+		return localFile;
+	}
+
+	/*
+	 * Returns a temporary file for a reference to a local file, a hard link
+	 * to the file when the file system supports it and a copy otherwise.
+	 * Returns null if the reference is not a local file.
+	 */
+	private File linkLocalFile(ContentReference ref) throws IOException {
+		if (!"file".equals(ref.asURL().getProtocol())) //$NON-NLS-1$
+			return null;
+		File source;
+		try {
+			source = ref.asFile();
+		} catch (IOException e) {
+			// reported when the reference is read
+			return null;
+		}
+		if (!source.isFile())
+			return null;
+		File localFile = Utilities.createLocalFile(getWorkingDirectory(), null);
+		UpdateManagerUtils.linkOrCopy(source, localFile);
+		return localFile;
+	}
+
+	/*
+	 * Archives are cached if they are not local already.
+	 */
+	private boolean isCacheable(ContentReference ref) throws IOException {
+		return !"file".equals(ref.asURL().getProtocol()); //$NON-NLS-1$
+	}
+
+	/*
+	 * Returns the segmented download to use for the reference, or null
+	 * if it must be downloaded as a single stream. A partial segmented
+	 * download is resumed if the remote file did not change, and
+	 * restarted in a new file otherwise.
+	 */
+	private SegmentedDownload getSegmentedDownload(ContentReference ref, FileFragment localFileFragment) throws IOException {
+		int segments = SegmentedDownload.getSegmentCount();
+		if (segments < 2)
+			return null;
+		if (localFileFragment != null && !SegmentedDownload.hasState(localFileFragment.getFile()))
+			return null; // resumed as a single stream
+		long size = ref.getInputSize();
+		if (size < SegmentedDownload.MIN_SIZE || !ref.acceptsRanges())
+			return null;
+
+		if (localFileFragment != null) {
+			SegmentedDownload download = SegmentedDownload.resume(localFileFragment.getFile(), ref.asURL(), size, ref.getLastModified());
+			if (download != null)
+				return download;
+			// the remote file changed, start over
+			SegmentedDownload.discard(localFileFragment.getFile());
+		}
+		File localFile = Utilities.createLocalFile(getWorkingDirectory(), null);
+		return new SegmentedDownload(ref.asURL(), localFile, size, ref.getLastModified(), segments);
+	}
+
 	/**
 	 * Returns the specified reference as a local file. If required, the file
 	 * represented by the specified content reference is first downloaded to
@@ -1,5 +1,5 @@
 /*******************************************************************************
- *  Copyright (c) 2000, 2010 IBM Corporation and others.
+ *  Copyright (c) 2000, 2013 IBM Corporation and others.
  *  All rights reserved. This program and the accompanying materials
  *  are made available under the terms of the Eclipse Public License v1.0
  *  which accompanies this distribution, and is available at
@@ -53,6 +53,20 @@ public class JarEntryContentReference extends ContentReference {
 		this.entry = entry;
 	}
 	
+	/*
+	 * Returns the archive the entry belongs to.
+	 */
+	JarContentReference getJarContentReference() {
+		return jarContentReference;
+	}
+
+	/*
+	 * Returns the referenced entry.
+	 */
+	JarEntry getEntry() {
+		return entry;
+	}
+
 	/**
 	 * Creates an input stream for the reference.
 	 * 
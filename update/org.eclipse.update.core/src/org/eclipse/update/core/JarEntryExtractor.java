@@ -0,0 +1,347 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.update.core;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.osgi.util.NLS;
+import org.eclipse.update.internal.core.Messages;
+import org.eclipse.update.internal.core.PluginEntryContentConsumer;
+import org.eclipse.update.internal.core.UpdateCore;
+import org.eclipse.update.internal.core.WorkerPool;
+
+/**
+ * Stores the entries of a plug-in archive in a content consumer while
+ * reading the archive once, from start to end.
+ * <p>
+ * The entries are read from a <code>ZipInputStream</code> over the
+ * archive file and handed to the consumer as they are reached, instead
+ * of being looked up in the archive one at a time. When the consumer
+ * can store entries concurrently, the small entries are read in memory
+ * and stored by a pool of workers while the next entries are read.
+ * <p>
+ * The entries the stream does not reach are stored from their original
+ * references. Since the archive is verified through its central
+ * directory, a signed archive is not streamed, and an archive whose local
+ * entries differ from its central directory, by name, size or checksum,
+ * is rejected.
+ */
+class JarEntryExtractor {
+
+	// entries larger than this are stored while they are read
+	private static final int MAX_BUFFERED_ENTRY = 256 * 1024;
+	// maximum size of the entries waiting for a worker
+	private static final int MAX_BUFFERED = 4 * 1024 * 1024;
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final long POLLING_INTERVAL = 250;
+
+	private JarContentReference archive;
+	private ContentReference[] references;
+	private IContentConsumer consumer;
+	private WorkerPool pool;
+	// size of the entries read but not stored yet
+	private int buffered;
+	// whether an entry was stored from the archive stream
+	private boolean streamed;
+	private CoreException failure;
+
+	/*
+	 * A reference to the entry the archive stream is positioned on.
+	 */
+	private static class StreamedEntryReference extends ContentReference {
+		private InputStream stream;
+		private long size;
+
+		StreamedEntryReference(ContentReference reference, InputStream stream, long size) {
+			super(reference.getIdentifier(), (File) null);
+			this.stream = stream;
+			this.size = size;
+			setPermission(reference.getPermission());
+		}
+
+		public InputStream getInputStream() {
+			return stream;
+		}
+
+		public long getInputSize() {
+			return size;
+		}
+
+		public boolean isLocalReference() {
+			return true;
+		}
+	}
+
+	/**
+	 * Returns the archive all the references are entries of.
+	 *
+	 * @param references the references to store
+	 * @return the archive, or <code>null</code> if the references are not
+	 * the entries of a single archive
+	 */
+	static JarContentReference getArchive(ContentReference[] references) {
+		if (references == null || references.length < 2)
+			return null;
+		JarContentReference archive = null;
+		for (int i = 0; i < references.length; i++) {
+			if (!(references[i] instanceof JarEntryContentReference))
+				return null;
+			JarContentReference jar = ((JarEntryContentReference) references[i]).getJarContentReference();
+			if (archive != null && archive != jar)
+				return null;
+			archive = jar;
+		}
+		return archive;
+	}
+
+	/**
+	 * Returns the maximum number of entries stored at the same time.
+	 */
+	static int getThreadCount() {
+		UpdateCore plugin = UpdateCore.getPlugin();
+		if (plugin == null)
+			return UpdateCore.DEFAULT_EXTRACTION_THREADS;
+		return Math.max(1, plugin.getPluginPreferences().getInt(UpdateCore.P_EXTRACTION_THREADS));
+	}
+
+	/**
+	 * Creates an extractor.
+	 *
+	 * @param archive the archive
+	 * @param references the entries of the archive to store
+	 * @param consumer the consumer the entries are stored in
+	 */
+	JarEntryExtractor(JarContentReference archive, ContentReference[] references, IContentConsumer consumer) {
+		this.archive = archive;
+		this.references = references;
+		this.consumer = consumer;
+	}
+
+	/**
+	 * Stores the entries in the consumer.
+	 *
+	 * @param taskName prefix of the task name shown for each entry
+	 * @param monitor the progress monitor, can be <code>null</code>
+	 * @throws CoreException if an entry cannot be stored
+	 */
+	void extract(String taskName, IProgressMonitor monitor) throws CoreException {
+		// entry name -> reference
+		Map wanted = new HashMap(references.length * 2);
+		// references to an entry name already wanted
+		Set remaining = new HashSet();
+		for (int i = 0; i < references.length; i++) {
+			String name = ((JarEntryContentReference) references[i]).getEntry().getName();
+			Object previous = wanted.put(name, references[i]);
+			if (previous != null)
+				remaining.add(previous);
+		}
+
+		int threads = getThreadCount();
+		if (threads > 1 && consumer instanceof PluginEntryContentConsumer && ((PluginEntryContentConsumer) consumer).canStoreConcurrently())
+			pool = new WorkerPool("Plug-in Extraction", threads); //$NON-NLS-1$
+		try {
+			streamEntries(wanted, taskName, monitor);
+		} catch (IOException e) {
+			// the entries stored from the stream cannot be trusted
+			if (streamed)
+				fail(newInvalidArchiveException(e));
+			else
+				// stored from the archive below
+				UpdateCore.warn("Unable to stream " + archive, e); //$NON-NLS-1$
+		} finally {
+			finish(monitor);
+		}
+		if (getFailure() != null)
+			throw getFailure();
+		if (monitor != null && monitor.isCanceled())
+			return;
+
+		remaining.addAll(wanted.values());
+		for (int i = 0; i < references.length; i++) {
+			if (!remaining.contains(references[i]))
+				continue;
+			setTaskName(monitor, taskName + references[i].getIdentifier());
+			consumer.store(references[i], monitor);
+		}
+	}
+
+	private void streamEntries(Map wanted, String taskName, IProgressMonitor monitor) throws IOException, CoreException {
+		File file = archive.asFile();
+		if (file == null)
+			return;
+		// names of the entries in the central directory
+		Set names = new HashSet();
+		for (Enumeration entries = archive.asJarFile().entries(); entries.hasMoreElements();) {
+			String name = ((ZipEntry) entries.nextElement()).getName();
+			// the signature is verified against the central directory
+			if (isSignatureFile(name))
+				return;
+			names.add(name);
+		}
+
+		ZipInputStream in = new ZipInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE));
+		try {
+			// the consumer closes the streams it is given
+			InputStream entryStream = new FilterInputStream(in) {
+				public void close() {
+					// keep the archive open
+				}
+			};
+			ZipEntry entry;
+			while (!wanted.isEmpty() && (entry = in.getNextEntry()) != null) {
+				// a duplicated entry or an entry missing from the central directory
+				if (!names.remove(entry.getName()))
+					throw newInvalidArchiveException(null);
+				JarEntryContentReference reference = (JarEntryContentReference) wanted.get(entry.getName());
+				if (reference == null)
+					continue;
+				if (monitor != null && monitor.isCanceled())
+					return;
+				if (getFailure() != null)
+					return;
+				setTaskName(monitor, taskName + reference.getIdentifier());
+				long size = reference.getInputSize();
+				streamed = true;
+				if (pool != null && size >= 0 && size <= MAX_BUFFERED_ENTRY) {
+					byte[] content = read(in, (int) size);
+					checkEntry(in, entry, reference, size);
+					schedule(new StreamedEntryReference(reference, new ByteArrayInputStream(content), content.length), content.length, monitor);
+				} else {
+					consumer.store(new StreamedEntryReference(reference, entryStream, size), monitor);
+					checkEntry(in, entry, reference, size);
+				}
+				wanted.remove(entry.getName());
+			}
+			// entries of the central directory missing from the stream
+			if (!wanted.isEmpty() && getFailure() == null && (monitor == null || !monitor.isCanceled()))
+				throw newInvalidArchiveException(null);
+		} finally {
+			try {
+				in.close();
+			} catch (IOException e) {
+			}
+		}
+	}
+
+	private CoreException newInvalidArchiveException(Throwable e) {
+		return Utilities.newCoreException(NLS.bind(Messages.JarEntryExtractor_InvalidArchive, (new String[] { archive.getIdentifier() })), e);
+	}
+
+	private static byte[] read(InputStream in, int size) throws IOException {
+		byte[] content = new byte[size];
+		int count = 0;
+		int n;
+		while (count < size && (n = in.read(content, count, size - count)) != -1)
+			count += n;
+		return content;
+	}
+
+	/*
+	 * Checks that the entry the stream is positioned on was read to its
+	 * end, and matches its central directory entry. The stream checks the
+	 * content against the checksum of the local entry.
+	 */
+	private static void checkEntry(ZipInputStream in, ZipEntry entry, JarEntryContentReference reference, long size) throws IOException {
+		byte[] rest = new byte[BUFFER_SIZE];
+		long count = 0;
+		int n;
+		while ((n = in.read(rest)) != -1)
+			count += n;
+		ZipEntry central = reference.getEntry();
+		// the stream sets the size and checksum once the entry is read
+		if (count != 0 || entry.getSize() != size || entry.getCrc() != central.getCrc())
+			throw new IOException("Entry " + entry.getName() + " differs from the central directory"); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	/*
+	 * Returns whether an entry is a signature file or a signature block,
+	 * whatever the signature algorithm.
+	 */
+	private static boolean isSignatureFile(String name) {
+		String upper = name.toUpperCase();
+		if (!upper.startsWith("META-INF/") || upper.indexOf('/', 9) != -1) //$NON-NLS-1$
+			return false;
+		return upper.endsWith(".SF") || upper.endsWith(".RSA") || upper.endsWith(".DSA") || upper.endsWith(".EC") || upper.startsWith("META-INF/SIG-"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+	}
+
+	private void schedule(final ContentReference reference, final int size, IProgressMonitor monitor) {
+		synchronized (this) {
+			// do not read further ahead than the workers can store
+			while (buffered > 0 && buffered + size > MAX_BUFFERED) {
+				if (monitor != null && monitor.isCanceled())
+					break;
+				try {
+					wait(POLLING_INTERVAL);
+				} catch (InterruptedException e) {
+					// check for cancelation
+				}
+			}
+			buffered += size;
+		}
+		pool.schedule(new Runnable() {
+			public void run() {
+				try {
+					consumer.store(reference, null);
+				} catch (CoreException e) {
+					fail(e);
+				} catch (RuntimeException e) {
+					fail(Utilities.newCoreException(e.getMessage(), e));
+				} finally {
+					stored(size);
+				}
+			}
+		});
+	}
+
+	private void finish(IProgressMonitor monitor) {
+		if (pool == null)
+			return;
+		while (!pool.join(POLLING_INTERVAL)) {
+			if (monitor != null && monitor.isCanceled())
+				pool.cancel();
+		}
+		pool.shutdown();
+	}
+
+	private synchronized void stored(int size) {
+		buffered -= size;
+		notifyAll();
+	}
+
+	private synchronized void fail(CoreException e) {
+		if (failure == null)
+			failure = e;
+	}
+
+	private synchronized CoreException getFailure() {
+		return failure;
+	}
+
+	private static void setTaskName(IProgressMonitor monitor, String taskName) {
+		if (monitor != null)
+			monitor.setTaskName(taskName);
+	}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- *  Copyright (c) 2000, 2010 IBM Corporation and others.
+ *  Copyright (c) 2000, 2013 IBM Corporation and others.
  *  All rights reserved. This program and the accompanying materials
  *  are made available under the terms of the Eclipse Public License v1.0
  *  which accompanies this distribution, and is available at
@@ -37,6 +37,7 @@ import org.eclipse.update.core.URLEntry;
 import org.eclipse.update.internal.core.ExtendedSite;
 import org.eclipse.update.internal.core.Messages;
 import org.eclipse.update.internal.core.UpdateCore;
+import org.eclipse.update.internal.core.UpdateMetrics;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.NodeList;
@@ -149,6 +150,7 @@ public class DefaultSiteParser extends DefaultHandler {
 	 * @since 2.0
 	 */
 	public SiteModel parse(InputStream in) throws SAXException, IOException {
+		long start = System.currentTimeMillis();
 		stateStack.push(new Integer(STATE_INITIAL));
 		currentState = ((Integer) stateStack.peek()).intValue();
 		parser.parse(new InputSource(in), this);
@@ -156,6 +158,7 @@ public class DefaultSiteParser extends DefaultHandler {
 			throw new SAXException(Messages.DefaultSiteParser_NoSiteTag);	
 		else {
 			if (objectStack.peek() instanceof SiteModel) {
+				UpdateMetrics.recordTime(UpdateMetrics.SITE_PARSE, start);
 				return (SiteModel) objectStack.pop();
 			} else {
 				String stack = ""; //$NON-NLS-1$
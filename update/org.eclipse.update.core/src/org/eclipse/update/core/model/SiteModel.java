@@ -1,5 +1,5 @@
 /*******************************************************************************
- *  Copyright (c) 2000, 2010 IBM Corporation and others.
+ *  Copyright (c) 2000, 2013 IBM Corporation and others.
  *  All rights reserved. This program and the accompanying materials
  *  are made available under the terms of the Eclipse Public License v1.0
  *  which accompanies this distribution, and is available at
@@ -386,7 +386,7 @@ public class SiteModel extends ModelObject {
 		
 		if ( (this instanceof ExtendedSite) && ((ExtendedSite)this).isDigestExist()) {
 			ExtendedSite extendedSite = (ExtendedSite)this;
-			extendedSite.setLiteFeatures(UpdateManagerUtils.getLightFeatures(extendedSite));
+			extendedSite.setLiteFeatureIndex(UpdateManagerUtils.getLightFeatureIndex(extendedSite));
 		}
 	}
 
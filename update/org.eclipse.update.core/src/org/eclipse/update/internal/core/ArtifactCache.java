@@ -0,0 +1,499 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.update.internal.core;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.eclipse.update.configurator.ConfiguratorUtils;
+import org.eclipse.update.configurator.IPlatformConfiguration;
+
+/**
+ * Persistent cache of the downloaded feature and plug-in archives,
+ * shared by all the features installed from the same configuration.
+ * <p>
+ * Archives are stored once per content, under their SHA-1 hash, so the
+ * same archive downloaded from several sites or mirrors takes the space
+ * of one. Each URL is mapped to the content it had, and the mapping is
+ * only used while the server reports the same size and time stamp.
+ * <p>
+ * Cached archives are handed out as hard links where the JRE and the
+ * file system support them, as copies otherwise. The cache is stored in
+ * the configuration area and is bounded in size; the least recently used
+ * archives are evicted first.
+ * <p>
+ * The index is kept in memory and written by {@link #flush()}, once per
+ * batch of installs, and when the plug-in stops. Files of the cache
+ * directory that the index does not know, left by a session that did
+ * not write its index or by an interrupted copy, are deleted once they
+ * are a day old.
+ *
+ * @see MetadataCache
+ */
+public class ArtifactCache {
+
+	private static final String CACHE_DIR = "artifacts"; //$NON-NLS-1$
+	private static final String INDEX_FILE = "index.properties"; //$NON-NLS-1$
+	private static final String TEMP_SUFFIX = ".tmp"; //$NON-NLS-1$
+	private static final String URL_KEY = ".url"; //$NON-NLS-1$
+	private static final String SIZE_KEY = ".size"; //$NON-NLS-1$
+	private static final String LAST_MODIFIED_KEY = ".lastModified"; //$NON-NLS-1$
+	private static final String HASH_KEY = ".hash"; //$NON-NLS-1$
+	private static final String ACCESSED_KEY = ".accessed"; //$NON-NLS-1$
+	private static final int BUFFER_SIZE = 8192;
+	// unknown files younger than a day may belong to another session;
+	// deleting one anyway only makes that session download it again
+	private static final long STALE_AGE = 24 * 60 * 60 * 1000L;
+
+	private static ArtifactCache defaultCache;
+	private static boolean initialized;
+
+	private File directory;
+	private long maxSize;
+	private long size;
+	// URL id -> Mapping
+	private Map mappings = new HashMap();
+	// hash -> Content, least recently used first
+	private LinkedHashMap contents = new LinkedHashMap(16, 0.75f, true);
+	// true when the index changed since it was written
+	private boolean dirty;
+
+	private static class Mapping {
+		String id;
+		String url;
+		long size;
+		long lastModified;
+		String hash;
+	}
+
+	private static class Content {
+		String hash;
+		long size;
+		long accessed;
+	}
+
+	/**
+	 * Returns the cache of the running configuration, or <code>null</code>
+	 * if the cache is disabled or the configuration area is not a local
+	 * directory.
+	 */
+	public static synchronized ArtifactCache getDefault() {
+		if (!initialized) {
+			UpdateCore plugin = UpdateCore.getPlugin();
+			if (plugin == null)
+				return null;
+			initialized = true;
+			// the preference is in kilobytes
+			long maxSize = plugin.getPluginPreferences().getInt(UpdateCore.P_ARTIFACT_CACHE_SIZE) * 1024L;
+			File directory = getCacheDirectory();
+			if (maxSize > 0 && directory != null)
+				defaultCache = new ArtifactCache(directory, maxSize);
+		}
+		return defaultCache;
+	}
+
+	/**
+	 * Writes the index of the default cache if it changed.
+	 */
+	public static void flush() {
+		ArtifactCache cache;
+		synchronized (ArtifactCache.class) {
+			cache = defaultCache;
+		}
+		if (cache != null)
+			cache.saveIndex();
+	}
+
+	/**
+	 * Writes the index of the default cache and forgets the cache, so
+	 * it is read again if the plug-in is restarted.
+	 */
+	public static void shutdown() {
+		flush();
+		synchronized (ArtifactCache.class) {
+			defaultCache = null;
+			initialized = false;
+		}
+	}
+
+	private static File getCacheDirectory() {
+		IPlatformConfiguration config = ConfiguratorUtils.getCurrentPlatformConfiguration();
+		if (config == null)
+			return null;
+		URL configurationLocation = config.getConfigurationLocation();
+		if (configurationLocation == null || !"file".equalsIgnoreCase(configurationLocation.getProtocol())) //$NON-NLS-1$
+			return null;
+		File path = new File(configurationLocation.getFile());
+		return new File(path.getParentFile(), CACHE_DIR);
+	}
+
+	/**
+	 * Creates a cache in the directory.
+	 * @param directory the cache directory, created when needed
+	 * @param maxSize the maximum size of the cached archives, in bytes
+	 */
+	public ArtifactCache(File directory, long maxSize) {
+		this.directory = directory;
+		this.maxSize = maxSize;
+		loadIndex();
+	}
+
+	/**
+	 * Copies the cached content of the URL to the target file, if the
+	 * cache has it for the given size and time stamp.
+	 *
+	 * @param url the URL of the archive
+	 * @param size the size reported by the server
+	 * @param lastModified the time stamp reported by the server
+	 * @param target the file to create, must not be modified afterwards
+	 * @return <code>true</code> if the target was created
+	 */
+	public boolean copyTo(String url, long size, long lastModified, File target) {
+		if (size < 0 || lastModified <= 0)
+			return false;
+		File file;
+		synchronized (this) {
+			Content content = lookup(url, size, lastModified);
+			if (content == null)
+				return false;
+			content.accessed = System.currentTimeMillis();
+			dirty = true;
+			file = new File(directory, content.hash);
+		}
+		try {
+			UpdateManagerUtils.linkOrCopy(file, target);
+			return true;
+		} catch (IOException e) {
+			// evicted meanwhile, the archive is downloaded
+			UpdateCore.warn("Unable to copy cached archive of " + url, e); //$NON-NLS-1$
+			target.delete();
+			return false;
+		}
+	}
+
+	/**
+	 * Adds the downloaded content of the URL to the cache.
+	 *
+	 * @param url the URL of the archive
+	 * @param size the size reported by the server
+	 * @param lastModified the time stamp reported by the server
+	 * @param file the downloaded archive, must not be modified afterwards
+	 */
+	public void store(String url, long size, long lastModified, File file) {
+		if (size < 0 || lastModified <= 0 || size > maxSize || file.length() != size)
+			return;
+		String hash;
+		try {
+			hash = getHash(file);
+		} catch (IOException e) {
+			UpdateCore.warn("Unable to cache archive of " + url, e); //$NON-NLS-1$
+			return;
+		} catch (NoSuchAlgorithmException e) {
+			return;
+		}
+
+		File temp = null;
+		if (!isCached(hash)) {
+			directory.mkdirs();
+			temp = new File(directory, hash + TEMP_SUFFIX + Thread.currentThread().hashCode());
+			try {
+				UpdateManagerUtils.linkOrCopy(file, temp);
+			} catch (IOException e) {
+				UpdateCore.warn("Unable to cache archive of " + url, e); //$NON-NLS-1$
+				temp.delete();
+				return;
+			}
+		}
+
+		synchronized (this) {
+			Content content = (Content) contents.get(hash);
+			if (temp != null) {
+				if (content == null) {
+					File cached = new File(directory, hash);
+					cached.delete();
+					if (!temp.renameTo(cached)) {
+						temp.delete();
+						return;
+					}
+					content = new Content();
+					content.hash = hash;
+					content.size = size;
+					contents.put(hash, content);
+					this.size += size;
+				} else {
+					// stored by another thread meanwhile
+					temp.delete();
+				}
+			} else if (content == null) {
+				// evicted meanwhile
+				return;
+			}
+			content.accessed = System.currentTimeMillis();
+
+			Mapping mapping = new Mapping();
+			mapping.id = getId(url);
+			mapping.url = url;
+			mapping.size = size;
+			mapping.lastModified = lastModified;
+			mapping.hash = hash;
+			mappings.put(mapping.id, mapping);
+			evict();
+			dirty = true;
+		}
+	}
+
+	private synchronized boolean isCached(String hash) {
+		return contents.containsKey(hash) && new File(directory, hash).exists();
+	}
+
+	/*
+	 * Returns the content the URL had with this size and time stamp, and
+	 * marks it as recently used.
+	 */
+	private Content lookup(String url, long size, long lastModified) {
+		Mapping mapping = (Mapping) mappings.get(getId(url));
+		if (mapping == null)
+			return null;
+		if (!mapping.url.equals(url) || mapping.size != size || mapping.lastModified != lastModified) {
+			// hash collision, or the archive changed on the server
+			mappings.remove(mapping.id);
+			dirty = true;
+			return null;
+		}
+		Content content = (Content) contents.get(mapping.hash);
+		if (content == null || !new File(directory, content.hash).exists()) {
+			// evicted, or deleted behind our back
+			mappings.remove(mapping.id);
+			dirty = true;
+			if (content != null)
+				remove(content);
+			return null;
+		}
+		return content;
+	}
+
+	/*
+	 * Deletes the least recently used archives until the cache fits in
+	 * its maximum size. The archive added last is kept.
+	 */
+	private void evict() {
+		Iterator iter = contents.values().iterator();
+		while (size > maxSize && contents.size() > 1) {
+			Content content = (Content) iter.next();
+			iter.remove();
+			size -= content.size;
+			new File(directory, content.hash).delete();
+			dirty = true;
+		}
+		// drop the mappings of the evicted archives
+		for (iter = mappings.values().iterator(); iter.hasNext();) {
+			if (!contents.containsKey(((Mapping) iter.next()).hash))
+				iter.remove();
+		}
+	}
+
+	private void remove(Content content) {
+		contents.remove(content.hash);
+		size -= content.size;
+		new File(directory, content.hash).delete();
+	}
+
+	private void loadIndex() {
+		File indexFile = new File(directory, INDEX_FILE);
+		File tempFile = new File(directory, INDEX_FILE + TEMP_SUFFIX);
+		if (indexFile.exists())
+			readIndex(indexFile);
+		else if (tempFile.exists())
+			// the index was being replaced
+			readIndex(tempFile);
+		deleteUnknownFiles();
+	}
+
+	private void readIndex(File indexFile) {
+		Properties index = new Properties();
+		InputStream in = null;
+		try {
+			in = new FileInputStream(indexFile);
+			index.load(in);
+		} catch (IOException e) {
+			UpdateCore.warn("Unable to read artifact cache index " + indexFile, e); //$NON-NLS-1$
+			return;
+		} finally {
+			if (in != null)
+				try {
+					in.close();
+				} catch (IOException e) {
+				}
+		}
+
+		List loaded = new ArrayList();
+		for (Enumeration keys = index.propertyNames(); keys.hasMoreElements();) {
+			String name = (String) keys.nextElement();
+			try {
+				if (name.endsWith(URL_KEY)) {
+					Mapping mapping = new Mapping();
+					mapping.id = name.substring(0, name.length() - URL_KEY.length());
+					mapping.url = index.getProperty(name);
+					mapping.size = Long.parseLong(index.getProperty(mapping.id + SIZE_KEY));
+					mapping.lastModified = Long.parseLong(index.getProperty(mapping.id + LAST_MODIFIED_KEY));
+					mapping.hash = index.getProperty(mapping.id + HASH_KEY);
+					if (mapping.hash != null)
+						mappings.put(mapping.id, mapping);
+				} else if (name.endsWith(ACCESSED_KEY)) {
+					Content content = new Content();
+					content.hash = name.substring(0, name.length() - ACCESSED_KEY.length());
+					content.size = Long.parseLong(index.getProperty(content.hash + SIZE_KEY));
+					content.accessed = Long.parseLong(index.getProperty(name));
+					if (new File(directory, content.hash).exists())
+						loaded.add(content);
+				}
+			} catch (RuntimeException e) {
+				// corrupted entry, the archive is downloaded again
+				UpdateCore.warn("Invalid artifact cache entry " + name, e); //$NON-NLS-1$
+			}
+		}
+		// restore the access order
+		Collections.sort(loaded, new Comparator() {
+			public int compare(Object o1, Object o2) {
+				long accessed1 = ((Content) o1).accessed;
+				long accessed2 = ((Content) o2).accessed;
+				return accessed1 < accessed2 ? -1 : (accessed1 == accessed2 ? 0 : 1);
+			}
+		});
+		for (int i = 0; i < loaded.size(); i++) {
+			Content content = (Content) loaded.get(i);
+			contents.put(content.hash, content);
+			size += content.size;
+		}
+		// the maximum size may have been lowered
+		evict();
+	}
+
+	/*
+	 * Deletes the stale files the index does not know: archives stored by
+	 * a session that did not write its index, and interrupted copies.
+	 */
+	private void deleteUnknownFiles() {
+		File[] files = directory.listFiles();
+		if (files == null)
+			return;
+		long stale = System.currentTimeMillis() - STALE_AGE;
+		for (int i = 0; i < files.length; i++) {
+			String name = files[i].getName();
+			if (INDEX_FILE.equals(name) || contents.containsKey(name))
+				continue;
+			if (files[i].isFile() && files[i].lastModified() < stale)
+				files[i].delete();
+		}
+	}
+
+	/*
+	 * Writes the index if it changed. The index is written to a temporary
+	 * file first, so a crash leaves the previous index intact.
+	 */
+	private synchronized void saveIndex() {
+		if (!dirty)
+			return;
+		Properties index = new Properties();
+		for (Iterator iter = contents.values().iterator(); iter.hasNext();) {
+			Content content = (Content) iter.next();
+			index.put(content.hash + SIZE_KEY, Long.toString(content.size));
+			index.put(content.hash + ACCESSED_KEY, Long.toString(content.accessed));
+		}
+		for (Iterator iter = mappings.values().iterator(); iter.hasNext();) {
+			Mapping mapping = (Mapping) iter.next();
+			index.put(mapping.id + URL_KEY, mapping.url);
+			index.put(mapping.id + SIZE_KEY, Long.toString(mapping.size));
+			index.put(mapping.id + LAST_MODIFIED_KEY, Long.toString(mapping.lastModified));
+			index.put(mapping.id + HASH_KEY, mapping.hash);
+		}
+		File indexFile = new File(directory, INDEX_FILE);
+		File tempFile = new File(directory, INDEX_FILE + TEMP_SUFFIX);
+		directory.mkdirs();
+		OutputStream out = null;
+		try {
+			out = new FileOutputStream(tempFile);
+			index.store(out, null);
+			out.close();
+			out = null;
+			indexFile.delete();
+			if (!tempFile.renameTo(indexFile))
+				throw new IOException("Unable to rename " + tempFile); //$NON-NLS-1$
+			dirty = false;
+		} catch (IOException e) {
+			UpdateCore.warn("Unable to save artifact cache index " + indexFile, e); //$NON-NLS-1$
+			tempFile.delete();
+		} finally {
+			if (out != null)
+				try {
+					out.close();
+				} catch (IOException e) {
+				}
+		}
+	}
+
+	/*
+	 * Returns the SHA-1 hash of the content of the file.
+	 */
+	private static String getHash(File file) throws IOException, NoSuchAlgorithmException {
+		MessageDigest digest = MessageDigest.getInstance("SHA-1"); //$NON-NLS-1$
+		InputStream in = new FileInputStream(file);
+		try {
+			byte[] buf = new byte[BUFFER_SIZE];
+			int len;
+			while ((len = in.read(buf)) != -1)
+				digest.update(buf, 0, len);
+		} finally {
+			in.close();
+		}
+		return toHex(digest.digest());
+	}
+
+	/*
+	 * Returns the key of the mapping of the URL.
+	 */
+	private static String getId(String url) {
+		try {
+			return toHex(MessageDigest.getInstance("MD5").digest(url.getBytes("UTF-8"))); //$NON-NLS-1$ //$NON-NLS-2$
+		} catch (NoSuchAlgorithmException e) {
+			// mappings record their URL, so collisions are detected
+			return Integer.toHexString(url.hashCode());
+		} catch (IOException e) {
+			return Integer.toHexString(url.hashCode());
+		}
+	}
+
+	private static String toHex(byte[] hash) {
+		StringBuffer hex = new StringBuffer(hash.length * 2);
+		for (int i = 0; i < hash.length; i++) {
+			hex.append(Character.forDigit((hash[i] >> 4) & 0xF, 16));
+			hex.append(Character.forDigit(hash[i] & 0xF, 16));
+		}
+		return hex.toString();
+	}
+}
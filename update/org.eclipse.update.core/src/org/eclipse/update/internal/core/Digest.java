@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2006 IBM Corporation and others.
+ * Copyright (c) 2006, 2013 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -28,6 +28,7 @@ public class Digest {
 	private File localSource;
 	private JarFile digestJar;
 	private InputStream inputStream;
+	private LiteFeatureIndex index;
 	
 
 	public Digest(URL source){
@@ -35,20 +36,38 @@ public class Digest {
 	}
 	
 	public FeatureModel[] parseDigest() throws IOException, CoreException, SAXException {
-		DigestContentProvider digestContentProvider = new DigestContentProvider(source);
-		localSource = digestContentProvider.asLocalReference(new JarContentReference( null, source), null).asFile();
+		MetadataCache cache = MetadataCache.getDefault();
+		if (cache != null)
+			localSource = cache.getFile(source, null);
+		if (localSource == null) {
+			DigestContentProvider digestContentProvider = new DigestContentProvider(source);
+			localSource = digestContentProvider.asLocalReference(new JarContentReference( null, source), null).asFile();
+		}
 		digestJar = new JarFile(localSource);
-		
-		ZipEntry digestEntry = digestJar.getEntry("digest.xml"); //$NON-NLS-1$
-		
-		if (digestEntry != null) {
-			inputStream = digestJar.getInputStream(digestEntry);
-			DigestParser digest = new DigestParser();
-			digest.init(new LiteFeatureFactory());
-			return digest.parse(inputStream);
-		} else {
-			throw new CoreException(null);
+		try {
+			ZipEntry digestEntry = digestJar.getEntry("digest.xml"); //$NON-NLS-1$
+			
+			if (digestEntry != null) {
+				inputStream = digestJar.getInputStream(digestEntry);
+				DigestParser digest = new DigestParser();
+				digest.init(new LiteFeatureFactory());
+				FeatureModel[] features = digest.parse(inputStream);
+				index = digest.getIndex();
+				return features;
+			} else {
+				throw new CoreException(null);
+			}
+		} finally {
+			// the cached digest may be replaced or evicted later on
+			digestJar.close();
 		}
 	}
 
+	/**
+	 * Returns the index of the features of the digest, or <code>null</code>
+	 * if the digest was not parsed.
+	 */
+	public LiteFeatureIndex getIndex() {
+		return index;
+	}
 }
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2006 IBM Corporation and others.
+ * Copyright (c) 2006, 2013 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -10,6 +10,8 @@
  *******************************************************************************/
 package org.eclipse.update.internal.core;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
@@ -32,6 +34,8 @@ public class DigestParser extends DefaultHandler {
 	
 	private ArrayList featureModels;
 
+	private LiteFeatureIndex index;
+
 	private SAXParser parser;
 
 	private FeatureModelFactory factory;
@@ -69,12 +73,18 @@ public class DigestParser extends DefaultHandler {
     	this.location = location;
     	factory = new LiteFeatureFactory();
     	featureModels = new ArrayList();
+    	index = new LiteFeatureIndex();
     	featureParser.internalInit(factory, location);
     }
 
 	/**
-	 * Parses the specified input steam and constructs a feature model.
+	 * Parses the specified input steam and constructs the feature models.
 	 * The input stream is not closed as part of this operation.
+	 * <p>
+	 * The digest is first scanned for the identifier, version and
+	 * environment of its features only, and the rest of each feature is
+	 * parsed when it is first accessed. A digest the scanner does not
+	 * support is parsed in full.
 	 * 
 	 * @param in input stream
 	 * @return feature model
@@ -83,11 +93,37 @@ public class DigestParser extends DefaultHandler {
 	 * @since 2.0
 	 */
 	public LiteFeature[] parse(InputStream in) throws SAXException, IOException {
-		
-		parser.parse(new InputSource(in), this);	
+		ByteArrayOutputStream content = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int count;
+		while ((count = in.read(buffer)) != -1)
+			content.write(buffer, 0, count);
+		byte[] digest = content.toByteArray();
+
+		long start = System.currentTimeMillis();
+		LiteFeature[] features = new DigestScanner(digest, digest.length).scan();
+		if (features != null) {
+			for (int i = 0; i < features.length; i++) {
+				featureModels.add(features[i]);
+				index.add(features[i]);
+			}
+		} else {
+			parser.parse(new InputSource(new ByteArrayInputStream(digest)), this);
+		}
+		UpdateMetrics.recordTime(UpdateMetrics.DIGEST_PARSE, start);
 		return (LiteFeature[])featureModels.toArray( new LiteFeature[featureModels.size()]);
 	}
 
+	/**
+	 * Returns the index of the features parsed so far.
+	 *
+	 * @return the feature index
+	 * @since 3.1
+	 */
+	public LiteFeatureIndex getIndex() {
+		return index;
+	}
+
 
 	/**
 	 * Returns all status objects accumulated by the parser.
@@ -124,7 +160,9 @@ public class DigestParser extends DefaultHandler {
 		featureParser.endElement(uri, localName, qName);
 		if(localName.equals("feature")) { //$NON-NLS-1$
 			try {
-				featureModels.add(featureParser.getFeatureModel());
+				LiteFeature feature = (LiteFeature) featureParser.getFeatureModel();
+				featureModels.add(feature);
+				index.add(feature);
 			} catch (SAXException e) {
 				e.printStackTrace();
 			} 
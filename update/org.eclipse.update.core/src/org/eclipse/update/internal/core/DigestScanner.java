@@ -0,0 +1,291 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.update.internal.core;
+
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Scans a digest for its features without building their models.
+ * <p>
+ * Only the identifier, version and environment of a feature are read,
+ * from the attributes of its <code>feature</code> element. The rest of
+ * the element is left in the digest buffer and is parsed by the
+ * {@link LiteFeature} when it is first needed.
+ * <p>
+ * The scanner only handles the markup found in digests. It gives up on
+ * a document type declaration, an unknown entity reference or an
+ * encoding that is not ASCII compatible, in which case the digest must
+ * be parsed in full.
+ */
+public class DigestScanner {
+
+	private static final String FEATURE = "feature"; //$NON-NLS-1$
+
+	private byte[] digest;
+	private int length;
+	private String encoding = "UTF-8"; //$NON-NLS-1$
+	private int position;
+	// whether the last tag read was an empty element tag
+	private boolean emptyElement;
+
+	private static class UnsupportedMarkupException extends Exception {
+		private static final long serialVersionUID = 1L;
+	}
+
+	/**
+	 * Creates a scanner for the first <code>length</code> bytes of the
+	 * digest. The buffer is retained by the features created.
+	 */
+	public DigestScanner(byte[] digest, int length) {
+		this.digest = digest;
+		this.length = length;
+	}
+
+	/**
+	 * Returns the features of the digest, in document order, or
+	 * <code>null</code> if the digest cannot be scanned.
+	 */
+	public LiteFeature[] scan() {
+		if (length == 0 || digest[0] == 0 || (digest[0] & 0xFF) == 0xFE || (digest[0] & 0xFF) == 0xFF)
+			// UTF-16 or UTF-32
+			return null;
+		position = 0;
+		if (length >= 3 && (digest[0] & 0xFF) == 0xEF && (digest[1] & 0xFF) == 0xBB && (digest[2] & 0xFF) == 0xBF)
+			// UTF-8 byte order mark
+			position = 3;
+
+		List features = new ArrayList();
+		try {
+			while ((position = indexOf('<', position)) != -1) {
+				int start = position;
+				if (startsWith("<!--")) { //$NON-NLS-1$
+					position = skip("-->"); //$NON-NLS-1$
+				} else if (startsWith("<![CDATA[")) { //$NON-NLS-1$
+					position = skip("]]>"); //$NON-NLS-1$
+				} else if (startsWith("<?xml") && isSpace(start + 5)) { //$NON-NLS-1$
+					position = start + 5;
+					String declared = (String) readAttributes().get("encoding"); //$NON-NLS-1$
+					if (declared != null)
+						encoding = declared;
+				} else if (startsWith("<?")) { //$NON-NLS-1$
+					position = skip("?>"); //$NON-NLS-1$
+				} else if (startsWith("<!")) { //$NON-NLS-1$
+					// a document type declaration may declare entities
+					return null;
+				} else if (isStartTag(FEATURE)) {
+					LiteFeature feature = scanFeature(start);
+					if (feature != null)
+						features.add(feature);
+				} else {
+					position++;
+				}
+			}
+		} catch (UnsupportedMarkupException e) {
+			return null;
+		} catch (UnsupportedEncodingException e) {
+			return null;
+		}
+		return (LiteFeature[]) features.toArray(new LiteFeature[features.size()]);
+	}
+
+	private LiteFeature scanFeature(int start) throws UnsupportedMarkupException, UnsupportedEncodingException {
+		position = start + 1 + FEATURE.length();
+		Map attributes = readAttributes();
+		if (!emptyElement)
+			skipToEndTag(FEATURE);
+
+		String id = (String) attributes.get("id"); //$NON-NLS-1$
+		String version = (String) attributes.get("version"); //$NON-NLS-1$
+		if (id == null || id.trim().length() == 0 || version == null || version.trim().length() == 0)
+			// the parser would reject it too
+			return null;
+		LiteFeature feature = new LiteFeature();
+		feature.setFeatureIdentifier(id);
+		feature.setFeatureVersion(version);
+		feature.setOS((String) attributes.get("os")); //$NON-NLS-1$
+		feature.setWS((String) attributes.get("ws")); //$NON-NLS-1$
+		feature.setNL((String) attributes.get("nl")); //$NON-NLS-1$
+		feature.setArch((String) attributes.get("arch")); //$NON-NLS-1$
+		feature.setDigest(digest, encoding, start, position - start);
+		return feature;
+	}
+
+	/*
+	 * Reads the attributes of the tag up to its end, and records whether
+	 * it is an empty element tag.
+	 */
+	private Map readAttributes() throws UnsupportedMarkupException, UnsupportedEncodingException {
+		Map attributes = new HashMap();
+		emptyElement = false;
+		while (true) {
+			while (isSpace(position))
+				position++;
+			if (position >= length)
+				throw new UnsupportedMarkupException();
+			if (digest[position] == '>') {
+				position++;
+				return attributes;
+			}
+			if (startsWith("/>") || startsWith("?>")) { //$NON-NLS-1$ //$NON-NLS-2$
+				emptyElement = digest[position] == '/';
+				position += 2;
+				return attributes;
+			}
+
+			int nameStart = position;
+			while (position < length && digest[position] != '=' && !isSpace(position))
+				position++;
+			String name = new String(digest, nameStart, position - nameStart, encoding);
+			while (isSpace(position))
+				position++;
+			if (position >= length || digest[position] != '=')
+				throw new UnsupportedMarkupException();
+			position++;
+			while (isSpace(position))
+				position++;
+			if (position >= length || (digest[position] != '"' && digest[position] != '\''))
+				throw new UnsupportedMarkupException();
+			byte quote = digest[position++];
+			int valueStart = position;
+			while (position < length && digest[position] != quote)
+				position++;
+			if (position >= length)
+				throw new UnsupportedMarkupException();
+			attributes.put(name, decode(valueStart, position));
+			position++;
+		}
+	}
+
+	private void skipToEndTag(String name) throws UnsupportedMarkupException {
+		while ((position = indexOf('<', position)) != -1) {
+			if (startsWith("<!--")) { //$NON-NLS-1$
+				position = skip("-->"); //$NON-NLS-1$
+			} else if (startsWith("<![CDATA[")) { //$NON-NLS-1$
+				position = skip("]]>"); //$NON-NLS-1$
+			} else if (startsWith("</" + name) && (isSpace(position + 2 + name.length()) || isByte(position + 2 + name.length(), '>'))) { //$NON-NLS-1$
+				position = skip(">"); //$NON-NLS-1$
+				return;
+			} else {
+				position++;
+			}
+		}
+		throw new UnsupportedMarkupException();
+	}
+
+	/*
+	 * Returns the attribute value with its references replaced and its
+	 * white spaces normalized, as an XML parser would.
+	 */
+	private String decode(int start, int end) throws UnsupportedMarkupException, UnsupportedEncodingException {
+		String value = new String(digest, start, end - start, encoding);
+		StringBuffer result = null;
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c != '&' && c != '\t' && c != '\n' && c != '\r') {
+				if (result != null)
+					result.append(c);
+				continue;
+			}
+			if (result == null) {
+				result = new StringBuffer(value.length());
+				result.append(value.substring(0, i));
+			}
+			if (c != '&') {
+				result.append(' ');
+				continue;
+			}
+			int semicolon = value.indexOf(';', i);
+			if (semicolon == -1)
+				throw new UnsupportedMarkupException();
+			String reference = value.substring(i + 1, semicolon);
+			if (reference.equals("lt")) //$NON-NLS-1$
+				result.append('<');
+			else if (reference.equals("gt")) //$NON-NLS-1$
+				result.append('>');
+			else if (reference.equals("amp")) //$NON-NLS-1$
+				result.append('&');
+			else if (reference.equals("quot")) //$NON-NLS-1$
+				result.append('"');
+			else if (reference.equals("apos")) //$NON-NLS-1$
+				result.append('\'');
+			else if (reference.startsWith("#x")) //$NON-NLS-1$
+				result.append(toChar(reference.substring(2), 16));
+			else if (reference.startsWith("#")) //$NON-NLS-1$
+				result.append(toChar(reference.substring(1), 10));
+			else
+				throw new UnsupportedMarkupException();
+			i = semicolon;
+		}
+		return result == null ? value : result.toString();
+	}
+
+	private static char toChar(String code, int radix) throws UnsupportedMarkupException {
+		try {
+			int value = Integer.parseInt(code, radix);
+			if (value > 0xFFFF)
+				throw new UnsupportedMarkupException();
+			return (char) value;
+		} catch (NumberFormatException e) {
+			throw new UnsupportedMarkupException();
+		}
+	}
+
+	private int indexOf(int b, int from) {
+		for (int i = from; i < length; i++) {
+			if (digest[i] == b)
+				return i;
+		}
+		return -1;
+	}
+
+	/*
+	 * Returns the position following the next occurrence of the ASCII
+	 * marker.
+	 */
+	private int skip(String marker) throws UnsupportedMarkupException {
+		for (int i = position; i <= length - marker.length(); i++) {
+			if (matches(i, marker))
+				return i + marker.length();
+		}
+		throw new UnsupportedMarkupException();
+	}
+
+	private boolean startsWith(String ascii) {
+		return matches(position, ascii);
+	}
+
+	private boolean matches(int index, String ascii) {
+		if (index + ascii.length() > length)
+			return false;
+		for (int i = 0; i < ascii.length(); i++) {
+			if (digest[index + i] != ascii.charAt(i))
+				return false;
+		}
+		return true;
+	}
+
+	private boolean isStartTag(String name) {
+		int end = position + 1 + name.length();
+		return matches(position + 1, name) && (isSpace(end) || isByte(end, '>') || isByte(end, '/'));
+	}
+
+	private boolean isSpace(int index) {
+		return index < length && (digest[index] == ' ' || digest[index] == '\t' || digest[index] == '\n' || digest[index] == '\r');
+	}
+
+	private boolean isByte(int index, char c) {
+		return index < length && digest[index] == c;
+	}
+}
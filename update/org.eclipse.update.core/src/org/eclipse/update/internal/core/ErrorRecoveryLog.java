@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2008 IBM Corporation and others.
+ * Copyright (c) 2000, 2013 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -22,12 +22,18 @@ import org.eclipse.update.core.Utilities;
 
 /**
  * Manages the error/recover log file
+ * <p>
+ * Entries are buffered and written in groups. Callers flush the log
+ * before changing the file system in a way the entries describe, such
+ * as renaming or deleting a file, and sync it to the disk before the
+ * installed files are renamed in place and when the log is closed.
  */
 public class ErrorRecoveryLog {
 	private static final String ERROR_RECOVERY_LOG = "error_recovery.log"; //$NON-NLS-1$
 	private static final String LOG_ENTRY_KEY = "LogEntry."; //$NON-NLS-1$
 	private static final String RETURN_CARRIAGE = "\r\n"; //$NON-NLS-1$
 	private static final String END_OF_FILE = "eof=eof"; //$NON-NLS-1$
+	private static final int BUFFER_SIZE = 8192;
 
 	//
 	public static final String START_INSTALL_LOG = 	"START_INSTALL_LOG"; //$NON-NLS-1$
@@ -45,7 +51,9 @@ public class ErrorRecoveryLog {
 	public static final String END_REMOVE_LOG = 		"END_REMOVE_LOG"; //$NON-NLS-1$
 
 	private static ErrorRecoveryLog inst;
-	private FileWriter out;
+	private File logFile;
+	private FileOutputStream stream;
+	private Writer out;
 	private int index;
 	private List paths;
 	
@@ -117,10 +125,11 @@ public class ErrorRecoveryLog {
 			return;
 		}
 		
-		File logFile = null;		
+		logFile = null;		
 		try {
 			logFile = getRecoveryLogFile();
-			out = new FileWriter(logFile);
+			stream = new FileOutputStream(logFile);
+			out = new BufferedWriter(new OutputStreamWriter(stream), BUFFER_SIZE);
 			index = 0;
 			paths=null;
 			open=true;
@@ -136,25 +145,38 @@ public class ErrorRecoveryLog {
 	}
 
 	/**
-	 * Append the string to the log and flush
+	 * Append the string to the log. The entry is written with the next
+	 * flush.
 	 */
 	public void append(String logEntry) throws CoreException {
-		File logFile = null;
 		try {
 			if (!open) {
 				UpdateCore.warn("Internal Error: The Error/Recovery log is not open:"+logEntry);				 //$NON-NLS-1$
 				return;
 			}
 
-			StringBuffer buffer = new StringBuffer(LOG_ENTRY_KEY);
-			buffer.append(index);
-			buffer.append("="); //$NON-NLS-1$
-			buffer.append(logEntry);
-			buffer.append(RETURN_CARRIAGE);
+			out.write(LOG_ENTRY_KEY);
+			out.write(String.valueOf(index));
+			out.write("="); //$NON-NLS-1$
+			out.write(logEntry);
+			out.write(RETURN_CARRIAGE);
+			index++;
+		} catch (IOException e) {
+			throw Utilities.newCoreException(
+				NLS.bind(Messages.UpdateManagerUtils_UnableToLog, (new Object[] { logFile })),
+				e);
+		}
+	}
 
-			out.write(buffer.toString());
+	/**
+	 * Write the entries appended so far to the log file. Called before a
+	 * file the entries name is renamed or deleted.
+	 */
+	public void flush() throws CoreException {
+		if (!open)
+			return;
+		try {
 			out.flush();
-			index++;
 		} catch (IOException e) {
 			throw Utilities.newCoreException(
 				NLS.bind(Messages.UpdateManagerUtils_UnableToLog, (new Object[] { logFile })),
@@ -163,7 +185,25 @@ public class ErrorRecoveryLog {
 	}
 
 	/**
-	 * Append the string to the log and flush
+	 * Write the entries appended so far to the log file and force them to
+	 * the disk. Called once all the files of an install or removal are
+	 * known, before they are put in place.
+	 */
+	public void sync() throws CoreException {
+		if (!open)
+			return;
+		flush();
+		try {
+			stream.getFD().sync();
+		} catch (IOException e) {
+			// not supported by every file system, the entries are flushed
+			UpdateCore.warn("Unable to sync Error/Recovery log " + logFile, e); //$NON-NLS-1$
+		}
+	}
+
+	/**
+	 * Append the string to the log. The entry is written with the next
+	 * flush.
 	 */
 	public void appendPath(String logEntry, String path) throws CoreException {
 		if (path == null)
@@ -193,10 +233,15 @@ public class ErrorRecoveryLog {
 			try {
 				out.write(END_OF_FILE);
 				out.flush();
-				out.close();
+				stream.getFD().sync();
 			} catch (IOException e) { //eat the exception
 			} finally {
+				try {
+					out.close();
+				} catch (IOException e) {
+				}
 				out = null;
+				stream = null;
 				open=false;
 			}
 		}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2006, 2007 IBM Corporation and others.
+ * Copyright (c) 2006, 2013 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -11,10 +11,16 @@
 package org.eclipse.update.internal.core;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.update.core.ISiteFeatureReference;
 import org.eclipse.update.core.IURLEntry;
+import org.eclipse.update.core.SiteFeatureReferenceModel;
 import org.eclipse.update.core.VersionedIdentifier;
+import org.eclipse.update.core.model.FeatureReferenceModel;
 import org.eclipse.update.internal.model.SiteWithTimestamp;
 
 public class ExtendedSite extends SiteWithTimestamp /*Site*/ {
@@ -24,6 +30,12 @@ public class ExtendedSite extends SiteWithTimestamp /*Site*/ {
 	private String digestURL;
 	private LiteFeature[] liteFeatures;
 	private LiteFeature[] allLiteFeatures;
+	private LiteFeatureIndex liteFeatureIndex;
+	// indexes of the feature references, built on demand
+	private ISiteFeatureReference[] indexedReferences;
+	private Map referencesByVersion;
+	private Map referencesById;
+	private ISiteFeatureReference[] patchReferences;
 	private IURLEntry[] associateSites;
 	private boolean pack200 = false;
 	private IURLEntry selectedMirror;
@@ -58,11 +70,25 @@ public class ExtendedSite extends SiteWithTimestamp /*Site*/ {
 		
 		if ((liteFeatures == null) || (liteFeatures.length == 0))
 			return;
-		this.allLiteFeatures = liteFeatures;
+		setLiteFeatureIndex(new LiteFeatureIndex(liteFeatures));
+	}
+
+	/**
+	 * Sets the features of the digest of this site. Only the features
+	 * referenced by the site are returned by {@link #getLiteFeatures()}.
+	 */
+	public void setLiteFeatureIndex(LiteFeatureIndex index) {
+		
+		if ((index == null) || (index.size() == 0))
+			return;
+		this.liteFeatureIndex = index;
+		this.allLiteFeatures = index.getFeatures();
 		List temp = new ArrayList();
 		for(int i = 0; i < allLiteFeatures.length ; i++) {
-			if (getFeatureReference(allLiteFeatures[i]) != null) {
+			if (getFeatureReference(allLiteFeatures[i].getVersionedIdentifier()) != null) {
 				temp.add(allLiteFeatures[i]);
+			} else {
+				UpdateCore.warn("Feature " + allLiteFeatures[i].getVersionedIdentifier() + " not found on site" + this.getURL()); //$NON-NLS-1$ //$NON-NLS-2$
 			}
 		}
 		if (!temp.isEmpty()) {
@@ -70,16 +96,103 @@ public class ExtendedSite extends SiteWithTimestamp /*Site*/ {
 		}
 	}
 	
+	public LiteFeatureIndex getLiteFeatureIndex() {
+		return liteFeatureIndex;
+	}
+
 	public LiteFeature getLiteFeature(VersionedIdentifier vid) {
-		if (allLiteFeatures == null)
+		if (liteFeatureIndex == null)
 			return null;
-		
-		for(int i = 0; i < allLiteFeatures.length ; i++) {
-			if (vid.equals(allLiteFeatures[i].getVersionedIdentifier())) {
-				return allLiteFeatures[i];
+		return liteFeatureIndex.getFeature(vid);
+	}
+
+	/**
+	 * Returns the reference to the feature with the versioned identifier,
+	 * or <code>null</code> if the site does not have this feature.
+	 */
+	public synchronized ISiteFeatureReference getFeatureReference(VersionedIdentifier vid) {
+		indexFeatureReferences();
+		return (ISiteFeatureReference) referencesByVersion.get(vid);
+	}
+
+	/**
+	 * Returns the references to the versions of the feature on this
+	 * site, in the order of the site manifest.
+	 */
+	public synchronized ISiteFeatureReference[] getFeatureReferences(String id) {
+		indexFeatureReferences();
+		List references = (List) referencesById.get(id);
+		if (references == null)
+			return new ISiteFeatureReference[0];
+		return (ISiteFeatureReference[]) references.toArray(new ISiteFeatureReference[references.size()]);
+	}
+
+	/**
+	 * Returns the references to the patches on this site, in the order of
+	 * the site manifest.
+	 */
+	public synchronized ISiteFeatureReference[] getPatchReferences() {
+		indexFeatureReferences();
+		if (patchReferences == null) {
+			// references that do not tell whether they are patches
+			// load their feature, so this is only done when needed
+			List patches = new ArrayList();
+			for (int i = 0; i < indexedReferences.length; i++) {
+				if (indexedReferences[i].isPatch())
+					patches.add(indexedReferences[i]);
+			}
+			patchReferences = (ISiteFeatureReference[]) patches.toArray(new ISiteFeatureReference[patches.size()]);
+		}
+		return patchReferences;
+	}
+
+	public synchronized void addFeatureReferenceModel(SiteFeatureReferenceModel featureReference) {
+		super.addFeatureReferenceModel(featureReference);
+		indexedReferences = null;
+	}
+
+	public synchronized void removeFeatureReferenceModel(FeatureReferenceModel featureReference) {
+		super.removeFeatureReferenceModel(featureReference);
+		indexedReferences = null;
+	}
+
+	public synchronized void setFeatureReferenceModels(FeatureReferenceModel[] featureReferences) {
+		super.setFeatureReferenceModels(featureReferences);
+		indexedReferences = null;
+	}
+
+	/*
+	 * Indexes the feature references by versioned identifier and by
+	 * identifier. The index is cleared when references are added or
+	 * removed, and rebuilt if the references of the site are filtered
+	 * differently.
+	 */
+	private void indexFeatureReferences() {
+		ISiteFeatureReference[] references = getFeatureReferences();
+		if (indexedReferences != null && indexedReferences.length == references.length)
+			return;
+		Map byVersion = new HashMap();
+		Map byId = new HashMap();
+		for (int i = 0; i < references.length; i++) {
+			try {
+				VersionedIdentifier vid = references[i].getVersionedIdentifier();
+				// keep the first reference, as a linear search would
+				if (!byVersion.containsKey(vid))
+					byVersion.put(vid, references[i]);
+				List versions = (List) byId.get(vid.getIdentifier());
+				if (versions == null) {
+					versions = new ArrayList(1);
+					byId.put(vid.getIdentifier(), versions);
+				}
+				versions.add(references[i]);
+			} catch (CoreException e) {
+				UpdateCore.warn(null, e);
 			}
 		}
-		return null;
+		referencesByVersion = byVersion;
+		referencesById = byId;
+		patchReferences = null;
+		indexedReferences = references;
 	}
 	
 	public LiteFeature[] getNonFilteredLiteFeatures() {
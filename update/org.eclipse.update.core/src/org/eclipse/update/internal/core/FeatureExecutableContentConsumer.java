@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2006 IBM Corporation and others.
+ * Copyright (c) 2000, 2013 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -89,6 +89,7 @@ public class FeatureExecutableContentConsumer extends FeatureContentConsumer {
 		// log files have been downloaded
 		if (getParent()==null){
 			ErrorRecoveryLog.getLog().append(ErrorRecoveryLog.ALL_INSTALLED);
+			ErrorRecoveryLog.getLog().sync();
 		}
 		
 		IFeatureReference ref= null;
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2008 IBM Corporation and others.
+ * Copyright (c) 2000, 2013 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -86,7 +86,14 @@ public class FeaturePackagedContentProvider extends FeatureContentProvider {
 
 			// force feature archive to local.
 			// This content provider always assumes exactly 1 archive file (index [0])		
-			featureJarReference = (JarContentReference) asLocalReference(featureArchiveReference[0], null);
+			// the feature archive is small and only the manifest is needed,
+			// so it is kept in the metadata cache across sessions
+			MetadataCache cache = MetadataCache.getDefault();
+			File cachedArchive = cache == null ? null : cache.getFile(featureArchiveReference[0].asURL(), null);
+			if (cachedArchive != null)
+				featureJarReference = (JarContentReference) featureArchiveReference[0].createContentReference(featureArchiveReference[0].getIdentifier(), cachedArchive);
+			else
+				featureJarReference = (JarContentReference) asLocalReference(featureArchiveReference[0], null);
 			// we need to unpack archive locally for UI browser references to be resolved correctly
 			localFeatureFiles = featureJarReference.unpack(getWorkingDirectory(), null, monitor);
 		} catch (IOException e) {
@@ -0,0 +1,202 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.update.internal.core;
+
+import java.util.StringTokenizer;
+
+/**
+ * Distribution of recorded values.
+ * <p>
+ * The values are counted in buckets of exponentially growing width: bucket
+ * 0 counts the values up to 0, and bucket <i>i</i> the values from
+ * 2<sup><i>i</i>-1</sup> to 2<sup><i>i</i></sup>-1. A percentile is
+ * therefore known within a factor of two, whatever the number of values
+ * recorded, and a histogram has a fixed size.
+ * <p>
+ * Each histogram has its own lock, held only while a value is added, so
+ * threads recording different metrics do not contend.
+ */
+public class Histogram {
+
+	private static final int BUCKETS = 64;
+
+	private long[] buckets = new long[BUCKETS];
+	private long count;
+	private long sum;
+	private long min = Long.MAX_VALUE;
+	private long max = Long.MIN_VALUE;
+
+	/**
+	 * Records a value.
+	 *
+	 * @param value the value
+	 */
+	public synchronized void record(long value) {
+		buckets[getBucket(value)]++;
+		count++;
+		sum += value;
+		if (value < min)
+			min = value;
+		if (value > max)
+			max = value;
+	}
+
+	/**
+	 * Adds the values recorded by another histogram.
+	 *
+	 * @param other the histogram to add
+	 */
+	public void add(Histogram other) {
+		long[] otherBuckets;
+		long otherCount, otherSum, otherMin, otherMax;
+		// the locks are not nested
+		synchronized (other) {
+			otherBuckets = (long[]) other.buckets.clone();
+			otherCount = other.count;
+			otherSum = other.sum;
+			otherMin = other.min;
+			otherMax = other.max;
+		}
+		synchronized (this) {
+			for (int i = 0; i < BUCKETS; i++)
+				buckets[i] += otherBuckets[i];
+			count += otherCount;
+			sum += otherSum;
+			if (otherMin < min)
+				min = otherMin;
+			if (otherMax > max)
+				max = otherMax;
+		}
+	}
+
+	/*
+	 * Returns the bucket of a value.
+	 */
+	private static int getBucket(long value) {
+		int bucket = 0;
+		while (value > 0) {
+			value >>>= 1;
+			bucket++;
+		}
+		return bucket;
+	}
+
+	/**
+	 * Returns the number of values recorded.
+	 */
+	public synchronized long getCount() {
+		return count;
+	}
+
+	/**
+	 * Returns the sum of the values recorded.
+	 */
+	public synchronized long getSum() {
+		return sum;
+	}
+
+	/**
+	 * Returns the smallest value recorded, 0 if none was.
+	 */
+	public synchronized long getMin() {
+		return count == 0 ? 0 : min;
+	}
+
+	/**
+	 * Returns the largest value recorded, 0 if none was.
+	 */
+	public synchronized long getMax() {
+		return count == 0 ? 0 : max;
+	}
+
+	/**
+	 * Returns the mean of the values recorded, 0 if none was.
+	 */
+	public synchronized long getMean() {
+		return count == 0 ? 0 : sum / count;
+	}
+
+	/**
+	 * Returns an upper bound of a percentile of the values recorded. The
+	 * bound is less than twice the percentile, and never more than the
+	 * largest value.
+	 *
+	 * @param percent the percentile, from 0 to 100
+	 * @return the bound, 0 if no value was recorded
+	 */
+	public synchronized long getPercentile(double percent) {
+		if (count == 0)
+			return 0;
+		long rank = (long) Math.ceil(count * percent / 100);
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += buckets[i];
+			if (seen >= rank && seen > 0) {
+				long bound = i == 0 ? 0 : (1L << i) - 1;
+				return Math.min(bound, max);
+			}
+		}
+		return max;
+	}
+
+	/**
+	 * Returns the histogram in the form read by {@link #parse(String)}:
+	 * the count, sum, minimum and maximum followed by the bucket counts.
+	 */
+	public synchronized String externalize() {
+		int last = BUCKETS - 1;
+		while (last >= 0 && buckets[last] == 0)
+			last--;
+		StringBuffer buffer = new StringBuffer();
+		buffer.append(count).append(' ').append(sum).append(' ').append(getMin()).append(' ').append(getMax());
+		for (int i = 0; i <= last; i++)
+			buffer.append(' ').append(buckets[i]);
+		return buffer.toString();
+	}
+
+	/**
+	 * Reads a histogram written by {@link #externalize()}.
+	 *
+	 * @param value the externalized histogram
+	 * @return the histogram, or <code>null</code> if the value is not valid
+	 */
+	public static Histogram parse(String value) {
+		StringTokenizer fields = new StringTokenizer(value, " "); //$NON-NLS-1$
+		int length = fields.countTokens();
+		if (length < 4 || length > 4 + BUCKETS)
+			return null;
+		try {
+			Histogram histogram = new Histogram();
+			histogram.count = Long.parseLong(fields.nextToken());
+			histogram.sum = Long.parseLong(fields.nextToken());
+			long min = Long.parseLong(fields.nextToken());
+			long max = Long.parseLong(fields.nextToken());
+			if (histogram.count > 0) {
+				histogram.min = min;
+				histogram.max = max;
+			}
+			for (int i = 0; fields.hasMoreTokens(); i++)
+				histogram.buckets[i] = Long.parseLong(fields.nextToken());
+			return histogram;
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Returns a summary of the values recorded.
+	 */
+	public synchronized String toString() {
+		return "count=" + getCount() + " mean=" + getMean() + " min=" + getMin() //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+				+ " p50=" + getPercentile(50) + " p90=" + getPercentile(90) //$NON-NLS-1$ //$NON-NLS-2$
+				+ " p99=" + getPercentile(99) + " max=" + getMax(); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+}
@@ -0,0 +1,186 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.update.internal.core;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.update.core.ContentReference;
+import org.eclipse.update.core.IFeatureContentProvider;
+import org.eclipse.update.core.IPluginEntry;
+import org.eclipse.update.core.IVerifier;
+import org.eclipse.update.core.InstallMonitor;
+import org.eclipse.update.core.Utilities;
+import org.eclipse.update.core.model.InstallAbortedException;
+import org.eclipse.update.internal.security.JarIntegrityVerifier;
+import org.eclipse.update.internal.security.JarVerifier;
+
+/**
+ * Downloads the plug-in archives of a feature and checks their integrity
+ * while the plug-ins are installed.
+ * <p>
+ * Archives are downloaded by a pool of workers, and each downloaded
+ * plug-in is handed to a second pool that checks the integrity of its
+ * archives. The installing thread takes the plug-ins in order with
+ * {@link #getArchiveReferences(int, IProgressMonitor)}, and keeps the
+ * verification prompts and the content consumers to itself, so the
+ * install log is written by a single thread.
+ * <p>
+ * Progress is reported on the synchronized monitor the pipeline is
+ * created with. The installing thread must report on the same monitor.
+ */
+public class InstallPipeline {
+
+	private static final long POLLING_INTERVAL = 250;
+
+	private IFeatureContentProvider provider;
+	private IVerifier verifier;
+	private IPluginEntry[] plugins;
+	private SynchronizedProgressMonitor monitor;
+
+	private WorkerPool downloadPool;
+	private WorkerPool verificationPool;
+	private boolean closed;
+
+	// per plug-in, the ContentReference[] or the Throwable of its stages
+	private Object[] results;
+
+	/**
+	 * Creates a pipeline for the plug-ins.
+	 *
+	 * @param provider the content provider of the feature
+	 * @param verifier the verifier of the provider, can be <code>null</code>
+	 * @param plugins the plug-ins to install
+	 * @param monitor the monitor shared by the stages
+	 */
+	public InstallPipeline(IFeatureContentProvider provider, IVerifier verifier, IPluginEntry[] plugins, SynchronizedProgressMonitor monitor) {
+		this.provider = provider;
+		this.verifier = verifier;
+		this.plugins = plugins;
+		this.monitor = monitor;
+		this.results = new Object[plugins.length];
+	}
+
+	/**
+	 * Returns whether features are installed through a pipeline.
+	 */
+	public static boolean isEnabled() {
+		UpdateCore plugin = UpdateCore.getPlugin();
+		if (plugin == null)
+			return UpdateCore.DEFAULT_PIPELINED_INSTALL;
+		return plugin.getPluginPreferences().getBoolean(UpdateCore.P_PIPELINED_INSTALL);
+	}
+
+	/**
+	 * Starts downloading the plug-in archives.
+	 */
+	public void start() {
+		downloadPool = new WorkerPool("Plug-in Download", Math.max(1, Math.min(plugins.length, getPreference(UpdateCore.P_MAX_CONNECTIONS_PER_HOST, UpdateCore.DEFAULT_MAX_CONNECTIONS_PER_HOST)))); //$NON-NLS-1$
+		verificationPool = new WorkerPool("Plug-in Verification", Math.max(1, Math.min(plugins.length, getPreference(UpdateCore.P_VERIFICATION_THREADS, UpdateCore.DEFAULT_VERIFICATION_THREADS)))); //$NON-NLS-1$
+		for (int i = 0; i < plugins.length; i++) {
+			final int index = i;
+			downloadPool.schedule(new Runnable() {
+				public void run() {
+					download(index);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Waits until the archives of a plug-in are downloaded and checked.
+	 *
+	 * @param index the index of the plug-in
+	 * @param cancelMonitor polled for cancelation while waiting
+	 * @return the archive references of the plug-in
+	 * @throws CoreException if the download failed
+	 * @throws InstallAbortedException if the install was canceled
+	 */
+	public ContentReference[] getArchiveReferences(int index, IProgressMonitor cancelMonitor) throws CoreException {
+		Object result;
+		synchronized (this) {
+			while ((result = results[index]) == null) {
+				if (cancelMonitor.isCanceled()) {
+					downloadPool.cancel();
+					verificationPool.cancel();
+					throw new InstallAbortedException(Messages.Feature_InstallationCancelled, null);
+				}
+				try {
+					wait(POLLING_INTERVAL);
+				} catch (InterruptedException e) {
+					// check for cancelation
+				}
+			}
+		}
+		if (result instanceof CoreException)
+			throw (CoreException) result;
+		if (result instanceof Throwable)
+			throw Utilities.newCoreException(((Throwable) result).getMessage(), (Throwable) result);
+		return (ContentReference[]) result;
+	}
+
+	/**
+	 * Discards the plug-ins not downloaded yet, and saves the integrity
+	 * results.
+	 */
+	public void shutdown() {
+		synchronized (this) {
+			closed = true;
+			if (downloadPool != null)
+				downloadPool.shutdown();
+			if (verificationPool != null)
+				verificationPool.shutdown();
+		}
+		if (verifier instanceof JarVerifier)
+			JarIntegrityVerifier.getDefault().save();
+	}
+
+	private void download(final int index) {
+		if (monitor.isCanceled())
+			return;
+		final ContentReference[] references;
+		try {
+			references = provider.getPluginEntryArchiveReferences(plugins[index], new InstallMonitor(monitor));
+		} catch (Throwable e) {
+			complete(index, e);
+			return;
+		}
+		if (!(verifier instanceof JarVerifier)) {
+			complete(index, references);
+			return;
+		}
+		synchronized (this) {
+			if (closed)
+				return;
+			verificationPool.schedule(new Runnable() {
+				public void run() {
+					try {
+						((JarVerifier) verifier).verifyIntegrity(references, monitor);
+					} finally {
+						// failures are reported when the archives are verified
+						complete(index, references);
+					}
+				}
+			});
+		}
+	}
+
+	private synchronized void complete(int index, Object result) {
+		results[index] = result;
+		notifyAll();
+	}
+
+	private static int getPreference(String key, int defaultValue) {
+		UpdateCore plugin = UpdateCore.getPlugin();
+		if (plugin == null)
+			return defaultValue;
+		return plugin.getPluginPreferences().getInt(key);
+	}
+}
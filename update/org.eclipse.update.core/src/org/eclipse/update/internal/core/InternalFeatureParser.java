@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2010 IBM Corporation and others.
+ * Copyright (c) 2000, 2013 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -187,10 +187,13 @@ public class InternalFeatureParser extends DefaultHandler {
 	 * @since 2.0
 	 */
 	public FeatureModel parse(InputStream in) throws SAXException, IOException {
+		long start = System.currentTimeMillis();
 		stateStack.push(new Integer(STATE_INITIAL));
 		currentState = ((Integer) stateStack.peek()).intValue();
 		parser.parse(new InputSource(in), this);
-		return getFeatureModel();
+		FeatureModel feature = getFeatureModel();
+		UpdateMetrics.recordTime(UpdateMetrics.FEATURE_PARSE, start);
+		return feature;
 	}
 
 	/**
@@ -14,6 +14,7 @@ import java.io.File;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -47,12 +48,12 @@ public class InternalSiteManager {
 
 	private static Map estimates;
 
-	// cache found sites
-	private static Map sites = new HashMap();
+	// cache found sites, sites may be searched concurrently
+	private static Map sites = Collections.synchronizedMap(new HashMap());
 	// cache http updated url
-	private static Map httpSitesUpdatedUrls = new HashMap();
+	private static Map httpSitesUpdatedUrls = Collections.synchronizedMap(new HashMap());
 	// cache timestamps
-	private static Map siteTimestamps = new HashMap();
+	private static Map siteTimestamps = Collections.synchronizedMap(new HashMap());
 	public static boolean globalUseCache = true;
 
 	// true if an exception occured creating localSite
@@ -363,7 +364,7 @@ public class InternalSiteManager {
 	 * @param time time in seconds
 	 * @param url
 	 */
-	public static void downloaded(long downloadSize, long time, URL url) {
+	public static synchronized void downloaded(long downloadSize, long time, URL url) {
 		if (downloadSize <= 0 || time < 0)
 			return;
 		String host = url.getHost();
@@ -384,7 +385,7 @@ public class InternalSiteManager {
 	 * @param host
 	 * @return long
 	 */
-	public static long getEstimatedTransferRate(String host) {
+	public static synchronized long getEstimatedTransferRate(String host) {
 		if (estimates == null)
 			return 0;
 		Long value = (Long) estimates.get(host);
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2006 IBM Corporation and others.
+ * Copyright (c) 2006, 2013 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -10,12 +10,43 @@
  *******************************************************************************/
 package org.eclipse.update.internal.core;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+
 import org.eclipse.update.core.Feature;
+import org.eclipse.update.core.IIncludedFeatureReference;
+import org.eclipse.update.core.VersionedIdentifier;
+import org.eclipse.update.core.model.FeatureModel;
+import org.eclipse.update.core.model.ImportModel;
+import org.eclipse.update.core.model.IncludedFeatureReferenceModel;
+import org.eclipse.update.core.model.InstallHandlerEntryModel;
+import org.eclipse.update.core.model.NonPluginEntryModel;
+import org.eclipse.update.core.model.PluginEntryModel;
+import org.eclipse.update.core.model.URLEntryModel;
+import org.xml.sax.SAXException;
 
+/**
+ * Feature read from a digest.
+ * <p>
+ * A feature created by {@link DigestScanner} only knows its identifier,
+ * version and environment. It keeps the location of its element in the
+ * digest, and parses it the first time another part of the model is
+ * accessed.
+ */
 public class LiteFeature extends Feature {
-	
+
 	private boolean fullFeature = true;
 
+	// the digest holding the element of this feature, until it is parsed
+	private byte[] digest;
+	private String encoding;
+	private int offset;
+	private int length;
+
 	public boolean isFullFeature() {
 		return fullFeature;
 	}
@@ -24,4 +55,179 @@ public class LiteFeature extends Feature {
 		this.fullFeature = fullFeature;
 	}
 
+	/*
+	 * Defers the parsing of the model to the element found at offset
+	 * in the digest.
+	 */
+	void setDigest(byte[] digest, String encoding, int offset, int length) {
+		this.digest = digest;
+		this.encoding = encoding;
+		this.offset = offset;
+		this.length = length;
+	}
+
+	/*
+	 * Parses the element of this feature in the digest, if not done yet,
+	 * and completes the model with it.
+	 */
+	private synchronized void materialize() {
+		if (digest == null)
+			return;
+		byte[] source = digest;
+		digest = null;
+		try {
+			String declaration = "<?xml version=\"1.0\" encoding=\"" + encoding + "\"?>"; //$NON-NLS-1$ //$NON-NLS-2$
+			InputStream in = new SequenceInputStream(new ByteArrayInputStream(declaration.getBytes("UTF-8")), new ByteArrayInputStream(source, offset, length)); //$NON-NLS-1$
+			InternalFeatureParser parser = new InternalFeatureParser();
+			parser.init(new LiteFeatureFactory());
+			copy(parser.parse(in));
+		} catch (SAXException e) {
+			UpdateCore.log("Unable to parse feature " + getVersionedIdentifier() + " from digest", e); //$NON-NLS-1$ //$NON-NLS-2$
+		} catch (IOException e) {
+			UpdateCore.log("Unable to parse feature " + getVersionedIdentifier() + " from digest", e); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+	}
+
+	private void copy(FeatureModel model) {
+		setLabel(model.getLabelNonLocalized());
+		setProvider(model.getProviderNonLocalized());
+		setImageURLString(model.getImageURLString());
+		setPrimary(model.isPrimary());
+		setExclusive(model.isExclusive());
+		setApplication(model.getApplication());
+		setAffinityFeature(model.getAffinityFeature());
+		setPrimaryPluginID(model.getPrimaryPluginID());
+		setInstallHandlerModel(model.getInstallHandlerModel());
+		setDescriptionModel(model.getDescriptionModel());
+		setCopyrightModel(model.getCopyrightModel());
+		setLicenseModel(model.getLicenseModel());
+		setUpdateSiteEntryModel(model.getUpdateSiteEntryModel());
+		setDiscoverySiteEntryModels(model.getDiscoverySiteEntryModels());
+		setImportModels(model.getImportModels());
+		setPluginEntryModels(model.getPluginEntryModels());
+		setNonPluginEntryModels(model.getNonPluginEntryModels());
+		IIncludedFeatureReference[] includes = model.getFeatureIncluded();
+		for (int i = 0; i < includes.length; i++)
+			addIncludedFeatureReferenceModel((IncludedFeatureReferenceModel) includes[i]);
+	}
+
+	public String getLabel() {
+		materialize();
+		return super.getLabel();
+	}
+
+	public String getLabelNonLocalized() {
+		materialize();
+		return super.getLabelNonLocalized();
+	}
+
+	public String getProvider() {
+		materialize();
+		return super.getProvider();
+	}
+
+	public String getProviderNonLocalized() {
+		materialize();
+		return super.getProviderNonLocalized();
+	}
+
+	public String getImageURLString() {
+		materialize();
+		return super.getImageURLString();
+	}
+
+	public URL getImageURL() {
+		materialize();
+		return super.getImageURL();
+	}
+
+	public boolean isPrimary() {
+		materialize();
+		return super.isPrimary();
+	}
+
+	public boolean isExclusive() {
+		materialize();
+		return super.isExclusive();
+	}
+
+	public String getApplication() {
+		materialize();
+		return super.getApplication();
+	}
+
+	public String getAffinityFeature() {
+		materialize();
+		return super.getAffinityFeature();
+	}
+
+	public String getPrimaryPluginID() {
+		materialize();
+		return super.getPrimaryPluginID();
+	}
+
+	public InstallHandlerEntryModel getInstallHandlerModel() {
+		materialize();
+		return super.getInstallHandlerModel();
+	}
+
+	public URLEntryModel getDescriptionModel() {
+		materialize();
+		return super.getDescriptionModel();
+	}
+
+	public URLEntryModel getCopyrightModel() {
+		materialize();
+		return super.getCopyrightModel();
+	}
+
+	public URLEntryModel getLicenseModel() {
+		materialize();
+		return super.getLicenseModel();
+	}
+
+	public URLEntryModel getUpdateSiteEntryModel() {
+		materialize();
+		return super.getUpdateSiteEntryModel();
+	}
+
+	public URLEntryModel[] getDiscoverySiteEntryModels() {
+		materialize();
+		return super.getDiscoverySiteEntryModels();
+	}
+
+	public ImportModel[] getImportModels() {
+		materialize();
+		return super.getImportModels();
+	}
+
+	public PluginEntryModel[] getPluginEntryModels() {
+		materialize();
+		return super.getPluginEntryModels();
+	}
+
+	public VersionedIdentifier[] getFeatureIncludeVersionedIdentifier() {
+		materialize();
+		return super.getFeatureIncludeVersionedIdentifier();
+	}
+
+	public IIncludedFeatureReference[] getFeatureIncluded() {
+		materialize();
+		return super.getFeatureIncluded();
+	}
+
+	public NonPluginEntryModel[] getNonPluginEntryModels() {
+		materialize();
+		return super.getNonPluginEntryModels();
+	}
+
+	public void resolve(URL base, URL bundleURL) throws MalformedURLException {
+		materialize();
+		super.resolve(base, bundleURL);
+	}
+
+	public void markReadOnly() {
+		materialize();
+		super.markReadOnly();
+	}
 }
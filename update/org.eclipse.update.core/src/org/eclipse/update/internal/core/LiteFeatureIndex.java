@@ -0,0 +1,127 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.update.internal.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.core.runtime.PluginVersionIdentifier;
+import org.eclipse.update.core.VersionedIdentifier;
+
+/**
+ * Index of the features of a digest by identifier.
+ * <p>
+ * The versions of a feature are kept sorted, so the feature matching a
+ * versioned identifier is found with a hash lookup followed by a binary
+ * search.
+ */
+public class LiteFeatureIndex {
+
+	private static final LiteFeature[] EMPTY = new LiteFeature[0];
+
+	private static final Comparator VERSION_ORDER = new Comparator() {
+		public int compare(Object o1, Object o2) {
+			return compareVersions(((LiteFeature) o1).getVersionedIdentifier().getVersion(), ((LiteFeature) o2).getVersionedIdentifier().getVersion());
+		}
+	};
+
+	// features in the order they were added
+	private List features = new ArrayList();
+	// id -> List of LiteFeature, in the order they were added
+	private Map added = new HashMap();
+	// id -> LiteFeature[] sorted by version, computed on demand
+	private Map sorted = new HashMap();
+
+	public LiteFeatureIndex() {
+	}
+
+	public LiteFeatureIndex(LiteFeature[] features) {
+		if (features != null) {
+			for (int i = 0; i < features.length; i++)
+				add(features[i]);
+		}
+	}
+
+	public synchronized void add(LiteFeature feature) {
+		String id = feature.getVersionedIdentifier().getIdentifier();
+		List versions = (List) added.get(id);
+		if (versions == null) {
+			versions = new ArrayList(1);
+			added.put(id, versions);
+		}
+		versions.add(feature);
+		sorted.remove(id);
+		features.add(feature);
+	}
+
+	/**
+	 * Returns the number of features in the index.
+	 */
+	public synchronized int size() {
+		return features.size();
+	}
+
+	/**
+	 * Returns all the features, in the order they were added.
+	 */
+	public synchronized LiteFeature[] getFeatures() {
+		return (LiteFeature[]) features.toArray(new LiteFeature[features.size()]);
+	}
+
+	/**
+	 * Returns the versions of the feature sorted from the oldest to the
+	 * latest. The returned array must not be modified.
+	 */
+	public synchronized LiteFeature[] getFeatures(String id) {
+		LiteFeature[] versions = (LiteFeature[]) sorted.get(id);
+		if (versions == null) {
+			List list = (List) added.get(id);
+			if (list == null)
+				return EMPTY;
+			versions = (LiteFeature[]) list.toArray(new LiteFeature[list.size()]);
+			Arrays.sort(versions, VERSION_ORDER);
+			sorted.put(id, versions);
+		}
+		return versions;
+	}
+
+	/**
+	 * Returns the feature with the identifier and version, or
+	 * <code>null</code>.
+	 */
+	public LiteFeature getFeature(VersionedIdentifier vid) {
+		LiteFeature[] versions = getFeatures(vid.getIdentifier());
+		PluginVersionIdentifier version = vid.getVersion();
+		int low = 0;
+		int high = versions.length - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			int result = compareVersions(versions[middle].getVersionedIdentifier().getVersion(), version);
+			if (result < 0)
+				low = middle + 1;
+			else if (result > 0)
+				high = middle - 1;
+			else
+				return versions[middle];
+		}
+		return null;
+	}
+
+	private static int compareVersions(PluginVersionIdentifier v1, PluginVersionIdentifier v2) {
+		if (v1.equals(v2))
+			return 0;
+		return v1.isGreaterThan(v2) ? 1 : -1;
+	}
+}
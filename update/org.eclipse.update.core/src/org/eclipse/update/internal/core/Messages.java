@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2009 IBM Corporation and others.
+ * Copyright (c) 2000, 2013 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -48,6 +48,7 @@ public final class Messages extends NLS {
 	public static String InstallMonitor_DownloadSizeLong;
 	public static String ProductProvider;
 	public static String JarContentReference_Unpacking;
+	public static String JarEntryExtractor_InvalidArchive;
 	public static String Site_CannotFindCategory;
 	public static String Site_NoCategories;
 	public static String Site_NoContentProvider;
@@ -188,8 +189,8 @@ public final class Messages extends NLS {
 	public static String JarVerificationService_UnsucessfulVerification;
 	public static String JarVerificationService_CancelInstall;
 	public static String UpdateManagerUtils_UnableToLog;
-	public static String ConnectionThreadManager_tooManyConnections;
-	public static String ConnectionThreadManager_unresponsiveURL;
+	public static String ConnectionThreadManager_timedOut;
+	public static String ConnectionThreadManager_shutdown;
 	public static String IncludedFeatureReference_featureUninstalled;
 	public static String ActivityConstraints_warning;
 	public static String ActivityConstraints_rootMessage;
@@ -278,6 +279,7 @@ public final class Messages extends NLS {
 	
 	public static String SiteOptimizer_inputNotSpecified;
 	public static String SiteOptimizer_inputFileNotFound;
+	public static String SiteOptimizer_invalidThreads;
 	public static String SiteCategory_other_label;
 	public static String SiteCategory_other_description;
 
@@ -0,0 +1,380 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.update.internal.core;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Properties;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.update.configurator.ConfiguratorUtils;
+import org.eclipse.update.configurator.IPlatformConfiguration;
+import org.eclipse.update.internal.core.connection.ConnectionFactory;
+import org.eclipse.update.internal.core.connection.HttpResponse;
+import org.eclipse.update.internal.core.connection.IResponse;
+
+/**
+ * Persistent cache of the update site metadata fetched over HTTP:
+ * site manifests, digests and feature archives.
+ * <p>
+ * Each entry keeps the Last-Modified date and the entity tag sent by the
+ * server. A cached entry is revalidated with a conditional GET and only
+ * downloaded again if the server reports a change. Within an update
+ * session, a URL that was already visited is not revalidated, the same
+ * way {@link UpdateManagerUtils#isSameTimestamp(URL, long)} works.
+ * <p>
+ * The cache is stored in the configuration area and is bounded in size;
+ * the least recently used entries are evicted first.
+ */
+public class MetadataCache {
+
+	private static final String CACHE_DIR = "metadata"; //$NON-NLS-1$
+	private static final String INDEX_FILE = "index.properties"; //$NON-NLS-1$
+	private static final String TEMP_SUFFIX = ".tmp"; //$NON-NLS-1$
+	private static final String URL_KEY = ".url"; //$NON-NLS-1$
+	private static final String LAST_MODIFIED_KEY = ".lastModified"; //$NON-NLS-1$
+	private static final String ETAG_KEY = ".etag"; //$NON-NLS-1$
+	private static final String SIZE_KEY = ".size"; //$NON-NLS-1$
+	private static final String ACCESSED_KEY = ".accessed"; //$NON-NLS-1$
+	private static final int BUFFER_SIZE = 8192;
+
+	private static MetadataCache defaultCache;
+	private static boolean initialized;
+
+	private File directory;
+	private long maxSize;
+	private long size;
+	// id -> Entry, least recently used first
+	private LinkedHashMap entries = new LinkedHashMap(16, 0.75f, true);
+
+	private static class Entry {
+		String id;
+		String url;
+		long lastModified;
+		String etag;
+		long size;
+		long accessed;
+	}
+
+	/**
+	 * Returns the cache of the running configuration, or <code>null</code>
+	 * if the cache is disabled or the configuration area is not a local
+	 * directory.
+	 */
+	public static synchronized MetadataCache getDefault() {
+		if (!initialized) {
+			initialized = true;
+			UpdateCore plugin = UpdateCore.getPlugin();
+			if (plugin == null)
+				return null;
+			// the preference is in kilobytes
+			long maxSize = plugin.getPluginPreferences().getInt(UpdateCore.P_METADATA_CACHE_SIZE) * 1024L;
+			File directory = getCacheDirectory();
+			if (maxSize > 0 && directory != null)
+				defaultCache = new MetadataCache(directory, maxSize);
+		}
+		return defaultCache;
+	}
+
+	private static File getCacheDirectory() {
+		IPlatformConfiguration config = ConfiguratorUtils.getCurrentPlatformConfiguration();
+		if (config == null)
+			return null;
+		URL configurationLocation = config.getConfigurationLocation();
+		if (configurationLocation == null || !"file".equalsIgnoreCase(configurationLocation.getProtocol())) //$NON-NLS-1$
+			return null;
+		File path = new File(configurationLocation.getFile());
+		return new File(path.getParentFile(), CACHE_DIR);
+	}
+
+	/**
+	 * Creates a cache in the directory.
+	 * @param directory the cache directory, created when needed
+	 * @param maxSize the maximum size of the cached files, in bytes
+	 */
+	public MetadataCache(File directory, long maxSize) {
+		this.directory = directory;
+		this.maxSize = maxSize;
+		loadIndex();
+	}
+
+	/**
+	 * Returns a local file with the current content of the URL.
+	 * The content is downloaded only if it is not cached yet or the
+	 * server reports that it changed.
+	 *
+	 * @param url the URL of the metadata
+	 * @param monitor the monitor used to cancel the connection,
+	 * can be <code>null</code>
+	 * @return the cached file, or <code>null</code> if the URL is not
+	 * an HTTP URL or the connection was canceled
+	 * @throws IOException if the server returned an error or the
+	 * content could not be cached
+	 * @throws CoreException if the connection could not be opened
+	 */
+	public File getFile(URL url, IProgressMonitor monitor) throws IOException, CoreException {
+		if (!url.getProtocol().startsWith("http")) //$NON-NLS-1$
+			return null;
+
+		String key = url.toExternalForm();
+		Object keyLock = LockManager.getLock(key);
+		synchronized (keyLock) {
+			try {
+				Entry entry = lookup(key);
+				File file = entry == null ? null : new File(directory, entry.id);
+				if (entry != null && UpdateCore.getPlugin().getUpdateSession().isVisited(url))
+					return file;
+
+				URL resolvedURL = URLEncoder.encode(url);
+				IResponse response = ConnectionFactory.get(resolvedURL);
+				if (entry != null)
+					((HttpResponse) response).setCondition(entry.lastModified, entry.etag);
+				if (entry == null || response.getStatusCode() != HttpURLConnection.HTTP_NOT_MODIFIED) {
+					UpdateManagerUtils.checkConnectionResult(response, resolvedURL);
+					InputStream in = response.getInputStream(monitor);
+					// the stream can be null if the user cancels the connection
+					if (in == null)
+						return null;
+					file = store(key, in, response.getLastModified(), ((HttpResponse) response).getETag());
+				} else {
+					response.close();
+				}
+				UpdateCore.getPlugin().getUpdateSession().markVisited(url);
+				return file;
+			} finally {
+				LockManager.returnLock(key);
+			}
+		}
+	}
+
+	/**
+	 * Returns the Last-Modified date the server sent for the cached
+	 * content of the URL, or 0 if it is unknown.
+	 */
+	public synchronized long getLastModified(URL url) {
+		Entry entry = (Entry) entries.get(getId(url.toExternalForm()));
+		return entry == null ? 0 : entry.lastModified;
+	}
+
+	/*
+	 * Returns the valid entry of the URL and marks it as recently used.
+	 */
+	private synchronized Entry lookup(String key) {
+		String id = getId(key);
+		Entry entry = (Entry) entries.get(id);
+		if (entry == null)
+			return null;
+		if (!entry.url.equals(key) || !new File(directory, id).exists()) {
+			// hash collision, or the file was deleted behind our back
+			remove(entry);
+			return null;
+		}
+		entry.accessed = System.currentTimeMillis();
+		return entry;
+	}
+
+	private File store(String key, InputStream in, long lastModified, String etag) throws IOException {
+		String id = getId(key);
+		directory.mkdirs();
+		File temp = new File(directory, id + TEMP_SUFFIX + Thread.currentThread().hashCode());
+		long length = 0;
+		OutputStream out = null;
+		try {
+			out = new FileOutputStream(temp);
+			byte[] buf = new byte[BUFFER_SIZE];
+			int len;
+			while ((len = in.read(buf)) != -1) {
+				out.write(buf, 0, len);
+				length += len;
+			}
+		} catch (IOException e) {
+			if (out != null) {
+				out.close();
+				out = null;
+			}
+			temp.delete();
+			throw e;
+		} finally {
+			if (out != null)
+				out.close();
+			try {
+				in.close();
+			} catch (IOException e) {
+			}
+		}
+
+		synchronized (this) {
+			Entry entry = (Entry) entries.get(id);
+			if (entry != null)
+				remove(entry);
+			File file = new File(directory, id);
+			file.delete();
+			if (!temp.renameTo(file)) {
+				// the previous copy is still in use, hand out the new one uncached
+				temp.deleteOnExit();
+				return temp;
+			}
+			entry = new Entry();
+			entry.id = id;
+			entry.url = key;
+			entry.lastModified = lastModified;
+			entry.etag = etag;
+			entry.size = length;
+			entry.accessed = System.currentTimeMillis();
+			entries.put(id, entry);
+			size += length;
+			evict();
+			saveIndex();
+			return file;
+		}
+	}
+
+	/*
+	 * Deletes the least recently used entries until the cache fits in its
+	 * maximum size. The entry added last is kept even if it is bigger.
+	 */
+	private void evict() {
+		Iterator iter = entries.values().iterator();
+		while (size > maxSize && entries.size() > 1) {
+			Entry entry = (Entry) iter.next();
+			iter.remove();
+			size -= entry.size;
+			new File(directory, entry.id).delete();
+		}
+	}
+
+	private void remove(Entry entry) {
+		entries.remove(entry.id);
+		size -= entry.size;
+		new File(directory, entry.id).delete();
+	}
+
+	private void loadIndex() {
+		File indexFile = new File(directory, INDEX_FILE);
+		if (!indexFile.exists())
+			return;
+		Properties index = new Properties();
+		InputStream in = null;
+		try {
+			in = new FileInputStream(indexFile);
+			index.load(in);
+		} catch (IOException e) {
+			UpdateCore.warn("Unable to read metadata cache index " + indexFile, e); //$NON-NLS-1$
+			return;
+		} finally {
+			if (in != null)
+				try {
+					in.close();
+				} catch (IOException e) {
+				}
+		}
+
+		List loaded = new ArrayList();
+		for (Enumeration keys = index.propertyNames(); keys.hasMoreElements();) {
+			String name = (String) keys.nextElement();
+			if (!name.endsWith(URL_KEY))
+				continue;
+			String id = name.substring(0, name.length() - URL_KEY.length());
+			try {
+				Entry entry = new Entry();
+				entry.id = id;
+				entry.url = index.getProperty(name);
+				entry.lastModified = Long.parseLong(index.getProperty(id + LAST_MODIFIED_KEY));
+				entry.etag = index.getProperty(id + ETAG_KEY);
+				entry.size = Long.parseLong(index.getProperty(id + SIZE_KEY));
+				entry.accessed = Long.parseLong(index.getProperty(id + ACCESSED_KEY));
+				if (new File(directory, id).exists())
+					loaded.add(entry);
+			} catch (RuntimeException e) {
+				// corrupted entry, the file is downloaded again
+				UpdateCore.warn("Invalid metadata cache entry " + id, e); //$NON-NLS-1$
+			}
+		}
+		// restore the access order
+		Collections.sort(loaded, new Comparator() {
+			public int compare(Object o1, Object o2) {
+				long accessed1 = ((Entry) o1).accessed;
+				long accessed2 = ((Entry) o2).accessed;
+				return accessed1 < accessed2 ? -1 : (accessed1 == accessed2 ? 0 : 1);
+			}
+		});
+		for (int i = 0; i < loaded.size(); i++) {
+			Entry entry = (Entry) loaded.get(i);
+			entries.put(entry.id, entry);
+			size += entry.size;
+		}
+		// the maximum size may have been lowered
+		evict();
+	}
+
+	private void saveIndex() {
+		Properties index = new Properties();
+		for (Iterator iter = entries.values().iterator(); iter.hasNext();) {
+			Entry entry = (Entry) iter.next();
+			index.put(entry.id + URL_KEY, entry.url);
+			index.put(entry.id + LAST_MODIFIED_KEY, Long.toString(entry.lastModified));
+			if (entry.etag != null)
+				index.put(entry.id + ETAG_KEY, entry.etag);
+			index.put(entry.id + SIZE_KEY, Long.toString(entry.size));
+			index.put(entry.id + ACCESSED_KEY, Long.toString(entry.accessed));
+		}
+		File indexFile = new File(directory, INDEX_FILE);
+		OutputStream out = null;
+		try {
+			out = new FileOutputStream(indexFile);
+			index.store(out, null);
+		} catch (IOException e) {
+			UpdateCore.warn("Unable to save metadata cache index " + indexFile, e); //$NON-NLS-1$
+		} finally {
+			if (out != null)
+				try {
+					out.close();
+				} catch (IOException e) {
+				}
+		}
+	}
+
+	/*
+	 * Returns the name of the cached file of the URL.
+	 */
+	private static String getId(String key) {
+		try {
+			byte[] hash = MessageDigest.getInstance("MD5").digest(key.getBytes("UTF-8")); //$NON-NLS-1$ //$NON-NLS-2$
+			StringBuffer id = new StringBuffer(hash.length * 2);
+			for (int i = 0; i < hash.length; i++) {
+				id.append(Character.forDigit((hash[i] >> 4) & 0xF, 16));
+				id.append(Character.forDigit(hash[i] & 0xF, 16));
+			}
+			return id.toString();
+		} catch (NoSuchAlgorithmException e) {
+			// entries record their URL, so collisions are detected
+			return Integer.toHexString(key.hashCode());
+		} catch (IOException e) {
+			return Integer.toHexString(key.hashCode());
+		}
+	}
+}
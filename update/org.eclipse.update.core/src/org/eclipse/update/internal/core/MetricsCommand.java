@@ -0,0 +1,40 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.update.internal.core;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.update.standalone.ScriptedCommand;
+
+/**
+ * Prints the metrics recorded by the update operations, and optionally
+ * discards them.
+ */
+public class MetricsCommand extends ScriptedCommand {
+
+	private boolean reset;
+
+	/**
+	 * @param reset if "true", the metrics are discarded once printed
+	 */
+	public MetricsCommand(String reset) {
+		this.reset = "true".equals(reset); //$NON-NLS-1$
+	}
+
+	public boolean run(IProgressMonitor monitor) {
+		if (UpdateMetrics.getNames().length == 0)
+			System.out.println("No metrics recorded"); //$NON-NLS-1$
+		else
+			UpdateMetrics.dump(System.out);
+		if (reset)
+			UpdateMetrics.reset();
+		return true;
+	}
+}
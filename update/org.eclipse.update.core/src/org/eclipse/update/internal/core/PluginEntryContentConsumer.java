@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2006 IBM Corporation and others.
+ * Copyright (c) 2000, 2013 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -40,6 +40,14 @@ public class PluginEntryContentConsumer extends ContentConsumer {
 		}
 	}
 
+	/**
+	 * Returns whether entries can be stored from several threads at the
+	 * same time.
+	 */
+	public boolean canStoreConcurrently() {
+		return contentConsumer instanceof SiteFilePluginContentConsumer;
+	}
+
 	/*
 	 * @see ContentConsumer#close()
 	 */
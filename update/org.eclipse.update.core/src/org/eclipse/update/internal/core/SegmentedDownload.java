@@ -0,0 +1,317 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.update.internal.core;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.URL;
+import java.util.Properties;
+import java.util.StringTokenizer;
+
+import org.eclipse.osgi.util.NLS;
+import org.eclipse.update.core.InstallMonitor;
+import org.eclipse.update.internal.core.connection.ConnectionFactory;
+import org.eclipse.update.internal.core.connection.HttpResponse;
+import org.eclipse.update.internal.core.connection.IResponse;
+
+/**
+ * Downloads an HTTP resource as several byte ranges fetched in
+ * parallel. Each segment writes at its own position in the local
+ * file through its own <code>RandomAccessFile</code>.
+ * <p>
+ * The progress of every segment is kept in a state file next to the
+ * local file, so a download that was interrupted or canceled resumes
+ * each segment where it stopped instead of starting over.
+ */
+public class SegmentedDownload {
+
+	// archives smaller than 1MB are downloaded as a single stream
+	public static final long MIN_SIZE = 1024 * 1024;
+
+	private static final String STATE_SUFFIX = ".segments"; //$NON-NLS-1$
+	private static final String STATE_URL = "url"; //$NON-NLS-1$
+	private static final String STATE_LENGTH = "length"; //$NON-NLS-1$
+	private static final String STATE_LAST_MODIFIED = "lastModified"; //$NON-NLS-1$
+	private static final String STATE_SEGMENTS = "segments"; //$NON-NLS-1$
+	private static final String STATE_SEGMENT = "segment."; //$NON-NLS-1$
+
+	private static final int BUFFER_SIZE = 8192;
+	// the state is saved each time a segment downloaded that many bytes
+	private static final long CHECKPOINT_SIZE = 256 * 1024;
+	// poll for cancelation every 250 ms
+	private static final long POLLING_INTERVAL = 250;
+
+	private URL url;
+	private File file;
+	private long length;
+	private long lastModified;
+	// segment i covers bytes starts[i] to ends[i] included,
+	// the bytes before positions[i] are already in the file
+	private long[] starts;
+	private long[] ends;
+	private long[] positions;
+
+	/**
+	 * Returns the number of segments the archives are split in,
+	 * 1 if segmented downloads are disabled.
+	 */
+	public static int getSegmentCount() {
+		UpdateCore plugin = UpdateCore.getPlugin();
+		if (plugin == null)
+			return 1;
+		return plugin.getPluginPreferences().getInt(UpdateCore.P_DOWNLOAD_SEGMENTS);
+	}
+
+	/**
+	 * Returns whether the file is a partial segmented download.
+	 */
+	public static boolean hasState(File file) {
+		return getStateFile(file).exists();
+	}
+
+	/**
+	 * Returns the partial segmented download saved for the file, or
+	 * <code>null</code> if the state does not match the resource anymore.
+	 * A state that does not match is deleted.
+	 */
+	public static SegmentedDownload resume(File file, URL url, long length, long lastModified) {
+		File stateFile = getStateFile(file);
+		Properties state = new Properties();
+		InputStream in = null;
+		try {
+			in = new FileInputStream(stateFile);
+			state.load(in);
+			if (url.toExternalForm().equals(state.getProperty(STATE_URL))
+					&& length == Long.parseLong(state.getProperty(STATE_LENGTH))
+					&& lastModified == Long.parseLong(state.getProperty(STATE_LAST_MODIFIED))) {
+				int count = Integer.parseInt(state.getProperty(STATE_SEGMENTS));
+				SegmentedDownload download = new SegmentedDownload(url, file, length, lastModified);
+				download.allocate(count);
+				for (int i = 0; i < count; i++) {
+					StringTokenizer values = new StringTokenizer(state.getProperty(STATE_SEGMENT + i), ","); //$NON-NLS-1$
+					download.starts[i] = Long.parseLong(values.nextToken());
+					download.ends[i] = Long.parseLong(values.nextToken());
+					download.positions[i] = Long.parseLong(values.nextToken());
+				}
+				return download;
+			}
+		} catch (IOException e) {
+			UpdateCore.warn("Unable to read download state " + stateFile, e); //$NON-NLS-1$
+		} catch (RuntimeException e) {
+			// corrupted state
+			UpdateCore.warn("Invalid download state " + stateFile, e); //$NON-NLS-1$
+		} finally {
+			if (in != null)
+				try {
+					in.close();
+				} catch (IOException e) {
+				}
+		}
+		stateFile.delete();
+		return null;
+	}
+
+	/**
+	 * Deletes a partial segmented download and its state.
+	 */
+	public static void discard(File file) {
+		getStateFile(file).delete();
+		file.delete();
+	}
+
+	/**
+	 * Creates a download of <code>length</code> bytes split in
+	 * <code>count</code> segments.
+	 */
+	public SegmentedDownload(URL url, File file, long length, long lastModified, int count) {
+		this(url, file, length, lastModified);
+		count = (int) Math.max(1, Math.min(count, length / BUFFER_SIZE));
+		allocate(count);
+		long segmentSize = length / count;
+		for (int i = 0; i < count; i++) {
+			starts[i] = i * segmentSize;
+			ends[i] = (i == count - 1) ? length - 1 : (i + 1) * segmentSize - 1;
+			positions[i] = starts[i];
+		}
+	}
+
+	private SegmentedDownload(URL url, File file, long length, long lastModified) {
+		this.url = url;
+		this.file = file;
+		this.length = length;
+		this.lastModified = lastModified;
+	}
+
+	private void allocate(int count) {
+		starts = new long[count];
+		ends = new long[count];
+		positions = new long[count];
+	}
+
+	private static File getStateFile(File file) {
+		return new File(file.getPath() + STATE_SUFFIX);
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * Returns the number of bytes already in the local file.
+	 */
+	public synchronized long getDownloadedSize() {
+		long size = 0;
+		for (int i = 0; i < positions.length; i++)
+			size += positions[i] - starts[i];
+		return size;
+	}
+
+	/**
+	 * Downloads the missing bytes of every segment in parallel.
+	 *
+	 * @param monitor the install monitor, can be <code>null</code>
+	 * @return -1 if the file is complete, or the number of bytes
+	 * downloaded so far if the download failed or was canceled. The
+	 * state is then saved so the download can be resumed.
+	 */
+	public long download(final InstallMonitor monitor) {
+		WorkerPool pool = new WorkerPool("Segmented Download", positions.length); //$NON-NLS-1$
+		SegmentDownloader[] downloaders = new SegmentDownloader[positions.length];
+		try {
+			saveState();
+			for (int i = 0; i < downloaders.length; i++) {
+				if (positions[i] > ends[i])
+					continue;
+				downloaders[i] = new SegmentDownloader(i, monitor);
+				pool.schedule(downloaders[i]);
+			}
+			while (!pool.join(POLLING_INTERVAL)) {
+				if (monitor != null && monitor.isCanceled())
+					pool.cancel();
+			}
+		} finally {
+			pool.shutdown();
+		}
+
+		for (int i = 0; i < downloaders.length; i++) {
+			if (downloaders[i] != null && downloaders[i].exception != null)
+				UpdateCore.log(Messages.UpdateManagerUtils_copy + getDownloadedSize(), downloaders[i].exception);
+		}
+		if (getDownloadedSize() == length) {
+			getStateFile(file).delete();
+			return -1;
+		}
+		saveState();
+		return getDownloadedSize();
+	}
+
+	private synchronized void saveState() {
+		Properties state = new Properties();
+		state.put(STATE_URL, url.toExternalForm());
+		state.put(STATE_LENGTH, Long.toString(length));
+		state.put(STATE_LAST_MODIFIED, Long.toString(lastModified));
+		state.put(STATE_SEGMENTS, Integer.toString(positions.length));
+		for (int i = 0; i < positions.length; i++)
+			state.put(STATE_SEGMENT + i, starts[i] + "," + ends[i] + "," + positions[i]); //$NON-NLS-1$ //$NON-NLS-2$
+		File stateFile = getStateFile(file);
+		OutputStream out = null;
+		try {
+			out = new FileOutputStream(stateFile);
+			state.store(out, null);
+		} catch (IOException e) {
+			UpdateCore.warn("Unable to save download state " + stateFile, e); //$NON-NLS-1$
+		} finally {
+			if (out != null)
+				try {
+					out.close();
+				} catch (IOException e) {
+				}
+		}
+	}
+
+	private synchronized void setPosition(int segment, long position) {
+		positions[segment] = position;
+	}
+
+	/*
+	 * Fetches one byte range and writes it at its position.
+	 */
+	private class SegmentDownloader implements Runnable {
+		private int segment;
+		private InstallMonitor monitor;
+		IOException exception;
+
+		SegmentDownloader(int segment, InstallMonitor monitor) {
+			this.segment = segment;
+			this.monitor = monitor;
+		}
+
+		public void run() {
+			long position = positions[segment];
+			long end = ends[segment];
+			IResponse response = null;
+			InputStream in = null;
+			RandomAccessFile out = null;
+			try {
+				response = ConnectionFactory.get(URLEncoder.encode(url));
+				if (!(response instanceof HttpResponse))
+					throw new IOException(Messages.HttpResponse_rangeExpected);
+				// the response checks that the server returned the requested range
+				((HttpResponse) response).setRange(position, end);
+				in = response.getInputStream();
+				out = new RandomAccessFile(file, "rw"); //$NON-NLS-1$
+				out.seek(position);
+
+				byte[] buf = new byte[BUFFER_SIZE];
+				long checkpoint = position + CHECKPOINT_SIZE;
+				while (position <= end) {
+					if (monitor != null && monitor.isCanceled())
+						return;
+					int len = in.read(buf, 0, (int) Math.min(buf.length, end - position + 1));
+					if (len == -1)
+						throw new IOException(NLS.bind(Messages.UpdateManagerUtils_inputStreamEnded, (new String[] { String.valueOf(position - starts[segment]), String.valueOf(end - starts[segment] + 1) })));
+					out.write(buf, 0, len);
+					position += len;
+					setPosition(segment, position);
+					if (monitor != null) {
+						synchronized (monitor) {
+							monitor.incrementCount(len);
+						}
+					}
+					if (position >= checkpoint) {
+						saveState();
+						checkpoint = position + CHECKPOINT_SIZE;
+					}
+				}
+			} catch (IOException e) {
+				exception = e;
+			} finally {
+				if (out != null)
+					try {
+						out.close();
+					} catch (IOException e) {
+					}
+				if (in != null)
+					try {
+						in.close();
+					} catch (IOException e) {
+					}
+				else if (response != null)
+					response.close();
+			}
+		}
+	}
+}
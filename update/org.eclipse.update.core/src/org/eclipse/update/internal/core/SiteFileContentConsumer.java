@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2008 IBM Corporation and others.
+ * Copyright (c) 2000, 2013 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -160,6 +160,7 @@ public class SiteFileContentConsumer extends SiteContentConsumer {
 		//rename file back 
 		if (newPath != null) {
 			ErrorRecoveryLog.getLog().appendPath(ErrorRecoveryLog.RENAME_ENTRY, newPath);
+			ErrorRecoveryLog.getLog().flush();
 			boolean sucess = false;
 			File fileToRename = new File(newPath);
 			if (fileToRename.exists()) {
@@ -226,6 +227,7 @@ public class SiteFileContentConsumer extends SiteContentConsumer {
 		//Remove feature.xml first if it exists
 		if (oldPath != null) {
 			ErrorRecoveryLog.getLog().appendPath(ErrorRecoveryLog.DELETE_ENTRY, oldPath);
+			ErrorRecoveryLog.getLog().flush();
 			File fileToDelete = new File(oldPath);
 			if (fileToDelete.exists()) {
 				sucess = fileToDelete.delete();
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2005 IBM Corporation and others.
+ * Copyright (c) 2000, 2013 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -86,6 +86,7 @@ public class SiteFilePackedPluginContentConsumer extends ContentConsumer {
 		if (tempPath != null) {
 			// rename file 
 			ErrorRecoveryLog.getLog().appendPath(ErrorRecoveryLog.RENAME_ENTRY, tempPath);
+			ErrorRecoveryLog.getLog().flush();
 			File fileToRename = new File(tempPath);
 			boolean sucess = false;
 			if (fileToRename.exists()) {
@@ -118,6 +119,7 @@ public class SiteFilePackedPluginContentConsumer extends ContentConsumer {
 		// delete plugin.jar
 		if (jarPath != null) {
 			ErrorRecoveryLog.getLog().appendPath(ErrorRecoveryLog.DELETE_ENTRY, jarPath);
+			ErrorRecoveryLog.getLog().flush();
 			File fileToRemove = new File(jarPath);
 
 			if (fileToRemove.exists()) {
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2006 IBM Corporation and others.
+ * Copyright (c) 2000, 2013 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -83,13 +83,18 @@ public class SiteFilePluginContentConsumer extends ContentConsumer {
 					throw Utilities.newCoreException(NLS.bind(Messages.UpdateManagerUtils_FileAlreadyExists, (new Object[] { localFile })), null);
 				}
 				pluginPath = ErrorRecoveryLog.getLocalRandomIdentifier(pluginPath);
-				renames.put(pluginPath, originalName);
-				ErrorRecoveryLog.getLog().appendPath(logEntry, pluginPath);
+				// entries may be stored concurrently
+				synchronized (this) {
+					renames.put(pluginPath, originalName);
+					ErrorRecoveryLog.getLog().appendPath(logEntry, pluginPath);
+				}
 			}
 			//
 			UpdateManagerUtils.copyToLocal(inStream, pluginPath, null);
 			UpdateManagerUtils.checkPermissions(contentReference, pluginPath); // 20305
-			installedFiles.add(pluginPath);
+			synchronized (this) {
+				installedFiles.add(pluginPath);
+			}
 		} catch (IOException e) {
 			throw Utilities.newCoreException(NLS.bind(Messages.GlobalConsumer_ErrorCreatingFile, (new String[] { pluginPath })), e);
 		} finally {
@@ -113,12 +118,17 @@ public class SiteFilePluginContentConsumer extends ContentConsumer {
 			return;
 		}
 
+		// log all the renames at once
+		for(Iterator it = renames.keySet().iterator(); it.hasNext();){
+			ErrorRecoveryLog.getLog().appendPath(ErrorRecoveryLog.RENAME_ENTRY, (String) it.next());
+		}
+		ErrorRecoveryLog.getLog().flush();
+
 		for(Iterator it = renames.entrySet().iterator(); it.hasNext();){
 			// rename file 
 			Map.Entry entry = (Map.Entry)it.next();
 			String temporary = (String) entry.getKey();
 			String original = (String) entry.getValue();
-			ErrorRecoveryLog.getLog().appendPath(ErrorRecoveryLog.RENAME_ENTRY, temporary);
 			File fileToRename = new File(temporary);
 			boolean sucess = false;
 			if (fileToRename.exists()) {
@@ -154,6 +164,7 @@ public class SiteFilePluginContentConsumer extends ContentConsumer {
 			String originalName = (String) it.next();
 
 			ErrorRecoveryLog.getLog().appendPath(ErrorRecoveryLog.DELETE_ENTRY, originalName);
+			ErrorRecoveryLog.getLog().flush();
 			File fileToRemove = new File(originalName);
 			if (fileToRemove.exists()) {
 				if(!fileToRemove.delete()){
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2006 IBM Corporation and others.
+ * Copyright (c) 2000, 2013 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -10,6 +10,8 @@
  *******************************************************************************/
 package org.eclipse.update.internal.core;
 
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.MalformedURLException;
@@ -69,12 +71,23 @@ public class SiteURLFactory extends BaseSiteFactory implements ISiteFactoryExten
 		try {
 			SiteURLContentProvider contentProvider = new SiteURLContentProvider(url);
 	
-			URL resolvedURL = URLEncoder.encode(url);
-			IResponse response = ConnectionFactory.get(resolvedURL);
-			UpdateManagerUtils.checkConnectionResult(response, resolvedURL);
-			siteStream = response.getInputStream(monitor);
-			// the stream can be null if the user cancels the connection
-			if (siteStream==null) return null;
+			long lastModified;
+			MetadataCache cache = MetadataCache.getDefault();
+			File cachedSite = cache == null ? null : cache.getFile(url, monitor);
+			if (cachedSite != null) {
+				siteStream = new FileInputStream(cachedSite);
+				lastModified = cache.getLastModified(url);
+			} else {
+				if (monitor != null && monitor.isCanceled())
+					return null;
+				URL resolvedURL = URLEncoder.encode(url);
+				IResponse response = ConnectionFactory.get(resolvedURL);
+				UpdateManagerUtils.checkConnectionResult(response, resolvedURL);
+				siteStream = response.getInputStream(monitor);
+				// the stream can be null if the user cancels the connection
+				if (siteStream==null) return null;
+				lastModified = response.getLastModified();
+			}
 
 			SiteModelFactory factory = this;
 			site = (Site) factory.parseSite(siteStream);
@@ -86,7 +99,7 @@ public class SiteURLFactory extends BaseSiteFactory implements ISiteFactoryExten
 			/*SiteWithTimestamp siteWithTimestamp = new SiteWithTimestamp(site);
 			siteWithTimestamp.setTimestamp( new Date(response.getLastModified()));
 			site = siteWithTimestamp;*/
-			((SiteWithTimestamp)site).setTimestamp( new Date(response.getLastModified()));
+			((SiteWithTimestamp)site).setTimestamp( new Date(lastModified));
 		} catch (MalformedURLException e) {
 			throw Utilities.newCoreException(NLS.bind(Messages.SiteURLFactory_UnableToCreateURL, (new String[] { url == null ? "" : url.toExternalForm() })), e); //$NON-NLS-1$
 		} catch (IOException e) {
@@ -0,0 +1,68 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.update.internal.core;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.ProgressMonitorWrapper;
+
+/**
+ * Progress monitor that serializes the calls made to the wrapped
+ * monitor, so that worker threads can report progress on a
+ * {@link org.eclipse.core.runtime.SubProgressMonitor} created
+ * on it.
+ */
+public class SynchronizedProgressMonitor extends ProgressMonitorWrapper {
+
+	public SynchronizedProgressMonitor(IProgressMonitor monitor) {
+		super(monitor);
+	}
+
+	public synchronized void beginTask(String name, int totalWork) {
+		super.beginTask(name, totalWork);
+	}
+
+	public synchronized void clearBlocked() {
+		super.clearBlocked();
+	}
+
+	public synchronized void done() {
+		super.done();
+	}
+
+	public synchronized void internalWorked(double work) {
+		super.internalWorked(work);
+	}
+
+	public synchronized boolean isCanceled() {
+		return super.isCanceled();
+	}
+
+	public synchronized void setBlocked(IStatus reason) {
+		super.setBlocked(reason);
+	}
+
+	public synchronized void setCanceled(boolean b) {
+		super.setCanceled(b);
+	}
+
+	public synchronized void setTaskName(String name) {
+		super.setTaskName(name);
+	}
+
+	public synchronized void subTask(String name) {
+		super.subTask(name);
+	}
+
+	public synchronized void worked(int work) {
+		super.worked(work);
+	}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2008 IBM Corporation and others.
+ * Copyright (c) 2000, 2013 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -40,16 +40,44 @@ public class UpdateCore extends Plugin {
 	public static boolean DEBUG_SHOW_WEB;
 	public static boolean DEBUG_SHOW_IHANDLER;
 	public static boolean DEBUG_SHOW_RECONCILER;
+	public static boolean DEBUG_SHOW_CONNECTION;
 		
 	private static final String PREFIX = "org.eclipse.update.core"; //$NON-NLS-1$
 	public static final String P_HISTORY_SIZE = PREFIX + ".historySize"; //$NON-NLS-1$
 	public static final String P_CHECK_SIGNATURE = PREFIX + ".checkSignature"; //$NON-NLS-1$
 	public static final String P_AUTOMATICALLY_CHOOSE_MIRROR =  PREFIX + ".automaticallyChooseMirror"; //$NON-NLS-1$
 	public static final String P_UPDATE_VERSIONS = PREFIX + ".updateVersions"; //$NON-NLS-1$
+	public static final String P_SEARCH_THREADS = PREFIX + ".searchThreads"; //$NON-NLS-1$
+	public static final String P_MAX_CONNECTIONS = PREFIX + ".maxConnections"; //$NON-NLS-1$
+	public static final String P_MAX_CONNECTIONS_PER_HOST = PREFIX + ".maxConnectionsPerHost"; //$NON-NLS-1$
+	public static final String P_DOWNLOAD_SEGMENTS = PREFIX + ".downloadSegments"; //$NON-NLS-1$
+	public static final String P_METADATA_CACHE_SIZE = PREFIX + ".metadataCacheSize"; //$NON-NLS-1$
+	public static final String P_VERIFICATION_THREADS = PREFIX + ".verificationThreads"; //$NON-NLS-1$
+	public static final String P_PIPELINED_INSTALL = PREFIX + ".pipelinedInstall"; //$NON-NLS-1$
+	public static final String P_ARTIFACT_CACHE_SIZE = PREFIX + ".artifactCacheSize"; //$NON-NLS-1$
+	public static final String P_BATCH_DOWNLOAD_THREADS = PREFIX + ".batchDownloadThreads"; //$NON-NLS-1$
+	public static final String P_EXTRACTION_THREADS = PREFIX + ".extractionThreads"; //$NON-NLS-1$
 	public static final String EQUIVALENT_VALUE = "equivalent"; //$NON-NLS-1$
 	public static final String COMPATIBLE_VALUE = "compatible"; //$NON-NLS-1$
 	
 	public static int DEFAULT_HISTORY = 100;//Integer.MAX_VALUE;
+	// sites are searched one at a time unless configured otherwise
+	public static int DEFAULT_SEARCH_THREADS = 1;
+	public static int DEFAULT_MAX_CONNECTIONS = 9;
+	public static int DEFAULT_MAX_CONNECTIONS_PER_HOST = 4;
+	// archives are downloaded as a single stream unless configured otherwise
+	public static int DEFAULT_DOWNLOAD_SEGMENTS = 1;
+	// size of the site metadata cache, in kilobytes
+	public static int DEFAULT_METADATA_CACHE_SIZE = 20480;
+	public static int DEFAULT_VERIFICATION_THREADS = 4;
+	// plug-ins are downloaded before any of them is installed unless configured otherwise
+	public static boolean DEFAULT_PIPELINED_INSTALL = false;
+	// size of the downloaded archive cache, in kilobytes
+	public static int DEFAULT_ARTIFACT_CACHE_SIZE = 262144;
+	// the features of a batch are downloaded one at a time unless configured otherwise
+	public static int DEFAULT_BATCH_DOWNLOAD_THREADS = 1;
+	// the entries of an unpacked plug-in are written one at a time unless configured otherwise
+	public static int DEFAULT_EXTRACTION_THREADS = 1;
 	
 	//The shared instance.
 	private static UpdateCore plugin;
@@ -239,6 +267,7 @@ public class UpdateCore extends Plugin {
 			DEBUG_SHOW_WEB = getBooleanDebugOption("org.eclipse.update.core/debug/web", false); //$NON-NLS-1$
 			DEBUG_SHOW_IHANDLER = getBooleanDebugOption("org.eclipse.update.core/debug/installhandler", false); //$NON-NLS-1$
 			DEBUG_SHOW_RECONCILER = getBooleanDebugOption("org.eclipse.update.core/debug/reconciler", false); //$NON-NLS-1$
+			DEBUG_SHOW_CONNECTION = getBooleanDebugOption("org.eclipse.update.core/debug/connection", false); //$NON-NLS-1$
 		}
 		
 		//
@@ -260,8 +289,10 @@ public class UpdateCore extends Plugin {
 		Utilities.shutdown(); // cleanup temp area
 		if (log!=null)
 			log.shutdown();
+		UpdateMetrics.save();
+		ArtifactCache.shutdown();
 		
-		ConnectionThreadManagerFactory.getConnectionManager().shutdown();
+		ConnectionThreadManagerFactory.shutdown();
 
 		
 		this.context = null;
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2005, 2009 IBM Corporation and others.
+ * Copyright (c) 2005, 2013 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -14,8 +14,11 @@ package org.eclipse.update.internal.core;
 import org.eclipse.update.core.IUpdateConstants;
 
 import java.io.*;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.channels.FileChannel;
 import java.util.*;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.Platform;
@@ -58,9 +61,15 @@ public class UpdateManagerUtils {
 	private static Map urlFileMap;
 
 	private static Map localFileFragmentMap;
-	private static Stack bufferPool;
-	private static final int BUFFER_SIZE = 4096; // 4kbytes
+	// a buffer per thread, taken while a copy is running
+	private static final ThreadLocal buffers = new ThreadLocal();
+	private static final int BUFFER_SIZE = 65536; // 64kbytes
+	private static final int TRANSFER_SIZE = 1048576; // 1Mbytes
 	private static final int INCREMENT_SIZE = 10240; // 10kbytes
+	private static Boolean fileChannels;
+	private static boolean linkInitialized;
+	private static Method createLink;
+	private static Method toPath;
 	/**
 	 * return the urlString if it is a absolute URL
 	 * otherwise, return the default URL if the urlString is null
@@ -764,6 +773,8 @@ public class UpdateManagerUtils {
 	 * @since 2.0
 	 */
 	public static long copy(InputStream is, OutputStream os, InstallMonitor monitor, long expectedLength) {
+		if (is instanceof FileInputStream && os instanceof FileOutputStream && hasFileChannels())
+			return FileChannelTransfer.copy((FileInputStream) is, (FileOutputStream) os, monitor, expectedLength);
 		byte[] buf = getBuffer();
 		long offset=0;
 		try {
@@ -806,22 +817,170 @@ public class UpdateManagerUtils {
 		}
 	}
 
-	private static synchronized byte[] getBuffer() {
-		if (bufferPool == null) {
-			return new byte[BUFFER_SIZE];
+	/**
+	 * Makes the target file a copy of the source file. The target is a
+	 * hard link to the source when the JRE and the file system support it,
+	 * so neither file may be modified afterwards.
+	 * 
+	 * @param source the file to copy
+	 * @param target the copy, replaced if it exists
+	 * @throws IOException if the file could not be copied
+	 */
+	public static void linkOrCopy(File source, File target) throws IOException {
+		target.delete();
+		if (!link(source, target))
+			copyFile(source, target);
+	}
+
+	/**
+	 * Copies the content of the source file to the target file. The
+	 * content is transferred by the file system, without going through
+	 * the Java heap, when the JRE provides file channels.
+	 * 
+	 * @param source the file to copy
+	 * @param target the copy, overwritten if it exists
+	 * @throws IOException if the file could not be copied
+	 */
+	public static void copyFile(File source, File target) throws IOException {
+		if (hasFileChannels()) {
+			FileChannelTransfer.copy(source, target);
+			return;
+		}
+		InputStream in = new FileInputStream(source);
+		try {
+			OutputStream out = new FileOutputStream(target);
+			byte[] buf = getBuffer();
+			try {
+				int len;
+				while ((len = in.read(buf)) != -1)
+					out.write(buf, 0, len);
+			} finally {
+				freeBuffer(buf);
+				out.close();
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	private static synchronized boolean hasFileChannels() {
+		if (fileChannels == null) {
+			try {
+				Class.forName("java.nio.channels.FileChannel"); //$NON-NLS-1$
+				fileChannels = Boolean.TRUE;
+			} catch (ClassNotFoundException e) {
+				// Foundation JRE
+				fileChannels = Boolean.FALSE;
+			}
 		}
+		return fileChannels.booleanValue();
+	}
 
+	/*
+	 * Only loaded when java.nio is available.
+	 */
+	private static class FileChannelTransfer {
+		/*
+		 * Same contract as UpdateManagerUtils.copy(InputStream, OutputStream, InstallMonitor, long).
+		 */
+		static long copy(FileInputStream is, FileOutputStream os, InstallMonitor monitor, long expectedLength) {
+			long offset = 0;
+			try {
+				FileChannel inChannel = is.getChannel();
+				FileChannel outChannel = os.getChannel();
+				long position = inChannel.position();
+				long remaining = inChannel.size() - position;
+				if (expectedLength > 0 && remaining > expectedLength)
+					remaining = expectedLength;
+				while (offset < remaining) {
+					long transferred = inChannel.transferTo(position + offset, Math.min(TRANSFER_SIZE, remaining - offset), outChannel);
+					if (transferred <= 0)
+						break;
+					offset += transferred;
+					if (monitor != null) {
+						monitor.incrementCount(transferred);
+						if (monitor.isCanceled())
+							return offset;
+					}
+				}
+				inChannel.position(position + offset);
+				if (expectedLength > 0 && offset != expectedLength)
+					throw new IOException(NLS.bind(Messages.UpdateManagerUtils_inputStreamEnded, (new String[] { String.valueOf(offset), String.valueOf(expectedLength) })));
+				return -1;
+			} catch (IOException e) {
+				// Log the actual error, as this is no longer
+				// passed up the calling stack
+				UpdateCore.log(Messages.UpdateManagerUtils_copy + offset, e);
+				return offset;
+			}
+		}
+
+		static void copy(File source, File target) throws IOException {
+			FileInputStream in = new FileInputStream(source);
+			try {
+				FileOutputStream out = new FileOutputStream(target);
+				try {
+					FileChannel inChannel = in.getChannel();
+					FileChannel outChannel = out.getChannel();
+					long size = inChannel.size();
+					long position = 0;
+					while (position < size)
+						position += inChannel.transferTo(position, size - position, outChannel);
+				} finally {
+					out.close();
+				}
+			} finally {
+				in.close();
+			}
+		}
+	}
+
+	/*
+	 * Creates the target as a hard link to the source. Hard links are
+	 * only available through java.nio.file, which is looked up
+	 * reflectively as it is missing from the execution environment.
+	 */
+	private static boolean link(File source, File target) {
+		if (!initLink())
+			return false;
 		try {
-			return (byte[]) bufferPool.pop();
-		} catch (EmptyStackException e) {
-			return new byte[BUFFER_SIZE];
+			createLink.invoke(null, new Object[] {toPath.invoke(target, new Object[0]), toPath.invoke(source, new Object[0])});
+			return true;
+		} catch (InvocationTargetException e) {
+			// not supported by the file system, or across file systems
+			return false;
+		} catch (IllegalAccessException e) {
+			return false;
 		}
 	}
 
-	private static synchronized void freeBuffer(byte[] buf) {
-		if (bufferPool == null)
-			bufferPool = new Stack();
-		bufferPool.push(buf);
+	private static synchronized boolean initLink() {
+		if (linkInitialized)
+			return createLink != null;
+		linkInitialized = true;
+		try {
+			Class path = Class.forName("java.nio.file.Path"); //$NON-NLS-1$
+			Class files = Class.forName("java.nio.file.Files"); //$NON-NLS-1$
+			toPath = File.class.getMethod("toPath", new Class[0]); //$NON-NLS-1$
+			createLink = files.getMethod("createLink", new Class[] {path, path}); //$NON-NLS-1$
+		} catch (ClassNotFoundException e) {
+			// older JRE, files are copied
+		} catch (NoSuchMethodException e) {
+			toPath = null;
+		}
+		return createLink != null;
+	}
+
+	private static byte[] getBuffer() {
+		byte[] buf = (byte[]) buffers.get();
+		if (buf == null)
+			return new byte[BUFFER_SIZE];
+		buffers.set(null);
+		return buf;
+	}
+
+	private static void freeBuffer(byte[] buf) {
+		buffers.set(buf);
 	}
 	
 	
@@ -883,6 +1042,11 @@ public class UpdateManagerUtils {
 	}
 	
 	public static LiteFeature[] getLightFeatures(ExtendedSite site) {
+		LiteFeatureIndex index = getLightFeatureIndex(site);
+		return index == null ? null : index.getFeatures();
+	}
+
+	public static LiteFeatureIndex getLightFeatureIndex(ExtendedSite site) {
 		
 		URL fullDigestURL;
 		try {
@@ -898,7 +1062,7 @@ public class UpdateManagerUtils {
 			for(int i = 0; i < features.length; i++) {
 				features[i].setSite(site);
 			}
-			return features;
+			return digest.getIndex();
 		} catch(Exception e){ 
 			UpdateCore.log("Digest could not be parsed:" + e.getMessage(), null); //$NON-NLS-1$
 			return null;
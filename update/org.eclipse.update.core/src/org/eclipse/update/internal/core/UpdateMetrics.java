@@ -0,0 +1,366 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.update.internal.core;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import org.eclipse.update.configurator.ConfiguratorUtils;
+import org.eclipse.update.configurator.IPlatformConfiguration;
+
+/**
+ * Registry of the timings and rates recorded by the update operations.
+ * <p>
+ * Each metric is a {@link Histogram}. A metric recorded for a host, such
+ * as the connection latency, is recorded both under its name and under
+ * its name followed by the host in brackets, so the slow mirror of a
+ * slow phase can be found. Only the {@link #MAX_HOST_METRICS} per-host
+ * metrics recorded last are kept; the older hosts are dropped.
+ * <p>
+ * The metrics are kept in the configuration area when the plug-in
+ * stops, and accumulate over the sessions until they are reset. The
+ * values of the previous sessions are read when the metrics are first
+ * read or saved, never while a value is recorded. Recording a value only
+ * holds the registry lock to look its histogram up, and then the lock of
+ * the histogram. The file is read and written outside the registry lock.
+ */
+public class UpdateMetrics {
+
+	/**
+	 * Time to open a connection and receive the response headers, in
+	 * milliseconds, per host.
+	 */
+	public static final String CONNECTION_LATENCY = "connection.latency"; //$NON-NLS-1$
+	/**
+	 * Transfer rate of the downloaded archives, in bytes per second, per
+	 * host.
+	 */
+	public static final String TRANSFER_RATE = "transfer.rate"; //$NON-NLS-1$
+	/**
+	 * Time to parse a site manifest, in milliseconds.
+	 */
+	public static final String SITE_PARSE = "parse.site"; //$NON-NLS-1$
+	/**
+	 * Time to parse a feature manifest, in milliseconds.
+	 */
+	public static final String FEATURE_PARSE = "parse.feature"; //$NON-NLS-1$
+	/**
+	 * Time to parse a site digest, in milliseconds.
+	 */
+	public static final String DIGEST_PARSE = "parse.digest"; //$NON-NLS-1$
+	/**
+	 * Time to verify an archive, in milliseconds.
+	 */
+	public static final String VERIFICATION = "verification"; //$NON-NLS-1$
+	/**
+	 * Time to install the files of a plug-in, in milliseconds.
+	 */
+	public static final String PLUGIN_INSTALL = "install.plugin"; //$NON-NLS-1$
+
+	/**
+	 * Maximum number of per-host metrics kept.
+	 */
+	public static final int MAX_HOST_METRICS = 64;
+
+	private static final String METRICS_FILE = "metrics.properties"; //$NON-NLS-1$
+	private static final String TEMP_SUFFIX = ".tmp"; //$NON-NLS-1$
+
+	// name -> Histogram
+	private static Map histograms = new HashMap();
+	// names of the per-host metrics, least recently recorded first
+	private static LinkedHashMap hostNames = new LinkedHashMap(16, 0.75f, true);
+	// serializes the writes of the metrics file
+	private static final Object saveLock = new Object();
+	// whether the values of the previous sessions were added
+	private static boolean loaded;
+	// whether values were recorded since the metrics were saved
+	private static boolean dirty;
+
+	/**
+	 * Records a value.
+	 *
+	 * @param name the metric
+	 * @param value the value
+	 */
+	public static void record(String name, long value) {
+		Histogram histogram;
+		synchronized (UpdateMetrics.class) {
+			histogram = getOrCreate(name);
+			dirty = true;
+		}
+		histogram.record(value);
+	}
+
+	/**
+	 * Records a value for a host.
+	 *
+	 * @param name the metric
+	 * @param host the host, can be <code>null</code>
+	 * @param value the value
+	 */
+	public static void record(String name, String host, long value) {
+		record(name, value);
+		if (host == null || host.length() == 0)
+			return;
+		String hostName = name + '[' + host + ']';
+		Histogram histogram;
+		synchronized (UpdateMetrics.class) {
+			histogram = getOrCreate(hostName);
+			hostNames.put(hostName, hostName);
+			dropOldHosts();
+		}
+		histogram.record(value);
+	}
+
+	private static Histogram getOrCreate(String name) {
+		Histogram histogram = (Histogram) histograms.get(name);
+		if (histogram == null) {
+			histogram = new Histogram();
+			histograms.put(name, histogram);
+		}
+		return histogram;
+	}
+
+	/*
+	 * Drops the per-host metrics recorded least recently, past the maximum.
+	 */
+	private static void dropOldHosts() {
+		Iterator it = hostNames.keySet().iterator();
+		while (hostNames.size() > MAX_HOST_METRICS) {
+			histograms.remove(it.next());
+			it.remove();
+		}
+	}
+
+	/**
+	 * Records the time elapsed since a start time.
+	 *
+	 * @param name the metric
+	 * @param start the start time, as returned by
+	 * <code>System.currentTimeMillis()</code>
+	 */
+	public static void recordTime(String name, long start) {
+		record(name, System.currentTimeMillis() - start);
+	}
+
+	/**
+	 * Records the transfer rate of a download.
+	 *
+	 * @param url the downloaded URL
+	 * @param size the number of bytes downloaded
+	 * @param time the time of the download, in milliseconds
+	 */
+	public static void recordTransfer(URL url, long size, long time) {
+		// too fast to be measured
+		if (size <= 0 || time <= 0)
+			return;
+		record(TRANSFER_RATE, url.getHost(), size * 1000 / time);
+	}
+
+	/**
+	 * Returns the names of the metrics recorded, sorted.
+	 */
+	public static String[] getNames() {
+		load();
+		String[] names;
+		synchronized (UpdateMetrics.class) {
+			names = (String[]) histograms.keySet().toArray(new String[histograms.size()]);
+		}
+		Arrays.sort(names);
+		return names;
+	}
+
+	/**
+	 * Returns a metric.
+	 *
+	 * @param name the metric
+	 * @return the histogram of the metric, or <code>null</code> if no
+	 * value was recorded
+	 */
+	public static Histogram getHistogram(String name) {
+		load();
+		synchronized (UpdateMetrics.class) {
+			return (Histogram) histograms.get(name);
+		}
+	}
+
+	/**
+	 * Discards the values recorded.
+	 */
+	public static synchronized void reset() {
+		histograms = new HashMap();
+		hostNames = new LinkedHashMap(16, 0.75f, true);
+		// the values of the previous sessions are discarded too
+		loaded = true;
+		dirty = true;
+	}
+
+	/**
+	 * Prints the metrics, one per line.
+	 *
+	 * @param out the stream to print to
+	 */
+	public static void dump(PrintStream out) {
+		String[] names = getNames();
+		for (int i = 0; i < names.length; i++) {
+			Histogram histogram = getHistogram(names[i]);
+			if (histogram != null)
+				out.println(names[i] + ' ' + histogram);
+		}
+	}
+
+	/**
+	 * Saves the metrics in the configuration area, if values were recorded
+	 * since they were loaded. The metrics are written to a temporary file
+	 * first, so a crash keeps the previous metrics.
+	 */
+	public static void save() {
+		File file = getMetricsFile();
+		if (file == null)
+			return;
+		load();
+		synchronized (saveLock) {
+			Properties metrics = new Properties();
+			synchronized (UpdateMetrics.class) {
+				if (!dirty)
+					return;
+				for (Iterator it = histograms.entrySet().iterator(); it.hasNext();) {
+					Map.Entry entry = (Map.Entry) it.next();
+					metrics.put(entry.getKey(), ((Histogram) entry.getValue()).externalize());
+				}
+				// values recorded from now on are saved next time
+				dirty = false;
+			}
+			File tempFile = new File(file.getPath() + TEMP_SUFFIX);
+			OutputStream out = null;
+			try {
+				file.getParentFile().mkdirs();
+				out = new FileOutputStream(tempFile);
+				metrics.store(out, null);
+				out.close();
+				out = null;
+				file.delete();
+				if (!tempFile.renameTo(file))
+					throw new IOException("Unable to rename " + tempFile); //$NON-NLS-1$
+			} catch (IOException e) {
+				UpdateCore.warn("Unable to save update metrics", e); //$NON-NLS-1$
+				tempFile.delete();
+				synchronized (UpdateMetrics.class) {
+					dirty = true;
+				}
+			} finally {
+				if (out != null) {
+					try {
+						out.close();
+					} catch (IOException e) {
+					}
+				}
+			}
+		}
+	}
+
+	/*
+	 * Adds the metrics of the previous sessions to the values recorded.
+	 * The file is read outside the registry lock.
+	 */
+	private static void load() {
+		synchronized (UpdateMetrics.class) {
+			if (loaded)
+				return;
+		}
+		Properties metrics = read();
+		synchronized (UpdateMetrics.class) {
+			// loaded by another thread, or reset, meanwhile
+			if (loaded)
+				return;
+			loaded = true;
+			// the hosts of the previous sessions are less recent than the
+			// ones recorded in this session
+			LinkedHashMap names = new LinkedHashMap(16, 0.75f, true);
+			for (Iterator it = metrics.entrySet().iterator(); it.hasNext();) {
+				Map.Entry entry = (Map.Entry) it.next();
+				String name = (String) entry.getKey();
+				Histogram histogram = Histogram.parse((String) entry.getValue());
+				if (histogram == null)
+					continue;
+				// the histogram recorded in this session may be in use
+				Histogram recorded = (Histogram) histograms.get(name);
+				if (recorded != null)
+					recorded.add(histogram);
+				else
+					histograms.put(name, histogram);
+				if (name.indexOf('[') != -1)
+					names.put(name, name);
+			}
+			names.putAll(hostNames);
+			hostNames = names;
+			dropOldHosts();
+		}
+	}
+
+	/*
+	 * Reads the metrics file, returns empty metrics if there is none.
+	 */
+	private static Properties read() {
+		Properties metrics = new Properties();
+		File file = getMetricsFile();
+		if (file == null)
+			return metrics;
+		if (!file.exists()) {
+			// the metrics were being replaced
+			file = new File(file.getPath() + TEMP_SUFFIX);
+			if (!file.exists())
+				return metrics;
+		}
+		InputStream in = null;
+		try {
+			in = new FileInputStream(file);
+			metrics.load(in);
+		} catch (IOException e) {
+			UpdateCore.warn("Unable to read update metrics", e); //$NON-NLS-1$
+			return new Properties();
+		} finally {
+			if (in != null) {
+				try {
+					in.close();
+				} catch (IOException e) {
+				}
+			}
+		}
+		return metrics;
+	}
+
+	private static File getMetricsFile() {
+		// the parsers can be used without the plug-in
+		if (UpdateCore.getPlugin() == null)
+			return null;
+		IPlatformConfiguration config = ConfiguratorUtils.getCurrentPlatformConfiguration();
+		if (config == null)
+			return null;
+		URL configurationLocation = config.getConfigurationLocation();
+		if (configurationLocation == null || !"file".equalsIgnoreCase(configurationLocation.getProtocol())) //$NON-NLS-1$
+			return null;
+		File path = new File(configurationLocation.getFile());
+		return new File(path.getParentFile(), METRICS_FILE);
+	}
+}
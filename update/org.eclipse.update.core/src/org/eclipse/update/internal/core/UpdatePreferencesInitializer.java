@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2004, 2007 IBM Corporation and others.
+ * Copyright (c) 2004, 2013 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -47,5 +47,15 @@ public class UpdatePreferencesInitializer extends AbstractPreferenceInitializer
 		plugin.getPluginPreferences().setDefault(UpdateCore.P_AUTOMATICALLY_CHOOSE_MIRROR, false);
 		plugin.getPluginPreferences().setDefault(UpdateCore.P_HISTORY_SIZE, UpdateCore.DEFAULT_HISTORY);
 		plugin.getPluginPreferences().setDefault(UpdateCore.P_UPDATE_VERSIONS, UpdateCore.EQUIVALENT_VALUE);
+		plugin.getPluginPreferences().setDefault(UpdateCore.P_SEARCH_THREADS, UpdateCore.DEFAULT_SEARCH_THREADS);
+		plugin.getPluginPreferences().setDefault(UpdateCore.P_MAX_CONNECTIONS, UpdateCore.DEFAULT_MAX_CONNECTIONS);
+		plugin.getPluginPreferences().setDefault(UpdateCore.P_MAX_CONNECTIONS_PER_HOST, UpdateCore.DEFAULT_MAX_CONNECTIONS_PER_HOST);
+		plugin.getPluginPreferences().setDefault(UpdateCore.P_DOWNLOAD_SEGMENTS, UpdateCore.DEFAULT_DOWNLOAD_SEGMENTS);
+		plugin.getPluginPreferences().setDefault(UpdateCore.P_METADATA_CACHE_SIZE, UpdateCore.DEFAULT_METADATA_CACHE_SIZE);
+		plugin.getPluginPreferences().setDefault(UpdateCore.P_VERIFICATION_THREADS, UpdateCore.DEFAULT_VERIFICATION_THREADS);
+		plugin.getPluginPreferences().setDefault(UpdateCore.P_PIPELINED_INSTALL, UpdateCore.DEFAULT_PIPELINED_INSTALL);
+		plugin.getPluginPreferences().setDefault(UpdateCore.P_ARTIFACT_CACHE_SIZE, UpdateCore.DEFAULT_ARTIFACT_CACHE_SIZE);
+		plugin.getPluginPreferences().setDefault(UpdateCore.P_BATCH_DOWNLOAD_THREADS, UpdateCore.DEFAULT_BATCH_DOWNLOAD_THREADS);
+		plugin.getPluginPreferences().setDefault(UpdateCore.P_EXTRACTION_THREADS, UpdateCore.DEFAULT_EXTRACTION_THREADS);
 	}
 }
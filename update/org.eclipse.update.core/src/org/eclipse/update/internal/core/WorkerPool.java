@@ -0,0 +1,189 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.update.internal.core;
+
+import java.util.LinkedList;
+
+/**
+ * A bounded pool of daemon worker threads.
+ * <p>
+ * Tasks are run in the order they are scheduled by at most
+ * <code>maxThreads</code> workers. Workers are created on demand and
+ * terminate after being idle for a short while, so a pool that is not
+ * used does not hold on to any thread.
+ * <p>
+ * Callers typically schedule a batch of tasks and then poll
+ * {@link #join(long)} so they can react to progress monitor
+ * cancellation by calling {@link #cancel()}.
+ */
+public class WorkerPool {
+
+	// idle workers terminate after 5 seconds
+	private static final long KEEP_ALIVE = 5000;
+
+	private String name;
+	private int maxThreads;
+	private LinkedList queue = new LinkedList();
+	private int threadCount;
+	private int idleCount;
+	// number of tasks queued or running
+	private int pending;
+	private boolean shutdown;
+
+	/**
+	 * Creates a pool.
+	 * @param name name used for the worker threads
+	 * @param maxThreads maximum number of concurrent workers, at least 1
+	 */
+	public WorkerPool(String name, int maxThreads) {
+		this.name = name;
+		this.maxThreads = Math.max(1, maxThreads);
+	}
+
+	/**
+	 * Returns the maximum number of concurrent workers of this pool.
+	 */
+	public int getMaxThreads() {
+		return maxThreads;
+	}
+
+	/**
+	 * Queues a task. A new worker is started if the idle ones cannot
+	 * take it and the maximum has not been reached.
+	 * @param task the task to run
+	 */
+	public synchronized void schedule(Runnable task) {
+		if (shutdown)
+			throw new IllegalStateException();
+		queue.addLast(task);
+		pending++;
+		if (idleCount > 0)
+			notifyAll();
+		// idle workers may not have picked up earlier tasks yet
+		if (queue.size() > idleCount && threadCount < maxThreads)
+			startWorker();
+	}
+
+	private void startWorker() {
+		threadCount++;
+		Thread t = new Thread(new Worker(), name);
+		t.setDaemon(true);
+		t.start();
+	}
+
+	/**
+	 * Removes the tasks that have not been started yet. Running tasks
+	 * are not affected.
+	 * @return the number of tasks removed
+	 */
+	public synchronized int cancel() {
+		int removed = queue.size();
+		queue.clear();
+		pending -= removed;
+		if (pending == 0)
+			notifyAll();
+		return removed;
+	}
+
+	/**
+	 * Waits until all scheduled tasks are completed or the timeout
+	 * elapsed.
+	 * @param timeout maximum time to wait in milliseconds, 0 to wait forever
+	 * @return <code>true</code> if all the tasks are completed
+	 */
+	public synchronized boolean join(long timeout) {
+		long deadline = System.currentTimeMillis() + timeout;
+		while (pending > 0) {
+			long wait = 0;
+			if (timeout > 0) {
+				wait = deadline - System.currentTimeMillis();
+				if (wait <= 0)
+					return false;
+			}
+			try {
+				wait(wait);
+			} catch (InterruptedException e) {
+				return pending == 0;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the number of tasks queued or running.
+	 */
+	public synchronized int getPendingCount() {
+		return pending;
+	}
+
+	/**
+	 * Discards the queued tasks and lets the workers terminate once
+	 * their current task is done. The pool cannot be used afterwards.
+	 */
+	public synchronized void shutdown() {
+		shutdown = true;
+		cancel();
+		notifyAll();
+	}
+
+	private synchronized Runnable nextTask() {
+		long deadline = System.currentTimeMillis() + KEEP_ALIVE;
+		while (queue.isEmpty() && !shutdown) {
+			long wait = deadline - System.currentTimeMillis();
+			if (wait <= 0)
+				break;
+			idleCount++;
+			try {
+				wait(wait);
+			} catch (InterruptedException e) {
+				break;
+			} finally {
+				idleCount--;
+			}
+		}
+		if (queue.isEmpty()) {
+			threadCount--;
+			return null;
+		}
+		return (Runnable) queue.removeFirst();
+	}
+
+	private synchronized void workerDied() {
+		threadCount--;
+		if (!queue.isEmpty() && !shutdown)
+			startWorker();
+	}
+
+	private synchronized void taskDone() {
+		pending--;
+		if (pending == 0)
+			notifyAll();
+	}
+
+	private class Worker implements Runnable {
+		public void run() {
+			Runnable task;
+			while ((task = nextTask()) != null) {
+				try {
+					task.run();
+				} catch (RuntimeException e) {
+					UpdateCore.log(e);
+				} catch (Error e) {
+					// the worker is lost, replace it if work is left
+					workerDied();
+					throw e;
+				} finally {
+					taskDone();
+				}
+			}
+		}
+	}
+}
@@ -32,33 +32,44 @@ public abstract class AbstractResponse implements IResponse {
 
 	protected InputStream openStreamWithCancel(URLConnection urlConnection, IProgressMonitor monitor) throws IOException, CoreException, TooManyOpenConnectionsException {
 	
+		ConnectionThreadManager manager = ConnectionThreadManagerFactory.getConnectionManager();
 		ConnectionThreadManager.StreamRunnable runnable =
 			new ConnectionThreadManager.StreamRunnable(urlConnection);
-		Thread t = ConnectionThreadManagerFactory.getConnectionManager().getConnectionThread(
-				runnable);
-		t.start();
+		if (!manager.schedule(runnable, monitor)) {
+			connection = null;
+			return null;
+		}
 		InputStream is = null;
 		try {
 			for (;;) {
 				if (monitor.isCanceled()) {
+					manager.cancel(runnable);
 					runnable.disconnect();
 	                connection = null;
 					break;
 				}
-				if (runnable.getInputStream() != null || !t.isAlive()) {
+				if (runnable.getInputStream() != null || runnable.isDone()) {
 					is = runnable.getInputStream();
-					break;
-				}
-				if (runnable.getIOException() != null) 
-					throw runnable.getIOException();
-				if (runnable.getException() != null) 
+					if (is == null && runnable.getIOException() != null)
+						throw runnable.getIOException();
+					if (is == null && runnable.getException() != null)
 						throw new CoreException(new Status(IStatus.ERROR,
 															UpdateCore.getPlugin().getBundle().getSymbolicName(), 
 															IStatus.OK,
 															runnable.getException().getMessage(), 
 															runnable.getException()));
-				t.join(POLLING_INTERVAL);
+					break;
+				}
+				if (manager.isExpired(runnable)) {
+					manager.cancel(runnable);
+					runnable.disconnect();
+					connection = null;
+					throw ConnectionThreadManager.newTimedOutException(runnable);
+				}
+				synchronized (runnable) {
+					runnable.wait(POLLING_INTERVAL);
 				}
+			}
 		} catch (InterruptedException e) {
 		}
 		return is;
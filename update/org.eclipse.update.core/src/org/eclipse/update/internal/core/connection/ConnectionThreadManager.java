@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2006 IBM Corporation and others.
+ * Copyright (c) 2000, 2013 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -16,54 +16,77 @@ import java.io.InputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.net.URLConnection;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
 
-import org.eclipse.core.runtime.CoreException;
-import org.eclipse.core.runtime.IStatus;
-import org.eclipse.core.runtime.MultiStatus;
-import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.osgi.util.NLS;
 import org.eclipse.update.internal.core.Messages;
 import org.eclipse.update.internal.core.UpdateCore;
 
 /**
- * This class manages threads that are dispatched to 
- * obtained a valid input stream from an HTTP connection.
+ * This class schedules the requests that obtain a valid
+ * input stream from a URL connection.
  * Since obtaining an input stream is an I/O operation
  * that may block for a long time, it is performed
  * on a separate thread to keep the UI responsive.
  * <p>
- * In case that a connection blocks and does not
- * terminate with an IOException after a timeout, 
- * active threads may accumulate. The manager will
- * refuse to create more than MAX_COUNT threads and
- * instead will throw a CoreException with a child
- * status object for each connection that is still pending.
+ * Requests are queued in order and run on a set of reusable
+ * worker threads. At most <code>maxConnections</code> requests
+ * are active at the same time, and at most
+ * <code>maxConnectionsPerHost</code> for a given host; a request
+ * for a busy host waits without holding back the requests for
+ * other hosts. When more than MAX_QUEUED requests are waiting,
+ * callers wait for room in the queue (back-pressure).
+ * <p>
+ * A request that does not obtain its stream before its deadline
+ * is disconnected and reported as timed out. Its slot is given
+ * back right away; the worker blocked in the connection exits when
+ * the connection eventually returns.
  * <p>
  * If the connection is responsive but slow, the user
  * may cancel it. In that case, the manager will
  * close the stream to avoid resource leak.
  */
 public class ConnectionThreadManager {
-	
+
 	// set connection timeout to 1 minute
 	private static final String CONNECT_TIMEOUT = "60000"; //$NON-NLS-1$
 	// set read timeout to 1 minute
 	private static final String READ_TIMEOUT = "60000"; //$NON-NLS-1$
-	// max number of active threads
-	private static final int MAX_COUNT = 9;
-	private List threads = new ArrayList(MAX_COUNT);
-	
-	
+	// a request times out once it could have hit both timeouts
+	private static final long DEADLINE = 120000;
+	// idle workers terminate after 30 seconds
+	private static final long KEEP_ALIVE = 30000;
+	// max number of requests waiting before callers are held back
+	private static final int MAX_QUEUED = 64;
+	private static final long POLLING_INTERVAL = 200;
+
+	private int maxConnections;
+	private int maxConnectionsPerHost;
+
+	private LinkedList queue = new LinkedList();
+	private LinkedList idleWorkers = new LinkedList();
+	// host -> int[1] number of active requests
+	private Map activePerHost = new HashMap();
+	private int activeCount;
+	private int timedOutCount;
+	private boolean shutdown;
 
 	public static class StreamRunnable implements Runnable {
-		
+
 		private URLConnection urlConnection;
 		private IOException ioException;
 		private Exception exception;
 		private InputStream is;
 		private boolean disconnected;
+		private long deadline;
+		private boolean timedOut;
+		// true while the request holds a connection slot
+		private boolean active;
+		private boolean done;
 
 		public StreamRunnable(URLConnection urlConnection) {
 			this.urlConnection = urlConnection;
@@ -80,11 +103,31 @@ public class ConnectionThreadManager {
 		public IOException getIOException() {
 			return ioException;
 		}
-		
+
 		public Exception getException() {
 			return exception;
 		}
 
+		/**
+		 * Returns whether the request ran to completion.
+		 */
+		public synchronized boolean isDone() {
+			return done;
+		}
+
+		/**
+		 * Returns whether the request was abandoned because it
+		 * did not complete before its deadline.
+		 */
+		public boolean isTimedOut() {
+			return timedOut;
+		}
+
+		String getHost() {
+			String host = getURL().getHost();
+			return host == null ? "" : host; //$NON-NLS-1$
+		}
+
 		public void disconnect() {
 			if (urlConnection instanceof HttpURLConnection)
 				((HttpURLConnection)urlConnection).disconnect();
@@ -98,7 +141,7 @@ public class ConnectionThreadManager {
 					// The connection was slow, but returned
 					// a valid input stream. However,
 					// the user canceled the connection
-					// so we must close to avoid 
+					// so we must close to avoid
 					// resource leak.
 					if (is != null) {
 						try {
@@ -115,23 +158,42 @@ public class ConnectionThreadManager {
 			} catch (Exception e) {
 				exception = e;
 			} finally {
-				//threads.
+				synchronized (this) {
+					done = true;
+					notifyAll();
+				}
 			}
 		}
+
+		/*
+		 * Completes a request that will not run.
+		 */
+		synchronized void fail(IOException e) {
+			ioException = e;
+			done = true;
+			notifyAll();
+		}
 	}
 
-	
+
 	class ConnectionThread extends Thread {
-		
-		private StreamRunnable runnable;
-		
-		public ConnectionThread(StreamRunnable runnable) {
-			super(runnable, "update-connection"); //$NON-NLS-1$
-			this.runnable = runnable;
+
+		// the request handed to this worker, guarded by the manager
+		StreamRunnable runnable;
+
+		public ConnectionThread() {
+			super("update-connection"); //$NON-NLS-1$
+			setDaemon(true);
 		}
 
-		public StreamRunnable getRunnable() {
-			return runnable;
+		public void run() {
+			StreamRunnable next;
+			while ((next = nextRunnable(this)) != null) {
+				next.run();
+				// a worker left behind by a timed out request is not reused
+				if (!finished(next, this))
+					return;
+			}
 		}
 	}
 
@@ -139,93 +201,210 @@ public class ConnectionThreadManager {
 		// In case we are running Sun's code.
 		setIfNotDefaultProperty("sun.net.client.defaultConnectTimeout", CONNECT_TIMEOUT); //$NON-NLS-1$
 		setIfNotDefaultProperty("sun.net.client.defaultReadTimeout", READ_TIMEOUT);  //$NON-NLS-1$
+		maxConnections = UpdateCore.DEFAULT_MAX_CONNECTIONS;
+		maxConnectionsPerHost = UpdateCore.DEFAULT_MAX_CONNECTIONS_PER_HOST;
+		UpdateCore plugin = UpdateCore.getPlugin();
+		if (plugin != null) {
+			maxConnections = Math.max(1, plugin.getPluginPreferences().getInt(UpdateCore.P_MAX_CONNECTIONS));
+			maxConnectionsPerHost = Math.max(1, plugin.getPluginPreferences().getInt(UpdateCore.P_MAX_CONNECTIONS_PER_HOST));
+		}
 	}
-	
+
 	private void setIfNotDefaultProperty(String key, String value) {
 		String oldValue = System.getProperty(key);
 		if (oldValue==null || oldValue.equals("-1")) //$NON-NLS-1$
 			System.setProperty(key, value);
 	}
 
-	public Thread getConnectionThread(StreamRunnable runnable) throws CoreException {
-		
-		validateExistingThreads();
-	
-		//if (threads == null)
-		//	threads = new Vector();
-		Thread t = new Thread(runnable);
-		t.setDaemon(true);
-		threads.add(t);
-		return t;
+	/**
+	 * Queues the request. If the queue is full, waits until there is
+	 * room for it or the monitor is canceled.
+	 *
+	 * @param runnable the request
+	 * @param monitor the monitor checked while waiting
+	 * @return <code>true</code> if the request was queued,
+	 * <code>false</code> if the monitor was canceled first
+	 * @throws IOException if the manager is shut down
+	 */
+	public synchronized boolean schedule(StreamRunnable runnable, IProgressMonitor monitor) throws IOException {
+		while (queue.size() >= MAX_QUEUED && !shutdown) {
+			if (monitor.isCanceled())
+				return false;
+			try {
+				wait(POLLING_INTERVAL);
+			} catch (InterruptedException e) {
+				// check again
+			}
+		}
+		if (shutdown)
+			throw newShutdownException(runnable);
+		queue.addLast(runnable);
+		dispatch();
+		return true;
 	}
 
-	/*
-	 * Removes threads that are not alive any more from the 
-	 * list and ensures that there are at most MAX_COUNT threads
-	 * still working.
+	/**
+	 * Removes the request from the queue if it has not started yet,
+	 * or frees its slot if it is still running. In the later case the
+	 * request is counted as timed out when its deadline has passed.
 	 */
-	private void validateExistingThreads() throws CoreException {
-		
-		if ((threads == null) || (threads.size() == 0))
+	public synchronized void cancel(StreamRunnable runnable) {
+		if (queue.remove(runnable)) {
+			traceCounters();
+			notifyAll();
 			return;
-		
-		int aliveCount = purgeTerminatedThreads();
-
-		if (aliveCount > MAX_COUNT) {
-			ArrayList children = new ArrayList();
-			String pluginId =
-				UpdateCore.getPlugin().getBundle().getSymbolicName();
-			for (int i = 0; i < threads.size(); i++) {
-				ConnectionThread t = (ConnectionThread) threads.get(i);
-				String url = t.getRunnable().getURL().toString();
-				IStatus status =
-					new Status(
-						IStatus.ERROR,
-						pluginId,
-						IStatus.OK,
-						NLS.bind(Messages.ConnectionThreadManager_unresponsiveURL, (new String[] { url })),
-						null);
-				children.add(status);
+		}
+		if (runnable.active) {
+			if (isExpired(runnable)) {
+				runnable.timedOut = true;
+				timedOutCount++;
+			}
+			release(runnable);
+			dispatch();
+		}
+	}
+
+	/**
+	 * Returns whether the request is running past its deadline.
+	 * Time spent waiting in the queue does not count.
+	 */
+	public synchronized boolean isExpired(StreamRunnable runnable) {
+		return runnable.active && System.currentTimeMillis() >= runnable.deadline;
+	}
+
+	/*
+	 * Starts the queued requests for which a slot is available, oldest first.
+	 */
+	private void dispatch() {
+		Iterator iter = queue.iterator();
+		while (iter.hasNext() && activeCount < maxConnections && !shutdown) {
+			StreamRunnable runnable = (StreamRunnable) iter.next();
+			int[] hostCount = (int[]) activePerHost.get(runnable.getHost());
+			if (hostCount != null && hostCount[0] >= maxConnectionsPerHost)
+				continue;
+			iter.remove();
+			if (hostCount == null) {
+				hostCount = new int[1];
+				activePerHost.put(runnable.getHost(), hostCount);
 			}
-			MultiStatus parentStatus =
-				new MultiStatus(
-					pluginId,
-					IStatus.OK,
-					(IStatus[]) children.toArray(new IStatus[children.size()]),
-					Messages.ConnectionThreadManager_tooManyConnections, 
-					null);
-			throw new CoreException(parentStatus);
+			hostCount[0]++;
+			activeCount++;
+			runnable.active = true;
+			runnable.deadline = System.currentTimeMillis() + DEADLINE;
+
+			if (idleWorkers.isEmpty()) {
+				ConnectionThread worker = new ConnectionThread();
+				worker.runnable = runnable;
+				worker.start();
+			} else {
+				ConnectionThread worker = (ConnectionThread) idleWorkers.removeLast();
+				worker.runnable = runnable;
+			}
+		}
+		traceCounters();
+		// wake up the workers that were handed a request, and the
+		// callers waiting for room in the queue
+		notifyAll();
+	}
+
+	private void release(StreamRunnable runnable) {
+		runnable.active = false;
+		activeCount--;
+		int[] hostCount = (int[]) activePerHost.get(runnable.getHost());
+		if (hostCount != null && --hostCount[0] == 0)
+			activePerHost.remove(runnable.getHost());
+	}
+
+	/*
+	 * Called by a worker when its request returned. Returns whether
+	 * the worker may take another request.
+	 */
+	synchronized boolean finished(StreamRunnable runnable, ConnectionThread worker) {
+		if (!runnable.active) {
+			// the slot was already given back when the request was canceled
+			return false;
 		}
+		release(runnable);
+		if (shutdown)
+			return false;
+		idleWorkers.addLast(worker);
+		dispatch();
+		return true;
 	}
-	
+
 	/*
-	 * Removes terminated threads from the list and returns
-	 * the number of those still active.
+	 * Called by a worker to wait for its next request. Returns null
+	 * when the worker stayed idle for too long or the manager shut down.
+	 */
+	synchronized StreamRunnable nextRunnable(ConnectionThread worker) {
+		long deadline = System.currentTimeMillis() + KEEP_ALIVE;
+		while (worker.runnable == null && !shutdown) {
+			long wait = deadline - System.currentTimeMillis();
+			if (wait <= 0)
+				break;
+			try {
+				wait(wait);
+			} catch (InterruptedException e) {
+				// check again
+			}
+		}
+		StreamRunnable next = worker.runnable;
+		worker.runnable = null;
+		if (next == null)
+			idleWorkers.remove(worker);
+		return next;
+	}
+
+	/**
+	 * Returns the number of requests waiting for a slot.
 	 */
-	
-	private int purgeTerminatedThreads() {
-		
-		if (threads.size() == 0) {
-			return 0;
-		}
-		
-		int aliveCount = 0;
-
-		Object[] array = threads.toArray();
-		for (int i = 0; i < array.length; i++) {
-			Thread t = (Thread) array[i];
-			if (!t.isAlive())
-				threads.remove(t);
-			else
-				aliveCount++;
-		}
-		return aliveCount;
-	}
-
-	public void shutdown() {
-		// We might want to kill the active threads but
-		// this is not really necessary since they are all
-		// daemons and will not prevent JVM to terminate.
-		threads.clear();
+	public synchronized int getQueuedCount() {
+		return queue.size();
+	}
+
+	/**
+	 * Returns the number of requests holding a slot.
+	 */
+	public synchronized int getActiveCount() {
+		return activeCount;
+	}
+
+	/**
+	 * Returns the number of requests that timed out since startup.
+	 */
+	public synchronized int getTimedOutCount() {
+		return timedOutCount;
+	}
+
+	private void traceCounters() {
+		if (UpdateCore.DEBUG && UpdateCore.DEBUG_SHOW_CONNECTION)
+			UpdateCore.debug("Connections: queued=" + queue.size() + " active=" + activeCount + " timedOut=" + timedOutCount); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+	}
+
+	/**
+	 * Returns the exception reported for a request that timed out.
+	 */
+	static IOException newTimedOutException(StreamRunnable runnable) {
+		return new IOException(NLS.bind(Messages.ConnectionThreadManager_timedOut, runnable.getURL().toExternalForm()));
+	}
+
+	private static IOException newShutdownException(StreamRunnable runnable) {
+		return new IOException(NLS.bind(Messages.ConnectionThreadManager_shutdown, runnable.getURL().toExternalForm()));
+	}
+
+	/**
+	 * Stops the manager. New requests are refused, and the queued
+	 * ones complete with an <code>IOException</code>.
+	 */
+	public synchronized void shutdown() {
+		// Running workers are daemons and will not prevent
+		// the JVM to terminate; idle ones exit right away.
+		shutdown = true;
+		while (!queue.isEmpty()) {
+			StreamRunnable runnable = (StreamRunnable) queue.removeFirst();
+			runnable.fail(newShutdownException(runnable));
+		}
+		idleWorkers.clear();
+		notifyAll();
 	}
 }
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2005 IBM Corporation and others.
+ * Copyright (c) 2000, 2013 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -20,10 +20,21 @@ public class ConnectionThreadManagerFactory {
 	/**
 	 * Returns the manager that manages URL connection threads.
 	 */
-	public static ConnectionThreadManager getConnectionManager() {
+	public static synchronized ConnectionThreadManager getConnectionManager() {
 		
 		if (connectionManager == null)
 			connectionManager = new ConnectionThreadManager();
 		return connectionManager;
 	}
+
+	/**
+	 * Shuts down the current manager, if any. The next call to
+	 * {@link #getConnectionManager()} creates a new one.
+	 */
+	public static synchronized void shutdown() {
+		if (connectionManager != null) {
+			connectionManager.shutdown();
+			connectionManager = null;
+		}
+	}
 }
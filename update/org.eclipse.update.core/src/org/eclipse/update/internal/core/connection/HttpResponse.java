@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2008 IBM Corporation and others.
+ * Copyright (c) 2000, 2013 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -21,6 +21,7 @@ import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.update.internal.core.Messages;
 import org.eclipse.update.internal.core.UpdateCore;
+import org.eclipse.update.internal.core.UpdateMetrics;
 
 public class HttpResponse extends AbstractResponse {
 	/**
@@ -110,6 +111,11 @@ public class HttpResponse extends AbstractResponse {
 	protected InputStream in;
 	protected long lastModified;
 	protected long offset;
+	// last byte of the requested range, -1 for the end of the resource
+	protected long rangeEnd = -1;
+	// validators of a cached copy, sent as conditional request headers
+	protected long ifModifiedSince;
+	protected String ifNoneMatch;
 
 	protected HttpResponse(URL url) {
 		
@@ -118,16 +124,18 @@ public class HttpResponse extends AbstractResponse {
 
 	public InputStream getInputStream() throws IOException {
 		if (in == null && url != null) {
-			if (connection == null || offset > 0)
-				connection = url.openConnection();
-			if (offset > 0)
-				connection.setRequestProperty("Range", "bytes=" + offset + "-"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+			long start = System.currentTimeMillis();
+			if (connection == null || isRangeRequest())
+				connection = openConnection();
+			if (isRangeRequest())
+				connection.setRequestProperty("Range", getRange()); //$NON-NLS-1$
 			try {
 				in = new MonitoringInputStream(connection.getInputStream(), connection);
 			} catch (IOException ioe) {
 				connection = null;
 				throw ioe;
 			}
+			UpdateMetrics.record(UpdateMetrics.CONNECTION_LATENCY, url.getHost(), System.currentTimeMillis() - start);
 			checkOffset();
 		}
 		return in;
@@ -153,10 +161,11 @@ public class HttpResponse extends AbstractResponse {
 	public InputStream getInputStream(IProgressMonitor monitor)
 		throws IOException, CoreException, TooManyOpenConnectionsException {
 		if (in == null && url != null) {
-			if (connection == null || offset > 0)
-				connection = url.openConnection();
-			if (offset > 0)
-				connection.setRequestProperty("Range", "bytes=" + offset + "-"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+			long start = System.currentTimeMillis();
+			if (connection == null || isRangeRequest())
+				connection = openConnection();
+			if (isRangeRequest())
+				connection.setRequestProperty("Range", getRange()); //$NON-NLS-1$
 
 			if (monitor != null) {
 				try {
@@ -175,6 +184,7 @@ public class HttpResponse extends AbstractResponse {
 					throw ioe;
 				}
 			}
+			UpdateMetrics.record(UpdateMetrics.CONNECTION_LATENCY, url.getHost(), System.currentTimeMillis() - start);
 			// this can also be run inside a monitoring thread, but it is safe
 			// to
 			// just call it now, if the input stream has already been obtained
@@ -195,7 +205,7 @@ public class HttpResponse extends AbstractResponse {
 	public int getStatusCode() {
 		if (connection == null)
 			try {
-				connection = url.openConnection();
+				connection = openConnection();
 			} catch (IOException e) {
 			}
 		if (connection != null) {
@@ -223,7 +233,7 @@ public class HttpResponse extends AbstractResponse {
 		if (lastModified == 0) {
 			if (connection == null)
 				try {
-					connection = url.openConnection();
+					connection = openConnection();
 				} catch (IOException e) {
 				}
 			if (connection != null)
@@ -235,8 +245,73 @@ public class HttpResponse extends AbstractResponse {
 	public void setOffset(long offset) {
 		this.offset = offset;
 	}
+
+	/**
+	 * Requests the bytes from <code>offset</code> to <code>end</code>
+	 * included, instead of the whole resource.
+	 */
+	public void setRange(long offset, long end) {
+		this.offset = offset;
+		this.rangeEnd = end;
+	}
+
+	/**
+	 * Returns whether the server advertises support for byte ranges.
+	 */
+	public boolean acceptsRanges() {
+		if (connection == null)
+			try {
+				connection = openConnection();
+			} catch (IOException e) {
+			}
+		if (connection != null)
+			return "bytes".equalsIgnoreCase(connection.getHeaderField("Accept-Ranges")); //$NON-NLS-1$ //$NON-NLS-2$
+		return false;
+	}
+
+	/**
+	 * Makes the request conditional: the server answers with
+	 * <code>304 Not Modified</code> and no content when the resource did
+	 * not change since <code>lastModified</code>, or still has the
+	 * entity tag <code>etag</code>.
+	 *
+	 * @param lastModified the date of the cached copy, 0 if unknown
+	 * @param etag the entity tag of the cached copy, or <code>null</code>
+	 */
+	public void setCondition(long lastModified, String etag) {
+		this.ifModifiedSince = lastModified;
+		this.ifNoneMatch = etag;
+	}
+
+	/**
+	 * Returns the entity tag of the resource, or <code>null</code>
+	 * if the server did not send one.
+	 */
+	public String getETag() {
+		if (connection != null)
+			return connection.getHeaderField("ETag"); //$NON-NLS-1$
+		return null;
+	}
+
+	private URLConnection openConnection() throws IOException {
+		URLConnection newConnection = url.openConnection();
+		if (ifModifiedSince > 0)
+			newConnection.setIfModifiedSince(ifModifiedSince);
+		if (ifNoneMatch != null)
+			newConnection.setRequestProperty("If-None-Match", ifNoneMatch); //$NON-NLS-1$
+		return newConnection;
+	}
+
+	private boolean isRangeRequest() {
+		return offset > 0 || rangeEnd >= 0;
+	}
+
+	private String getRange() {
+		return "bytes=" + offset + "-" + (rangeEnd >= 0 ? Long.toString(rangeEnd) : ""); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+	}
+
 	private void checkOffset() throws IOException {
-		if (offset == 0)
+		if (!isRangeRequest())
 			return;
 		String range = connection.getHeaderField("Content-Range"); //$NON-NLS-1$
 		//System.out.println("Content-Range=" + range);
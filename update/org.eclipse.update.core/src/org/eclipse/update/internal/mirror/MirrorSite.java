@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2008 IBM Corporation and others.
+ * Copyright (c) 2000, 2013 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -19,8 +19,10 @@ import java.io.PrintWriter;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.Map;
 import java.util.Set;
 
 import org.eclipse.core.runtime.CoreException;
@@ -50,20 +52,87 @@ import org.eclipse.update.internal.core.FeaturePackagedContentProvider;
 import org.eclipse.update.internal.core.ISiteContentConsumer;
 import org.eclipse.update.internal.core.UpdateCore;
 import org.eclipse.update.internal.core.UpdateManagerUtils;
+import org.eclipse.update.internal.core.WorkerPool;
 import org.eclipse.update.standalone.StandaloneUpdateApplication;
 
 /**
  * Local mirror site.  Read/Write
+ * <p>
+ * Features are mirrored by a pool of workers, and the plug-ins of all
+ * the features by a second pool shared for the whole mirror run, so the
+ * number of threads does not grow with the features or their nesting.
+ * A feature or plug-in shared by several
+ * features is mirrored once: the thread that mirrors it first claims it,
+ * and the other threads wait for it instead of downloading it again.
+ * Archives are written under a temporary name and renamed once complete,
+ * so the archives of an interrupted mirror can be reused by the next one.
  */
 public class MirrorSite extends Site {
 	private final static String INDENT = "   "; //$NON-NLS-1$
+	private final static String TEMP_SUFFIX = ".part"; //$NON-NLS-1$
 	private SiteModelFactory factory;
 	/**
 	 * plugin entries 
 	 */
-	private Collection downloadedPluginEntries = new ArrayList();
-	private Collection downloadedFeatureReferenceModels = new ArrayList();
+	// VersionedIdentifier -> IPluginEntry
+	private Map downloadedPluginEntries = new HashMap();
+	// VersionedIdentifier -> SiteFeatureReferenceModel
+	private Map downloadedFeatureReferenceModels = new HashMap();
+	// VersionedIdentifier -> Thread mirroring the feature or plug-in
+	private Map featuresInProgress = new HashMap();
+	private Map pluginsInProgress = new HashMap();
+	// mirrors the plug-ins of all the features during mirrorAndExposeFeatures
+	private WorkerPool pluginPool;
 	private boolean ignoreNonPresentPlugins;
+
+	/*
+	 * The plug-ins of a feature scheduled on the plug-in pool.
+	 */
+	private static class PluginBatch {
+		private int pending;
+		private CoreException failure;
+		private boolean canceled;
+
+		PluginBatch(int pending) {
+			this.pending = pending;
+		}
+
+		/*
+		 * Returns whether the plug-ins not started yet should be skipped.
+		 */
+		synchronized boolean isCanceled() {
+			return canceled || failure != null;
+		}
+
+		synchronized void cancel() {
+			canceled = true;
+		}
+
+		synchronized void done(CoreException e) {
+			if (e != null && failure == null)
+				failure = e;
+			pending--;
+			notifyAll();
+		}
+
+		/*
+		 * Waits for the plug-ins, and rethrows the first failure.
+		 */
+		synchronized void join() throws CoreException {
+			while (pending > 0) {
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					throw Utilities.newCoreException(
+						"Interrupted while mirroring plug-ins.", //$NON-NLS-1$
+						e);
+				}
+			}
+			if (failure != null)
+				throw failure;
+		}
+	}
+
 	public MirrorSite(SiteModelFactory factory) {
 		this.factory = factory;
 	}
@@ -106,53 +175,96 @@ public class MirrorSite extends Site {
 		IFeatureReference[] optionalfeatures)
 		throws CoreException {
 
-		// Features that failed will be retried once again
-		Collection failedFeatures = new ArrayList();
-		for (int i = 0; i < sourceFeatureRefs.length; i++) {
-			try {
-				IFeature sourceFeature =
-					sourceFeatureRefs[i].getFeature(new NullProgressMonitor());
-				SiteFeatureReferenceModel featureRef =
-					mirrorFeature(
-						remoteSite,
-						sourceFeature,
-						optionalfeatures,
-						1);
-				// Set categories of the new feature
-				ICategory remoteCategories[] =
-					sourceFeatureRefs[i].getCategories();
-				for (int j = 0; j < remoteCategories.length; j++) {
-					featureRef.addCategoryName(remoteCategories[j].getName());
-				}
-
-				addFeatureReferenceModel(remoteSite, featureRef);
-			} catch (CoreException ce) {
-				failedFeatures.add(sourceFeatureRefs[i]);
-			}
+		pluginPool = new WorkerPool("Plug-in Mirror", getThreadCount(Integer.MAX_VALUE)); //$NON-NLS-1$
+		try {
+			exposeFeatures(
+				remoteSite,
+				sourceFeatureRefs,
+				optionalfeatures,
+				mirrorFeatures(remoteSite, sourceFeatureRefs, optionalfeatures));
+		} finally {
+			pluginPool.shutdown();
+			pluginPool = null;
 		}
+	}
 
-		// do we need to retry?
-		if (failedFeatures.size() > 0) {
-			sourceFeatureRefs =
-				(ISiteFeatureReference[]) failedFeatures.toArray(
-					new ISiteFeatureReference[failedFeatures.size()]);
-		} else {
-			return;
-		}
+	/*
+	 * Retries the features that failed, and exposes the mirrored features.
+	 */
+	private void exposeFeatures(
+		ISite remoteSite,
+		ISiteFeatureReference[] sourceFeatureRefs,
+		IFeatureReference[] optionalfeatures,
+		SiteFeatureReferenceModel[] featureRefs)
+		throws CoreException {
 
+		// features are exposed in the order of the remote site
+		Set exposedFeatures = getExposedFeatureIdentifiers(remoteSite);
+		CoreException failure = null;
 		for (int i = 0; i < sourceFeatureRefs.length; i++) {
-			IFeature sourceFeature =
-				sourceFeatureRefs[i].getFeature(new NullProgressMonitor());
-			SiteFeatureReferenceModel featureRef =
-				mirrorFeature(remoteSite, sourceFeature, optionalfeatures, 1);
+			SiteFeatureReferenceModel featureRef = featureRefs[i];
+			if (featureRef == null) {
+				// Features that failed will be retried once again
+				try {
+					IFeature sourceFeature =
+						sourceFeatureRefs[i].getFeature(new NullProgressMonitor());
+					featureRef =
+						mirrorFeature(remoteSite, sourceFeature, optionalfeatures, 1);
+				} catch (CoreException ce) {
+					if (failure == null)
+						failure = ce;
+					continue;
+				}
+			}
 			// Set categories of the new feature
 			ICategory remoteCategories[] = sourceFeatureRefs[i].getCategories();
 			for (int j = 0; j < remoteCategories.length; j++) {
 				featureRef.addCategoryName(remoteCategories[j].getName());
 			}
 
-			addFeatureReferenceModel(remoteSite, featureRef);
+			exposeFeature(exposedFeatures, featureRef);
 		}
+
+		if (failure != null) {
+			// keep the features mirrored so far
+			save();
+			throw failure;
+		}
+	}
+
+	/*
+	 * Mirrors the features on a pool of workers. Returns the mirrored
+	 * feature of each source feature, null for the ones that failed.
+	 */
+	private SiteFeatureReferenceModel[] mirrorFeatures(
+		final ISite remoteSite,
+		final ISiteFeatureReference[] sourceFeatureRefs,
+		final IFeatureReference[] optionalfeatures) {
+
+		final SiteFeatureReferenceModel[] featureRefs =
+			new SiteFeatureReferenceModel[sourceFeatureRefs.length];
+		WorkerPool pool = new WorkerPool("Feature Mirror", getThreadCount(sourceFeatureRefs.length)); //$NON-NLS-1$
+		try {
+			for (int i = 0; i < sourceFeatureRefs.length; i++) {
+				final int index = i;
+				pool.schedule(new Runnable() {
+					public void run() {
+						try {
+							IFeature sourceFeature =
+								sourceFeatureRefs[index].getFeature(new NullProgressMonitor());
+							featureRefs[index] =
+								mirrorFeature(remoteSite, sourceFeature, optionalfeatures, 1);
+						} catch (CoreException ce) {
+							// retried once the other features are mirrored
+						}
+					}
+				});
+			}
+			pool.join(0);
+		} finally {
+			pool.shutdown();
+		}
+		return featureRefs;
 	}
 
 	/**
@@ -174,21 +286,35 @@ public class MirrorSite extends Site {
 				+ "Mirroring feature " //$NON-NLS-1$
 				+ sourceFeature.getVersionedIdentifier()
 				+ " ..."); //$NON-NLS-1$
-		SiteFeatureReferenceModel existingFeatures[] =
-			getDownloadedFeatureReferenceModels();
-		for (int e = 0; e < existingFeatures.length; e++) {
-			if (existingFeatures[e]
-				.getVersionedIdentifier()
-				.equals(sourceFeature.getVersionedIdentifier())) {
-				System.out.println(
-					tab
-						+ "Feature " //$NON-NLS-1$
-						+ sourceFeature.getVersionedIdentifier()
-						+ " already exists.  Skipping downloading."); //$NON-NLS-1$
-				return existingFeatures[e];
-			}
+		VersionedIdentifier featureId = sourceFeature.getVersionedIdentifier();
+		SiteFeatureReferenceModel existingFeature = claimFeature(featureId);
+		if (existingFeature != null) {
+			System.out.println(
+				tab
+					+ "Feature " //$NON-NLS-1$
+					+ sourceFeature.getVersionedIdentifier()
+					+ " already exists.  Skipping downloading."); //$NON-NLS-1$
+			return existingFeature;
 		}
+		try {
+			return mirrorClaimedFeature(
+				remoteSite,
+				sourceFeature,
+				optionalfeatures,
+				indent,
+				tab);
+		} finally {
+			releaseFeature(featureId);
+		}
+	}
 
+	private SiteFeatureReferenceModel mirrorClaimedFeature(
+		ISite remoteSite,
+		IFeature sourceFeature,
+		IFeatureReference[] optionalfeatures,
+		int indent,
+		String tab)
+		throws CoreException {
 		final IFeatureContentProvider provider =
 			sourceFeature.getFeatureContentProvider();
 		
@@ -203,18 +329,11 @@ public class MirrorSite extends Site {
 				+ "Getting plugin entries for " //$NON-NLS-1$
 				+ sourceFeature.getVersionedIdentifier()
 				+ " ..."); //$NON-NLS-1$
+		// the plugin entries already contained on the target site
+		// are skipped when they are claimed
 		final IPluginEntry[] sourceFeaturePluginEntries =
 			sourceFeature.getRawPluginEntries();
 
-		// determine list of plugins to install
-		// find the intersection between the plugin entries already contained
-		// on the target site, and plugin entries packaged in source feature
-
-		IPluginEntry[] pluginsToInstall =
-			UpdateManagerUtils.diff(
-				sourceFeaturePluginEntries,
-				getDownloadedPluginEntries());
-
 		System.out.println(
 			tab
 				+ "Getting non plugin entries for " //$NON-NLS-1$
@@ -247,74 +366,65 @@ public class MirrorSite extends Site {
 
 		System.out.println(
 			tab
-				+ "Downloading plug-in archives for " //$NON-NLS-1$
+				+ "Mirroring plug-in archives for " //$NON-NLS-1$
 				+ sourceFeature.getVersionedIdentifier()
 				+ " ..."); //$NON-NLS-1$
-		// download plugin archives
-		for (int i = 0; i < pluginsToInstall.length; i++) {
-			try {
-				provider.getPluginEntryArchiveReferences(pluginsToInstall[i], null);
-			} catch (CoreException ce) {
-				if ( ignoreNonPresentPlugins && 
-						(ce instanceof CoreExceptionWithRootCause) &&
-						(((CoreExceptionWithRootCause)ce).getRootException() != null) && 
-						(((CoreExceptionWithRootCause)ce).getRootException() instanceof FatalIOException) ) {
-					System.out.println("Could not mirror plug-in " + pluginsToInstall[i].getVersionedIdentifier().toString() + ". It does not exist on the given site");  //$NON-NLS-1$//$NON-NLS-2$
-				} else {
-					throw ce;
-				}
+		// download and store plugin archives while the rest is mirrored
+		final PluginBatch plugins = new PluginBatch(sourceFeaturePluginEntries.length);
+		try {
+			for (int i = 0; i < sourceFeaturePluginEntries.length; i++) {
+				final IPluginEntry pluginEntry = sourceFeaturePluginEntries[i];
+				pluginPool.schedule(new Runnable() {
+					public void run() {
+						CoreException failure = null;
+						try {
+							if (!plugins.isCanceled())
+								mirrorPlugin(provider, pluginEntry);
+						} catch (CoreException ce) {
+							failure = ce;
+						} finally {
+							plugins.done(failure);
+						}
+					}
+				});
 			}
-		}
 
-		System.out.println(
-			tab
-				+ "Downloading non plug-in archives for " //$NON-NLS-1$
-				+ sourceFeature.getVersionedIdentifier()
-				+ " ..."); //$NON-NLS-1$
-		// download non-plugin archives
-		for (int i = 0; i < nonPluginsToInstall.length; i++) {
-			provider.getNonPluginEntryArchiveReferences(
-				nonPluginsToInstall[i],
-				null);
-		}
-
-		System.out.println(
-			tab
-				+ "Installing child features for " //$NON-NLS-1$
-				+ sourceFeature.getVersionedIdentifier()
-				+ " ..."); //$NON-NLS-1$
-		// install child features first
-		for (int i = 0; i < children.length; i++) {
-			IFeature childFeature = children[i].getFeature(null);
-			mirrorFeature(
-				remoteSite,
-				childFeature,
-				optionalfeatures,
-				indent + 1);
-		}
+			System.out.println(
+				tab
+					+ "Downloading non plug-in archives for " //$NON-NLS-1$
+					+ sourceFeature.getVersionedIdentifier()
+					+ " ..."); //$NON-NLS-1$
+			// download non-plugin archives
+			for (int i = 0; i < nonPluginsToInstall.length; i++) {
+				provider.getNonPluginEntryArchiveReferences(
+					nonPluginsToInstall[i],
+					null);
+			}
 
-		System.out.println(
-			tab
-				+ "Storing plug-in archives for " //$NON-NLS-1$
-				+ sourceFeature.getVersionedIdentifier()
-				+ " ..."); //$NON-NLS-1$
-		// store plugins' archives
-		for (int i = 0; i < pluginsToInstall.length; i++) {
-			try {
-				ContentReference[] references = provider.getPluginEntryArchiveReferences( pluginsToInstall[i], null);
-				storePluginArchive(references[0]);
-				addDownloadedPluginEntry(pluginsToInstall[i]);
-			} catch (CoreException ce) {
-				if ( ignoreNonPresentPlugins && 
-						(ce instanceof CoreExceptionWithRootCause) &&
-						(((CoreExceptionWithRootCause)ce).getRootException() != null) && 
-						(((CoreExceptionWithRootCause)ce).getRootException() instanceof FatalIOException) ) {
-					System.out.println("Could not write plug-in " + pluginsToInstall[i].getVersionedIdentifier().toString() + ". It does not exist on the given site"); //$NON-NLS-1$ //$NON-NLS-2$
-				} else {
-					//System.out.println("ignoreNonPresentPlugins:"+ignoreNonPresentPlugins); //$NON-NLS-1$
-					throw ce;
-				}
+			System.out.println(
+				tab
+					+ "Installing child features for " //$NON-NLS-1$
+					+ sourceFeature.getVersionedIdentifier()
+					+ " ..."); //$NON-NLS-1$
+			// install child features first
+			for (int i = 0; i < children.length; i++) {
+				IFeature childFeature = children[i].getFeature(null);
+				mirrorFeature(
+					remoteSite,
+					childFeature,
+					optionalfeatures,
+					indent + 1);
 			}
+
+			System.out.println(
+				tab
+					+ "Storing plug-in archives for " //$NON-NLS-1$
+					+ sourceFeature.getVersionedIdentifier()
+					+ " ..."); //$NON-NLS-1$
+			plugins.join();
+		} finally {
+			// the plug-ins not started yet are skipped if the feature failed
+			plugins.cancel();
 		}
 
 		System.out.println(
@@ -371,34 +481,77 @@ public class MirrorSite extends Site {
 		return featureRef;
 
 	}
+
+	/*
+	 * Downloads and stores a plug-in archive, unless the plug-in is
+	 * mirrored already.
+	 */
+	private void mirrorPlugin(
+		IFeatureContentProvider provider,
+		IPluginEntry pluginEntry)
+		throws CoreException {
+		VersionedIdentifier pluginId = pluginEntry.getVersionedIdentifier();
+		if (!claimPlugin(pluginId))
+			return;
+		boolean stored = false;
+		try {
+			ContentReference[] references = provider.getPluginEntryArchiveReferences(pluginEntry, null);
+			storePluginArchive(references[0]);
+			stored = true;
+		} catch (CoreException ce) {
+			if ( ignoreNonPresentPlugins &&
+					(ce instanceof CoreExceptionWithRootCause) &&
+					(((CoreExceptionWithRootCause)ce).getRootException() != null) &&
+					(((CoreExceptionWithRootCause)ce).getRootException() instanceof FatalIOException) ) {
+				System.out.println("Could not mirror plug-in " + pluginId.toString() + ". It does not exist on the given site");  //$NON-NLS-1$//$NON-NLS-2$
+			} else {
+				throw ce;
+			}
+		} finally {
+			releasePlugin(pluginId, stored ? pluginEntry : null);
+		}
+	}
+
 	/**
 	 * Adds a feature reference model to this site,
 	 * and exposes in site.xml if remote site exposes given feature.
+	 * The site.xml is written once all the features are mirrored.
 	 */
 	public void addFeatureReferenceModel(
 		ISite remoteSite,
 		SiteFeatureReferenceModel featureReference) {
+		exposeFeature(getExposedFeatureIdentifiers(remoteSite), featureReference);
+	}
+
+	private void exposeFeature(
+		Set exposedFeatures,
+		SiteFeatureReferenceModel featureReference) {
 		// check if remote site exposes this feature
+		if (exposedFeatures.contains(featureReference.getVersionedIdentifier())) {
+			addFeatureReferenceModel(featureReference);
+		}
+		System.out.println(
+			"Feature " //$NON-NLS-1$
+				+ featureReference.getVersionedIdentifier()
+				+ " added to site.xml."); //$NON-NLS-1$
+	}
+
+	/*
+	 * Returns the identifiers of the features exposed by the remote site.
+	 */
+	private static Set getExposedFeatureIdentifiers(ISite remoteSite) {
+		Set exposedFeatures = new HashSet();
 		ISiteFeatureReference remoteFeatures[] =
 			remoteSite.getRawFeatureReferences();
 		for (int i = 0; i < remoteFeatures.length; i++) {
-			ISiteFeatureReference remoteFeatureRef = remoteFeatures[i];
 			try {
-				if (remoteFeatureRef
-					.getVersionedIdentifier()
-					.equals(featureReference.getVersionedIdentifier())) {
-					addFeatureReferenceModel(featureReference);
-				}
+				exposedFeatures.add(remoteFeatures[i].getVersionedIdentifier());
 			} catch (CoreException ce) {
 				StandaloneUpdateApplication.exceptionLogged();
 				UpdateCore.log(ce);
 			}
 		}
-		save();
-		System.out.println(
-			"Feature " //$NON-NLS-1$
-				+ featureReference.getVersionedIdentifier()
-				+ " added to site.xml."); //$NON-NLS-1$
+		return exposedFeatures;
 	}
 	/**
 	 * Adds feature model to site model, removing old feature
@@ -433,7 +586,7 @@ public class MirrorSite extends Site {
 						+ ".jar"); //$NON-NLS-1$
 			featurePath = newURL.getFile();
 			inStream = contentReference.getInputStream();
-			UpdateManagerUtils.copyToLocal(inStream, featurePath, null);
+			copyToLocal(inStream, featurePath);
 		} catch (IOException e) {
 			throw Utilities.newCoreException(
 				"Error occurred while creating "+ featurePath+" file.", //$NON-NLS-1$ //$NON-NLS-2$
@@ -462,7 +615,7 @@ public class MirrorSite extends Site {
 			inStream = contentReference.getInputStream();
 			// added null check here,  since contentReference can, in theory, return null for input stream. 
 			if (inStream != null) {
-				UpdateManagerUtils.copyToLocal(inStream, pluginPath, null);
+				copyToLocal(inStream, pluginPath);
 			}
 		} catch (IOException e) {
 			throw Utilities.newCoreException(
@@ -497,10 +650,7 @@ public class MirrorSite extends Site {
 			inStream = contentReference.getInputStream();
 			nonPluginArchivePath =
 				new File(dir, contentReference.getIdentifier());
-			UpdateManagerUtils.copyToLocal(
-				inStream,
-				nonPluginArchivePath.getAbsolutePath(),
-				null);
+			copyToLocal(inStream, nonPluginArchivePath.getAbsolutePath());
 		} catch (IOException e) {
 			throw Utilities.newCoreException(
 			"Error occurred while creating "+ nonPluginArchivePath.getAbsolutePath()+" file." //$NON-NLS-1$ //$NON-NLS-2$
@@ -515,6 +665,22 @@ public class MirrorSite extends Site {
 		}
 	}
 
+	/*
+	 * Copies the archive under a temporary name and renames it, so an
+	 * interrupted mirror does not leave a truncated archive behind.
+	 */
+	private static void copyToLocal(InputStream inStream, String path)
+		throws IOException, CoreException {
+		File file = new File(path);
+		File tempFile = new File(path + TEMP_SUFFIX);
+		UpdateManagerUtils.copyToLocal(inStream, tempFile.getPath(), null);
+		file.delete();
+		if (!tempFile.renameTo(file)) {
+			tempFile.delete();
+			throw new IOException("Unable to rename " + tempFile + " to " + file); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+	}
+
 	private void save() {
 		FileOutputStream fos = null;
 		try {
@@ -654,14 +820,10 @@ public class MirrorSite extends Site {
 	 * We cannot figure out the list of plugins by reading the Site.xml as
 	 * the archives tag are optionals
 	 */
-	public void addDownloadedPluginEntry(IPluginEntry pluginEntry) {
-		downloadedPluginEntries.add(pluginEntry);
+	public synchronized void addDownloadedPluginEntry(IPluginEntry pluginEntry) {
+		downloadedPluginEntries.put(pluginEntry.getVersionedIdentifier(), pluginEntry);
 	}
 
-	private IPluginEntry[] getDownloadedPluginEntries() {
-		return (IPluginEntry[]) downloadedPluginEntries.toArray(
-			new IPluginEntry[downloadedPluginEntries.size()]);
-	}
 	/**
 	 * Adds a plugin entry 
 	 * Either from parsing the file system or 
@@ -670,17 +832,88 @@ public class MirrorSite extends Site {
 	 * We cannot figure out the list of plugins by reading the Site.xml as
 	 * the archives tag are optionals
 	 */
-	public void addDownloadedFeatureReferenceModel(SiteFeatureReferenceModel featureModel) {
-		downloadedFeatureReferenceModels.add(featureModel);
+	public synchronized void addDownloadedFeatureReferenceModel(SiteFeatureReferenceModel featureModel) {
+		downloadedFeatureReferenceModels.put(featureModel.getVersionedIdentifier(), featureModel);
+	}
+
+	/*
+	 * Claims a feature for the current thread, waiting while another
+	 * thread mirrors it. Returns the mirrored feature if it exists already,
+	 * null if the feature is claimed.
+	 */
+	private synchronized SiteFeatureReferenceModel claimFeature(VersionedIdentifier featureId)
+		throws CoreException {
+		waitFor(featuresInProgress, featureId);
+		SiteFeatureReferenceModel featureRef =
+			(SiteFeatureReferenceModel) downloadedFeatureReferenceModels.get(featureId);
+		if (featureRef == null)
+			featuresInProgress.put(featureId, Thread.currentThread());
+		return featureRef;
+	}
+
+	private synchronized void releaseFeature(VersionedIdentifier featureId) {
+		featuresInProgress.remove(featureId);
+		notifyAll();
+	}
+
+	/*
+	 * Claims a plug-in for the current thread, waiting while another
+	 * thread mirrors it. Returns false if the plug-in exists already.
+	 */
+	private synchronized boolean claimPlugin(VersionedIdentifier pluginId)
+		throws CoreException {
+		waitFor(pluginsInProgress, pluginId);
+		if (downloadedPluginEntries.containsKey(pluginId))
+			return false;
+		pluginsInProgress.put(pluginId, Thread.currentThread());
+		return true;
 	}
 
-	private SiteFeatureReferenceModel[] getDownloadedFeatureReferenceModels() {
-		return (
-			SiteFeatureReferenceModel[]) downloadedFeatureReferenceModels
-				.toArray(
-			new SiteFeatureReferenceModel[downloadedFeatureReferenceModels
-				.size()]);
+	/*
+	 * Releases a plug-in, recording its entry if it was stored.
+	 */
+	private synchronized void releasePlugin(VersionedIdentifier pluginId, IPluginEntry pluginEntry) {
+		if (pluginEntry != null)
+			downloadedPluginEntries.put(pluginId, pluginEntry);
+		pluginsInProgress.remove(pluginId);
+		notifyAll();
+	}
+
+	/*
+	 * Returns the size of a pool for the tasks, bounded by the connections
+	 * allowed to the remote site.
+	 */
+	private static int getThreadCount(int tasks) {
+		int threads = UpdateCore.DEFAULT_MAX_CONNECTIONS_PER_HOST;
+		UpdateCore plugin = UpdateCore.getPlugin();
+		if (plugin != null)
+			threads = plugin.getPluginPreferences().getInt(UpdateCore.P_MAX_CONNECTIONS_PER_HOST);
+		return Math.max(1, Math.min(tasks, threads));
 	}
+
+	private void waitFor(Map inProgress, VersionedIdentifier id)
+		throws CoreException {
+		Object owner;
+		while ((owner = inProgress.get(id)) != null) {
+			if (owner == Thread.currentThread()) {
+				if (inProgress == featuresInProgress)
+					throw Utilities.newCoreException(
+						"Feature " + id + " includes itself.", //$NON-NLS-1$ //$NON-NLS-2$
+						null);
+				throw Utilities.newCoreException(
+					"Plug-in " + id + " is already being mirrored by this thread.", //$NON-NLS-1$ //$NON-NLS-2$
+					null);
+			}
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				throw Utilities.newCoreException(
+					"Interrupted while waiting for " + id + ".", //$NON-NLS-1$ //$NON-NLS-2$
+					e);
+			}
+		}
+	}
+
 	/**
 	 * Checks if mirror site contains a feature with given ID and version
 	 * @param featureRefModel
@@ -0,0 +1,204 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.update.internal.operations;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.SubProgressMonitor;
+import org.eclipse.update.configuration.IConfiguredSite;
+import org.eclipse.update.core.IFeature;
+import org.eclipse.update.core.IFeatureContentProvider;
+import org.eclipse.update.core.IFeatureReference;
+import org.eclipse.update.core.IPluginEntry;
+import org.eclipse.update.core.InstallMonitor;
+import org.eclipse.update.core.model.InstallAbortedException;
+import org.eclipse.update.internal.core.Messages;
+import org.eclipse.update.internal.core.UpdateCore;
+import org.eclipse.update.internal.core.UpdateManagerUtils;
+import org.eclipse.update.internal.core.WorkerPool;
+import org.eclipse.update.operations.IInstallFeatureOperation;
+
+/**
+ * Downloads the content of the features of a batch install while the
+ * features are installed.
+ * <p>
+ * The features are downloaded by a pool of workers, in the order they
+ * are installed. The installing thread waits for each feature with
+ * {@link #waitFor(int, IProgressMonitor)} and installs it from the
+ * downloaded archives, so the features are still installed, and the
+ * install log written, one at a time.
+ * <p>
+ * The workers only fetch the remote archives of the features, their
+ * plug-ins and their included features. The plug-ins already on the
+ * target sites are read before the workers start, so the workers do
+ * not read the local sites while the features are installed. The
+ * non-plug-in archives, which depend on the install handlers, are
+ * downloaded when the features are installed.
+ * <p>
+ * A feature that fails to download is downloaded again when it is
+ * installed, which reports the failure.
+ */
+class BatchDownloader {
+
+	private static final long POLLING_INTERVAL = 250;
+
+	private IInstallFeatureOperation[] operations;
+	private IProgressMonitor monitor;
+	private WorkerPool pool;
+	private boolean[] done;
+	// plug-ins on the target site of each operation, read before the
+	// download starts
+	private IPluginEntry[][] installedPlugins;
+
+	/**
+	 * Creates a downloader for the operations.
+	 *
+	 * @param operations the operations, in the order they are executed
+	 * @param monitor the synchronized monitor the operations report on
+	 */
+	BatchDownloader(IInstallFeatureOperation[] operations, IProgressMonitor monitor) {
+		this.operations = operations;
+		this.monitor = monitor;
+		this.done = new boolean[operations.length];
+	}
+
+	/**
+	 * Returns the number of features downloaded at the same time, 1 if
+	 * the features are downloaded when they are installed.
+	 */
+	static int getThreadCount() {
+		UpdateCore plugin = UpdateCore.getPlugin();
+		if (plugin == null)
+			return UpdateCore.DEFAULT_BATCH_DOWNLOAD_THREADS;
+		return Math.max(1, plugin.getPluginPreferences().getInt(UpdateCore.P_BATCH_DOWNLOAD_THREADS));
+	}
+
+	/**
+	 * Starts downloading the features. Must be called on the installing
+	 * thread, before the first feature is installed.
+	 */
+	void start() {
+		installedPlugins = new IPluginEntry[operations.length][];
+		Map sitePlugins = new HashMap();
+		for (int i = 0; i < operations.length; i++) {
+			IConfiguredSite targetSite = operations[i].getTargetSite();
+			if (targetSite == null) {
+				installedPlugins[i] = new IPluginEntry[0];
+				continue;
+			}
+			installedPlugins[i] = (IPluginEntry[]) sitePlugins.get(targetSite);
+			if (installedPlugins[i] == null) {
+				installedPlugins[i] = targetSite.getSite().getPluginEntries();
+				sitePlugins.put(targetSite, installedPlugins[i]);
+			}
+		}
+		pool = new WorkerPool("Feature Download", Math.min(operations.length, getThreadCount())); //$NON-NLS-1$
+		for (int i = 0; i < operations.length; i++) {
+			final int index = i;
+			pool.schedule(new Runnable() {
+				public void run() {
+					download(index);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Waits until the content of a feature is downloaded, or failed to
+	 * download.
+	 *
+	 * @param index the index of the operation
+	 * @param cancelMonitor polled for cancelation while waiting
+	 * @throws InstallAbortedException if the install was canceled
+	 */
+	synchronized void waitFor(int index, IProgressMonitor cancelMonitor) throws InstallAbortedException {
+		while (!done[index]) {
+			if (cancelMonitor.isCanceled()) {
+				pool.cancel();
+				throw new InstallAbortedException(Messages.Feature_InstallationCancelled, null);
+			}
+			try {
+				wait(POLLING_INTERVAL);
+			} catch (InterruptedException e) {
+				// check for cancelation
+			}
+		}
+	}
+
+	/**
+	 * Discards the features not downloaded yet.
+	 */
+	void shutdown() {
+		if (pool != null)
+			pool.shutdown();
+	}
+
+	private void download(int index) {
+		try {
+			if (monitor.isCanceled())
+				return;
+			IInstallFeatureOperation operation = operations[index];
+			InstallMonitor installMonitor = new InstallMonitor(new SubProgressMonitor(monitor, 0));
+			try {
+				download(operation.getFeature(), operation.getOptionalFeatures(), installedPlugins[index], installMonitor);
+			} finally {
+				installMonitor.done();
+			}
+		} catch (CoreException e) {
+			// downloaded again by the install
+			UpdateCore.warn("Unable to download " + operations[index].getFeature().getVersionedIdentifier(), e); //$NON-NLS-1$
+		} catch (RuntimeException e) {
+			UpdateCore.warn("Unable to download " + operations[index].getFeature().getVersionedIdentifier(), e); //$NON-NLS-1$
+		} finally {
+			complete(index);
+		}
+	}
+
+	/*
+	 * Fetches the archives of the feature, of its plug-ins that are not
+	 * installed, and of its included features, as
+	 * UpdateUtils.downloadFeatureContent() does for the install.
+	 */
+	private void download(IFeature feature, IFeatureReference[] optionalChildren, IPluginEntry[] installed, InstallMonitor installMonitor) throws CoreException {
+		IFeatureContentProvider provider = feature.getFeatureContentProvider();
+		provider.getFeatureEntryArchiveReferences(installMonitor);
+		IPluginEntry[] plugins = UpdateManagerUtils.diff(feature.getPluginEntries(), installed);
+		for (int i = 0; i < plugins.length; i++) {
+			if (installMonitor.isCanceled())
+				return;
+			provider.getPluginEntryArchiveReferences(plugins[i], installMonitor);
+		}
+
+		IFeatureReference[] children = feature.getIncludedFeatureReferences();
+		if (optionalChildren != null)
+			children = UpdateManagerUtils.optionalChildrenToInstall(children, optionalChildren);
+		for (int i = 0; i < children.length; i++) {
+			if (installMonitor.isCanceled())
+				return;
+			IFeature child;
+			try {
+				child = children[i].getFeature(null);
+			} catch (CoreException e) {
+				// reported by the install
+				continue;
+			}
+			download(child, optionalChildren, installed, installMonitor);
+		}
+	}
+
+	private synchronized void complete(int index) {
+		done[index] = true;
+		notifyAll();
+	}
+}
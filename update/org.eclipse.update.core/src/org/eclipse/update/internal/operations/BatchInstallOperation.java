@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2007 IBM Corporation and others.
+ * Copyright (c) 2000, 2013 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -66,6 +66,16 @@ public class BatchInstallOperation
 		OperationsManager.setInProgress(true);
 		if (monitor == null) 
 			monitor = new NullProgressMonitor();
+
+		IInstallFeatureOperation[] orderedOperations = operations;
+		BatchDownloader downloader = null;
+		if (operations.length > 1 && BatchDownloader.getThreadCount() > 1) {
+			// features are installed after the features they import, so
+			// the downloads run ahead in the order the features are needed
+			orderedOperations = OperationValidator.sortByPrerequisites(operations);
+			monitor = new SynchronizedProgressMonitor(monitor);
+			downloader = new BatchDownloader(orderedOperations, monitor);
+		}
 			
 		try {			
 			if (listener != null)
@@ -73,24 +83,29 @@ public class BatchInstallOperation
 			
 			monitor.beginTask(
 				Messages.OperationsManager_installing,
-				operations.length);
-			for (int i = 0; i < operations.length; i++) {
+				orderedOperations.length);
+			if (downloader != null)
+				downloader.start();
+			for (int i = 0; i < orderedOperations.length; i++) {
+				if (downloader != null)
+					downloader.waitFor(i, monitor);
 				SubProgressMonitor subMonitor =
 					new SubProgressMonitor(
 						monitor,
 						1,
 						SubProgressMonitor.PREPEND_MAIN_LABEL_TO_SUBTASK);
 
-				operations[i].execute(subMonitor, listener);
-				OperationsManager.addPendingOperation(operations[i]);
+				orderedOperations[i].execute(subMonitor, listener);
+				OperationsManager.addPendingOperation(orderedOperations[i]);
 
-				operations[i].markProcessed();
+				orderedOperations[i].markProcessed();
 				if (listener != null)
-					listener.afterExecute(operations[i], null);
+					listener.afterExecute(orderedOperations[i], null);
 
 				//monitor.worked(1);
 				installCount++;
 			}
+			// the configuration is saved once for the whole batch
 			return SiteManager.getLocalSite().save();
         } catch (InstallAbortedException e) {
             // saves the current configuration
@@ -113,6 +128,9 @@ public class BatchInstallOperation
             }
             throw new InvocationTargetException(e);
         } finally {
+			if (downloader != null)
+				downloader.shutdown();
+			ArtifactCache.flush();
 			OperationsManager.setInProgress(false);
 			monitor.done();
 		}
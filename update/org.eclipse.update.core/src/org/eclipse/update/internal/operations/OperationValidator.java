@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2008 IBM Corporation and others.
+ * Copyright (c) 2000, 2013 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -40,6 +40,23 @@ import org.osgi.framework.*;
  *  
  */
 public class OperationValidator implements IOperationValidator {
+
+	// results shared by the checks of the validation running on a thread
+	private static final ThreadLocal validationCache = new ThreadLocal();
+
+	/*
+	 * Configured features, plug-ins and installed bundles, computed once
+	 * per validation as they do not change while it runs.
+	 */
+	private static class ValidationCache {
+		int depth;
+		ArrayList configuredFeatures;
+		ArrayList features;
+		// IFeature -> IPluginEntry[]
+		Map pluginEntries = new IdentityHashMap();
+		PrerequisiteIndex installedBundles;
+	}
+
 	/**
 	 * Checks if the platform configuration has been modified outside this program.
 	 * @return the error status, or null if no errors
@@ -63,51 +80,66 @@ public class OperationValidator implements IOperationValidator {
 	public IStatus validatePendingInstall(
 		IFeature oldFeature,
 		IFeature newFeature) {
-		// check initial state
-		ArrayList beforeStatus = new ArrayList();
-		validateInitialState(beforeStatus);
+		beginValidation();
+		try {
+			// check initial state
+			ArrayList beforeStatus = new ArrayList();
+			validateInitialState(beforeStatus);
 
-		// check proposed change
-		ArrayList status = new ArrayList();
-		checkPlatformWasModified(status);
-		validateInstall(oldFeature, newFeature, status);
+			// check proposed change
+			ArrayList status = new ArrayList();
+			checkPlatformWasModified(status);
+			validateInstall(oldFeature, newFeature, status);
 
-		// report status
-		return createCombinedReportStatus(beforeStatus, status);
+			// report status
+			return createCombinedReportStatus(beforeStatus, status);
+		} finally {
+			endValidation();
+		}
 	}
 
 	/*
 	 * Called by UI before performing operation
 	 */
 	public IStatus validatePendingUnconfig(IFeature feature) {
-		// check initial state
-		ArrayList beforeStatus = new ArrayList();
-		validateInitialState(beforeStatus);
+		beginValidation();
+		try {
+			// check initial state
+			ArrayList beforeStatus = new ArrayList();
+			validateInitialState(beforeStatus);
 
-		// check proposed change
-		ArrayList status = new ArrayList();
-		checkPlatformWasModified(status);
-		validateUnconfigure(feature, status);
+			// check proposed change
+			ArrayList status = new ArrayList();
+			checkPlatformWasModified(status);
+			validateUnconfigure(feature, status);
 
-		// report status
-		return createCombinedReportStatus(beforeStatus, status);
+			// report status
+			return createCombinedReportStatus(beforeStatus, status);
+		} finally {
+			endValidation();
+		}
 	}
 
 	/*
 	 * Called by UI before performing operation
 	 */
 	public IStatus validatePendingConfig(IFeature feature) {
-		// check initial state
-		ArrayList beforeStatus = new ArrayList();
-		validateInitialState(beforeStatus);
+		beginValidation();
+		try {
+			// check initial state
+			ArrayList beforeStatus = new ArrayList();
+			validateInitialState(beforeStatus);
 
-		// check proposed change
-		ArrayList status = new ArrayList();
-		checkPlatformWasModified(status);
-		validateConfigure(feature, status);
+			// check proposed change
+			ArrayList status = new ArrayList();
+			checkPlatformWasModified(status);
+			validateConfigure(feature, status);
 
-		// report status
-		return createCombinedReportStatus(beforeStatus, status);
+			// report status
+			return createCombinedReportStatus(beforeStatus, status);
+		} finally {
+			endValidation();
+		}
 	}
 
 	/**
@@ -116,17 +148,22 @@ public class OperationValidator implements IOperationValidator {
 	public IStatus validatePendingReplaceVersion(
 		IFeature feature,
 		IFeature anotherFeature) {
-		// check initial state
-		ArrayList beforeStatus = new ArrayList();
-		validateInitialState(beforeStatus);
+		beginValidation();
+		try {
+			// check initial state
+			ArrayList beforeStatus = new ArrayList();
+			validateInitialState(beforeStatus);
 
-		// check proposed change
-		ArrayList status = new ArrayList();
-		checkPlatformWasModified(status);
-		validateReplaceVersion(feature, anotherFeature, status);
+			// check proposed change
+			ArrayList status = new ArrayList();
+			checkPlatformWasModified(status);
+			validateReplaceVersion(feature, anotherFeature, status);
 
-		// report status
-		return createCombinedReportStatus(beforeStatus, status);
+			// report status
+			return createCombinedReportStatus(beforeStatus, status);
+		} finally {
+			endValidation();
+		}
 	}
 
 
@@ -134,17 +171,22 @@ public class OperationValidator implements IOperationValidator {
 	 * Called by the UI before doing a revert/ restore operation
 	 */
 	public IStatus validatePendingRevert(IInstallConfiguration config) {
-		// check initial state
-		ArrayList beforeStatus = new ArrayList();
-		validateInitialState(beforeStatus);
+		beginValidation();
+		try {
+			// check initial state
+			ArrayList beforeStatus = new ArrayList();
+			validateInitialState(beforeStatus);
 
-		// check proposed change
-		ArrayList status = new ArrayList();
-		checkPlatformWasModified(status);
-		validateRevert(config, status);
+			// check proposed change
+			ArrayList status = new ArrayList();
+			checkPlatformWasModified(status);
+			validateRevert(config, status);
 
-		// report status
-		return createCombinedReportStatus(beforeStatus, status);
+			// report status
+			return createCombinedReportStatus(beforeStatus, status);
+		} finally {
+			endValidation();
+		}
 	}
 
 	/*
@@ -152,17 +194,22 @@ public class OperationValidator implements IOperationValidator {
 	 * changes.
 	 */
 	public IStatus validatePendingChanges(IInstallFeatureOperation[] jobs) {
-		// check initial state
-		ArrayList beforeStatus = new ArrayList();
-		validateInitialState(beforeStatus);
-		checkPlatformWasModified(beforeStatus);
+		beginValidation();
+		try {
+			// check initial state
+			ArrayList beforeStatus = new ArrayList();
+			validateInitialState(beforeStatus);
+			checkPlatformWasModified(beforeStatus);
 
-		// check proposed change
-		ArrayList status = new ArrayList();
-		validatePendingChanges(jobs, status, beforeStatus);
+			// check proposed change
+			ArrayList status = new ArrayList();
+			validatePendingChanges(jobs, status, beforeStatus);
 
-		// report status
-		return createCombinedReportStatus(beforeStatus, status);
+			// report status
+			return createCombinedReportStatus(beforeStatus, status);
+		} finally {
+			endValidation();
+		}
 	}
 	
 	/*
@@ -170,37 +217,108 @@ public class OperationValidator implements IOperationValidator {
 	 * changes.
 	 */
 	public RequiredFeaturesResult getRequiredFeatures(IInstallFeatureOperation[] jobs) {
+		beginValidation();
+		try {
 		
-		RequiredFeaturesResult requiredFeaturesResult = new RequiredFeaturesResult();
-		// check initial state
-		ArrayList beforeStatus = new ArrayList();
-		validateInitialState(beforeStatus);
-		checkPlatformWasModified(beforeStatus);
+			RequiredFeaturesResult requiredFeaturesResult = new RequiredFeaturesResult();
+			// check initial state
+			ArrayList beforeStatus = new ArrayList();
+			validateInitialState(beforeStatus);
+			checkPlatformWasModified(beforeStatus);
+
+			// check proposed change
+			ArrayList status = new ArrayList();
+			Set requiredFeatures = validatePendingChanges(jobs, status, beforeStatus);
+
+			// report status
+			//return createCombinedReportStatus(beforeStatus, status);
+			requiredFeaturesResult.setRequiredFeatures(requiredFeatures);
+			requiredFeaturesResult.setStatus(createCombinedReportStatus(beforeStatus, status));
+			return requiredFeaturesResult;
+		} finally {
+			endValidation();
+		}
+	}
 
-		// check proposed change
-		ArrayList status = new ArrayList();
-		Set requiredFeatures = validatePendingChanges(jobs, status, beforeStatus);
+	/*
+	 * Orders the jobs so that the features and plug-ins a feature imports
+	 * are installed before it when they are part of the batch. The order of
+	 * the jobs is kept otherwise, including for jobs that import each other.
+	 */
+	static IInstallFeatureOperation[] sortByPrerequisites(IInstallFeatureOperation[] jobs) {
+		// identifier -> List of Integer, the jobs that provide it
+		Map featureProviders = new HashMap();
+		Map pluginProviders = new HashMap();
+		for (int i = 0; i < jobs.length; i++) {
+			Integer index = new Integer(i);
+			IFeature feature = jobs[i].getFeature();
+			addProvider(featureProviders, feature.getVersionedIdentifier().getIdentifier(), index);
+			IPluginEntry[] plugins = feature.getPluginEntries();
+			for (int j = 0; j < plugins.length; j++)
+				addProvider(pluginProviders, plugins[j].getVersionedIdentifier().getIdentifier(), index);
+		}
 
-		// report status
-		//return createCombinedReportStatus(beforeStatus, status);
-		requiredFeaturesResult.setRequiredFeatures(requiredFeatures);
-		requiredFeaturesResult.setStatus(createCombinedReportStatus(beforeStatus, status));
-		return requiredFeaturesResult;
+		// the jobs each job depends on
+		Set[] prereqs = new Set[jobs.length];
+		for (int i = 0; i < jobs.length; i++) {
+			prereqs[i] = new HashSet();
+			IImport[] imports = jobs[i].getFeature().getImports();
+			for (int j = 0; j < imports.length; j++) {
+				Map providers = imports[j].getKind() == IImport.KIND_FEATURE ? featureProviders : pluginProviders;
+				List list = (List) providers.get(imports[j].getVersionedIdentifier().getIdentifier());
+				if (list != null)
+					prereqs[i].addAll(list);
+			}
+			prereqs[i].remove(new Integer(i));
+		}
+
+		IInstallFeatureOperation[] sorted = new IInstallFeatureOperation[jobs.length];
+		Set sortedJobs = new HashSet();
+		for (int count = 0; count < jobs.length; count++) {
+			int next = -1;
+			for (int i = 0; i < jobs.length && next == -1; i++) {
+				Integer index = new Integer(i);
+				if (!sortedJobs.contains(index) && sortedJobs.containsAll(prereqs[i]))
+					next = i;
+			}
+			// jobs that import each other keep their order
+			for (int i = 0; i < jobs.length && next == -1; i++) {
+				if (!sortedJobs.contains(new Integer(i)))
+					next = i;
+			}
+			sortedJobs.add(new Integer(next));
+			sorted[count] = jobs[next];
+		}
+		return sorted;
+	}
+
+	private static void addProvider(Map providers, String id, Integer index) {
+		List list = (List) providers.get(id);
+		if (list == null) {
+			list = new ArrayList(1);
+			providers.put(id, list);
+		}
+		list.add(index);
 	}
 
 	/*
 	 * Check the current state.
 	 */
 	public IStatus validateCurrentState() {
-		// check the state
-		ArrayList status = new ArrayList();
-		checkPlatformWasModified(status);
-		validateInitialState(status);
-
-		// report status
-		if (status.size() > 0)
-			return createMultiStatus(Messages.ActivityConstraints_rootMessage, status, IStatus.ERROR);
-		return null;
+		beginValidation();
+		try {
+			// check the state
+			ArrayList status = new ArrayList();
+			checkPlatformWasModified(status);
+			validateInitialState(status);
+
+			// report status
+			if (status.size() > 0)
+				return createMultiStatus(Messages.ActivityConstraints_rootMessage, status, IStatus.ERROR);
+			return null;
+		} finally {
+			endValidation();
+		}
 	}
 
 	/*
@@ -428,6 +546,21 @@ public class OperationValidator implements IOperationValidator {
 					NLS.bind(Messages.ActivityConstraints_readOnly, (new String[] { csite.getSite().getURL().toExternalForm() }))));
 	}
 
+	private static void beginValidation() {
+		ValidationCache cache = (ValidationCache) validationCache.get();
+		if (cache == null) {
+			cache = new ValidationCache();
+			validationCache.set(cache);
+		}
+		cache.depth++;
+	}
+
+	private static void endValidation() {
+		ValidationCache cache = (ValidationCache) validationCache.get();
+		if (--cache.depth == 0)
+			validationCache.set(null);
+	}
+
 	/*
 	 * Compute a list of configured features
 	 */
@@ -435,9 +568,25 @@ public class OperationValidator implements IOperationValidator {
 		return computeFeatures(true);
 	}
 	/*
-	 * Compute a list of configured features
+	 * Compute a list of configured features. The list is computed once per
+	 * validation, callers get their own copy.
 	 */
 	private static ArrayList computeFeatures(boolean configuredOnly)
+		throws CoreException {
+		ValidationCache cache = (ValidationCache) validationCache.get();
+		if (cache == null)
+			return doComputeFeatures(configuredOnly);
+		if (configuredOnly) {
+			if (cache.configuredFeatures == null)
+				cache.configuredFeatures = doComputeFeatures(true);
+			return new ArrayList(cache.configuredFeatures);
+		}
+		if (cache.features == null)
+			cache.features = doComputeFeatures(false);
+		return new ArrayList(cache.features);
+	}
+
+	private static ArrayList doComputeFeatures(boolean configuredOnly)
 		throws CoreException {
 		ArrayList features = new ArrayList();
 		ILocalSite localSite = SiteManager.getLocalSite();
@@ -625,10 +774,18 @@ public class OperationValidator implements IOperationValidator {
 		if (features == null)
 			return new ArrayList();
 
+		ValidationCache cache = (ValidationCache) validationCache.get();
 		HashMap plugins = new HashMap();
 		for (int i = 0; i < features.size(); i++) {
 			IFeature feature = (IFeature) features.get(i);
-			IPluginEntry[] entries = feature.getPluginEntries();
+			IPluginEntry[] entries = null;
+			if (cache != null)
+				entries = (IPluginEntry[]) cache.pluginEntries.get(feature);
+			if (entries == null) {
+				entries = feature.getPluginEntries();
+				if (cache != null)
+					cache.pluginEntries.put(feature, entries);
+			}
 			for (int j = 0; j < entries.length; j++) {
 				IPluginEntry entry = entries[j];
 				plugins.put(entry.getVersionedIdentifier(), entry);
@@ -842,6 +999,18 @@ public class OperationValidator implements IOperationValidator {
 		
 		HashSet result = new HashSet();
 
+		// index the candidates once for all imports
+		PrerequisiteIndex featureIndex = new PrerequisiteIndex();
+		for (int i = 0; i < features.size(); i++) {
+			IFeature feature = (IFeature) features.get(i);
+			featureIndex.add(feature.getVersionedIdentifier(), feature);
+		}
+		PrerequisiteIndex pluginIndex = new PrerequisiteIndex();
+		for (int i = 0; i < plugins.size(); i++) {
+			IPluginEntry plugin = (IPluginEntry) plugins.get(i);
+			pluginIndex.add(plugin.getVersionedIdentifier(), null);
+		}
+
 		for (int i = 0; i < features.size(); i++) {
 			IFeature feature = (IFeature) features.get(i);
 			IImport[] imports = feature.getImports();
@@ -863,53 +1032,12 @@ public class OperationValidator implements IOperationValidator {
 				if (rule == IUpdateConstants.RULE_NONE)
 					rule = IUpdateConstants.RULE_COMPATIBLE;
 
-				boolean found = false;
-
-				ArrayList candidates;
-
+				boolean found;
 				if (featurePrereq)
-					candidates = features;
+					// a feature does not satisfy its own imports
+					found = featureIndex.matches(id, version, rule, ignoreVersion, feature);
 				else
-					candidates = plugins;
-				for (int k = 0; k < candidates.size(); k++) {
-					VersionedIdentifier cid;
-					if (featurePrereq) {
-						// the candidate is a feature
-						IFeature candidate = (IFeature) candidates.get(k);
-						// skip self
-						if (feature.equals(candidate))
-							continue;
-						cid = candidate.getVersionedIdentifier();
-					} else {
-						// the candidate is a plug-in
-						IPluginEntry plugin = (IPluginEntry) candidates.get(k);
-						cid = plugin.getVersionedIdentifier();
-					}
-					PluginVersionIdentifier cversion = cid.getVersion();
-					if (id.equals(cid.getIdentifier())) {
-						// have a candidate
-						if (ignoreVersion)
-							found = true;
-						else if (
-							rule == IUpdateConstants.RULE_PERFECT
-								&& cversion.isPerfect(version))
-							found = true;
-						else if (
-							rule == IUpdateConstants.RULE_EQUIVALENT
-								&& cversion.isEquivalentTo(version))
-							found = true;
-						else if (
-							rule == IUpdateConstants.RULE_COMPATIBLE
-								&& cversion.isCompatibleWith(version))
-							found = true;
-						else if (
-							rule == IUpdateConstants.RULE_GREATER_OR_EQUAL
-								&& cversion.isGreaterOrEqualTo(version))
-							found = true;
-					}
-					if (found)
-						break;
-				}
+					found = pluginIndex.matches(id, version, rule, ignoreVersion, null);
 				
 				// perhaps the bundle that we are looking for was installed
 				// but isn't a part of a feature
@@ -970,36 +1098,39 @@ public class OperationValidator implements IOperationValidator {
 	 * is installed in the system.
 	 */
 	private static boolean isInstalled(VersionedIdentifier vid, int rule, boolean ignoreVersion) {
+		ValidationCache cache = (ValidationCache) validationCache.get();
+		PrerequisiteIndex bundles;
+		if (cache == null) {
+			bundles = computeInstalledBundles();
+		} else {
+			if (cache.installedBundles == null)
+				cache.installedBundles = computeInstalledBundles();
+			bundles = cache.installedBundles;
+		}
+		return bundles.matches(vid.getIdentifier(), vid.getVersion(), rule, ignoreVersion, null);
+	}
+
+	/*
+	 * Index the bundles of the platform state.
+	 */
+	private static PrerequisiteIndex computeInstalledBundles() {
+		PrerequisiteIndex index = new PrerequisiteIndex();
 		BundleContext context = UpdateCore.getPlugin().getBundleContext();
 		if (context == null)
-			return false;
+			return index;
 		ServiceReference reference = context.getServiceReference(PlatformAdmin.class.getName());
 		if (reference == null)
-			return false;
+			return index;
 		PlatformAdmin admin = (PlatformAdmin) context.getService(reference);
 		try {
 			State state = admin.getState(false);
-			String id = vid.getIdentifier();
-			PluginVersionIdentifier version = vid.getVersion();
-			BundleDescription[] bundles = state.getBundles(id);
-			if (bundles == null || bundles.length == 0)
-				return false;
-			for (int i=0; i<bundles.length; i++) {
+			BundleDescription[] bundles = state.getBundles();
+			for (int i = 0; i < bundles.length; i++) {
 				BundleDescription bundle = bundles[i];
-				PluginVersionIdentifier cversion = new PluginVersionIdentifier(bundle.getVersion().toString());
-				// have a candidate
-				if (ignoreVersion)
-					return true;
-				if (rule == IUpdateConstants.RULE_PERFECT && cversion.isPerfect(version))
-					return true;
-				else if (rule == IUpdateConstants.RULE_EQUIVALENT && cversion.isEquivalentTo(version))
-					return true;
-				else if (rule == IUpdateConstants.RULE_COMPATIBLE && cversion.isCompatibleWith(version))
-					return true;
-				else if (rule == IUpdateConstants.RULE_GREATER_OR_EQUAL && cversion.isGreaterOrEqualTo(version))
-					return true;
+				if (bundle.getSymbolicName() != null)
+					index.add(bundle.getSymbolicName(), new PluginVersionIdentifier(bundle.getVersion().toString()), null);
 			}
-			return false;
+			return index;
 		} finally {
 			context.ungetService(reference);
 		}
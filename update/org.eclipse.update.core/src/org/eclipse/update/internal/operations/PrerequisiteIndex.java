@@ -0,0 +1,170 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.update.internal.operations;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.core.runtime.PluginVersionIdentifier;
+import org.eclipse.update.core.IUpdateConstants;
+import org.eclipse.update.core.VersionedIdentifier;
+
+/**
+ * Index of the features, plug-ins or bundles that can satisfy an import,
+ * by identifier.
+ * <p>
+ * The versions of each identifier are kept sorted, so an import is
+ * matched with a binary search whatever its match rule: the versions
+ * that satisfy a rule are the versions greater or equal to the required
+ * one that share its major, minor or service components.
+ */
+class PrerequisiteIndex {
+
+	private static final Comparator VERSION_ORDER = new Comparator() {
+		public int compare(Object o1, Object o2) {
+			return PrerequisiteIndex.compare(((Candidate) o1).version, ((Candidate) o2).version);
+		}
+	};
+
+	// identifier -> List of Candidate, or Candidate[] sorted by version once queried
+	private Map candidates = new HashMap();
+
+	private static class Candidate {
+		PluginVersionIdentifier version;
+		Object owner;
+	}
+
+	/**
+	 * Adds a candidate.
+	 *
+	 * @param id the identifier and version of the candidate
+	 * @param owner the feature the candidate stands for, can be
+	 * <code>null</code>
+	 */
+	public void add(VersionedIdentifier id, Object owner) {
+		add(id.getIdentifier(), id.getVersion(), owner);
+	}
+
+	/**
+	 * Adds a candidate.
+	 *
+	 * @param id the identifier of the candidate
+	 * @param version the version of the candidate
+	 * @param owner the feature the candidate stands for, can be
+	 * <code>null</code>
+	 */
+	public void add(String id, PluginVersionIdentifier version, Object owner) {
+		Candidate candidate = new Candidate();
+		candidate.version = version;
+		candidate.owner = owner;
+		Object list = candidates.get(id);
+		if (list instanceof Candidate[]) {
+			// queried already
+			list = new ArrayList(Arrays.asList((Candidate[]) list));
+			candidates.put(id, list);
+		} else if (list == null) {
+			list = new ArrayList(1);
+			candidates.put(id, list);
+		}
+		((List) list).add(candidate);
+	}
+
+	/**
+	 * Returns whether a candidate satisfies the import.
+	 *
+	 * @param id the imported identifier
+	 * @param version the required version
+	 * @param rule the match rule, one of the <code>IUpdateConstants.RULE_*</code>
+	 * constants other than <code>RULE_NONE</code>
+	 * @param ignoreVersion whether any version satisfies the import
+	 * @param importer the feature that imports, which is not a candidate
+	 * of its own imports, can be <code>null</code>
+	 * @return <code>true</code> if the import is satisfied
+	 */
+	public boolean matches(String id, PluginVersionIdentifier version, int rule, boolean ignoreVersion, Object importer) {
+		Candidate[] list = getCandidates(id);
+		if (list == null)
+			return false;
+		int start = ignoreVersion ? 0 : lowerBound(list, version);
+		for (int i = start; i < list.length; i++) {
+			// the versions are sorted, no later one matches either
+			if (!ignoreVersion && !isMatch(list[i].version, version, rule))
+				return false;
+			if (importer == null || !importer.equals(list[i].owner))
+				return true;
+		}
+		return false;
+	}
+
+	private Candidate[] getCandidates(String id) {
+		Object list = candidates.get(id);
+		if (list instanceof List) {
+			Candidate[] sorted = (Candidate[]) ((List) list).toArray(new Candidate[((List) list).size()]);
+			Arrays.sort(sorted, VERSION_ORDER);
+			candidates.put(id, sorted);
+			return sorted;
+		}
+		return (Candidate[]) list;
+	}
+
+	/*
+	 * Returns the index of the first version greater or equal to the
+	 * version.
+	 */
+	private static int lowerBound(Candidate[] list, PluginVersionIdentifier version) {
+		int low = 0;
+		int high = list.length;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (compare(list[middle].version, version) < 0)
+				low = middle + 1;
+			else
+				high = middle;
+		}
+		return low;
+	}
+
+	/*
+	 * Checks a candidate greater or equal to the required version.
+	 */
+	private static boolean isMatch(PluginVersionIdentifier candidate, PluginVersionIdentifier version, int rule) {
+		switch (rule) {
+			case IUpdateConstants.RULE_PERFECT :
+				return candidate.isPerfect(version);
+			case IUpdateConstants.RULE_EQUIVALENT :
+				return candidate.isEquivalentTo(version);
+			case IUpdateConstants.RULE_COMPATIBLE :
+				return candidate.isCompatibleWith(version);
+			case IUpdateConstants.RULE_GREATER_OR_EQUAL :
+				return true;
+			default :
+				return false;
+		}
+	}
+
+	/*
+	 * Orders versions the way PluginVersionIdentifier.isGreaterOrEqualTo
+	 * compares them.
+	 */
+	private static int compare(PluginVersionIdentifier v1, PluginVersionIdentifier v2) {
+		if (v1.getMajorComponent() != v2.getMajorComponent())
+			return v1.getMajorComponent() < v2.getMajorComponent() ? -1 : 1;
+		if (v1.getMinorComponent() != v2.getMinorComponent())
+			return v1.getMinorComponent() < v2.getMinorComponent() ? -1 : 1;
+		if (v1.getServiceComponent() != v2.getServiceComponent())
+			return v1.getServiceComponent() < v2.getServiceComponent() ? -1 : 1;
+		return v1.getQualifierComponent().compareTo(v2.getQualifierComponent());
+	}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2006, 2007 IBM Corporation and others.
+ * Copyright (c) 2006, 2013 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -11,25 +11,32 @@
  *******************************************************************************/
 package org.eclipse.update.internal.provisional;
 
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.StringTokenizer;
 import java.util.jar.JarFile;
 import java.util.jar.JarOutputStream;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IPlatformRunnable;
@@ -51,9 +58,11 @@ import org.eclipse.update.internal.core.ExtendedSiteURLFactory;
 import org.eclipse.update.internal.core.Messages;
 import org.eclipse.update.internal.core.UpdateCore;
 import org.eclipse.update.internal.core.UpdateManagerUtils;
+import org.eclipse.update.internal.core.WorkerPool;
 import org.eclipse.update.internal.jarprocessor.JarProcessor;
 import org.eclipse.update.internal.jarprocessor.JarProcessorExecutor;
 import org.eclipse.update.internal.jarprocessor.Main;
+import org.eclipse.update.internal.jarprocessor.Pack200Transformer;
 import org.xml.sax.SAXException;
 
 /**
@@ -94,12 +103,20 @@ public class SiteOptimizerApplication implements IPlatformRunnable {
 
 	public final static String JAR_PROCESSOR_PROCESS_ALL = "-processAll"; //$NON-NLS-1$
 
+	public final static String JAR_PROCESSOR_IN_PROCESS = "-inProcess"; //$NON-NLS-1$
+
+	public final static String JAR_PROCESSOR_THREADS = "-threads"; //$NON-NLS-1$
+
 	public final static String SITE_XML = "-siteXML"; //$NON-NLS-1$
 
 	public final static String SITE_ATTRIBUTES_FILE = "siteAttributes.txt"; //$NON-NLS-1$
 
 	public final static String DIGEST_OUTPUT_DIR = "-digestOutputDir"; //$NON-NLS-1$
 
+	public final static String DIGEST_INCREMENTAL = "-incremental"; //$NON-NLS-1$
+
+	public final static String DIGEST_MANIFEST = "digest.manifest"; //$NON-NLS-1$
+
 	/*
 	 * private final static String DESCRIPTION = "DESCRIPTION"; private final
 	 * static String LICENCE = "LICENCE"; private final static String COPYRIGHT =
@@ -151,12 +168,22 @@ public class SiteOptimizerApplication implements IPlatformRunnable {
 		options.unpack = params.containsKey(JAR_PROCESSOR_UNPACK);
 		options.repack = params.containsKey(JAR_PROCESSOR_REPACK);
 		options.processAll = params.containsKey(JAR_PROCESSOR_PROCESS_ALL);
+		options.inProcess = params.containsKey(JAR_PROCESSOR_IN_PROCESS);
 		options.verbose = params.containsKey(VERBOSE);
 		options.signCommand = (String) params.get(JAR_PROCESSOR_SIGN);
 		options.outputDir = (String) params.get(OUTPUT_DIR);
 
 		String problem = null;
 
+		String threads = (String) params.get(JAR_PROCESSOR_THREADS);
+		if (threads != null) {
+			try {
+				options.threads = Integer.parseInt(threads);
+			} catch (NumberFormatException e) {
+				problem = NLS.bind(Messages.SiteOptimizer_invalidThreads, new String[] { threads });
+			}
+		}
+
 		String input = (String) params.get(INPUT);
 		if (input == null)
 			problem = Messages.SiteOptimizer_inputNotSpecified;
@@ -169,15 +196,16 @@ public class SiteOptimizerApplication implements IPlatformRunnable {
 						new String[] { input });
 		}
 
+		boolean inProcess = options.inProcess && Pack200Transformer.isAvailable();
 		if (options.unpack) {
-			if (!JarProcessor.canPerformUnpack()) {
+			if (!JarProcessor.canPerformUnpack() && !inProcess) {
 				problem = Messages.JarProcessor_unpackNotFound;
 			} else if (options.pack || options.repack
 					|| options.signCommand != null) {
 				problem = Messages.JarProcessor_noPackUnpack;
 			}
 		} else if ((options.pack || options.repack)
-				&& !JarProcessor.canPerformPack()) {
+				&& !JarProcessor.canPerformPack() && !inProcess) {
 			problem = Messages.JarProcessor_packNotFound;
 		}
 
@@ -198,9 +226,24 @@ public class SiteOptimizerApplication implements IPlatformRunnable {
 			System.out.println("no features to process"); //$NON-NLS-1$
 			return false;
 		}
+		String outputDirectory = (String) params.get(DIGEST_OUTPUT_DIR);
+
+		outputDirectory = outputDirectory.substring(outputDirectory
+				.indexOf("=") + 1); //$NON-NLS-1$
+		if (!outputDirectory.endsWith(File.separator)) {
+			outputDirectory = outputDirectory + File.separator;
+		}
+
+		// the manifest is always saved, so the next run can be incremental
+		DigestManifest manifest = new DigestManifest(new File(outputDirectory, DIGEST_MANIFEST));
+		if (params.containsKey(DIGEST_INCREMENTAL))
+			manifest.load();
+
 		Map perFeatureLocales = new HashMap();
 		Map availableLocales = getAvailableLocales(featureList,
-				perFeatureLocales);
+				perFeatureLocales, manifest);
+		if (availableLocales == null)
+			return false;
 		try {
 			openInputStremas(availableLocales);
 		} catch (IOException e1) {
@@ -209,6 +252,8 @@ public class SiteOptimizerApplication implements IPlatformRunnable {
 			return false;
 		}
 
+		// feature jar -> ParsedFeature, for the features that changed
+		Map parsedFeatures = new HashMap();
 		for(int i = 0; i < featureList.size(); i++) {
 
 			String featureJarFileName = (String) featureList.get(i);
@@ -220,34 +265,23 @@ public class SiteOptimizerApplication implements IPlatformRunnable {
 				continue;
 			}
 
-			JarFile featureJar = null;
 			try {
-				featureJar = new JarFile(featureJarFileName);
-			} catch (IOException e) {
-				System.out.println("Problem with opening jar: " //$NON-NLS-1$
-						+ featureJarFileName);
-				e.printStackTrace();
-				return false;
-			}
-			FeatureModelFactory fmf = new FeatureModelFactory();
-
-			try {
-				ZipEntry featureXMLEntry = featureJar.getEntry("feature.xml"); //$NON-NLS-1$
-				Map featureProperties = loadProperties(featureJar,
-						featureJarFileName, perFeatureLocales);
-
-				FeatureModel featureModel = fmf.parseFeature(featureJar
-						.getInputStream(featureXMLEntry));
+				if (manifest.isUnchanged(featureJarFileName)) {
+					// its digest entries are copied from the previous digests
+					addFeaturesToList(featureList, manifest.getList(featureJarFileName, DigestManifest.INCLUDES), false, availableLocales, perFeatureLocales, manifest);
+					addFeaturesToList(featureList, manifest.getList(featureJarFileName, DigestManifest.OPTIONAL_INCLUDES), true, availableLocales, perFeatureLocales, manifest);
+					continue;
+				}
 
-				featureList = addFeaturesToList( (String) params.get(SITE_XML), featureList, featureModel.getFeatureIncluded(), availableLocales, perFeatureLocales);
+				ParsedFeature feature = parseFeature(featureJarFileName, perFeatureLocales);
+				if (feature == null)
+					return false;
+				parsedFeatures.put(featureJarFileName, feature);
 
-				Iterator availableLocalesIterator = availableLocales.values()
-				.iterator();
-				while (availableLocalesIterator.hasNext()) {
-					((AvailableLocale) availableLocalesIterator.next())
-					.writeFeatureDigests(featureModel,
-							featureProperties);
-				}
+				List includes = new ArrayList();
+				List optionalIncludes = new ArrayList();
+				featureList = addFeaturesToList( (String) params.get(SITE_XML), featureList, feature.model.getFeatureIncluded(), availableLocales, perFeatureLocales, manifest, includes, optionalIncludes);
+				manifest.update(featureJarFileName, feature.getIdentifier(), (List) perFeatureLocales.get(featureJarFileName), includes, optionalIncludes);
 
 			} catch (SAXException e) {
 				e.printStackTrace();
@@ -260,31 +294,92 @@ public class SiteOptimizerApplication implements IPlatformRunnable {
 				return false;
 			}
 		}
-		Iterator availableLocalesIterator = availableLocales.values()
-		.iterator();
-		String outputDirectory = (String) params.get(DIGEST_OUTPUT_DIR);
 
-		outputDirectory = outputDirectory.substring(outputDirectory
-				.indexOf("=") + 1); //$NON-NLS-1$
-		if (!outputDirectory.endsWith(File.separator)) {
-			outputDirectory = outputDirectory + File.separator;
-		}
-		while (availableLocalesIterator.hasNext()) {
+		// each locale writes its digest on its own thread
+		int threads = Runtime.getRuntime().availableProcessors();
+		if (params.get(JAR_PROCESSOR_THREADS) != null) {
 			try {
-				((AvailableLocale) availableLocalesIterator.next())
-				.finishDigest(outputDirectory);
-			} catch (IOException e) {
-				System.out.println("Can not write in digest output directory: " //$NON-NLS-1$
-						+ outputDirectory);
-				e.printStackTrace();
+				threads = Integer.parseInt((String) params.get(JAR_PROCESSOR_THREADS));
+			} catch (NumberFormatException e) {
+				System.out.println(NLS.bind(Messages.SiteOptimizer_invalidThreads, new String[] { (String) params.get(JAR_PROCESSOR_THREADS) }));
 				return false;
 			}
 		}
+		final List finalFeatureList = featureList;
+		final Map finalParsedFeatures = parsedFeatures;
+		final Map finalPerFeatureLocales = perFeatureLocales;
+		final DigestManifest finalManifest = manifest;
+		final String finalOutputDirectory = outputDirectory;
+		final List failures = Collections.synchronizedList(new ArrayList());
+		WorkerPool pool = new WorkerPool("Digest Builder", threads); //$NON-NLS-1$
+		try {
+			Iterator availableLocalesIterator = availableLocales.values()
+			.iterator();
+			while (availableLocalesIterator.hasNext()) {
+				final AvailableLocale locale = (AvailableLocale) availableLocalesIterator.next();
+				pool.schedule(new Runnable() {
+					public void run() {
+						try {
+							locale.writeDigest(finalFeatureList, finalParsedFeatures, finalPerFeatureLocales, finalManifest, finalOutputDirectory);
+						} catch (Throwable t) {
+							failures.add(t);
+						}
+					}
+				});
+			}
+			pool.join(0);
+		} finally {
+			pool.shutdown();
+		}
+		if (!failures.isEmpty()) {
+			System.out.println("Can not write in digest output directory: " //$NON-NLS-1$
+					+ outputDirectory);
+			for (int i = 0; i < failures.size(); i++)
+				((Throwable) failures.get(i)).printStackTrace();
+			return false;
+		}
+
+		try {
+			manifest.save();
+		} catch (IOException e) {
+			System.out.println("Can not write in digest output directory: " //$NON-NLS-1$
+					+ outputDirectory);
+			e.printStackTrace();
+			return false;
+		}
 		System.out.println("Done"); //$NON-NLS-1$
 		return true;
 	}
 
-	private List addFeaturesToList( String siteXML, List featureList, IIncludedFeatureReference[] iIncludedFeatureReferences, Map availableLocales, Map perFeatureLocales ) throws CoreException {
+	/*
+	 * Reads the model and the localized properties of a feature, or
+	 * returns null if the jar cannot be opened.
+	 */
+	private ParsedFeature parseFeature(String featureJarFileName, Map perFeatureLocales) throws IOException, SAXException, CoreException {
+		JarFile featureJar = null;
+		try {
+			featureJar = new JarFile(featureJarFileName);
+		} catch (IOException e) {
+			System.out.println("Problem with opening jar: " //$NON-NLS-1$
+					+ featureJarFileName);
+			e.printStackTrace();
+			return null;
+		}
+		try {
+			FeatureModelFactory fmf = new FeatureModelFactory();
+			ZipEntry featureXMLEntry = featureJar.getEntry("feature.xml"); //$NON-NLS-1$
+			ParsedFeature feature = new ParsedFeature();
+			feature.properties = loadProperties(featureJar,
+					featureJarFileName, perFeatureLocales);
+			feature.model = fmf.parseFeature(featureJar
+					.getInputStream(featureXMLEntry));
+			return feature;
+		} finally {
+			featureJar.close();
+		}
+	}
+
+	private List addFeaturesToList( String siteXML, List featureList, IIncludedFeatureReference[] iIncludedFeatureReferences, Map availableLocales, Map perFeatureLocales, DigestManifest manifest, List includes, List optionalIncludes ) throws CoreException {
 
 		String directoryName = (new File(siteXML)).getParent();
 		if (!directoryName.endsWith(File.separator)) {
@@ -294,24 +389,39 @@ public class SiteOptimizerApplication implements IPlatformRunnable {
 
 		for (int i = 0; i < iIncludedFeatureReferences.length; i++) {
 			String featureURL = directoryName + iIncludedFeatureReferences[i].getVersionedIdentifier() + ".jar"; //$NON-NLS-1$
-			if (!(isFeatureAlreadyInList(featureList, featureURL))) {
-				try {
-					System.out.println("Extracting locales from included feature " + featureURL); //$NON-NLS-1$
-					processLocalesInJar(availableLocales, featureURL, perFeatureLocales, true);
-				} catch (IOException e) {
-					if (iIncludedFeatureReferences[i].isOptional()) 
-						continue;
-					System.out.println("Error while extracting locales from included feature " + featureURL);//$NON-NLS-1$	
-					e.printStackTrace();
-					throw new CoreException( new Status( IStatus.ERROR, UpdateCore.getPlugin().getBundle().getSymbolicName(), IStatus.OK, "Error while extracting locales from included feature " + featureURL, e)); //$NON-NLS-1$ 
-				}
-				featureList.add(featureURL);
-			}
+			if (addFeatureToList(featureList, featureURL, iIncludedFeatureReferences[i].isOptional(), availableLocales, perFeatureLocales, manifest))
+				(iIncludedFeatureReferences[i].isOptional() ? optionalIncludes : includes).add(featureURL);
 		}
 
 		return featureList;
 	}
 
+	private void addFeaturesToList(List featureList, List featureURLs, boolean optional, Map availableLocales, Map perFeatureLocales, DigestManifest manifest) throws CoreException {
+		for (int i = 0; i < featureURLs.size(); i++)
+			addFeatureToList(featureList, (String) featureURLs.get(i), optional, availableLocales, perFeatureLocales, manifest);
+	}
+
+	/*
+	 * Adds an included feature to the list. Returns false if an optional
+	 * feature is not found.
+	 */
+	private boolean addFeatureToList(List featureList, String featureURL, boolean optional, Map availableLocales, Map perFeatureLocales, DigestManifest manifest) throws CoreException {
+		if (!(isFeatureAlreadyInList(featureList, featureURL))) {
+			try {
+				System.out.println("Extracting locales from included feature " + featureURL); //$NON-NLS-1$
+				processLocales(availableLocales, featureURL, perFeatureLocales, true, manifest);
+			} catch (IOException e) {
+				if (optional) 
+					return false;
+				System.out.println("Error while extracting locales from included feature " + featureURL);//$NON-NLS-1$	
+				e.printStackTrace();
+				throw new CoreException( new Status( IStatus.ERROR, UpdateCore.getPlugin().getBundle().getSymbolicName(), IStatus.OK, "Error while extracting locales from included feature " + featureURL, e)); //$NON-NLS-1$ 
+			}
+			featureList.add(featureURL);
+		}
+		return true;
+	}
+
 	private boolean isFeatureAlreadyInList(List featureList, String featureURL) {
 		for (int i = 0; i < featureList.size(); i++) {
 			String currentFeatureURL = (String)featureList.get(i);
@@ -363,14 +473,14 @@ public class SiteOptimizerApplication implements IPlatformRunnable {
 		}
 	}
 
-	private Map getAvailableLocales(List featureList, Map perFeatureLocales) {
+	private Map getAvailableLocales(List featureList, Map perFeatureLocales, DigestManifest manifest) {
 		Iterator features = featureList.iterator();
 		Map locales = new HashMap();
 		while (features.hasNext()) {
 			String feature = (String) features.next();
 			try {
 				System.out.println("Extracting locales from " + feature); //$NON-NLS-1$
-				processLocalesInJar(locales, feature, perFeatureLocales, false);
+				processLocales(locales, feature, perFeatureLocales, false, manifest);
 			} catch (IOException e) {
 				System.out.println("Error while extracting locales from " //$NON-NLS-1$
 						+ feature);
@@ -381,41 +491,60 @@ public class SiteOptimizerApplication implements IPlatformRunnable {
 		return locales;
 	}
 
+	/*
+	 * Registers the locales of a feature, from the manifest if the feature
+	 * did not change since the last run.
+	 */
+	private void processLocales(Map locales, String feature,
+			Map perFeatureLocales, boolean ignoreNewLocales, DigestManifest manifest) throws IOException {
+		if (manifest.isUnchanged(feature))
+			addLocales(locales, feature, manifest.getList(feature, DigestManifest.PROPERTIES), perFeatureLocales, ignoreNewLocales);
+		else
+			processLocalesInJar(locales, feature, perFeatureLocales, ignoreNewLocales);
+	}
+
 	private void processLocalesInJar(Map locales, String feature,
 			Map perFeatureLocales, boolean ignoreNewLocales) throws IOException {
 
 		JarFile jar = new JarFile(feature);
-		// System.out.println(feature);
-		Enumeration files = jar.entries();
+		List propertyFiles = new ArrayList();
+		try {
+			Enumeration files = jar.entries();
+			while (files.hasMoreElements()) {
+				ZipEntry file = (ZipEntry) files.nextElement();
+				String name = file.getName();
+				if (name.startsWith("feature") && name.endsWith(".properties")) //$NON-NLS-1$ //$NON-NLS-2$
+					propertyFiles.add(name);
+			}
+		} finally {
+			jar.close();
+		}
+		addLocales(locales, feature, propertyFiles, perFeatureLocales, ignoreNewLocales);
+	}
+
+	private void addLocales(Map locales, String feature, List propertyFiles,
+			Map perFeatureLocales, boolean ignoreNewLocales) {
 
 		List localesTemp = new ArrayList();
 		perFeatureLocales.put(feature, localesTemp);
 
-		while (files.hasMoreElements()) {
-			ZipEntry file = (ZipEntry) files.nextElement();
+		for (int i = 0; i < propertyFiles.size(); i++) {
+			String name = (String) propertyFiles.get(i);
 			String localeString = null;
-			String name = file.getName();
-			// System.out.println("processLocalesInJar:"+name);
-			if (name.startsWith("feature") && name.endsWith(".properties")) { //$NON-NLS-1$ //$NON-NLS-2$
-				// System.out.println(name);
-				localesTemp.add(name);
-				// System.out.println(name);
-				if (name.endsWith("feature.properties")) { //$NON-NLS-1$
-					localeString = ""; //$NON-NLS-1$
-				} else {
-					localeString = name.substring(8, name.indexOf('.'));
-				}
-				// System.out.println(name +"::::\"" + localeString + "\"");
-				if ( !ignoreNewLocales && !locales.containsKey(localeString)) {
-					locales.put(localeString, new AvailableLocale(localeString));
-				}
-				if (locales.containsKey(localeString)) {
-					AvailableLocale currentLocale = (AvailableLocale) locales.get(localeString);
-					currentLocale.addFeatures(feature);
-				}
+			localesTemp.add(name);
+			if (name.endsWith("feature.properties")) { //$NON-NLS-1$
+				localeString = ""; //$NON-NLS-1$
+			} else {
+				localeString = name.substring(8, name.indexOf('.'));
+			}
+			if ( !ignoreNewLocales && !locales.containsKey(localeString)) {
+				locales.put(localeString, new AvailableLocale(localeString));
+			}
+			if (locales.containsKey(localeString)) {
+				AvailableLocale currentLocale = (AvailableLocale) locales.get(localeString);
+				currentLocale.addFeatures(feature);
 			}
 		}
-
 	}
 
 	private List getFeatureList(Map params) {
@@ -536,8 +665,7 @@ public class SiteOptimizerApplication implements IPlatformRunnable {
 				localizedPrintWriter.close();
 			}
 
-			File digest = new File(outputDirectory + File.separator + "digest" //$NON-NLS-1$
-					+ (locale == null || locale.equals("") ? "" : "_"+locale) + ".zip"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+			File digest = getDigestFile(outputDirectory);
 			System.out.println(digest.getAbsolutePath());
 			System.out.println(digest.getName());
 			if (digest.exists()) {
@@ -627,6 +755,87 @@ public class SiteOptimizerApplication implements IPlatformRunnable {
 
 		}
 		
+		/*
+		 * Writes the digest of this locale, with the features in the order
+		 * of the feature list. Features that were not parsed in this run
+		 * are copied from the previous digest of this locale when they can
+		 * be found there.
+		 */
+		public void writeDigest(List featureList, Map parsedFeatures,
+				Map perFeatureLocales, DigestManifest manifest,
+				String outputDirectory) throws IOException, SAXException, CoreException {
+			Map previousFeatures = new HashMap();
+			if (manifest.isLoaded())
+				previousFeatures = readDigest(getDigestFile(outputDirectory));
+
+			for (int i = 0; i < featureList.size(); i++) {
+				String feature = (String) featureList.get(i);
+				if (!feature.endsWith("jar")) //$NON-NLS-1$
+					continue;
+				ParsedFeature parsedFeature = (ParsedFeature) parsedFeatures.get(feature);
+				if (parsedFeature == null) {
+					List lines = (List) previousFeatures.get(manifest.getIdentifier(feature));
+					if (lines != null) {
+						for (int j = 0; j < lines.size(); j++)
+							localizedPrintWriter.println(lines.get(j));
+						continue;
+					}
+					parsedFeature = parseFeature(feature, perFeatureLocales);
+					if (parsedFeature == null)
+						throw new IOException("Problem with opening jar: " + feature); //$NON-NLS-1$
+				}
+				writeFeatureDigests(parsedFeature.model, parsedFeature.properties);
+			}
+			finishDigest(outputDirectory);
+		}
+
+		/*
+		 * Returns the lines of the feature elements of a digest written by
+		 * this application, by feature identifier and version.
+		 */
+		private Map readDigest(File digest) throws IOException {
+			Map result = new HashMap();
+			if (!digest.exists())
+				return result;
+			ZipFile zip = new ZipFile(digest);
+			try {
+				ZipEntry entry = zip.getEntry("digest.xml"); //$NON-NLS-1$
+				if (entry == null)
+					return result;
+				BufferedReader reader = new BufferedReader(new InputStreamReader(zip.getInputStream(entry), "UTF-8")); //$NON-NLS-1$
+				List lines = null;
+				String line;
+				while ((line = reader.readLine()) != null) {
+					if (line.startsWith("<feature ")) { //$NON-NLS-1$
+						lines = new ArrayList();
+						result.put(getAttribute(line, "id") + "_" + getAttribute(line, "version"), lines); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+					} else if (line.startsWith("</digest>")) { //$NON-NLS-1$
+						lines = null;
+					}
+					if (lines != null)
+						lines.add(line);
+				}
+			} finally {
+				zip.close();
+			}
+			return result;
+		}
+
+		private String getAttribute(String line, String name) {
+			String prefix = " " + name + "=\""; //$NON-NLS-1$ //$NON-NLS-2$
+			int start = line.indexOf(prefix);
+			if (start == -1)
+				return null;
+			start += prefix.length();
+			int end = line.indexOf('"', start);
+			return end == -1 ? null : line.substring(start, end);
+		}
+
+		private File getDigestFile(String outputDirectory) {
+			return new File(outputDirectory + File.separator + "digest" //$NON-NLS-1$
+					+ (locale == null || locale.equals("") ? "" : "_"+locale) + ".zip"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+		}
+
 		/**
 		 * @param defaults	Should be lang_country
 		 * @param secondary	Should be lang
@@ -642,6 +851,188 @@ public class SiteOptimizerApplication implements IPlatformRunnable {
 
 	}
 
+	private static class ParsedFeature {
+
+		private FeatureModel model;
+
+		// locale -> properties of the feature
+		private Map properties;
+
+		public String getIdentifier() {
+			return model.getFeatureIdentifier() + "_" + model.getFeatureVersion(); //$NON-NLS-1$
+		}
+	}
+
+	/*
+	 * Records the feature jars the digests were built from, so the next
+	 * incremental run only parses the features that changed.
+	 */
+	private static class DigestManifest {
+
+		public static final String SIZE = ".size"; //$NON-NLS-1$
+
+		public static final String LAST_MODIFIED = ".lastModified"; //$NON-NLS-1$
+
+		public static final String CHECKSUM = ".checksum"; //$NON-NLS-1$
+
+		public static final String IDENTIFIER = ".id"; //$NON-NLS-1$
+
+		public static final String PROPERTIES = ".properties"; //$NON-NLS-1$
+
+		public static final String INCLUDES = ".includes"; //$NON-NLS-1$
+
+		public static final String OPTIONAL_INCLUDES = ".optionalIncludes"; //$NON-NLS-1$
+
+		private static final String[] RECORDED = { CHECKSUM, IDENTIFIER, PROPERTIES, INCLUDES, OPTIONAL_INCLUDES };
+
+		private File file;
+
+		private Properties previous = new Properties();
+
+		private Properties current = new Properties();
+
+		private boolean loaded;
+
+		// feature jar -> Boolean
+		private Map unchanged = new HashMap();
+
+		public DigestManifest(File file) {
+			this.file = file;
+		}
+
+		public void load() {
+			if (!file.exists())
+				return;
+			InputStream in = null;
+			try {
+				in = new FileInputStream(file);
+				previous.load(in);
+				loaded = true;
+			} catch (IOException e) {
+				System.out.println("Can not read " + file + ", all features are processed"); //$NON-NLS-1$ //$NON-NLS-2$
+				previous.clear();
+			} finally {
+				if (in != null) {
+					try {
+						in.close();
+					} catch (IOException e) {
+					}
+				}
+			}
+		}
+
+		/*
+		 * Whether the previous digests were built from a manifest.
+		 */
+		public boolean isLoaded() {
+			return loaded;
+		}
+
+		public synchronized boolean isUnchanged(String feature) throws IOException {
+			Boolean result = (Boolean) unchanged.get(feature);
+			if (result == null) {
+				result = check(feature) ? Boolean.TRUE : Boolean.FALSE;
+				unchanged.put(feature, result);
+			}
+			return result.booleanValue();
+		}
+
+		private boolean check(String feature) throws IOException {
+			File jar = new File(feature);
+			String size = String.valueOf(jar.length());
+			String lastModified = String.valueOf(jar.lastModified());
+			current.setProperty(feature + SIZE, size);
+			current.setProperty(feature + LAST_MODIFIED, lastModified);
+
+			String checksum = previous.getProperty(feature + CHECKSUM);
+			if (checksum == null || previous.getProperty(feature + IDENTIFIER) == null)
+				return false;
+			if (!size.equals(previous.getProperty(feature + SIZE))
+					|| !lastModified.equals(previous.getProperty(feature + LAST_MODIFIED))) {
+				// the jar was touched, compare its content
+				String newChecksum = checksum(jar);
+				current.setProperty(feature + CHECKSUM, newChecksum);
+				if (!checksum.equals(newChecksum))
+					return false;
+			}
+			for (int i = 0; i < RECORDED.length; i++) {
+				String value = previous.getProperty(feature + RECORDED[i]);
+				if (value != null)
+					current.setProperty(feature + RECORDED[i], value);
+			}
+			return true;
+		}
+
+		public synchronized void update(String feature, String identifier,
+				List propertyFiles, List includes, List optionalIncludes) throws IOException {
+			if (current.getProperty(feature + CHECKSUM) == null)
+				current.setProperty(feature + CHECKSUM, checksum(new File(feature)));
+			current.setProperty(feature + IDENTIFIER, identifier);
+			current.setProperty(feature + PROPERTIES, toString(propertyFiles));
+			current.setProperty(feature + INCLUDES, toString(includes));
+			current.setProperty(feature + OPTIONAL_INCLUDES, toString(optionalIncludes));
+		}
+
+		public String getIdentifier(String feature) {
+			return current.getProperty(feature + IDENTIFIER);
+		}
+
+		public List getList(String feature, String key) {
+			List result = new ArrayList();
+			String value = current.getProperty(feature + key);
+			if (value == null)
+				return result;
+			StringTokenizer tokenizer = new StringTokenizer(value, File.pathSeparator);
+			while (tokenizer.hasMoreTokens())
+				result.add(tokenizer.nextToken());
+			return result;
+		}
+
+		public void save() throws IOException {
+			OutputStream out = new FileOutputStream(file);
+			try {
+				current.store(out, "Feature jars of the digests"); //$NON-NLS-1$
+			} finally {
+				out.close();
+			}
+		}
+
+		private static String toString(List values) {
+			StringBuffer result = new StringBuffer();
+			for (int i = 0; values != null && i < values.size(); i++) {
+				if (i > 0)
+					result.append(File.pathSeparator);
+				result.append(values.get(i));
+			}
+			return result.toString();
+		}
+
+		private static String checksum(File jar) throws IOException {
+			MessageDigest digest;
+			try {
+				digest = MessageDigest.getInstance("SHA-1"); //$NON-NLS-1$
+			} catch (NoSuchAlgorithmException e) {
+				throw new IOException(e.getMessage());
+			}
+			InputStream in = new FileInputStream(jar);
+			try {
+				byte[] buffer = new byte[8192];
+				int count;
+				while ((count = in.read(buffer)) != -1)
+					digest.update(buffer, 0, count);
+			} finally {
+				in.close();
+			}
+			byte[] hash = digest.digest();
+			StringBuffer result = new StringBuffer(hash.length * 2);
+			for (int i = 0; i < hash.length; i++) {
+				result.append(Character.forDigit((hash[i] >> 4) & 0xF, 16));
+				result.append(Character.forDigit(hash[i] & 0xF, 16));
+			}
+			return result.toString();
+		}
+	}
+
 	public static void writeFeatureDigest(PrintWriter digest,
 			FeatureModel featureModel, Properties featureProperties) {
 
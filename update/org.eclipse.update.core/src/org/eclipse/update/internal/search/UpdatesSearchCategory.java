@@ -1,5 +1,5 @@
 /*******************************************************************************
- *  Copyright (c) 2000, 2009 IBM Corporation and others.
+ *  Copyright (c) 2000, 2013 IBM Corporation and others.
  *  All rights reserved. This program and the accompanying materials
  *  are made available under the terms of the Eclipse Public License v1.0
  *  which accompanies this distribution, and is available at
@@ -11,6 +11,7 @@
 package org.eclipse.update.internal.search;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
@@ -28,6 +29,7 @@ import org.eclipse.update.core.IURLEntry;
 import org.eclipse.update.core.IUpdateConstants;
 import org.eclipse.update.core.SiteManager;
 import org.eclipse.update.core.VersionedIdentifier;
+import org.eclipse.update.internal.core.ExtendedSite;
 import org.eclipse.update.internal.core.Messages;
 import org.eclipse.update.internal.core.UpdateCore;
 import org.eclipse.update.internal.operations.FeatureHierarchyElement;
@@ -242,7 +244,7 @@ public class UpdatesSearchCategory extends BaseSearchCategory {
 			// see if we should allow same-version re-install.
 			if (!broken)
 				missingOptionalChildren = isMissingOptionalChildren(candidate);
-			ISiteFeatureReference[] refs = site.getFeatureReferences();
+			ISiteFeatureReference[] refs = getCandidateReferences(site, candidate);
 			monitor.beginTask("", refs.length + 1); //$NON-NLS-1$
 			ArrayList updateJobs = new ArrayList();
 			for (int i = 0; i < refs.length; i++) {
@@ -323,6 +325,26 @@ public class UpdatesSearchCategory extends BaseSearchCategory {
 		this.automatic = automatic;
 	}
 
+	/*
+	 * Returns the references of the site that may be an update or a patch
+	 * for the candidate. The index of an extended site provides them
+	 * without going through all the references of the site.
+	 */
+	private ISiteFeatureReference[] getCandidateReferences(ISite site, IFeature candidate) {
+		if (!(site instanceof ExtendedSite))
+			return site.getFeatureReferences();
+		ExtendedSite extendedSite = (ExtendedSite) site;
+		ISiteFeatureReference[] versions = extendedSite.getFeatureReferences(candidate.getVersionedIdentifier().getIdentifier());
+		ISiteFeatureReference[] patches = extendedSite.getPatchReferences();
+		ArrayList refs = new ArrayList(versions.length + patches.length);
+		refs.addAll(Arrays.asList(versions));
+		for (int i = 0; i < patches.length; i++) {
+			if (!refs.contains(patches[i]))
+				refs.add(patches[i]);
+		}
+		return (ISiteFeatureReference[]) refs.toArray(new ISiteFeatureReference[refs.size()]);
+	}
+
 	private void collectValidHits(
 		ArrayList hits,
 		IUpdateSearchFilter filter,
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2005 IBM Corporation and others.
+ * Copyright (c) 2000, 2013 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -70,4 +70,16 @@ public class CertificatePair {
 		return (root.equals(pair.getRoot()) && issuer.equals(pair.getIssuer()));
 	}
 
+	/*
+	 * @see Object#hashCode()
+	 */
+	public int hashCode() {
+		int hash = 0;
+		if (root != null)
+			hash = root.hashCode();
+		if (issuer != null)
+			hash = 31 * hash + issuer.hashCode();
+		return hash;
+	}
+
 }
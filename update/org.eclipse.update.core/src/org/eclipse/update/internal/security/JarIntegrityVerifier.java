@@ -0,0 +1,505 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.update.internal.security;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.osgi.util.NLS;
+import org.eclipse.update.configurator.ConfiguratorUtils;
+import org.eclipse.update.configurator.IPlatformConfiguration;
+import org.eclipse.update.core.IVerificationResult;
+import org.eclipse.update.internal.core.Messages;
+import org.eclipse.update.internal.core.UpdateCore;
+import org.eclipse.update.internal.core.WorkerPool;
+
+/**
+ * Checks the integrity of JAR files and remembers the outcome.
+ * <p>
+ * Checking the integrity of a signed JAR means reading every entry, so
+ * the outcome is kept by SHA-256 digest of the file and saved in the
+ * configuration area. An archive that was already verified in this or
+ * an earlier session is only read once more, to compute its digest.
+ * <p>
+ * The verifier is shared and can be used by several threads. Each
+ * thread reads with its own buffer, and {@link #verify(File[], IProgressMonitor)}
+ * checks a batch of archives in parallel.
+ */
+public class JarIntegrityVerifier {
+
+	private static final String MANIFEST = "META-INF"; //$NON-NLS-1$
+	private static final String CACHE_FILE = "verification.cache"; //$NON-NLS-1$
+	// 2: SHA-256 digests
+	private static final int CACHE_VERSION = 2;
+	// maximum number of archives remembered
+	private static final int MAX_ENTRIES = 2000;
+	// poll for cancelation every 250 ms
+	private static final long POLLING_INTERVAL = 250;
+
+	private static final ThreadLocal buffers = new ThreadLocal() {
+		protected Object initialValue() {
+			return new byte[8192];
+		}
+	};
+
+	private static JarIntegrityVerifier defaultVerifier;
+
+	private File cacheFile;
+	private boolean loaded;
+	private boolean dirty;
+	// digest -> Integrity, least recently used first
+	private Map verified = new LinkedHashMap(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		protected boolean removeEldestEntry(Map.Entry eldest) {
+			return size() > MAX_ENTRIES;
+		}
+	};
+	// path -> FileDigest, so a file is hashed once per session
+	private Map digests = new HashMap();
+	// certificate -> equal certificate already known, so they are shared
+	private Map certificates = new HashMap();
+
+	/**
+	 * Outcome of the integrity check of a JAR.
+	 */
+	public static class Integrity {
+		private int verificationCode;
+		private Certificate[][] certificates;
+		private Exception exception;
+
+		Integrity(int verificationCode, Certificate[][] certificates, Exception exception) {
+			this.verificationCode = verificationCode;
+			this.certificates = certificates;
+			this.exception = exception;
+		}
+
+		/**
+		 * Returns <code>IVerificationResult.TYPE_ENTRY_NOT_SIGNED</code>,
+		 * <code>TYPE_ENTRY_SIGNED_UNRECOGNIZED</code>,
+		 * <code>TYPE_ENTRY_CORRUPTED</code>, <code>VERIFICATION_CANCELLED</code>
+		 * or <code>UNKNOWN_ERROR</code>.
+		 */
+		public int getVerificationCode() {
+			return verificationCode;
+		}
+
+		/**
+		 * Returns the distinct certificate chains of the entries.
+		 */
+		public Certificate[][] getCertificates() {
+			return certificates;
+		}
+
+		public Exception getException() {
+			return exception;
+		}
+
+		boolean isCacheable() {
+			return exception == null && (verificationCode == IVerificationResult.TYPE_ENTRY_NOT_SIGNED || verificationCode == IVerificationResult.TYPE_ENTRY_SIGNED_UNRECOGNIZED || verificationCode == IVerificationResult.TYPE_ENTRY_CORRUPTED);
+		}
+	}
+
+	private static class FileDigest {
+		long size;
+		long lastModified;
+		String digest;
+	}
+
+	/**
+	 * Returns the shared verifier. Its outcomes are saved in the
+	 * configuration area when there is one.
+	 */
+	public static synchronized JarIntegrityVerifier getDefault() {
+		if (defaultVerifier == null)
+			defaultVerifier = new JarIntegrityVerifier(getCacheFile());
+		return defaultVerifier;
+	}
+
+	private static File getCacheFile() {
+		if (UpdateCore.getPlugin() == null)
+			return null;
+		IPlatformConfiguration config = ConfiguratorUtils.getCurrentPlatformConfiguration();
+		if (config == null)
+			return null;
+		URL configurationLocation = config.getConfigurationLocation();
+		if (configurationLocation == null || !"file".equalsIgnoreCase(configurationLocation.getProtocol())) //$NON-NLS-1$
+			return null;
+		File path = new File(configurationLocation.getFile());
+		return new File(path.getParentFile(), CACHE_FILE);
+	}
+
+	private static int getThreadCount() {
+		UpdateCore plugin = UpdateCore.getPlugin();
+		if (plugin == null)
+			return UpdateCore.DEFAULT_VERIFICATION_THREADS;
+		return plugin.getPluginPreferences().getInt(UpdateCore.P_VERIFICATION_THREADS);
+	}
+
+	/**
+	 * Creates a verifier.
+	 * @param cacheFile the file the outcomes are saved in, or
+	 * <code>null</code> to only remember them in this session
+	 */
+	public JarIntegrityVerifier(File cacheFile) {
+		this.cacheFile = cacheFile;
+	}
+
+	/**
+	 * Checks the integrity of the files in parallel, and saves the
+	 * outcomes. The outcomes are then returned by {@link #verify(File, IProgressMonitor)}
+	 * without reading the archives again.
+	 *
+	 * @param files the JAR files
+	 * @param monitor the progress monitor, only polled for cancelation,
+	 * can be <code>null</code>
+	 */
+	public void verify(File[] files, final IProgressMonitor monitor) {
+		WorkerPool pool = new WorkerPool("Jar Verification", Math.min(files.length, getThreadCount())); //$NON-NLS-1$
+		try {
+			for (int i = 0; i < files.length; i++) {
+				final File file = files[i];
+				pool.schedule(new Runnable() {
+					public void run() {
+						if (monitor == null || !monitor.isCanceled())
+							verify(file, monitor);
+					}
+				});
+			}
+			while (!pool.join(POLLING_INTERVAL)) {
+				if (monitor != null && monitor.isCanceled())
+					pool.cancel();
+			}
+		} finally {
+			pool.shutdown();
+		}
+		save();
+	}
+
+	/**
+	 * Checks the integrity of the file, unless a file with the same
+	 * content was already checked.
+	 *
+	 * @param file the JAR file
+	 * @param monitor the progress monitor, only polled for cancelation,
+	 * can be <code>null</code>
+	 * @return the outcome
+	 */
+	public Integrity verify(File file, IProgressMonitor monitor) {
+		String digest = null;
+		try {
+			digest = getDigest(file);
+		} catch (IOException e) {
+			// the check will fail the same way
+		} catch (NoSuchAlgorithmException e) {
+			UpdateCore.warn("Unable to compute digest of " + file, e); //$NON-NLS-1$
+		}
+
+		if (digest != null) {
+			synchronized (this) {
+				load();
+				Integrity integrity = (Integrity) verified.get(digest);
+				if (integrity != null)
+					return integrity;
+			}
+		}
+
+		Integrity integrity = checkIntegrity(file, monitor);
+		if (digest != null && integrity.isCacheable()) {
+			synchronized (this) {
+				verified.put(digest, integrity);
+				dirty = true;
+			}
+		}
+		return integrity;
+	}
+
+	/*
+	 * Reads every entry of the JAR, which makes the JarFile check the
+	 * signatures, then collects the certificates of the entries.
+	 */
+	private Integrity checkIntegrity(File file, IProgressMonitor monitor) {
+		JarFile jar = null;
+		Exception exception = null;
+		try {
+			// If the JAR is signed and not valid
+			// a security exception will be thrown
+			// while reading it
+			jar = new JarFile(file, true);
+			List entries = new ArrayList();
+			byte[] buffer = (byte[]) buffers.get();
+			InputStream in = null;
+			try {
+				Enumeration e = jar.entries();
+				while (e.hasMoreElements()) {
+					if (monitor != null && monitor.isCanceled())
+						return new Integrity(IVerificationResult.VERIFICATION_CANCELLED, null, null);
+					JarEntry entry = (JarEntry) e.nextElement();
+					entries.add(entry);
+					in = jar.getInputStream(entry);
+					while (in.read(buffer, 0, buffer.length) != -1) {
+						// Security error thrown if tempered
+					}
+					in.close();
+					in = null;
+				}
+			} catch (IOException e) {
+				exception = e;
+			} finally {
+				if (in != null)
+					try {
+						in.close();
+					} catch (IOException e) {
+					}
+			}
+
+			// you have to read all the files once
+			// before getting the certificates
+			if (jar.getManifest() == null) {
+				Exception e = new Exception(NLS.bind(Messages.JarVerifier_InvalidFile, (new String[] { file.getAbsolutePath() })));
+				UpdateCore.warn(null, e);
+				return new Integrity(IVerificationResult.TYPE_ENTRY_NOT_SIGNED, null, e);
+			}
+			List chains = new ArrayList();
+			Iterator iter = entries.iterator();
+			while (iter.hasNext()) {
+				JarEntry entry = (JarEntry) iter.next();
+				Certificate[] certs = entry.getCertificates();
+				if (certs != null && certs.length != 0) {
+					addChain(chains, certs);
+				} else if (!entry.getName().toUpperCase().startsWith(MANIFEST) && !entry.isDirectory()) {
+					// if the jarEntry is not in MANIFEST, consider the whole file unsigned
+					break;
+				}
+			}
+			Certificate[][] certificates = (Certificate[][]) chains.toArray(new Certificate[chains.size()][]);
+			int code = certificates.length == 0 ? IVerificationResult.TYPE_ENTRY_NOT_SIGNED : IVerificationResult.TYPE_ENTRY_SIGNED_UNRECOGNIZED;
+			return new Integrity(code, certificates, exception);
+		} catch (SecurityException e) {
+			// Jar file is signed
+			// but content has changed since signed
+			return new Integrity(IVerificationResult.TYPE_ENTRY_CORRUPTED, null, null);
+		} catch (Exception e) {
+			return new Integrity(IVerificationResult.UNKNOWN_ERROR, null, e);
+		} finally {
+			if (jar != null) {
+				try {
+					jar.close();
+				} catch (IOException e) {
+				}
+			}
+		}
+	}
+
+	private void addChain(List chains, Certificate[] chain) {
+		for (int i = 0; i < chains.size(); i++) {
+			if (Arrays.equals((Certificate[]) chains.get(i), chain))
+				return;
+		}
+		synchronized (this) {
+			for (int i = 0; i < chain.length; i++)
+				chain[i] = intern(chain[i]);
+		}
+		chains.add(chain);
+	}
+
+	private Certificate intern(Certificate certificate) {
+		Certificate known = (Certificate) certificates.get(certificate);
+		if (known != null)
+			return known;
+		certificates.put(certificate, certificate);
+		return certificate;
+	}
+
+	private String getDigest(File file) throws IOException, NoSuchAlgorithmException {
+		String path = file.getAbsolutePath();
+		long size = file.length();
+		long lastModified = file.lastModified();
+		synchronized (digests) {
+			FileDigest known = (FileDigest) digests.get(path);
+			if (known != null && known.size == size && known.lastModified == lastModified)
+				return known.digest;
+		}
+
+		MessageDigest md = MessageDigest.getInstance("SHA-256"); //$NON-NLS-1$
+		byte[] buffer = (byte[]) buffers.get();
+		InputStream in = new FileInputStream(file);
+		try {
+			int len;
+			while ((len = in.read(buffer)) != -1)
+				md.update(buffer, 0, len);
+		} finally {
+			in.close();
+		}
+		byte[] hash = md.digest();
+		StringBuffer digest = new StringBuffer(hash.length * 2);
+		for (int i = 0; i < hash.length; i++) {
+			digest.append(Character.forDigit((hash[i] >> 4) & 0xF, 16));
+			digest.append(Character.forDigit(hash[i] & 0xF, 16));
+		}
+
+		FileDigest known = new FileDigest();
+		known.size = size;
+		known.lastModified = lastModified;
+		known.digest = digest.toString();
+		synchronized (digests) {
+			digests.put(path, known);
+		}
+		return known.digest;
+	}
+
+	/*
+	 * Reads the saved outcomes. A cache that cannot be read is ignored.
+	 */
+	private void load() {
+		if (loaded)
+			return;
+		loaded = true;
+		if (cacheFile == null || !cacheFile.exists())
+			return;
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(cacheFile)));
+			if (in.readInt() != CACHE_VERSION)
+				return;
+			CertificateFactory factory = CertificateFactory.getInstance("X.509"); //$NON-NLS-1$
+			Certificate[] table = new Certificate[in.readInt()];
+			for (int i = 0; i < table.length; i++) {
+				byte[] encoded = new byte[in.readInt()];
+				in.readFully(encoded);
+				table[i] = intern(factory.generateCertificate(new ByteArrayInputStream(encoded)));
+			}
+			int count = in.readInt();
+			for (int i = 0; i < count; i++) {
+				String digest = in.readUTF();
+				int code = in.readInt();
+				Certificate[][] chains = new Certificate[in.readInt()][];
+				for (int j = 0; j < chains.length; j++) {
+					chains[j] = new Certificate[in.readInt()];
+					for (int k = 0; k < chains[j].length; k++)
+						chains[j][k] = table[in.readInt()];
+				}
+				verified.put(digest, new Integrity(code, chains, null));
+			}
+		} catch (IOException e) {
+			UpdateCore.warn("Unable to read verification cache " + cacheFile, e); //$NON-NLS-1$
+			verified.clear();
+		} catch (CertificateException e) {
+			UpdateCore.warn("Unable to read verification cache " + cacheFile, e); //$NON-NLS-1$
+			verified.clear();
+		} catch (RuntimeException e) {
+			// corrupted cache
+			UpdateCore.warn("Invalid verification cache " + cacheFile, e); //$NON-NLS-1$
+			verified.clear();
+		} finally {
+			if (in != null)
+				try {
+					in.close();
+				} catch (IOException e) {
+				}
+		}
+	}
+
+	/**
+	 * Saves the outcomes, if they changed since they were last saved.
+	 */
+	public synchronized void save() {
+		if (!dirty || cacheFile == null)
+			return;
+		dirty = false;
+		File tempFile = new File(cacheFile.getPath() + ".tmp"); //$NON-NLS-1$
+		DataOutputStream out = null;
+		try {
+			// certificates are written once and referred to by index
+			Map indexes = new HashMap();
+			List table = new ArrayList();
+			Iterator iter = verified.values().iterator();
+			while (iter.hasNext()) {
+				Certificate[][] chains = ((Integrity) iter.next()).getCertificates();
+				for (int i = 0; chains != null && i < chains.length; i++) {
+					for (int j = 0; j < chains[i].length; j++) {
+						if (!indexes.containsKey(chains[i][j])) {
+							indexes.put(chains[i][j], new Integer(table.size()));
+							table.add(chains[i][j].getEncoded());
+						}
+					}
+				}
+			}
+
+			cacheFile.getParentFile().mkdirs();
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+			out.writeInt(CACHE_VERSION);
+			out.writeInt(table.size());
+			for (int i = 0; i < table.size(); i++) {
+				byte[] encoded = (byte[]) table.get(i);
+				out.writeInt(encoded.length);
+				out.write(encoded);
+			}
+			out.writeInt(verified.size());
+			iter = verified.entrySet().iterator();
+			while (iter.hasNext()) {
+				Map.Entry entry = (Map.Entry) iter.next();
+				Integrity integrity = (Integrity) entry.getValue();
+				Certificate[][] chains = integrity.getCertificates();
+				out.writeUTF((String) entry.getKey());
+				out.writeInt(integrity.getVerificationCode());
+				out.writeInt(chains == null ? 0 : chains.length);
+				for (int i = 0; chains != null && i < chains.length; i++) {
+					out.writeInt(chains[i].length);
+					for (int j = 0; j < chains[i].length; j++)
+						out.writeInt(((Integer) indexes.get(chains[i][j])).intValue());
+				}
+			}
+			out.close();
+			out = null;
+			cacheFile.delete();
+			if (!tempFile.renameTo(cacheFile))
+				tempFile.delete();
+		} catch (IOException e) {
+			UpdateCore.warn("Unable to save verification cache " + cacheFile, e); //$NON-NLS-1$
+		} catch (CertificateException e) {
+			UpdateCore.warn("Unable to save verification cache " + cacheFile, e); //$NON-NLS-1$
+		} finally {
+			if (out != null) {
+				try {
+					out.close();
+				} catch (IOException e) {
+				}
+				tempFile.delete();
+			}
+		}
+	}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2005 IBM Corporation and others.
+ * Copyright (c) 2000, 2013 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -19,10 +19,10 @@ import java.security.NoSuchAlgorithmException;
 import java.security.cert.Certificate;
 import java.security.cert.CertificateException;
 import java.util.ArrayList;
-import java.util.Enumeration;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
-import java.util.jar.JarEntry;
+import java.util.Set;
 import java.util.jar.JarFile;
 import java.util.zip.ZipException;
 
@@ -51,10 +51,8 @@ import org.eclipse.update.internal.core.connection.ConnectionFactory;
 
 public class JarVerifier extends Verifier {
 
-	private static final String MANIFEST = "META-INF"; //$NON-NLS-1$
-
 	private JarVerificationResult result;
-	private List /*of CertificatePair*/
+	private Set /*of CertificatePair*/
 	trustedCertificates;
 	private boolean acceptUnsignedFiles;
 	private List /* of KeyStore */
@@ -62,8 +60,6 @@ public class JarVerifier extends Verifier {
 	private IProgressMonitor monitor;
 	private File jarFile;
 
-	private static	byte[] buffer = new byte[8192];
-	
 	/*
 	 * Default Constructor
 	 */
@@ -184,45 +180,6 @@ public class JarVerifier extends Verifier {
 		return false;
 	}
 
-	/*
-	 * 
-	 */
-	private List readJarFile(JarFile jarFile, String identifier)
-		throws IOException, InterruptedException {
-		List list = new ArrayList();
-
-		Enumeration entries = jarFile.entries();
-		JarEntry currentEntry = null;
-		InputStream in = null;
-		if (monitor != null)
-			monitor.setTaskName(NLS.bind(Messages.JarVerifier_Verify, (new String[] { identifier == null ? jarFile.getName(): identifier }))); 
-
-		try {
-			while (entries.hasMoreElements()) {
-				currentEntry = (JarEntry) entries.nextElement();
-				list.add(currentEntry);
-				in = jarFile.getInputStream(currentEntry);
-				while ((in.read(buffer, 0, buffer.length)) != -1) {
-					// Security error thrown if tempered
-				}
-				if (in!=null)
-					in.close();
-			}
-		} catch (IOException e) {
-			result.setVerificationCode(IVerificationResult.UNKNOWN_ERROR);
-			result.setResultException(e);
-		} finally {
-			try {
-				if (in != null)
-					in.close();
-			} catch (IOException e1) {
-				// ignore
-			}
-		}
-
-		return list;
-	}
-
 	/*
 	 * @param newMonitor org.eclipse.core.runtime.IProgressMonitor
 	 */
@@ -337,63 +294,42 @@ public class JarVerifier extends Verifier {
 	 * Verifies the integrity of the JAR
 	 */
 	private void verifyIntegrity(String file, String identifier) {
+		if (monitor != null)
+			monitor.setTaskName(NLS.bind(Messages.JarVerifier_Verify, (new String[] { identifier == null ? file : identifier })));
+
+		// the integrity may have been checked already, see verifyIntegrity(ContentReference[])
+		JarIntegrityVerifier.Integrity integrity = JarIntegrityVerifier.getDefault().verify(new File(file), monitor);
+		Certificate[][] certificates = integrity.getCertificates();
+		for (int i = 0; certificates != null && i < certificates.length; i++)
+			result.addCertificates(certificates[i]);
+		result.setVerificationCode(integrity.getVerificationCode());
+		result.setResultException(integrity.getException());
+	}
 
-		JarFile jarFile = null;
-
-		try {
-			// If the JAR is signed and not valid
-			// a security exception will be thrown
-			// while reading it
-			jarFile = new JarFile(file, true);
-			List filesInJar = readJarFile(jarFile, identifier);
-
-			// you have to read all the files once
-			// before getting the certificates 
-			if (jarFile.getManifest() != null) {
-				Iterator iter = filesInJar.iterator();
-				boolean certificateFound = false;
-				while (iter.hasNext()) {
-					JarEntry currentJarEntry = (JarEntry) iter.next();
-					Certificate[] certs = currentJarEntry.getCertificates();
-					if ((certs != null) && (certs.length != 0)) {
-						certificateFound = true;
-						result.addCertificates(certs);
-					} else {
-						String jarEntryName = currentJarEntry.getName();
-						if (!jarEntryName.toUpperCase().startsWith(MANIFEST)
-							&& !currentJarEntry.isDirectory()) {
-							// if the jarEntry is not in MANIFEST, consider the whole file unsigned							
-							break;
-						}
-
-					}
-				}
-
-				if (certificateFound)
-					result.setVerificationCode(IVerificationResult.TYPE_ENTRY_SIGNED_UNRECOGNIZED);
-				else
-					result.setVerificationCode(IVerificationResult.TYPE_ENTRY_NOT_SIGNED);
-			} else {
-				Exception e = new Exception(NLS.bind(Messages.JarVerifier_InvalidFile, (new String[] { file })));
-				result.setResultException(e);
-				result.setVerificationCode(IVerificationResult.TYPE_ENTRY_NOT_SIGNED);
-				UpdateCore.warn(null,e);
-			}
-		} catch (SecurityException e) {
-			// Jar file is signed
-			// but content has changed since signed
-			result.setVerificationCode(IVerificationResult.TYPE_ENTRY_CORRUPTED);
-		} catch (InterruptedException e) {
-			result.setVerificationCode(IVerificationResult.VERIFICATION_CANCELLED);
-		} catch (Exception e) {
-			result.setVerificationCode(IVerificationResult.UNKNOWN_ERROR);
-			result.setResultException(e);
-		} finally {
-			if (jarFile!=null){
-				try {jarFile.close();} catch (IOException e){}
+	/**
+	 * Checks the integrity of the JAR archives in parallel, ahead of
+	 * their verification by {@link #verify(IFeature, ContentReference, boolean, InstallMonitor)}.
+	 * References that are not local JAR archives are ignored.
+	 *
+	 * @param references the archives to check
+	 * @param monitor the progress monitor, can be <code>null</code>
+	 */
+	public void verifyIntegrity(ContentReference[] references, IProgressMonitor monitor) {
+		List files = new ArrayList(references.length);
+		for (int i = 0; i < references.length; i++) {
+			if (!(references[i] instanceof JarContentReference))
+				continue;
+			try {
+				files.add(references[i].asFile());
+			} catch (IOException e) {
+				// reported when the archive is verified
 			}
 		}
-
+		// a single archive is checked on the calling thread
+		if (files.size() == 1)
+			JarIntegrityVerifier.getDefault().verify((File) files.get(0), monitor);
+		else if (files.size() > 1)
+			JarIntegrityVerifier.getDefault().verify((File[]) files.toArray(new File[files.size()]), monitor);
 	}
 
 	/*
@@ -405,16 +341,12 @@ public class JarVerifier extends Verifier {
 			return (acceptUnsignedFiles);
 
 		if (getTrustedCertificates() != null) {
-			Iterator iter = getTrustedCertificates().iterator();
 			CertificatePair[] jarPairs = result.getRootCertificates();
 
 			// check if this is not a user accepted certificate for this feature	
-			while (iter.hasNext()) {
-				CertificatePair trustedCertificate = (CertificatePair) iter.next();
-				for (int i = 0; i < jarPairs.length; i++) {
-					if (trustedCertificate.equals(jarPairs[i])) {
-						return true;
-					}
+			for (int i = 0; i < jarPairs.length; i++) {
+				if (getTrustedCertificates().contains(jarPairs[i])) {
+					return true;
 				}
 			}
 
@@ -432,7 +364,7 @@ public class JarVerifier extends Verifier {
 	 */
 	private void addTrustedCertificate(CertificatePair pair) {
 		if (trustedCertificates == null)
-			trustedCertificates = new ArrayList();
+			trustedCertificates = new HashSet();
 		if (pair != null)
 			trustedCertificates.add(pair);
 	}
@@ -440,9 +372,9 @@ public class JarVerifier extends Verifier {
 	/*
 	 * 
 	 */
-	private List getTrustedCertificates() {
+	private Set getTrustedCertificates() {
 		if (trustedCertificates == null)
-			trustedCertificates = new ArrayList();
+			trustedCertificates = new HashSet();
 		return trustedCertificates;
 	}
 
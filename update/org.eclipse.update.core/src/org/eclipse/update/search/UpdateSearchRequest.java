@@ -32,6 +32,9 @@ import org.eclipse.update.core.IURLEntry;
 import org.eclipse.update.core.SiteManager;
 import org.eclipse.update.internal.core.ExtendedSite;
 import org.eclipse.update.internal.core.Messages;
+import org.eclipse.update.internal.core.SynchronizedProgressMonitor;
+import org.eclipse.update.internal.core.UpdateCore;
+import org.eclipse.update.internal.core.WorkerPool;
 import org.eclipse.update.internal.operations.UpdateUtils;
 import org.eclipse.update.internal.search.SiteSearchCategory;
 import org.eclipse.update.internal.search.UpdatePolicy;
@@ -276,77 +279,55 @@ public class UpdateSearchRequest {
 						statusList.add(status);
 				}
 				
-				List combinedAssociateSites = new ArrayList();
-				for (int i = 0; i < queries.length; i++) {
-					IUpdateSearchQuery query = queries[i];
-					IQueryUpdateSiteAdapter qsite = query.getQuerySearchSite();
-					// currently, the next conditional is only executed (qsite!=null) when
-					// running an update search. 
-					if (qsite != null && searchFeatureProvidedSites) {
-						// do not update features that are installed in read-only locations
-						if (query instanceof UpdatesSearchCategory.UpdateQuery) {
-							IFeature feature = ((UpdatesSearchCategory.UpdateQuery)query).getFeature();
-							if (feature != null && !feature.getSite().getCurrentConfiguredSite().verifyUpdatableStatus().isOK())
+				int threads = getSearchThreads();
+				if (threads > 1) {
+					searchConcurrently(threads, queries, candidates, updatePolicy, searchFeatureProvidedSites, collector, monitor, statusList, visitedSitesURL, visitedSites);
+				} else {
+					List combinedAssociateSites = new ArrayList();
+					for (int i = 0; i < queries.length; i++) {
+						IUpdateSearchQuery query = queries[i];
+						IQueryUpdateSiteAdapter qsite = query.getQuerySearchSite();
+						// currently, the next conditional is only executed (qsite!=null) when
+						// running an update search. 
+						if (qsite != null && searchFeatureProvidedSites) {
+							// do not update features that are installed in read-only locations
+							if (query instanceof UpdatesSearchCategory.UpdateQuery) {
+								IFeature feature = ((UpdatesSearchCategory.UpdateQuery)query).getFeature();
+								if (feature != null && !feature.getSite().getCurrentConfiguredSite().verifyUpdatableStatus().isOK())
+									continue;
+							}
+							// check for mapping
+							IUpdateSiteAdapter mappedSite = getMappedSite(updatePolicy, qsite);
+							// when there is no mapped site the feature is not updatable
+							if (mappedSite == null || mappedSite.getURL() == null)
 								continue;
+							SubProgressMonitor subMonitor =
+								new SubProgressMonitor(monitor, 1);
+							List associateSites = new ArrayList();
+							IStatus status =
+								searchOneSite(
+									mappedSite,
+									null,
+									query,
+									collector,
+									associateSites,
+									subMonitor,
+									true);
+							if (status != null)
+								statusList.add(status);
+							if (monitor.isCanceled())
+								break;
+							combinedAssociateSites = combineAssociateSites( combinedAssociateSites, associateSites, visitedSitesURL, visitedSites);
 						}
-						// check for mapping
-						IUpdateSiteAdapter mappedSite = getMappedSite(updatePolicy, qsite);
-						// when there is no mapped site the feature is not updatable
-						if (mappedSite == null || mappedSite.getURL() == null)
-							continue;
-						SubProgressMonitor subMonitor =
-							new SubProgressMonitor(monitor, 1);
-						List associateSites = new ArrayList();
-						IStatus status =
-							searchOneSite(
-								mappedSite,
-								null,
-								query,
-								collector,
-								associateSites,
-								subMonitor,
-								true);
-						if (status != null)
-							statusList.add(status);
-						if (monitor.isCanceled())
-							break;
-						combinedAssociateSites = combineAssociateSites( combinedAssociateSites, associateSites, visitedSitesURL, visitedSites);
-					}
-					
-					for (int j = 0; j < candidates.length; j++) {
-						if (monitor.isCanceled()) {
-							break;
-						}
-						IUpdateSearchSite source = candidates[j];
-						SubProgressMonitor subMonitor =
-							new SubProgressMonitor(monitor, 1);
-						List associateSites = new ArrayList();
-						IStatus status =
-							searchOneSite(
-								source,
-								source.getCategoriesToSkip(),
-								query,
-								collector,
-								associateSites,
-								subMonitor,
-								true);
-						if (status != null)
-							statusList.add(status);
-						combinedAssociateSites = combineAssociateSites( combinedAssociateSites, associateSites, visitedSitesURL, visitedSites);
-					}
-					if (monitor.isCanceled())
-						break;
-					
 					
-					for(int associateSitesDepth = 0; associateSitesDepth < 5; associateSitesDepth++) {
-						List tempCombinedSites = new ArrayList();
-						Iterator combinedAssociateSitesIterator = combinedAssociateSites.iterator();
-						while(combinedAssociateSitesIterator.hasNext()) {
-							
-							IUpdateSearchSite source = (IUpdateSearchSite)combinedAssociateSitesIterator.next();
-							
+						for (int j = 0; j < candidates.length; j++) {
+							if (monitor.isCanceled()) {
+								break;
+							}
+							IUpdateSearchSite source = candidates[j];
+							SubProgressMonitor subMonitor =
+								new SubProgressMonitor(monitor, 1);
 							List associateSites = new ArrayList();
-							SubProgressMonitor subMonitor = new SubProgressMonitor(monitor, 1);
 							IStatus status =
 								searchOneSite(
 									source,
@@ -356,15 +337,42 @@ public class UpdateSearchRequest {
 									associateSites,
 									subMonitor,
 									true);
-							combinedAssociateSites = combineAssociateSites( tempCombinedSites, associateSites, visitedSitesURL, visitedSites);
 							if (status != null)
 								statusList.add(status);
-						}	
-						combinedAssociateSites = tempCombinedSites;
+							combinedAssociateSites = combineAssociateSites( combinedAssociateSites, associateSites, visitedSitesURL, visitedSites);
+						}
+						if (monitor.isCanceled())
+							break;
+					
+					
+						for(int associateSitesDepth = 0; associateSitesDepth < 5; associateSitesDepth++) {
+							List tempCombinedSites = new ArrayList();
+							Iterator combinedAssociateSitesIterator = combinedAssociateSites.iterator();
+							while(combinedAssociateSitesIterator.hasNext()) {
+							
+								IUpdateSearchSite source = (IUpdateSearchSite)combinedAssociateSitesIterator.next();
+							
+								List associateSites = new ArrayList();
+								SubProgressMonitor subMonitor = new SubProgressMonitor(monitor, 1);
+								IStatus status =
+									searchOneSite(
+										source,
+										source.getCategoriesToSkip(),
+										query,
+										collector,
+										associateSites,
+										subMonitor,
+										true);
+								combinedAssociateSites = combineAssociateSites( tempCombinedSites, associateSites, visitedSitesURL, visitedSites);
+								if (status != null)
+									statusList.add(status);
+							}	
+							combinedAssociateSites = tempCombinedSites;
 						
+						}
+						if (monitor.isCanceled())
+							break;
 					}
-					if (monitor.isCanceled())
-						break;
 				}
 			} catch (CoreException e) {
 				searchInProgress = false;
@@ -415,6 +423,161 @@ public class UpdateSearchRequest {
 	}
 
 
+/*
+ * Returns the number of sites that may be searched at the same time.
+ */
+	private int getSearchThreads() {
+		UpdateCore plugin = UpdateCore.getPlugin();
+		if (plugin == null)
+			return 1;
+		return plugin.getPluginPreferences().getInt(UpdateCore.P_SEARCH_THREADS);
+	}
+
+/*
+ * Same as the sequential search, but the sites of each level (the 
+ * scope sites, then up to 5 levels of associate sites) are searched
+ * in parallel by a bounded pool of workers. Queries are still run one
+ * after the other so associate sites are visited in the same order.
+ */
+	private void searchConcurrently(
+		int threads,
+		IUpdateSearchQuery[] queries,
+		IUpdateSearchSite[] candidates,
+		UpdatePolicy updatePolicy,
+		boolean searchFeatureProvidedSites,
+		IUpdateSearchResultCollector collector,
+		IProgressMonitor monitor,
+		List statusList,
+		Set visitedSitesURL,
+		Set visitedSites)
+		throws CoreException {
+
+		IProgressMonitor syncMonitor = new SynchronizedProgressMonitor(monitor);
+		IUpdateSearchResultCollector syncCollector = (collector instanceof IUpdateSearchResultCollectorFromMirror)
+				? new SynchronizedMirrorCollector((IUpdateSearchResultCollectorFromMirror) collector)
+				: new SynchronizedCollector(collector);
+		WorkerPool pool = new WorkerPool("Update Search", threads); //$NON-NLS-1$
+		try {
+			for (int i = 0; i < queries.length; i++) {
+				IUpdateSearchQuery query = queries[i];
+				List level = new ArrayList();
+				IQueryUpdateSiteAdapter qsite = query.getQuerySearchSite();
+				if (qsite != null && searchFeatureProvidedSites) {
+					// do not update features that are installed in read-only locations
+					if (query instanceof UpdatesSearchCategory.UpdateQuery) {
+						IFeature feature = ((UpdatesSearchCategory.UpdateQuery) query).getFeature();
+						if (feature != null && !feature.getSite().getCurrentConfiguredSite().verifyUpdatableStatus().isOK())
+							continue;
+					}
+					// check for mapping
+					IUpdateSiteAdapter mappedSite = getMappedSite(updatePolicy, qsite);
+					// when there is no mapped site the feature is not updatable
+					if (mappedSite == null || mappedSite.getURL() == null)
+						continue;
+					level.add(new SiteSearch(mappedSite, null));
+				}
+				for (int j = 0; j < candidates.length; j++)
+					level.add(new SiteSearch(candidates[j], candidates[j].getCategoriesToSkip()));
+
+				for (int depth = 0; depth <= 5 && !level.isEmpty(); depth++) {
+					SiteSearch[] searches = (SiteSearch[]) level.toArray(new SiteSearch[level.size()]);
+					for (int j = 0; j < searches.length; j++) {
+						searches[j].query = query;
+						searches[j].collector = syncCollector;
+						searches[j].monitor = syncMonitor;
+						pool.schedule(searches[j]);
+					}
+					while (!pool.join(250)) {
+						if (monitor.isCanceled())
+							pool.cancel();
+					}
+
+					// collect in scheduling order so the outcome does not depend on timing
+					List associateSites = new ArrayList();
+					for (int j = 0; j < searches.length; j++) {
+						if (searches[j].exception != null)
+							throw searches[j].exception;
+						if (searches[j].status != null)
+							statusList.add(searches[j].status);
+						associateSites.addAll(searches[j].associateSites);
+					}
+					if (monitor.isCanceled())
+						return;
+					List next = combineAssociateSites(new ArrayList(), associateSites, visitedSitesURL, visitedSites);
+					level = new ArrayList();
+					for (int j = 0; j < next.size(); j++) {
+						IUpdateSearchSite source = (IUpdateSearchSite) next.get(j);
+						level.add(new SiteSearch(source, source.getCategoriesToSkip()));
+					}
+				}
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+/*
+ * Search of one site, run by a worker of the concurrent search.
+ */
+	private class SiteSearch implements Runnable {
+		IUpdateSiteAdapter siteAdapter;
+		String[] categoriesToSkip;
+		IUpdateSearchQuery query;
+		IUpdateSearchResultCollector collector;
+		IProgressMonitor monitor;
+		List associateSites = new ArrayList();
+		IStatus status;
+		CoreException exception;
+
+		SiteSearch(IUpdateSiteAdapter siteAdapter, String[] categoriesToSkip) {
+			this.siteAdapter = siteAdapter;
+			this.categoriesToSkip = categoriesToSkip;
+		}
+
+		public void run() {
+			SubProgressMonitor subMonitor = new SubProgressMonitor(monitor, 1);
+			if (monitor.isCanceled()) {
+				subMonitor.done();
+				return;
+			}
+			try {
+				status = searchOneSite(siteAdapter, categoriesToSkip, query, collector, associateSites, subMonitor, true);
+			} catch (CoreException e) {
+				exception = e;
+			}
+		}
+	}
+
+/*
+ * Serializes the results reported by the workers of the concurrent search.
+ */
+	private static class SynchronizedCollector implements IUpdateSearchResultCollector {
+		protected IUpdateSearchResultCollector collector;
+
+		SynchronizedCollector(IUpdateSearchResultCollector collector) {
+			this.collector = collector;
+		}
+
+		public synchronized void accept(IFeature match) {
+			collector.accept(match);
+		}
+	}
+
+	private static class SynchronizedMirrorCollector extends SynchronizedCollector implements IUpdateSearchResultCollectorFromMirror {
+		// only prompt for one mirror at a time, without blocking results meanwhile
+		private Object mirrorLock = new Object();
+
+		SynchronizedMirrorCollector(IUpdateSearchResultCollectorFromMirror collector) {
+			super(collector);
+		}
+
+		public IURLEntry getMirror(ISiteWithMirrors site, String siteName) throws OperationCanceledException {
+			synchronized (mirrorLock) {
+				return ((IUpdateSearchResultCollectorFromMirror) collector).getMirror(site, siteName);
+			}
+		}
+	}
+
 /*
  * See if this query site adapter is mapped in the map file
  * to a different URL.
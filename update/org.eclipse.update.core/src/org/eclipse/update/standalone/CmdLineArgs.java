@@ -1,5 +1,5 @@
 /*******************************************************************************
- *  Copyright (c) 2000, 2010 IBM Corporation and others.
+ *  Copyright (c) 2000, 2013 IBM Corporation and others.
  *  All rights reserved. This program and the accompanying materials
  *  are made available under the terms of the Eclipse Public License v1.0
  *  which accompanies this distribution, and is available at
@@ -16,6 +16,7 @@ import java.util.HashMap;
 
 import org.eclipse.update.core.Utilities;
 import org.eclipse.update.internal.core.Messages;
+import org.eclipse.update.internal.core.MetricsCommand;
 import org.eclipse.update.internal.core.UpdateCore;
 import org.eclipse.update.internal.mirror.MirrorCommand;
 
@@ -78,7 +79,8 @@ public class CmdLineArgs {
 			|| param.equals("-featureId") //$NON-NLS-1$
 			|| param.equals("-verifyOnly") //$NON-NLS-1$
 			|| param.equals("-mirrorURL") //$NON-NLS-1$
-		    || param.equals("-ignoreMissingPlugins"); //$NON-NLS-1$
+		    || param.equals("-ignoreMissingPlugins") //$NON-NLS-1$
+			|| param.equals("-reset"); //$NON-NLS-1$
 	}
 
 	private boolean isValidCommand(String cmd) {
@@ -94,7 +96,8 @@ public class CmdLineArgs {
 			|| cmd.equals("uninstall") //$NON-NLS-1$
 			|| cmd.equals("listFeatures") //$NON-NLS-1$
 			|| cmd.equals("addSite") //$NON-NLS-1$
-			|| cmd.equals("removeSite"); //$NON-NLS-1$
+			|| cmd.equals("removeSite") //$NON-NLS-1$
+			|| cmd.equals("metrics"); //$NON-NLS-1$
 	}
 
 	public ScriptedCommand getCommand() {
@@ -148,6 +151,8 @@ public class CmdLineArgs {
 				return new AddSiteCommand((String) options.get("-from")); //$NON-NLS-1$
 			else if (cmd.equals("removeSite")) //$NON-NLS-1$
 				return new RemoveSiteCommand((String) options.get("-to")); //$NON-NLS-1$
+			else if (cmd.equals("metrics")) //$NON-NLS-1$
+				return new MetricsCommand((String) options.get("-reset")); //$NON-NLS-1$
 			else
 				return null;
 		} catch (Exception e) {
@@ -0,0 +1,35 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.update.tests.performance;
+
+import junit.extensions.TestSetup;
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+/**
+ * Runs all the Install/Update benchmarks.
+ */
+public class AllBenchmarks extends TestSuite {
+
+	public static Test suite() {
+		TestSuite suite = new TestSuite("Install/Update Benchmarks"); //$NON-NLS-1$
+		suite.addTest(ParserBenchmarks.suite());
+		suite.addTest(VersionedIdentifierBenchmarks.suite());
+		suite.addTest(SearchBenchmarks.suite());
+		suite.addTest(ValidationBenchmarks.suite());
+		suite.addTest(ConfigurationBenchmarks.suite());
+		return new TestSetup(suite) {
+			protected void tearDown() {
+				SiteGenerator.dispose();
+			}
+		};
+	}
+}
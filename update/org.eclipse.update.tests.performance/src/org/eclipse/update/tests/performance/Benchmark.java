@@ -0,0 +1,114 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.update.tests.performance;
+
+import java.util.Arrays;
+
+/**
+ * An operation whose time is measured.
+ * <p>
+ * The operation is repeated until a round takes long enough to be timed
+ * with the millisecond clock, once before the warm-up and once after it,
+ * when the code is compiled. The rounds of the warm-up are discarded, and
+ * the time of an operation is the median of the measured rounds, so a
+ * garbage collection or a compilation during one round does not skew the
+ * result.
+ */
+public abstract class Benchmark {
+
+	// shortest round timed with the millisecond clock
+	private static final long MIN_ROUND_TIME = 200;
+
+	private String name;
+
+	/**
+	 * Creates a benchmark.
+	 *
+	 * @param name the name the result is recorded under
+	 */
+	protected Benchmark(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Returns the name the result is recorded under.
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Runs the operation once.
+	 *
+	 * @throws Exception if the operation fails, which fails the benchmark
+	 */
+	protected abstract void run() throws Exception;
+
+	/**
+	 * Measures the operation.
+	 *
+	 * @param warmups the number of rounds discarded
+	 * @param rounds the number of rounds measured
+	 * @return the median time of an operation, in microseconds
+	 * @throws Exception if the operation fails
+	 */
+	public double measure(int warmups, int rounds) throws Exception {
+		// the first runs load and compile the code
+		int operations = calibrate();
+		for (int i = 0; i < warmups; i++)
+			round(operations);
+		operations = calibrate();
+		double[] times = new double[rounds];
+		for (int i = 0; i < rounds; i++)
+			times[i] = round(operations) * 1000.0 / operations;
+		Arrays.sort(times);
+		return times[rounds / 2];
+	}
+
+	/**
+	 * Estimates the memory allocated by the operation, as the growth of the
+	 * heap over one run after a garbage collection.
+	 *
+	 * @return the number of bytes, or -1 if a collection during the run made
+	 * the heap shrink
+	 * @throws Exception if the operation fails
+	 */
+	public long measureAllocation() throws Exception {
+		Runtime runtime = Runtime.getRuntime();
+		System.gc();
+		long used = runtime.totalMemory() - runtime.freeMemory();
+		run();
+		long allocated = runtime.totalMemory() - runtime.freeMemory() - used;
+		return allocated < 0 ? -1 : allocated;
+	}
+
+	/*
+	 * Returns the number of operations of a round.
+	 */
+	private int calibrate() throws Exception {
+		int operations = 1;
+		while (true) {
+			if (round(operations) >= MIN_ROUND_TIME)
+				return operations;
+			operations *= 2;
+		}
+	}
+
+	/*
+	 * Returns the time of a round, in milliseconds.
+	 */
+	private long round(int operations) throws Exception {
+		long start = System.currentTimeMillis();
+		for (int i = 0; i < operations; i++)
+			run();
+		return System.currentTimeMillis() - start;
+	}
+}
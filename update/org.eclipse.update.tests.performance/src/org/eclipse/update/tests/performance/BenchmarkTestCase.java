@@ -0,0 +1,124 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.update.tests.performance;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+
+import junit.framework.TestCase;
+
+/**
+ * Base class of the benchmarks.
+ * <p>
+ * Each result is printed next to the time recorded for it in
+ * <code>baseline.properties</code>. The results are also saved to the file
+ * named by the <code>org.eclipse.update.tests.performance.results</code>
+ * system property, to record a new baseline, and a benchmark fails when it
+ * is slower than its baseline by more than the factor given by the
+ * <code>org.eclipse.update.tests.performance.tolerance</code> system
+ * property. The baseline is machine dependent, so nothing fails unless a
+ * tolerance is given. Only the benchmarks listed in the baseline are
+ * compared: the others are reported as having no baseline, and never
+ * fail.
+ */
+public abstract class BenchmarkTestCase extends TestCase {
+
+	public static final String RESULTS = "org.eclipse.update.tests.performance.results"; //$NON-NLS-1$
+	public static final String TOLERANCE = "org.eclipse.update.tests.performance.tolerance"; //$NON-NLS-1$
+
+	private static final int WARMUPS = 3;
+	private static final int ROUNDS = 5;
+
+	private static Properties baseline;
+	private static Properties results = new Properties();
+
+	public BenchmarkTestCase(String name) {
+		super(name);
+	}
+
+	/**
+	 * Measures a benchmark and reports its result.
+	 *
+	 * @param benchmark the benchmark
+	 * @throws Exception if the benchmark fails
+	 */
+	protected void measure(Benchmark benchmark) throws Exception {
+		measure(benchmark, WARMUPS, ROUNDS);
+	}
+
+	/**
+	 * Measures a benchmark and reports its result.
+	 *
+	 * @param benchmark the benchmark
+	 * @param warmups the number of rounds discarded
+	 * @param rounds the number of rounds measured
+	 * @throws Exception if the benchmark fails
+	 */
+	protected void measure(Benchmark benchmark, int warmups, int rounds) throws Exception {
+		double time = benchmark.measure(warmups, rounds);
+		String name = benchmark.getName();
+		String reference = getBaseline().getProperty(name);
+		StringBuffer line = new StringBuffer(name);
+		line.append(": ").append(format(time)).append(" us/op"); //$NON-NLS-1$ //$NON-NLS-2$
+		double base = 0;
+		if (reference != null) {
+			base = Double.parseDouble(reference);
+			line.append(" (baseline ").append(reference).append(" us/op, "); //$NON-NLS-1$ //$NON-NLS-2$
+			line.append(Math.round((time - base) * 100 / base)).append("%)"); //$NON-NLS-1$
+		} else {
+			line.append(" (no baseline)"); //$NON-NLS-1$
+		}
+		System.out.println(line);
+		record(name, time);
+
+		String tolerance = System.getProperty(TOLERANCE);
+		if (tolerance != null && reference != null)
+			assertTrue(line.toString(), time <= base * Double.parseDouble(tolerance));
+	}
+
+	private static synchronized Properties getBaseline() throws IOException {
+		if (baseline == null) {
+			baseline = new Properties();
+			InputStream in = BenchmarkTestCase.class.getResourceAsStream("baseline.properties"); //$NON-NLS-1$
+			if (in != null) {
+				try {
+					baseline.load(in);
+				} finally {
+					in.close();
+				}
+			}
+		}
+		return baseline;
+	}
+
+	private static synchronized void record(String name, double time) throws IOException {
+		results.setProperty(name, format(time));
+		String file = System.getProperty(RESULTS);
+		if (file == null)
+			return;
+		// saved after each benchmark, the suite has no end hook
+		OutputStream out = new FileOutputStream(file);
+		try {
+			results.store(out, "Install/Update benchmarks, in microseconds per operation"); //$NON-NLS-1$
+		} finally {
+			out.close();
+		}
+	}
+
+	private static String format(double time) {
+		if (time >= 100)
+			return Long.toString(Math.round(time));
+		return Double.toString(Math.round(time * 100) / 100.0);
+	}
+}
@@ -0,0 +1,129 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.update.tests.performance;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Date;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+import org.eclipse.update.configurator.IPlatformConfiguration.ISitePolicy;
+import org.eclipse.update.internal.configurator.Configuration;
+import org.eclipse.update.internal.configurator.FeatureEntry;
+import org.eclipse.update.internal.configurator.PlatformConfiguration;
+import org.eclipse.update.internal.configurator.SiteEntry;
+import org.eclipse.update.internal.configurator.SitePolicy;
+import org.eclipse.update.internal.configurator.XMLElementWriter;
+
+/**
+ * Measures the writing of a platform.xml, the part of a configuration save
+ * that depends on the size of the configuration, with the streaming
+ * writer and with the DOM it replaced, and checks that both write the
+ * same bytes.
+ */
+public class ConfigurationBenchmarks extends BenchmarkTestCase {
+
+	// discards what is written, so only the serialization is measured
+	private static class NullWriter extends Writer {
+		public void write(char[] buffer, int offset, int length) {
+		}
+
+		public void flush() {
+		}
+
+		public void close() {
+		}
+	}
+
+	public static Test suite() {
+		return new TestSuite(ConfigurationBenchmarks.class);
+	}
+
+	public ConfigurationBenchmarks(String name) {
+		super(name);
+	}
+
+	public void testWrite2000() throws Exception {
+		measureWrite(2000, false);
+	}
+
+	public void testDomWrite2000() throws Exception {
+		measureWrite(2000, true);
+	}
+
+	/*
+	 * The streaming writer must write what the DOM wrote, including the
+	 * values that need escaping.
+	 */
+	public void testSameOutput2000() throws Exception {
+		Configuration configuration = getConfiguration(2000);
+		configuration.setDate(new Date(1234567890123L));
+		SiteEntry site = configuration.getSites()[0];
+		site.setSitePolicy(new SitePolicy(ISitePolicy.USER_EXCLUDE, new String[] {"plugins/a&b_1.0.0/", "plugins/<c>'d\"_1.0.0/"})); //$NON-NLS-1$ //$NON-NLS-2$
+		FeatureEntry feature = new FeatureEntry("e&<s>'c\"", "1.0.0", "p&q", "2.0.0", true, "app<&>", new URL[] {new URL("file:/tmp/r&o<o>t'\"/")}); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$
+		feature.setURL("features/e&<s>'c\"_1.0.0/"); //$NON-NLS-1$
+		site.addFeatureEntry(feature);
+		assertEquals(2001, site.getFeatureEntries().length);
+
+		ByteArrayOutputStream dom = new ByteArrayOutputStream();
+		Writer out = new BufferedWriter(new OutputStreamWriter(dom, "UTF-8")); //$NON-NLS-1$
+		DomConfigurationWriter.write(configuration, out, "UTF-8"); //$NON-NLS-1$
+		out.flush();
+
+		ByteArrayOutputStream streamed = new ByteArrayOutputStream();
+		out = new BufferedWriter(new OutputStreamWriter(streamed, "UTF-8")); //$NON-NLS-1$
+		XMLElementWriter writer = new XMLElementWriter(out, null);
+		writer.printHead("UTF-8"); //$NON-NLS-1$
+		configuration.toXML(writer);
+		out.flush();
+
+		String expected = new String(dom.toByteArray(), "UTF-8"); //$NON-NLS-1$
+		assertTrue(expected.indexOf("e&amp;&lt;s&gt;&apos;c&quot;") != -1); //$NON-NLS-1$
+		assertEquals(expected, new String(streamed.toByteArray(), "UTF-8")); //$NON-NLS-1$
+		assertTrue(Arrays.equals(dom.toByteArray(), streamed.toByteArray()));
+	}
+
+	private Configuration getConfiguration(int count) throws Exception {
+		File platformXml = SiteGenerator.getConfiguration(count);
+		File installLocation = platformXml.getParentFile().getParentFile();
+		Configuration configuration = new PlatformConfiguration(platformXml.toURL(), installLocation.toURL()).getConfiguration();
+		assertEquals(count, configuration.getSites()[0].getFeatureEntries().length);
+		return configuration;
+	}
+
+	private void measureWrite(int count, final boolean dom) throws Exception {
+		final Configuration configuration = getConfiguration(count);
+
+		String name = (dom ? "configuration.write.dom." : "configuration.write.") + count; //$NON-NLS-1$ //$NON-NLS-2$
+		Benchmark benchmark = new Benchmark(name) {
+			protected void run() throws Exception {
+				BufferedWriter out = new BufferedWriter(new NullWriter());
+				if (dom) {
+					DomConfigurationWriter.write(configuration, out, "UTF-8"); //$NON-NLS-1$
+				} else {
+					XMLElementWriter writer = new XMLElementWriter(out, null);
+					writer.printHead("UTF-8"); //$NON-NLS-1$
+					configuration.toXML(writer);
+				}
+				out.flush();
+			}
+		};
+		measure(benchmark);
+		System.out.println(benchmark.getName() + ": " + benchmark.measureAllocation() + " bytes allocated"); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+}
@@ -0,0 +1,170 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.update.tests.performance;
+
+import java.io.File;
+import java.io.Writer;
+import java.net.URL;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.eclipse.update.internal.configurator.Configuration;
+import org.eclipse.update.internal.configurator.FeatureEntry;
+import org.eclipse.update.internal.configurator.IConfigurationConstants;
+import org.eclipse.update.internal.configurator.SiteEntry;
+import org.eclipse.update.internal.configurator.Utils;
+import org.eclipse.update.internal.configurator.XMLPrintHandler;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * Writes a configuration the way PlatformConfiguration did before it
+ * streamed the elements: it builds a DOM with the former
+ * <code>toXML(Document)</code> methods of Configuration, SiteEntry and
+ * FeatureEntry, and prints it with
+ * {@link XMLPrintHandler#printNode(Writer, org.w3c.dom.Node, String)}.
+ * It is kept as the reference for the output and the cost of
+ * {@link org.eclipse.update.internal.configurator.XMLElementWriter}.
+ */
+public class DomConfigurationWriter implements IConfigurationConstants {
+
+	private DomConfigurationWriter() {
+	}
+
+	/**
+	 * Writes the configuration, with its current date.
+	 *
+	 * @param configuration the configuration
+	 * @param writer the writer to write to
+	 * @param encoding the encoding declared in the head
+	 */
+	public static void write(Configuration configuration, Writer writer, String encoding) throws Exception {
+		DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+		factory.setExpandEntityReferences(false);
+		factory.setValidating(false);
+		factory.setIgnoringComments(true);
+		DocumentBuilder docBuilder = factory.newDocumentBuilder();
+		Document doc = docBuilder.newDocument();
+
+		Element configElement = toXML(configuration, doc);
+		doc.appendChild(configElement);
+		XMLPrintHandler.printNode(writer, doc, encoding);
+	}
+
+	private static Element toXML(Configuration configuration, Document doc) {
+		Element configElement = doc.createElement(CFG);
+
+		configElement.setAttribute(CFG_VERSION, VERSION);
+		configElement.setAttribute(CFG_DATE, String.valueOf(configuration.getDate().getTime()));
+		String transitory = configuration.isTransient() ? "true" : "false"; //$NON-NLS-1$ //$NON-NLS-2$
+		configElement.setAttribute(CFG_TRANSIENT, transitory);
+
+		Configuration linkedConfig = configuration.getLinkedConfig();
+		if (linkedConfig != null) {
+			// make externalized URL install relative
+			configElement.setAttribute(CFG_SHARED_URL, Utils.makeRelative(configuration.getInstallURL(), linkedConfig.getURL()).toExternalForm());
+		}
+
+		// collect site entries
+		SiteEntry[] list = configuration.getSites();
+		for (int i = 0; i < list.length; i++) {
+			if (linkedConfig != null && linkedConfig.getSiteEntry(list[i].getURL().toExternalForm()) != null)
+				continue;
+			Element siteElement = toXML(list[i], doc);
+			configElement.appendChild(siteElement);
+		}
+
+		return configElement;
+	}
+
+	private static Element toXML(SiteEntry site, Document doc) {
+		Element siteElement = doc.createElement(CFG_SITE);
+
+		Configuration config = site.getConfig();
+		if (site.getURL() != null) {
+			URL toPersist = (config == null || config.isTransient()) ? site.getURL() : Utils.makeRelative(Utils.getInstallURL(), site.getURL());
+			siteElement.setAttribute(CFG_URL, toPersist.toString());
+		}
+
+		siteElement.setAttribute(CFG_ENABLED, site.isEnabled() ? "true" : "false"); //$NON-NLS-1$ //$NON-NLS-2$
+		siteElement.setAttribute(CFG_UPDATEABLE, site.isUpdateable() ? "true" : "false"); //$NON-NLS-1$ //$NON-NLS-2$
+		if (site.isExternallyLinkedSite())
+			siteElement.setAttribute(CFG_LINK_FILE, site.getLinkFileName().trim().replace(File.separatorChar, '/'));
+
+		int type = site.getSitePolicy().getType();
+		String typeString = CFG_POLICY_TYPE_UNKNOWN;
+		try {
+			typeString = CFG_POLICY_TYPE[type];
+		} catch (IndexOutOfBoundsException e) {
+			// ignore bad attribute ...
+		}
+		siteElement.setAttribute(CFG_POLICY, typeString);
+		String[] list = site.getSitePolicy().getList();
+		if (list.length > 0) {
+			StringBuffer sb = new StringBuffer(256);
+			for (int i = 0; i < list.length - 1; i++) {
+				sb.append(list[i]);
+				sb.append(',');
+			}
+			sb.append(list[list.length - 1]);
+			siteElement.setAttribute(CFG_LIST, sb.toString());
+		}
+
+		// collect feature entries
+		FeatureEntry[] feats = site.getFeatureEntries();
+		for (int i = 0; i < feats.length; i++) {
+			Element featureElement = toXML(feats[i], doc);
+			siteElement.appendChild(featureElement);
+		}
+
+		return siteElement;
+	}
+
+	private static Element toXML(FeatureEntry feature, Document doc) {
+		URL installURL = feature.getSite().getConfig().getInstallURL();
+
+		Element featureElement = doc.createElement(CFG_FEATURE_ENTRY);
+		// write out feature entry settings
+		String id = feature.getFeatureIdentifier();
+		String version = feature.getFeatureVersion();
+		String pluginVersion = feature.getFeaturePluginVersion();
+		String pluginIdentifier = feature.getFeaturePluginIdentifier();
+		if (id != null)
+			featureElement.setAttribute(CFG_FEATURE_ENTRY_ID, id);
+		if (feature.canBePrimary())
+			featureElement.setAttribute(CFG_FEATURE_ENTRY_PRIMARY, "true"); //$NON-NLS-1$
+		if (version != null)
+			featureElement.setAttribute(CFG_FEATURE_ENTRY_VERSION, version);
+		if (pluginVersion != null && !pluginVersion.equals(version) && pluginVersion.length() > 0)
+			featureElement.setAttribute(CFG_FEATURE_ENTRY_PLUGIN_VERSION, pluginVersion);
+		if (pluginIdentifier != null && !pluginIdentifier.equals(id) && pluginIdentifier.length() > 0)
+			featureElement.setAttribute(CFG_FEATURE_ENTRY_PLUGIN_IDENTIFIER, pluginIdentifier);
+		if (feature.getFeatureApplication() != null)
+			featureElement.setAttribute(CFG_FEATURE_ENTRY_APPLICATION, feature.getFeatureApplication());
+		if (feature.getURL() != null)
+			// make externalized URL install relative
+			featureElement.setAttribute(CFG_URL, Utils.makeRelative(installURL, feature.getURL()));
+
+		URL[] roots = feature.getFeatureRootURLs();
+		for (int i = 0; i < roots.length; i++) {
+			// make externalized URL install relative
+			String root = Utils.makeRelative(installURL, roots[i]).toExternalForm();
+			if (root.trim().length() > 0) {
+				Element rootElement = doc.createElement(CFG_FEATURE_ENTRY_ROOT);
+				rootElement.appendChild(doc.createTextNode(root));
+				featureElement.appendChild(rootElement);
+			}
+		}
+
+		return featureElement;
+	}
+}
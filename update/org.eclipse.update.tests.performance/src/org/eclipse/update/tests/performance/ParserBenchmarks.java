@@ -0,0 +1,116 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.update.tests.performance;
+
+import java.io.ByteArrayInputStream;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+import org.eclipse.update.core.model.FeatureModelFactory;
+import org.eclipse.update.core.model.SiteModel;
+import org.eclipse.update.core.model.SiteModelFactory;
+import org.eclipse.update.internal.core.DigestParser;
+import org.eclipse.update.internal.core.LiteFeature;
+
+/**
+ * Measures the parsing of site manifests, feature manifests and digests.
+ */
+public class ParserBenchmarks extends BenchmarkTestCase {
+
+	public static Test suite() {
+		return new TestSuite(ParserBenchmarks.class);
+	}
+
+	public ParserBenchmarks(String name) {
+		super(name);
+	}
+
+	public void testSiteParser100() throws Exception {
+		measureSiteParser(100);
+	}
+
+	public void testSiteParser1000() throws Exception {
+		measureSiteParser(1000);
+	}
+
+	public void testSiteParser10000() throws Exception {
+		measureSiteParser(10000);
+	}
+
+	public void testFeatureParser100() throws Exception {
+		measureFeatureParser(100);
+	}
+
+	public void testFeatureParser1000() throws Exception {
+		measureFeatureParser(1000);
+	}
+
+	public void testFeatureParser10000() throws Exception {
+		measureFeatureParser(10000);
+	}
+
+	public void testDigestParser100() throws Exception {
+		measureDigestParser(100);
+	}
+
+	public void testDigestParser1000() throws Exception {
+		measureDigestParser(1000);
+	}
+
+	public void testDigestParser10000() throws Exception {
+		measureDigestParser(10000);
+	}
+
+	private void measureSiteParser(final int count) throws Exception {
+		final byte[] site = SiteGenerator.getSiteXml(count);
+		measure(new Benchmark("siteParser." + count) { //$NON-NLS-1$
+			protected void run() throws Exception {
+				SiteModel model = new SiteModelFactory().parseSite(new ByteArrayInputStream(site));
+				assertEquals(count, model.getFeatureReferenceModels().length);
+			}
+		});
+	}
+
+	/*
+	 * Parses the manifests of all the features of a site.
+	 */
+	private void measureFeatureParser(final int count) throws Exception {
+		final byte[][] features = new byte[count][];
+		for (int i = 0; i < count; i++)
+			features[i] = SiteGenerator.getFeatureXml(i);
+		measure(new Benchmark("featureParser." + count) { //$NON-NLS-1$
+			protected void run() throws Exception {
+				FeatureModelFactory factory = new FeatureModelFactory();
+				for (int i = 0; i < count; i++)
+					factory.parseFeature(new ByteArrayInputStream(features[i]));
+			}
+		});
+	}
+
+	/*
+	 * Parses a digest and reads the plug-ins of all its features, which
+	 * parses the part of the features the digest scanner defers.
+	 */
+	private void measureDigestParser(final int count) throws Exception {
+		final byte[] digest = SiteGenerator.getDigestXml(count);
+		measure(new Benchmark("digestParser." + count) { //$NON-NLS-1$
+			protected void run() throws Exception {
+				DigestParser parser = new DigestParser();
+				parser.init(new FeatureModelFactory());
+				LiteFeature[] features = parser.parse(new ByteArrayInputStream(digest));
+				assertEquals(count, features.length);
+				for (int i = 0; i < features.length; i++)
+					assertEquals(2, features[i].getPluginEntryModels().length);
+			}
+		});
+	}
+}
@@ -0,0 +1,130 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.update.tests.performance;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.Preferences;
+import org.eclipse.update.core.IFeature;
+import org.eclipse.update.internal.core.InternalSiteManager;
+import org.eclipse.update.internal.core.UpdateCore;
+import org.eclipse.update.search.IUpdateSearchResultCollector;
+import org.eclipse.update.search.UpdateSearchRequest;
+import org.eclipse.update.search.UpdateSearchScope;
+
+/**
+ * Measures a search of all the features of a local site, and checks that
+ * a concurrent search finds the same features as a sequential one.
+ * <p>
+ * The site cache is disabled while measuring, so every search reads the
+ * site and its features again.
+ */
+public class SearchBenchmarks extends BenchmarkTestCase {
+
+	private static final int WARMUPS = 1;
+	private static final int ROUNDS = 3;
+
+	private static class Counter implements IUpdateSearchResultCollector {
+		int count;
+
+		public void accept(IFeature match) {
+			count++;
+		}
+	}
+
+	private static class Recorder implements IUpdateSearchResultCollector {
+		List matches = new ArrayList();
+
+		public synchronized void accept(IFeature match) {
+			matches.add(match.getVersionedIdentifier().toString());
+		}
+	}
+
+	public static Test suite() {
+		return new TestSuite(SearchBenchmarks.class);
+	}
+
+	public SearchBenchmarks(String name) {
+		super(name);
+	}
+
+	public void testSearch100() throws Exception {
+		measureSearch(100);
+	}
+
+	public void testSearch1000() throws Exception {
+		measureSearch(1000);
+	}
+
+	public void testSearch10000() throws Exception {
+		measureSearch(10000);
+	}
+
+	/**
+	 * Checks that searching the sites concurrently finds the features a
+	 * sequential search finds.
+	 */
+	public void testConcurrentSearch() throws Exception {
+		Preferences preferences = UpdateCore.getPlugin().getPluginPreferences();
+		int threads = preferences.getInt(UpdateCore.P_SEARCH_THREADS);
+		try {
+			preferences.setValue(UpdateCore.P_SEARCH_THREADS, 1);
+			List sequential = search(new URL[] {SiteGenerator.getSite(100).toURL(), SiteGenerator.getSite(1000).toURL()});
+			preferences.setValue(UpdateCore.P_SEARCH_THREADS, 4);
+			List concurrent = search(new URL[] {SiteGenerator.getSite(100).toURL(), SiteGenerator.getSite(1000).toURL()});
+			assertEquals(1100, sequential.size());
+			assertEquals(sequential, concurrent);
+		} finally {
+			preferences.setValue(UpdateCore.P_SEARCH_THREADS, threads);
+		}
+	}
+
+	/*
+	 * Returns the sorted identifiers of the features found on sites.
+	 */
+	private List search(URL[] sites) throws Exception {
+		UpdateSearchScope scope = new UpdateSearchScope();
+		for (int i = 0; i < sites.length; i++)
+			scope.addSearchSite("Site " + i, sites[i], null); //$NON-NLS-1$
+		UpdateSearchRequest request = new UpdateSearchRequest(UpdateSearchRequest.createDefaultSiteSearchCategory(), scope);
+		Recorder recorder = new Recorder();
+		request.performSearch(recorder, new NullProgressMonitor());
+		Collections.sort(recorder.matches);
+		return recorder.matches;
+	}
+
+	private void measureSearch(final int count) throws Exception {
+		final URL site = SiteGenerator.getSite(count).toURL();
+		boolean useCache = InternalSiteManager.globalUseCache;
+		InternalSiteManager.globalUseCache = false;
+		try {
+			measure(new Benchmark("search." + count) { //$NON-NLS-1$
+				protected void run() throws Exception {
+					UpdateSearchScope scope = new UpdateSearchScope();
+					scope.addSearchSite("Benchmark", site, null); //$NON-NLS-1$
+					UpdateSearchRequest request = new UpdateSearchRequest(UpdateSearchRequest.createDefaultSiteSearchCategory(), scope);
+					Counter counter = new Counter();
+					request.performSearch(counter, new NullProgressMonitor());
+					assertEquals(count, counter.count);
+				}
+			}, WARMUPS, ROUNDS);
+		} finally {
+			InternalSiteManager.globalUseCache = useCache;
+		}
+	}
+}
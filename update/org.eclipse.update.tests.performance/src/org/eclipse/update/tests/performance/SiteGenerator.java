@@ -0,0 +1,261 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.update.tests.performance;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+/**
+ * Generates update sites of a given number of features.
+ * <p>
+ * Feature <i>n</i> is named <code>bench.feature</code><i>n</i>, packages
+ * a core and a ui plug-in, and requires the previous feature and its core
+ * plug-in, so validating an install of the whole site checks a chain of
+ * prerequisites. The features are spread over ten categories.
+ * <p>
+ * Configurations of a given number of features are generated as well.
+ */
+public class SiteGenerator {
+
+	/**
+	 * The number of features of the generated sites.
+	 */
+	public static final int[] SIZES = new int[] {100, 1000, 10000};
+
+	private static final int CATEGORIES = 10;
+	private static final String VERSION = "1.0.0"; //$NON-NLS-1$
+
+	// number of features -> site directory
+	private static Map sites = new HashMap();
+	// number of features -> configuration directory
+	private static Map configurations = new HashMap();
+
+	/**
+	 * Returns the identifier of a feature.
+	 */
+	public static String getFeatureId(int index) {
+		return "bench.feature" + index; //$NON-NLS-1$
+	}
+
+	/**
+	 * Returns the version of the features and plug-ins.
+	 */
+	public static String getVersion() {
+		return VERSION;
+	}
+
+	/**
+	 * Returns the site manifest of a site.
+	 *
+	 * @param count the number of features
+	 */
+	public static byte[] getSiteXml(int count) {
+		StringBuffer xml = new StringBuffer(count * 160);
+		xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"); //$NON-NLS-1$
+		xml.append("<site>\n"); //$NON-NLS-1$
+		xml.append("\t<description>Generated site of ").append(count).append(" features</description>\n"); //$NON-NLS-1$ //$NON-NLS-2$
+		for (int i = 0; i < count; i++) {
+			String id = getFeatureId(i);
+			xml.append("\t<feature url=\"features/").append(id).append('_').append(VERSION).append(".jar\" id=\"").append(id); //$NON-NLS-1$ //$NON-NLS-2$
+			xml.append("\" version=\"").append(VERSION).append("\">\n"); //$NON-NLS-1$ //$NON-NLS-2$
+			xml.append("\t\t<category name=\"category").append(i % CATEGORIES).append("\"/>\n"); //$NON-NLS-1$ //$NON-NLS-2$
+			xml.append("\t</feature>\n"); //$NON-NLS-1$
+		}
+		for (int i = 0; i < CATEGORIES; i++) {
+			xml.append("\t<category-def name=\"category").append(i).append("\" label=\"Category ").append(i).append("\">\n"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+			xml.append("\t\t<description>Features of category ").append(i).append("</description>\n"); //$NON-NLS-1$ //$NON-NLS-2$
+			xml.append("\t</category-def>\n"); //$NON-NLS-1$
+		}
+		xml.append("</site>\n"); //$NON-NLS-1$
+		return toBytes(xml);
+	}
+
+	/**
+	 * Returns the manifest of a feature.
+	 *
+	 * @param index the index of the feature
+	 */
+	public static byte[] getFeatureXml(int index) {
+		StringBuffer xml = new StringBuffer(1024);
+		xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"); //$NON-NLS-1$
+		appendFeature(xml, index);
+		return toBytes(xml);
+	}
+
+	/**
+	 * Returns the digest of a site.
+	 *
+	 * @param count the number of features
+	 */
+	public static byte[] getDigestXml(int count) {
+		StringBuffer xml = new StringBuffer(count * 1024);
+		xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"); //$NON-NLS-1$
+		xml.append("<digest>\n"); //$NON-NLS-1$
+		for (int i = 0; i < count; i++)
+			appendFeature(xml, i);
+		xml.append("</digest>\n"); //$NON-NLS-1$
+		return toBytes(xml);
+	}
+
+	/**
+	 * Returns a platform.xml configuring a site of installed features.
+	 *
+	 * @param site the site directory
+	 * @param count the number of features
+	 */
+	public static byte[] getPlatformXml(File site, int count) throws IOException {
+		StringBuffer xml = new StringBuffer(count * 100);
+		xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"); //$NON-NLS-1$
+		xml.append("<config date=\"").append(System.currentTimeMillis()).append("\" transient=\"false\" version=\"3.0\">\n"); //$NON-NLS-1$ //$NON-NLS-2$
+		xml.append("<site enabled=\"true\" policy=\"USER-EXCLUDE\" updateable=\"true\" url=\"").append(site.toURL()).append("\">\n"); //$NON-NLS-1$ //$NON-NLS-2$
+		for (int i = 0; i < count; i++) {
+			String id = getFeatureId(i);
+			xml.append("<feature id=\"").append(id).append("\" url=\"features/").append(id).append('_').append(VERSION); //$NON-NLS-1$ //$NON-NLS-2$
+			xml.append("/\" version=\"").append(VERSION).append("\">\n"); //$NON-NLS-1$ //$NON-NLS-2$
+			xml.append("</feature>\n"); //$NON-NLS-1$
+		}
+		xml.append("</site>\n"); //$NON-NLS-1$
+		xml.append("</config>\n"); //$NON-NLS-1$
+		return toBytes(xml);
+	}
+
+	private static void appendFeature(StringBuffer xml, int index) {
+		String id = getFeatureId(index);
+		xml.append("<feature id=\"").append(id).append("\" version=\"").append(VERSION); //$NON-NLS-1$ //$NON-NLS-2$
+		xml.append("\" label=\"Feature ").append(index).append("\" provider-name=\"Eclipse.org\">\n"); //$NON-NLS-1$ //$NON-NLS-2$
+		xml.append("\t<description>Generated feature ").append(index).append("</description>\n"); //$NON-NLS-1$ //$NON-NLS-2$
+		xml.append("\t<copyright>Copyright (c) 2013</copyright>\n"); //$NON-NLS-1$
+		xml.append("\t<license url=\"license.html\">Generated license</license>\n"); //$NON-NLS-1$
+		if (index > 0) {
+			xml.append("\t<requires>\n"); //$NON-NLS-1$
+			xml.append("\t\t<import feature=\"").append(getFeatureId(index - 1)).append("\" version=\"").append(VERSION).append("\" match=\"compatible\"/>\n"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+			xml.append("\t\t<import plugin=\"").append(getPluginId(index - 1, "core")).append("\" version=\"").append(VERSION).append("\" match=\"greaterOrEqual\"/>\n"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+			xml.append("\t</requires>\n"); //$NON-NLS-1$
+		}
+		appendPlugin(xml, getPluginId(index, "core"), false); //$NON-NLS-1$
+		appendPlugin(xml, getPluginId(index, "ui"), true); //$NON-NLS-1$
+		xml.append("</feature>\n"); //$NON-NLS-1$
+	}
+
+	private static void appendPlugin(StringBuffer xml, String id, boolean unpack) {
+		xml.append("\t<plugin id=\"").append(id).append("\" version=\"").append(VERSION); //$NON-NLS-1$ //$NON-NLS-2$
+		xml.append("\" download-size=\"120\" install-size=\"240\" unpack=\"").append(unpack).append("\"/>\n"); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	private static String getPluginId(int index, String suffix) {
+		return "bench.plugin" + index + '.' + suffix; //$NON-NLS-1$
+	}
+
+	/**
+	 * Returns a local update site, generated on first use in a temporary
+	 * directory.
+	 *
+	 * @param count the number of features
+	 * @return the site directory
+	 * @throws IOException if the site cannot be written
+	 */
+	public static synchronized File getSite(int count) throws IOException {
+		Integer key = new Integer(count);
+		File site = (File) sites.get(key);
+		if (site == null) {
+			site = File.createTempFile("benchsite" + count, ""); //$NON-NLS-1$ //$NON-NLS-2$
+			site.delete();
+			File features = new File(site, "features"); //$NON-NLS-1$
+			features.mkdirs();
+			write(new File(site, "site.xml"), getSiteXml(count)); //$NON-NLS-1$
+			for (int i = 0; i < count; i++) {
+				File jar = new File(features, getFeatureId(i) + '_' + VERSION + ".jar"); //$NON-NLS-1$
+				JarOutputStream out = new JarOutputStream(new FileOutputStream(jar));
+				try {
+					out.putNextEntry(new JarEntry("feature.xml")); //$NON-NLS-1$
+					out.write(getFeatureXml(i));
+					out.closeEntry();
+				} finally {
+					out.close();
+				}
+			}
+			sites.put(key, site);
+		}
+		return site;
+	}
+
+	/**
+	 * Returns the platform.xml of a configuration, generated on first use
+	 * in a temporary directory with the site it configures. The features
+	 * are configured, but not installed on the site.
+	 *
+	 * @param count the number of features
+	 * @return the platform.xml file
+	 * @throws IOException if the configuration cannot be written
+	 */
+	public static synchronized File getConfiguration(int count) throws IOException {
+		Integer key = new Integer(count);
+		File directory = (File) configurations.get(key);
+		if (directory == null) {
+			directory = File.createTempFile("benchconfig" + count, ""); //$NON-NLS-1$ //$NON-NLS-2$
+			directory.delete();
+			File site = new File(directory, "site"); //$NON-NLS-1$
+			new File(site, "features").mkdirs(); //$NON-NLS-1$
+			File config = new File(directory, "org.eclipse.update"); //$NON-NLS-1$
+			config.mkdirs();
+			write(new File(config, "platform.xml"), getPlatformXml(site, count)); //$NON-NLS-1$
+			configurations.put(key, directory);
+		}
+		return new File(directory, "org.eclipse.update/platform.xml"); //$NON-NLS-1$
+	}
+
+	/**
+	 * Deletes the generated sites and configurations.
+	 */
+	public static synchronized void dispose() {
+		for (Iterator it = sites.values().iterator(); it.hasNext();)
+			delete((File) it.next());
+		sites.clear();
+		for (Iterator it = configurations.values().iterator(); it.hasNext();)
+			delete((File) it.next());
+		configurations.clear();
+	}
+
+	private static void delete(File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (int i = 0; i < children.length; i++)
+				delete(children[i]);
+		}
+		file.delete();
+	}
+
+	private static void write(File file, byte[] content) throws IOException {
+		OutputStream out = new FileOutputStream(file);
+		try {
+			out.write(content);
+		} finally {
+			out.close();
+		}
+	}
+
+	private static byte[] toBytes(StringBuffer xml) {
+		try {
+			return xml.toString().getBytes("UTF-8"); //$NON-NLS-1$
+		} catch (UnsupportedEncodingException e) {
+			// UTF-8 is always supported
+			throw new IllegalStateException(e.getMessage());
+		}
+	}
+}
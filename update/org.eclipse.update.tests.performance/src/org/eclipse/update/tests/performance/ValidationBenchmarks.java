@@ -0,0 +1,69 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.update.tests.performance;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+import org.eclipse.update.configuration.IConfiguredSite;
+import org.eclipse.update.core.IFeatureReference;
+import org.eclipse.update.core.ISite;
+import org.eclipse.update.core.SiteManager;
+import org.eclipse.update.operations.IInstallFeatureOperation;
+import org.eclipse.update.operations.IOperationFactory;
+import org.eclipse.update.operations.OperationsManager;
+
+/**
+ * Measures the validation of an install of all the features of a site
+ * into the current configuration.
+ */
+public class ValidationBenchmarks extends BenchmarkTestCase {
+
+	private static final int WARMUPS = 1;
+	private static final int ROUNDS = 5;
+
+	public static Test suite() {
+		return new TestSuite(ValidationBenchmarks.class);
+	}
+
+	public ValidationBenchmarks(String name) {
+		super(name);
+	}
+
+	public void testValidatePendingChanges100() throws Exception {
+		measureValidation(100);
+	}
+
+	public void testValidatePendingChanges1000() throws Exception {
+		measureValidation(1000);
+	}
+
+	public void testValidatePendingChanges10000() throws Exception {
+		measureValidation(10000);
+	}
+
+	private void measureValidation(int count) throws Exception {
+		ISite site = SiteManager.getSite(SiteGenerator.getSite(count).toURL(), null);
+		IConfiguredSite target = SiteManager.getLocalSite().getCurrentConfiguration().getConfiguredSites()[0];
+		IFeatureReference[] references = site.getFeatureReferences();
+		assertEquals(count, references.length);
+		IOperationFactory factory = OperationsManager.getOperationFactory();
+		final IInstallFeatureOperation[] jobs = new IInstallFeatureOperation[references.length];
+		for (int i = 0; i < references.length; i++)
+			jobs[i] = factory.createInstallOperation(target, references[i].getFeature(null), null, null, null);
+
+		measure(new Benchmark("validatePendingChanges." + count) { //$NON-NLS-1$
+			protected void run() {
+				OperationsManager.getValidator().validatePendingChanges(jobs);
+			}
+		}, WARMUPS, ROUNDS);
+	}
+}
@@ -0,0 +1,126 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.update.tests.performance;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Set;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+import org.eclipse.core.runtime.PluginVersionIdentifier;
+import org.eclipse.update.core.VersionedIdentifier;
+
+/**
+ * Measures the creation, hashing and comparison of versioned identifiers.
+ */
+public class VersionedIdentifierBenchmarks extends BenchmarkTestCase {
+
+	private static final Comparator VERSION_ORDER = new Comparator() {
+		public int compare(Object o1, Object o2) {
+			PluginVersionIdentifier v1 = ((VersionedIdentifier) o1).getVersion();
+			PluginVersionIdentifier v2 = ((VersionedIdentifier) o2).getVersion();
+			if (v1.isGreaterThan(v2))
+				return 1;
+			return v2.isGreaterThan(v1) ? -1 : 0;
+		}
+	};
+
+	public static Test suite() {
+		return new TestSuite(VersionedIdentifierBenchmarks.class);
+	}
+
+	public VersionedIdentifierBenchmarks(String name) {
+		super(name);
+	}
+
+	public void testCreate100() throws Exception {
+		measureCreate(100);
+	}
+
+	public void testCreate1000() throws Exception {
+		measureCreate(1000);
+	}
+
+	public void testCreate10000() throws Exception {
+		measureCreate(10000);
+	}
+
+	public void testLookup100() throws Exception {
+		measureLookup(100);
+	}
+
+	public void testLookup1000() throws Exception {
+		measureLookup(1000);
+	}
+
+	public void testLookup10000() throws Exception {
+		measureLookup(10000);
+	}
+
+	public void testSort100() throws Exception {
+		measureSort(100);
+	}
+
+	public void testSort1000() throws Exception {
+		measureSort(1000);
+	}
+
+	public void testSort10000() throws Exception {
+		measureSort(10000);
+	}
+
+	private static String getVersion(int index) {
+		return "1." + (index % 7) + '.' + (index % 13) + ".v" + index; //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	private static VersionedIdentifier[] createIdentifiers(int count) {
+		VersionedIdentifier[] ids = new VersionedIdentifier[count];
+		for (int i = 0; i < count; i++)
+			ids[i] = new VersionedIdentifier(SiteGenerator.getFeatureId(i % 100), getVersion(i));
+		return ids;
+	}
+
+	private void measureCreate(final int count) throws Exception {
+		measure(new Benchmark("versionedIdentifier.create." + count) { //$NON-NLS-1$
+			protected void run() {
+				createIdentifiers(count);
+			}
+		});
+	}
+
+	/*
+	 * Looks up identifiers equal to, but not the same as, the ones of a set.
+	 */
+	private void measureLookup(final int count) throws Exception {
+		final VersionedIdentifier[] ids = createIdentifiers(count);
+		final VersionedIdentifier[] keys = createIdentifiers(count);
+		measure(new Benchmark("versionedIdentifier.lookup." + count) { //$NON-NLS-1$
+			protected void run() {
+				Set set = new HashSet(Arrays.asList(ids));
+				for (int i = 0; i < count; i++)
+					assertTrue(set.contains(keys[i]));
+			}
+		});
+	}
+
+	private void measureSort(final int count) throws Exception {
+		final VersionedIdentifier[] ids = createIdentifiers(count);
+		measure(new Benchmark("versionedIdentifier.sort." + count) { //$NON-NLS-1$
+			protected void run() {
+				Object[] sorted = (Object[]) ids.clone();
+				Arrays.sort(sorted, VERSION_ORDER);
+			}
+		});
+	}
+}